@@ -0,0 +1,432 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.cache.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cn.taketoday.cache.Cache;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Constant;
+import cn.taketoday.lang.NullValue;
+import cn.taketoday.lang.Nullable;
+
+/**
+ * Size-bounded, scan-resistant {@link Cache} using the W-TinyLFU policy.
+ *
+ * <p>New entries are put into a small LRU admission window. An entry leaving
+ * the window only enters the main LRU region if it has been accessed more
+ * often than the entry the main region would evict, as estimated by a
+ * count-min frequency sketch that is periodically aged. A burst of keys seen
+ * only once (crawlers, ids in paths, 404 probes) therefore cannot flush out
+ * the frequently used entries.
+ *
+ * <p>Reads never block: recency is only recorded when the eviction lock is
+ * free, frequency is always recorded. Writes are serialized by the eviction
+ * lock.
+ *
+ * <p>With {@link #setCacheNullValues(boolean) cacheNullValues} disabled,
+ * {@code null} values ({@link NullValue#INSTANCE}) are not stored at all.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see #getHitCount()
+ * @see #getMissCount()
+ * @see #getEvictionCount()
+ * @since 4.0
+ */
+public class TinyLfuCache extends Cache {
+
+  private final int maximumSize;
+  private final int windowMaximum;
+  private final int mainMaximum;
+
+  private final ConcurrentHashMap<Object, Node> store;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+
+  // guarded by evictionLock
+  private final AccessOrderQueue window = new AccessOrderQueue();
+  private final AccessOrderQueue main = new AccessOrderQueue();
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  private boolean cacheNullValues = true;
+
+  public TinyLfuCache() {
+    this(Constant.DEFAULT);
+  }
+
+  public TinyLfuCache(String name) {
+    this(name, 1024);
+  }
+
+  public TinyLfuCache(String name, int maximumSize) {
+    Assert.isTrue(maximumSize > 0, "maximumSize must be greater than 0");
+    setName(name);
+    this.maximumSize = maximumSize;
+    this.windowMaximum = Math.max(1, maximumSize / 100);
+    this.mainMaximum = maximumSize - windowMaximum;
+    this.sketch = new FrequencySketch(maximumSize);
+    this.store = new ConcurrentHashMap<>(Math.min(maximumSize, 256));
+  }
+
+  /**
+   * Set whether to store {@code null} values (negative results).
+   * <p>Default is {@code true}
+   */
+  public void setCacheNullValues(boolean cacheNullValues) {
+    this.cacheNullValues = cacheNullValues;
+  }
+
+  public boolean isCacheNullValues() {
+    return cacheNullValues;
+  }
+
+  @Nullable
+  @Override
+  protected Object doGet(Object key) {
+    Node node = store.get(key);
+    if (node == null) {
+      missCount.increment();
+      return null;
+    }
+    hitCount.increment();
+    sketch.increment(key);
+    // recency is best effort under contention
+    if (evictionLock.tryLock()) {
+      try {
+        if (node.queue != null) {
+          node.queue.moveToBack(node);
+        }
+      }
+      finally {
+        evictionLock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  @Override
+  protected void doPut(Object key, Object value) {
+    if (value == NullValue.INSTANCE && !cacheNullValues) {
+      return;
+    }
+    ReentrantLock lock = this.evictionLock;
+    lock.lock();
+    try {
+      sketch.increment(key);
+      Node node = store.get(key);
+      if (node != null) {
+        node.value = value;
+        node.queue.moveToBack(node);
+      }
+      else {
+        node = new Node(key, value);
+        store.put(key, node);
+        window.add(node);
+        evictIfNeeded();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void evictIfNeeded() {
+    while (window.size > windowMaximum) {
+      Node candidate = window.poll();
+      if (main.size < mainMaximum) {
+        main.add(candidate);
+        continue;
+      }
+      Node victim = main.head;
+      if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+        main.remove(victim);
+        evict(victim);
+        main.add(candidate);
+      }
+      else {
+        evict(candidate);
+      }
+    }
+  }
+
+  private void evict(Node node) {
+    store.remove(node.key, node);
+    evictionCount.increment();
+  }
+
+  @Override
+  public void evict(Object key) {
+    ReentrantLock lock = this.evictionLock;
+    lock.lock();
+    try {
+      Node node = store.remove(key);
+      if (node != null) {
+        node.queue.remove(node);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    ReentrantLock lock = this.evictionLock;
+    lock.lock();
+    try {
+      store.clear();
+      window.clear();
+      main.clear();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return the maximum number of entries this cache may hold.
+   */
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Return the current number of entries.
+   */
+  public int size() {
+    return store.size();
+  }
+
+  /**
+   * Return the number of lookups that found an entry.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * Return the number of lookups that found no entry.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Return the number of entries evicted or rejected because of the size bound.
+   */
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Return the ratio of hits to lookups, or {@code 1.0} if there has been no lookup.
+   */
+  public double getHitRate() {
+    long hits = getHitCount();
+    long requests = hits + getMissCount();
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "TinyLfuCache[name=" + getName() + ", size=" + size() + ", maximumSize=" + maximumSize +
+            ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+  }
+
+  static final class Node {
+    final Object key;
+    volatile Object value;
+
+    // guarded by evictionLock
+    @Nullable
+    Node prev;
+    @Nullable
+    Node next;
+    @Nullable
+    AccessOrderQueue queue;
+
+    Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Intrusive doubly-linked LRU list, head is the least recently used.
+   */
+  static final class AccessOrderQueue {
+    @Nullable
+    Node head;
+    @Nullable
+    Node tail;
+    int size;
+
+    void add(Node node) {
+      node.queue = this;
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      }
+      else {
+        tail.next = node;
+      }
+      tail = node;
+      size++;
+    }
+
+    Node poll() {
+      Node node = head;
+      remove(node);
+      return node;
+    }
+
+    void remove(Node node) {
+      Node prev = node.prev;
+      Node next = node.next;
+      if (prev == null) {
+        head = next;
+      }
+      else {
+        prev.next = next;
+      }
+      if (next == null) {
+        tail = prev;
+      }
+      else {
+        next.prev = prev;
+      }
+      node.prev = null;
+      node.next = null;
+      node.queue = null;
+      size--;
+    }
+
+    void moveToBack(Node node) {
+      if (node != tail) {
+        remove(node);
+        add(node);
+      }
+    }
+
+    void clear() {
+      Node node = head;
+      while (node != null) {
+        Node next = node.next;
+        node.prev = null;
+        node.next = null;
+        node.queue = null;
+        node = next;
+      }
+      head = null;
+      tail = null;
+      size = 0;
+    }
+  }
+
+  /**
+   * Count-min sketch with 4-bit counters, four per 64-bit slot. Counters are
+   * halved every {@code 10 * maximumSize} increments so that the popularity
+   * of old entries fades. Updates are racy on purpose; the sketch is only an
+   * estimate.
+   */
+  static final class FrequencySketch {
+    static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    final long[] table;
+    final int tableMask;
+    final int sampleSize;
+    int additions;
+
+    FrequencySketch(int maximumSize) {
+      int capacity = 1;
+      while (capacity < maximumSize && capacity < (1 << 30)) {
+        capacity <<= 1;
+      }
+      this.table = new long[capacity];
+      this.tableMask = capacity - 1;
+      this.sampleSize = (maximumSize > Integer.MAX_VALUE / 10) ? Integer.MAX_VALUE : 10 * maximumSize;
+    }
+
+    int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+      int offset = counter << 2;
+      long mask = 0xfL << offset;
+      if ((table[index] & mask) != mask) {
+        table[index] += 1L << offset;
+        return true;
+      }
+      return false;
+    }
+
+    private void reset() {
+      long[] table = this.table;
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions = additions >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+      long hash = (item + SEEDS[i]) * SEEDS[i];
+      hash += (hash >>> 32);
+      return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2021 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.http;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sub-interface of {@link HttpOutputMessage} that can transfer a file region
+ * to the underlying HTTP layer without copying it through user space,
+ * the blocking counterpart of {@link ZeroCopyHttpOutputMessage}.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see <a href="https://en.wikipedia.org/wiki/Zero-copy">Zero-copy</a>
+ * @since 4.0
+ */
+public interface FileTransferHttpOutputMessage extends HttpOutputMessage {
+
+  /**
+   * Whether {@link #transferFrom} can be used for this message
+   */
+  boolean supportsFileTransfer();
+
+  /**
+   * Write the given region of the {@link File} as a part of the body,
+   * content previously written to {@link #getBody()} is sent first.
+   *
+   * @param file the file to transfer
+   * @param position the position within the file from which the transfer is to begin
+   * @param count the number of bytes to be transferred
+   * @throws IOException in case of I/O errors
+   * @throws UnsupportedOperationException if {@link #supportsFileTransfer()} returns {@code false}
+   */
+  void transferFrom(File file, long position, long count) throws IOException;
+
+}
@@ -20,13 +20,16 @@
 
 package cn.taketoday.http.converter;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
 import cn.taketoday.core.io.ByteArrayResource;
+import cn.taketoday.core.io.FileBasedResource;
 import cn.taketoday.core.io.InputStreamResource;
 import cn.taketoday.core.io.Resource;
+import cn.taketoday.http.FileTransferHttpOutputMessage;
 import cn.taketoday.http.HttpInputMessage;
 import cn.taketoday.http.HttpOutputMessage;
 import cn.taketoday.http.MediaTypeFactory;
@@ -135,6 +138,16 @@ public class ResourceHttpMessageConverter extends AbstractHttpMessageConverter<R
 
   protected void writeContent(Resource resource, HttpOutputMessage outputMessage)
           throws IOException, HttpMessageNotWritableException {
+    if (outputMessage instanceof FileTransferHttpOutputMessage message
+            && resource instanceof FileBasedResource fileResource
+            && message.supportsFileTransfer()) {
+      // zero-copy
+      File file = fileResource.getFile();
+      if (file.isFile()) {
+        message.transferFrom(file, 0, file.length());
+      }
+      return;
+    }
     try {
       try (InputStream in = resource.getInputStream()) {
         StreamUtils.copy(in, outputMessage.getBody());
@@ -20,16 +20,23 @@
 
 package cn.taketoday.http.converter;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 
+import cn.taketoday.core.io.FileBasedResource;
 import cn.taketoday.core.io.Resource;
 import cn.taketoday.core.io.ResourceRegion;
+import cn.taketoday.http.FileTransferHttpOutputMessage;
 import cn.taketoday.http.HttpHeaders;
 import cn.taketoday.http.HttpInputMessage;
 import cn.taketoday.http.HttpOutputMessage;
@@ -38,6 +45,7 @@ import cn.taketoday.lang.Assert;
 import cn.taketoday.lang.Nullable;
 import cn.taketoday.http.MediaType;
 import cn.taketoday.util.MimeTypeUtils;
+import cn.taketoday.util.ResourceUtils;
 import cn.taketoday.util.StreamUtils;
 
 /**
@@ -51,6 +59,9 @@ import cn.taketoday.util.StreamUtils;
  */
 public class ResourceRegionHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
 
+  /** largest buffer for copying regions of a file */
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
   public ResourceRegionHttpMessageConverter() {
     super(MediaType.ALL);
   }
@@ -150,6 +161,20 @@ public class ResourceRegionHttpMessageConverter extends AbstractGenericHttpMessa
     responseHeaders.add("Content-Range", "bytes " + start + '-' + end + '/' + resourceLength);
     responseHeaders.setContentLength(rangeLength);
 
+    File file = getTransferableFile(region.getResource(), outputMessage);
+    if (file != null) {
+      ((FileTransferHttpOutputMessage) outputMessage).transferFrom(file, start, rangeLength);
+      return;
+    }
+
+    file = getFile(region.getResource());
+    if (file != null) {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        copyRange(channel, outputMessage.getBody(), start, rangeLength, createBuffer(rangeLength));
+      }
+      return;
+    }
+
     try (InputStream in = region.getResource().getInputStream()) {
       StreamUtils.copyRange(in, outputMessage.getBody(), start, end);
     }
@@ -165,6 +190,74 @@ public class ResourceRegionHttpMessageConverter extends AbstractGenericHttpMessa
     responseHeaders.set(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundaryString);
     OutputStream out = outputMessage.getBody();
 
+    for (ResourceRegion region : resourceRegions) {
+      if (getTransferableFile(region.getResource(), outputMessage) == null) {
+        writeResourceRegionCollection(resourceRegions, contentType, boundaryString, out);
+        return;
+      }
+    }
+
+    // zero-copy: boundaries are buffered, file regions are transferred
+    FileTransferHttpOutputMessage message = (FileTransferHttpOutputMessage) outputMessage;
+    for (ResourceRegion region : resourceRegions) {
+      File file = getTransferableFile(region.getResource(), outputMessage);
+      long start = region.getPosition();
+      long resourceLength = file.length();
+      long end = Math.min(start + region.getCount() - 1, resourceLength - 1);
+      printRegionHeader(out, boundaryString, contentType, region, resourceLength);
+      out.flush();
+      message.transferFrom(file, start, end - start + 1);
+    }
+
+    println(out);
+    print(out, "--" + boundaryString + "--");
+  }
+
+  private void writeResourceRegionCollection(
+          Collection<ResourceRegion> resourceRegions, @Nullable MediaType contentType,
+          String boundaryString, OutputStream out) throws IOException {
+    long maxCount = 0;
+    for (ResourceRegion region : resourceRegions) {
+      if (getFile(region.getResource()) == null) {
+        copyResourceRegions(resourceRegions, contentType, boundaryString, out);
+        return;
+      }
+      maxCount = Math.max(maxCount, region.getCount());
+    }
+
+    // positional reads: one channel per file, no matter the order of the regions
+    Resource resource = null;
+    FileChannel channel = null;
+    byte[] buffer = createBuffer(maxCount);
+    try {
+      for (ResourceRegion region : resourceRegions) {
+        if (resource != region.getResource()) {
+          if (channel != null) {
+            channel.close();
+          }
+          resource = region.getResource();
+          channel = FileChannel.open(getFile(resource).toPath(), StandardOpenOption.READ);
+        }
+        long start = region.getPosition();
+        long resourceLength = channel.size();
+        long end = Math.min(start + region.getCount() - 1, resourceLength - 1);
+        printRegionHeader(out, boundaryString, contentType, region, resourceLength);
+        copyRange(channel, out, start, end - start + 1, buffer);
+      }
+    }
+    finally {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+
+    println(out);
+    print(out, "--" + boundaryString + "--");
+  }
+
+  private void copyResourceRegions(
+          Collection<ResourceRegion> resourceRegions, @Nullable MediaType contentType,
+          String boundaryString, OutputStream out) throws IOException {
     Resource resource = null;
     InputStream in = null;
     long inputStreamPosition = 0;
@@ -182,20 +275,9 @@ public class ResourceRegionHttpMessageConverter extends AbstractGenericHttpMessa
           start = region.getPosition();
         }
         long end = start + region.getCount() - 1;
-        // Writing MIME header.
-        println(out);
-        print(out, "--" + boundaryString);
-        println(out);
-        if (contentType != null) {
-          print(out, "Content-Type: " + contentType);
-          println(out);
-        }
         long resourceLength = region.getResource().contentLength();
         end = Math.min(end, resourceLength - inputStreamPosition - 1);
-        print(out, "Content-Range: bytes " + region.getPosition() + '-'
-                + (region.getPosition() + region.getCount() - 1) + '/' + resourceLength);
-        println(out);
-        println(out);
+        printRegionHeader(out, boundaryString, contentType, region, resourceLength);
         // Printing content
         StreamUtils.copyRange(in, out, start, end);
         inputStreamPosition += (end + 1);
@@ -216,6 +298,87 @@ public class ResourceRegionHttpMessageConverter extends AbstractGenericHttpMessa
     print(out, "--" + boundaryString + "--");
   }
 
+  private static void printRegionHeader(OutputStream out, String boundaryString,
+          @Nullable MediaType contentType, ResourceRegion region, long resourceLength) throws IOException {
+    // Writing MIME header, in a single write
+    StringBuilder header = new StringBuilder(boundaryString.length() + 96);
+    header.append("\r\n--").append(boundaryString).append("\r\n");
+    if (contentType != null) {
+      header.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    header.append("Content-Range: bytes ").append(region.getPosition()).append('-')
+            .append(region.getPosition() + region.getCount() - 1).append('/').append(resourceLength)
+            .append("\r\n\r\n");
+    print(out, header.toString());
+  }
+
+  /**
+   * Copy {@code count} bytes starting at {@code position}, read with positional
+   * reads so that nothing before the range is read, and the channel position
+   * does not matter
+   */
+  private static void copyRange(FileChannel channel,
+          OutputStream out, long position, long count, byte[] buffer) throws IOException {
+    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    long end = position + count;
+    while (position < end) {
+      byteBuffer.clear();
+      byteBuffer.limit((int) Math.min(buffer.length, end - position));
+      int read = channel.read(byteBuffer, position);
+      if (read == -1) {
+        // truncated meanwhile
+        break;
+      }
+      out.write(buffer, 0, read);
+      position += read;
+    }
+  }
+
+  private static byte[] createBuffer(long rangeLength) {
+    return new byte[(int) Math.max(1, Math.min(rangeLength, MAX_BUFFER_SIZE))];
+  }
+
+  /**
+   * Returns the file of the resource if it is in the file system, {@code null} otherwise
+   */
+  @Nullable
+  private static File getFile(Resource resource) {
+    File file;
+    if (resource instanceof FileBasedResource fileResource) {
+      file = fileResource.getFile();
+    }
+    else {
+      try {
+        URL url = resource.getLocation();
+        if (url == null || !ResourceUtils.isFileURL(url)) {
+          return null;
+        }
+        file = resource.getFile();
+      }
+      catch (IOException e) {
+        return null;
+      }
+    }
+    return file != null && file.isFile() ? file : null;
+  }
+
+  /**
+   * Returns the file of the resource if it can be transferred
+   * without copying through user space, {@code null} otherwise
+   */
+  @Nullable
+  private static File getTransferableFile(Resource resource, HttpOutputMessage outputMessage) {
+    if (outputMessage instanceof FileTransferHttpOutputMessage message
+            && resource instanceof FileBasedResource fileResource
+            && message.supportsFileTransfer()) {
+      File file = fileResource.getFile();
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
   private static void println(OutputStream os) throws IOException {
     os.write('\r');
     os.write('\n');
@@ -20,6 +20,7 @@
 package cn.taketoday.web;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -157,6 +158,10 @@ public abstract class RequestContext
 
   protected boolean notModified = false;
 
+  /** @since 4.0 */
+  @Nullable
+  protected ArrayList<Runnable> requestCompletedCallbacks;
+
   protected RequestContext(WebApplicationContext context) {
     this.webApplicationContext = context;
   }
@@ -1148,6 +1153,32 @@ public abstract class RequestContext
   /** template method for get OutputStream */
   protected abstract OutputStream doGetOutputStream() throws IOException;
 
+  /**
+   * Whether the server can transfer a file region directly to the
+   * connection, see {@link #transferFrom(File, long, long)}
+   *
+   * @since 4.0
+   */
+  public boolean supportsFileTransfer() {
+    return false;
+  }
+
+  /**
+   * Write the given region of the file as a part of the response body
+   * without copying it through user space (e.g. {@code sendfile}),
+   * the content written to {@link #getOutputStream()} so far is sent first
+   *
+   * @param file the file to transfer
+   * @param position the position within the file from which the transfer is to begin
+   * @param count the number of bytes to be transferred
+   * @throws IOException if an input or output exception occurred
+   * @throws UnsupportedOperationException if {@link #supportsFileTransfer()} returns {@code false}
+   * @since 4.0
+   */
+  public void transferFrom(File file, long position, long count) throws IOException {
+    throw new UnsupportedOperationException("File transfer not supported");
+  }
+
   /**
    * Returns a <code>PrintWriter</code> object that can send character text to the
    * client. The <code>PrintWriter</code> uses the UTF-8 character encoding.
@@ -1457,6 +1488,95 @@ public abstract class RequestContext
     }
   }
 
+  /**
+   * Register a callback to run once the request has been handled, e.g. to
+   * save state the handler has changed. A callback equal to one already
+   * registered is not registered again.
+   *
+   * @param callback the callback to run
+   * @see #requestCompleted()
+   * @since 4.0
+   */
+  public void registerRequestCompletedCallback(Runnable callback) {
+    ArrayList<Runnable> callbacks = this.requestCompletedCallbacks;
+    if (callbacks == null) {
+      callbacks = new ArrayList<>(2);
+      this.requestCompletedCallbacks = callbacks;
+    }
+    else if (callbacks.contains(callback)) {
+      return;
+    }
+    callbacks.add(callback);
+  }
+
+  /**
+   * Run the registered request completed callbacks, the dispatcher calls it
+   * once the request has been handled, including its result or exception.
+   * A failing callback is logged and does not prevent the others from running.
+   *
+   * @since 4.0
+   */
+  public void requestCompleted() {
+    ArrayList<Runnable> callbacks = this.requestCompletedCallbacks;
+    if (callbacks != null) {
+      this.requestCompletedCallbacks = null;
+      for (Runnable callback : callbacks) {
+        try {
+          callback.run();
+        }
+        catch (RuntimeException e) {
+          LoggerFactory.getLogger(RequestContext.class)
+                  .error("error occurred when running request completed callback", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Clear all request and response state, so this context can be reused
+   * for another request. The model and the response cookie list are cleared
+   * and kept, other structures will be created again on demand.
+   *
+   * @since 4.0
+   */
+  protected void resetState() {
+    this.contextPath = null;
+    this.requestBody = null;
+    this.cookies = null;
+    this.pathVariables = null;
+    this.modelAndView = null;
+
+    this.writer = null;
+    this.reader = null;
+    this.inputStream = null;
+    this.outputStream = null;
+    this.multipartFiles = null;
+
+    this.requestHeaders = null;
+    this.responseHeaders = null;
+    if (model != null) {
+      model.clear();
+    }
+    this.method = null;
+    this.requestPath = null;
+    this.parameters = null;
+    this.queryString = null;
+    if (responseCookies != null) {
+      responseCookies.clear();
+    }
+    this.uri = null;
+
+    this.requestHandled = false;
+    this.httpMethod = null;
+    this.lookupPath = null;
+    this.pathWithinApplication = null;
+    this.pathMatchInfo = PathMatchInfo.EMPTY;
+    this.locale = null;
+    this.responseContentType = null;
+    this.notModified = false;
+    this.requestCompletedCallbacks = null;
+  }
+
   @Override
   public String toString() {
     return getMethodValue() + " " + getRequestURL();
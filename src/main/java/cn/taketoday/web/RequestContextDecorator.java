@@ -21,6 +21,7 @@
 package cn.taketoday.web;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -256,6 +257,14 @@ public class RequestContextDecorator extends RequestContext {
   @Override
   public OutputStream doGetOutputStream() throws IOException { return delegate.doGetOutputStream(); }
 
+  @Override
+  public boolean supportsFileTransfer() { return delegate.supportsFileTransfer(); }
+
+  @Override
+  public void transferFrom(File file, long position, long count) throws IOException {
+    delegate.transferFrom(file, position, count);
+  }
+
   @Override
   public PrintWriter getWriter() throws IOException { return delegate.getWriter(); }
 
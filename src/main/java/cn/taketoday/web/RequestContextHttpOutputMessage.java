@@ -20,17 +20,18 @@
 
 package cn.taketoday.web;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import cn.taketoday.http.FileTransferHttpOutputMessage;
 import cn.taketoday.http.HttpHeaders;
-import cn.taketoday.http.HttpOutputMessage;
 
 /**
  * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
  * @since 4.0 2022/1/23 13:22
  */
-public class RequestContextHttpOutputMessage implements HttpOutputMessage {
+public class RequestContextHttpOutputMessage implements FileTransferHttpOutputMessage {
   private final RequestContext context;
 
   public RequestContextHttpOutputMessage(RequestContext context) {
@@ -47,4 +48,14 @@ public class RequestContextHttpOutputMessage implements HttpOutputMessage {
     return context.getOutputStream();
   }
 
+  @Override
+  public boolean supportsFileTransfer() {
+    return context.supportsFileTransfer();
+  }
+
+  @Override
+  public void transferFrom(File file, long position, long count) throws IOException {
+    context.transferFrom(file, position, count);
+  }
+
 }
@@ -31,6 +31,7 @@ import cn.taketoday.util.ClassUtils;
 import cn.taketoday.web.resource.CachingResourceResolver;
 import cn.taketoday.web.resource.CachingResourceTransformer;
 import cn.taketoday.web.resource.CssLinkResourceTransformer;
+import cn.taketoday.web.resource.EncodedResourceResolver;
 import cn.taketoday.web.resource.PathResourceResolver;
 import cn.taketoday.web.resource.ResourceResolver;
 import cn.taketoday.web.resource.ResourceTransformer;
@@ -63,6 +64,8 @@ public class ResourceChainRegistration {
 
   private boolean hasWebjarsResolver;
 
+  private boolean hasEncodedResolver;
+
   public ResourceChainRegistration(boolean cacheResources) {
     this(cacheResources, (cacheResources ? new ConcurrentMapCache(DEFAULT_CACHE_NAME) : null));
   }
@@ -93,6 +96,27 @@ public class ResourceChainRegistration {
     else if (resolver instanceof WebJarsResourceResolver) {
       this.hasWebjarsResolver = true;
     }
+    else if (resolver instanceof EncodedResourceResolver) {
+      this.hasEncodedResolver = true;
+    }
+    return this;
+  }
+
+  /**
+   * Serve precompressed variants of resources, e.g. {@code app.js.br} or
+   * {@code app.js.gz} for {@code app.js}, if they exist and the client
+   * accepts the encoding. The {@link EncodedResourceResolver} is put ahead
+   * of the other resolvers except the caching one.
+   *
+   * @return the current instance for chained method invocation
+   * @since 4.0
+   */
+  public ResourceChainRegistration compressed() {
+    if (!this.hasEncodedResolver) {
+      boolean hasCaching = !this.resolvers.isEmpty() && this.resolvers.get(0) instanceof CachingResourceResolver;
+      this.resolvers.add(hasCaching ? 1 : 0, new EncodedResourceResolver());
+      this.hasEncodedResolver = true;
+    }
     return this;
   }
 
@@ -30,6 +30,7 @@ import cn.taketoday.http.CacheControl;
 import cn.taketoday.lang.Assert;
 import cn.taketoday.lang.Nullable;
 import cn.taketoday.web.resource.PathResourceResolver;
+import cn.taketoday.web.resource.ResourceContentCache;
 import cn.taketoday.web.resource.ResourceHttpRequestHandler;
 
 /**
@@ -62,6 +63,9 @@ public class ResourceHandlerRegistration {
 
   private boolean optimizeLocations = false;
 
+  @Nullable
+  private ResourceContentCache contentCache;
+
   /**
    * Create a {@link ResourceHandlerRegistration} instance.
    *
@@ -165,6 +169,19 @@ public class ResourceHandlerRegistration {
     return this;
   }
 
+  /**
+   * Serve small static resources from memory, with their ETag and encoded
+   * variants prepared upfront.
+   *
+   * @param contentCache the cache to use, or {@code null} to read resources on each request
+   * @return the same {@link ResourceHandlerRegistration} instance, for chained method invocation
+   * @see ResourceHttpRequestHandler#setContentCache
+   */
+  public ResourceHandlerRegistration setContentCache(@Nullable ResourceContentCache contentCache) {
+    this.contentCache = contentCache;
+    return this;
+  }
+
   /**
    * Configure a chain of resource resolvers and transformers to use. This
    * can be useful, for example, to apply a version strategy to resource URLs.
@@ -230,6 +247,7 @@ public class ResourceHandlerRegistration {
     }
     handler.setUseLastModified(this.useLastModified);
     handler.setOptimizeLocations(this.optimizeLocations);
+    handler.setContentCache(this.contentCache);
     return handler;
   }
 
@@ -19,7 +19,12 @@
  */
 package cn.taketoday.web.framework;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import cn.taketoday.core.ConfigurationException;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.lang.TodayStrategies;
 import cn.taketoday.web.config.WebApplicationLoader;
 import cn.taketoday.web.framework.server.AbstractWebServer;
@@ -56,4 +61,23 @@ public abstract class WebApplicationUtils {
     return webServer;
   }
 
+  /**
+   * Create an executor which starts a virtual thread per task, looked
+   * up reflectively, so servers still run on JVMs without them
+   *
+   * @return {@code null} if the JVM does not support virtual threads
+   * @since 4.0
+   */
+  @Nullable
+  public static ExecutorService createVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      // not supported or preview not enabled
+      return null;
+    }
+  }
+
 }
@@ -45,7 +45,8 @@ public class CompressionConfiguration {
   private String[] mimeTypes = new String[] { //
           "text/html", "text/xml", "text/plain", //
           "text/javascript", "application/javascript", //
-          "text/css", "text/javascript", "application/xml"//
+          "text/css", "text/javascript", "application/xml", //
+          "application/json"//
   };
 
   public String getLevel() {
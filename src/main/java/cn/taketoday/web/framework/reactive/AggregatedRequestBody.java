@@ -0,0 +1,48 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a handler method, or all handler methods of a controller, as
+ * reading the request body only once it has been received in full.
+ * <p>
+ * When the server {@link NettyServerInitializer#setStreamingRequestBody(boolean)
+ * streams request bodies}, {@link OffloadingNettyDispatcher} streams them to
+ * other handlers as they arrive, a body for this handler is buffered before
+ * dispatching instead, limited by {@link NettyRequestContextConfig#setMaxContentLength(int)}.
+ * Handlers marked {@link NonBlocking} always get a buffered body.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see OffloadingNettyDispatcher
+ * @since 4.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface AggregatedRequestBody {
+
+}
@@ -47,6 +47,7 @@ public final class AsyncNettyDispatcherHandler extends NettyDispatcher {
       @Override
       public void accept(final Object handler) {
         nettyContext.sendIfNotCommitted();
+        nettyContext.recycle();
       }
     }
 
@@ -50,6 +50,16 @@ public @interface EnableNettyHandling {
    */
   boolean async() default true;
 
+  /**
+   * Run handlers on a worker executor instead of the event loop,
+   * takes precedence over {@link #async()}
+   *
+   * @see OffloadingNettyDispatcher
+   * @see NonBlocking
+   * @since 4.0
+   */
+  boolean offload() default false;
+
   /**
    * Using {@link io.netty.util.concurrent.FastThreadLocal}
    * to hold {@link cn.taketoday.web.RequestContext}
@@ -71,6 +81,12 @@ final class NettyConfigurationImportSelector implements AnnotationImportSelector
       RequestContextHolder.replaceContextHolder(new FastRequestThreadLocal());
     }
 
+    if (target.offload()) {
+      return new String[] {
+              OffloadingNettyDispatcher.class.getName(),
+              NettyConfiguration.class.getName()
+      };
+    }
     if (target.async()) {
       return new String[] {
               AsyncNettyDispatcherHandler.class.getName(),
@@ -39,7 +39,26 @@ public class NettyDispatcher {
       nettyContext.sendIfNotCommitted();
     }
     finally {
+      nettyContext.releaseRequestBody();
       RequestContextHolder.remove();
     }
+    nettyContext.recycle();
   }
+
+  /**
+   * Whether the body of the given request is streamed to its handler as it
+   * arrives, the handler must then run off the event loop, since it may block
+   * reading the body.
+   * <p>
+   * If {@code false}, the request body is buffered before dispatching.
+   * Either way, the given context is the one dispatched.
+   *
+   * @param nettyContext context of the request, its body has not arrived yet
+   * @see ReactiveChannelHandler
+   * @since 4.0
+   */
+  public boolean supportsStreamingRequestBody(NettyRequestContext nettyContext) {
+    return false;
+  }
+
 }
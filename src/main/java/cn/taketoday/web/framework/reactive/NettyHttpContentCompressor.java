@@ -0,0 +1,255 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2021 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+package cn.taketoday.web.framework.reactive;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import cn.taketoday.core.AntPathMatcher;
+import cn.taketoday.core.PathMatcher;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.util.ObjectUtils;
+import cn.taketoday.web.framework.config.CompressionConfiguration;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+
+/**
+ * {@link HttpContentCompressor} honours {@link CompressionConfiguration}
+ * <p>
+ * gzip or deflate is chosen from the {@code Accept-Encoding} of the request,
+ * responses smaller than {@link CompressionConfiguration#getMinResponseSize()},
+ * not of the {@link CompressionConfiguration#getMimeTypes() mime types} or
+ * already encoded are written as they are. Requests can be filtered with
+ * paths, methods and user agents. The compressed content is allocated from
+ * the channel's allocator.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see NettyServerInitializer#setCompression(CompressionConfiguration)
+ * @since 4.0
+ */
+public class NettyHttpContentCompressor extends HttpContentCompressor {
+  private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  private static final String WILDCARD_TYPE = "*/*";
+
+  private static final PathMatcher pathMatcher = new AntPathMatcher();
+
+  private final long minResponseSize;
+  private final String[] mimeTypes;
+
+  @Nullable
+  private final String[] includedPaths;
+  @Nullable
+  private final String[] excludePaths;
+  @Nullable
+  private final String[] includeMethods;
+  @Nullable
+  private final String[] excludeMethods;
+
+  @Nullable
+  private final String[] excludeUserAgents;
+  @Nullable
+  private final Pattern[] excludeAgentPatterns;
+  @Nullable
+  private final Pattern[] includeAgentPatterns;
+
+  /**
+   * whether responses of the requests can be compressed, in request order
+   * like the {@code Accept-Encoding} queue of {@link io.netty.handler.codec.http.HttpContentEncoder}
+   */
+  private final ArrayDeque<Boolean> requestCompressible = new ArrayDeque<>();
+
+  /** current response */
+  private boolean compressible;
+
+  public NettyHttpContentCompressor(CompressionConfiguration compression) {
+    super(0, StandardCompressionOptions.gzip(compressionLevel(compression), 15, 8),
+          StandardCompressionOptions.deflate(compressionLevel(compression), 15, 8));
+    Assert.notNull(compression, "CompressionConfiguration must not be null");
+    this.minResponseSize = compression.getMinResponseSize().toBytes();
+    this.mimeTypes = compression.getMimeTypes();
+    this.includedPaths = compression.getIncludedPaths();
+    this.excludePaths = compression.getExcludePaths();
+    this.includeMethods = compression.getIncludeMethods();
+    this.excludeMethods = compression.getExcludeMethods();
+    this.excludeUserAgents = compression.getExcludeUserAgents();
+    this.excludeAgentPatterns = compile(compression.getExcludeAgentPatterns());
+    this.includeAgentPatterns = compile(compression.getIncludeAgentPatterns());
+  }
+
+  /**
+   * @return compression level of {@link CompressionConfiguration#getLevel()},
+   * if it's not a number use the default level
+   */
+  static int compressionLevel(CompressionConfiguration compression) {
+    String level = compression.getLevel();
+    if (level != null) {
+      try {
+        return Integer.parseInt(level.trim());
+      }
+      catch (NumberFormatException ignored) { }
+    }
+    return DEFAULT_COMPRESSION_LEVEL;
+  }
+
+  /**
+   * @return whether the compression is enabled by the configuration
+   */
+  static boolean isEnabled(CompressionConfiguration compression) {
+    return compression.isEnable() && !"off".equalsIgnoreCase(compression.getLevel());
+  }
+
+  @Nullable
+  private static Pattern[] compile(@Nullable String[] patterns) {
+    if (patterns == null) {
+      return null;
+    }
+    Pattern[] ret = new Pattern[patterns.length];
+    for (int i = 0; i < patterns.length; i++) {
+      ret[i] = Pattern.compile(patterns[i]);
+    }
+    return ret;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, HttpRequest msg, List<Object> out) throws Exception {
+    requestCompressible.add(isCompressible(msg));
+    super.decode(ctx, msg, out);
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+    if (msg instanceof HttpResponse response
+            && response.status().code() != HttpResponseStatus.CONTINUE.code()) {
+      Boolean compressible = requestCompressible.poll();
+      this.compressible = compressible != null && compressible;
+    }
+    super.encode(ctx, msg, out);
+  }
+
+  @Override
+  protected Result beginEncode(HttpResponse response, String acceptEncoding) throws Exception {
+    if (compressible && isCompressible(response.headers())) {
+      return super.beginEncode(response, acceptEncoding);
+    }
+    return null;
+  }
+
+  /**
+   * Whether a response with these headers can be compressed, regardless
+   * of the request. The body of the other responses is written as it is.
+   *
+   * @param headers response headers
+   */
+  public boolean isCompressible(HttpHeaders headers) {
+    if (headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+      return false;
+    }
+    long contentLength = HttpUtil.getContentLength(headers, -1L);
+    if (contentLength != -1 && contentLength < minResponseSize) {
+      return false;
+    }
+    String contentType = headers.get(HttpHeaderNames.CONTENT_TYPE);
+    if (contentType == null) {
+      return false;
+    }
+    int index = contentType.indexOf(';');
+    if (index != -1) {
+      contentType = contentType.substring(0, index);
+    }
+    contentType = contentType.trim().toLowerCase(Locale.ROOT);
+    for (String mimeType : mimeTypes) {
+      if (WILDCARD_TYPE.equals(mimeType) || mimeType.equalsIgnoreCase(contentType)) {
+        return true;
+      }
+      if (mimeType.endsWith("/*") && contentType.startsWith(mimeType.substring(0, mimeType.length() - 1))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether responses of this request can be compressed,
+   * by paths, methods and user agents
+   */
+  protected boolean isCompressible(HttpRequest request) {
+    String uri = request.uri();
+    int index = uri.indexOf('?');
+    String path = index == -1 ? uri : uri.substring(0, index);
+    if (matchesPath(excludePaths, path)) {
+      return false;
+    }
+    if (ObjectUtils.isNotEmpty(includedPaths) && !matchesPath(includedPaths, path)) {
+      return false;
+    }
+
+    String method = request.method().name();
+    if (ObjectUtils.containsElement(excludeMethods, method)) {
+      return false;
+    }
+    if (ObjectUtils.isNotEmpty(includeMethods) && !ObjectUtils.containsElement(includeMethods, method)) {
+      return false;
+    }
+
+    String userAgent = request.headers().get(HttpHeaderNames.USER_AGENT);
+    if (userAgent != null) {
+      if (ObjectUtils.containsElement(excludeUserAgents, userAgent)
+              || matchesAgent(excludeAgentPatterns, userAgent)) {
+        return false;
+      }
+      return includeAgentPatterns == null || matchesAgent(includeAgentPatterns, userAgent);
+    }
+    return true;
+  }
+
+  private static boolean matchesPath(@Nullable String[] patterns, String path) {
+    if (patterns != null) {
+      for (String pattern : patterns) {
+        if (pathMatcher.match(pattern, path)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesAgent(@Nullable Pattern[] patterns, String userAgent) {
+    if (patterns != null) {
+      for (Pattern pattern : patterns) {
+        if (pattern.matcher(userAgent).matches()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
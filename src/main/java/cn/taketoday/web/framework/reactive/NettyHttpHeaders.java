@@ -4,7 +4,7 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -12,12 +12,20 @@ import java.util.Set;
 import java.util.function.IntFunction;
 
 import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.MediaType;
 import cn.taketoday.lang.Assert;
 import cn.taketoday.lang.NonNull;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.util.CollectionUtils;
+import cn.taketoday.util.StringUtils;
+import io.netty.handler.codec.http.HttpHeaderNames;
 
 /**
  * Netty HttpHeaders
+ * <p>
+ * A live view of the Netty headers, used for both request and response headers,
+ * nothing is copied. Common headers are looked up with Netty's
+ * {@link io.netty.util.AsciiString AsciiString} names, whose hash is cached.
  *
  * @author TODAY 2021/3/30 18:30
  */
@@ -34,9 +42,31 @@ final class NettyHttpHeaders extends HttpHeaders {
     return headers.get(headerName);
   }
 
+  @Nullable
   @Override
   public List<String> get(Object key) {
-    return headers.getAll((CharSequence) key);
+    List<String> values = headers.getAll((CharSequence) key);
+    return values.isEmpty() ? null : values;
+  }
+
+  // fast accessors of common headers @since 4.0
+
+  @Nullable
+  @Override
+  public MediaType getContentType() {
+    String value = headers.get(HttpHeaderNames.CONTENT_TYPE);
+    return StringUtils.isNotEmpty(value) ? MediaType.parseMediaType(value) : null;
+  }
+
+  @Override
+  public long getContentLength() {
+    String value = headers.get(HttpHeaderNames.CONTENT_LENGTH);
+    return value != null ? Long.parseLong(value) : -1;
+  }
+
+  @Override
+  public List<MediaType> getAccept() {
+    return MediaType.parseMediaTypes(headers.getAll(HttpHeaderNames.ACCEPT));
   }
 
   @Override
@@ -132,7 +162,7 @@ final class NettyHttpHeaders extends HttpHeaders {
   @NonNull
   @Override
   public Set<Entry<String, List<String>>> entrySet() {
-    final HashSet<Entry<String, List<String>>> ret = new HashSet<>();
+    final LinkedHashSet<Entry<String, List<String>>> ret = new LinkedHashSet<>();
     final io.netty.handler.codec.http.HttpHeaders headers = getOriginal();
     for (final String name : headers.names()) {
       ret.add(new AbstractMap.SimpleEntry<>(name, headers.getAll(name)));
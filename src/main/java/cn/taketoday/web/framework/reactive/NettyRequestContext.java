@@ -19,6 +19,7 @@
  */
 package cn.taketoday.web.framework.reactive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -26,18 +27,17 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.charset.Charset;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.function.Supplier;
 
 import cn.taketoday.core.DefaultMultiValueMap;
 import cn.taketoday.core.MultiValueMap;
-import cn.taketoday.http.DefaultHttpHeaders;
 import cn.taketoday.http.HttpCookie;
 import cn.taketoday.http.ResponseCookie;
 import cn.taketoday.lang.Constant;
 import cn.taketoday.lang.Nullable;
+import cn.taketoday.lang.TodayStrategies;
 import cn.taketoday.util.CollectionUtils;
 import cn.taketoday.web.RequestContext;
 import cn.taketoday.web.WebApplicationContext;
@@ -45,19 +45,29 @@ import cn.taketoday.web.multipart.MultipartFile;
 import cn.taketoday.web.resolver.ParameterReadFailedException;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.ServerChannel;
 import io.netty.handler.codec.http.CombinedHttpHeaders;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContentEncoder;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.DefaultCookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
@@ -67,6 +77,8 @@ import io.netty.handler.codec.http.multipart.HttpDataFactory;
 import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
 import io.netty.handler.codec.http.multipart.InterfaceHttpData;
 import io.netty.handler.codec.http.multipart.InterfaceHttpPostRequestDecoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.Recycler;
 
 /**
  * @author TODAY 2019-07-04 21:24
@@ -77,11 +89,18 @@ public class NettyRequestContext extends RequestContext {
 
   private boolean committed = false;
 
-  private final FullHttpRequest request;
-  private final ChannelHandlerContext channelContext;
+  /**
+   * status line, headers and a part of body has been written
+   *
+   * @since 4.0
+   */
+  private boolean streaming = false;
+
+  private FullHttpRequest request;
+  private ChannelHandlerContext channelContext;
   private InterfaceHttpPostRequestDecoder requestDecoder;
 
-  private final String uri; // none null
+  private String uri; // none null
 
   private final NettyRequestContextConfig config;
 
@@ -98,22 +117,142 @@ public class NettyRequestContext extends RequestContext {
 
   private FullHttpResponse response;
 
-  private final int queryStringIndex; // for optimize
+  private int queryStringIndex; // for optimize
+
+  // streaming request body @since 4.0
+  @Nullable
+  private RequestBodyInputStream requestBody;
+
+  // body buffered before dispatching, owned by this context @since 4.0
+  @Nullable
+  private ByteBuf bufferedRequestBody;
+
+  // handler determined when the request head arrived @since 4.0
+  @Nullable
+  private Object resolvedHandler;
+
+  private boolean handlerResolved;
+
+  // recycling @since 4.0
+
+  /**
+   * Keep recycled contexts out of the pool and remember where they have been
+   * recycled, so a late access fails with that place as the cause
+   */
+  static final boolean RECYCLE_DEBUG = TodayStrategies.getFlag(
+          "netty.request-context.recycle.debug", NettyRequestContext.class.desiredAssertionStatus());
+
+  @Nullable
+  private final Recycler.Handle<NettyRequestContext> recyclerHandle;
+
+  private boolean released = false;
+
+  @Nullable
+  private Throwable releasedAt;
 
   public NettyRequestContext(
           WebApplicationContext context, ChannelHandlerContext ctx, FullHttpRequest request, NettyRequestContextConfig config) {
     super(context);
     this.config = config;
+    this.recyclerHandle = null;
+    init(ctx, request);
+  }
+
+  /**
+   * A pooled context, {@link #init(ChannelHandlerContext, FullHttpRequest) init}
+   * it before use
+   *
+   * @since 4.0
+   */
+  NettyRequestContext(WebApplicationContext context,
+          NettyRequestContextConfig config, Recycler.Handle<NettyRequestContext> recyclerHandle) {
+    super(context);
+    this.config = config;
+    this.recyclerHandle = recyclerHandle;
+  }
+
+  /**
+   * Bind this context to a request
+   *
+   * @since 4.0
+   */
+  final void init(ChannelHandlerContext ctx, FullHttpRequest request) {
     this.request = request;
     this.channelContext = ctx;
     String uri = request.uri();
     this.uri = uri;
     this.queryStringIndex = uri.indexOf('?');
+    this.released = false;
+  }
+
+  /**
+   * Return this context to its pool once the response has been sent,
+   * it must not be used any more after that.
+   * <p>
+   * Does nothing if this context is not pooled or the response has not
+   * been sent.
+   *
+   * @see NettyRequestContextConfig#setRecycleRequestContext(boolean)
+   * @since 4.0
+   */
+  public void recycle() {
+    Recycler.Handle<NettyRequestContext> handle = this.recyclerHandle;
+    if (handle == null || !committed || released) {
+      return;
+    }
+    resetState();
+    this.released = true;
+    if (RECYCLE_DEBUG) {
+      // never reused, so every late access will be detected
+      this.releasedAt = new Throwable("NettyRequestContext recycled here");
+    }
+    else {
+      handle.recycle(this);
+    }
+  }
+
+  @Override
+  protected void resetState() {
+    super.resetState();
+    this.remoteAddress = null;
+    this.committed = false;
+    this.streaming = false;
+    // the response may still be in flight, it owns the headers and the body
+    this.request = null;
+    this.channelContext = null;
+    this.requestDecoder = null;
+    this.uri = null;
+    this.queryStringIndex = -1;
+    this.keepAlive = null;
+    this.status = HttpResponseStatus.OK;
+    this.responseBody = null;
+    this.originalResponseHeaders = null;
+    this.response = null;
+    this.requestBody = null;
+    this.resolvedHandler = null;
+    this.handlerResolved = false;
+    releaseRequestBody();
+  }
+
+  /**
+   * @throws IllegalStateException this context has been recycled
+   */
+  private void assertNotReleased() {
+    if (released) {
+      throw new IllegalStateException(
+              "NettyRequestContext used after it has been recycled", releasedAt);
+    }
   }
 
   @Override
   public String getScheme() {
-    SocketAddress socketAddress = channelContext.channel().localAddress();
+    assertNotReleased();
+    Channel channel = channelContext.channel();
+    if (channel.pipeline().get(SslHandler.class) != null
+            || (channel.parent() != null && channel.parent().pipeline().get(SslHandler.class) != null)) {
+      return Constant.HTTPS; // TLS connection or an HTTP/2 stream over TLS
+    }
+    SocketAddress socketAddress = channel.localAddress();
     if (socketAddress instanceof InetSocketAddress address) {
       int port = address.getPort();
       if (port == 443) {
@@ -125,6 +264,7 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   protected final String doGetRequestPath() {
+    assertNotReleased();
     int index = queryStringIndex;
     if (index == -1) {
       return uri;
@@ -136,6 +276,7 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public final String doGetQueryString() {
+    assertNotReleased();
     int index = queryStringIndex;
     if (index == -1) {
       return Constant.BLANK;
@@ -162,27 +303,130 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public final String doGetMethod() {
+    assertNotReleased();
     return this.request.method().name();
   }
 
   @Override
   protected InputStream doGetInputStream() {
+    assertNotReleased();
+    if (requestBody != null) {
+      return requestBody;
+    }
     return new ByteBufInputStream(request.content());
   }
 
+  /**
+   * Use a streaming request body, the content of the native request is empty
+   *
+   * @since 4.0
+   */
+  void setRequestBody(RequestBodyInputStream requestBody) {
+    this.requestBody = requestBody;
+  }
+
+  /**
+   * Bind the request whose body has been buffered before dispatching,
+   * in place of its head. The body is released by {@link #releaseRequestBody()}
+   *
+   * @since 4.0
+   */
+  void setBufferedRequest(FullHttpRequest request) {
+    this.request = request;
+    this.bufferedRequestBody = request.content();
+  }
+
+  /**
+   * Release the request body buffered before dispatching, if any.
+   * <p>
+   * Called by the {@link NettyDispatcher} once the handler has completed,
+   * whether it succeeded or not.
+   *
+   * @since 4.0
+   */
+  public void releaseRequestBody() {
+    ByteBuf bufferedRequestBody = this.bufferedRequestBody;
+    if (bufferedRequestBody != null) {
+      this.bufferedRequestBody = null;
+      bufferedRequestBody.release();
+    }
+  }
+
+  /**
+   * Release the response body which has not been handed to the channel,
+   * called if the request failed and this response will not be sent.
+   * <p>
+   * Does nothing once the response has been sent.
+   *
+   * @since 4.0
+   */
+  public void discardResponseBody() {
+    ByteBuf responseBody = this.responseBody;
+    if (responseBody != null && !committed) {
+      this.responseBody = null;
+      this.response = null;
+      responseBody.release();
+    }
+  }
+
+  /**
+   * Use a decoder which has been fed with the request body
+   *
+   * @since 4.0
+   */
+  void setRequestDecoder(InterfaceHttpPostRequestDecoder requestDecoder) {
+    this.requestDecoder = requestDecoder;
+  }
+
+  /**
+   * Remember the handler determined when the request head arrived,
+   * so it is not looked up again on dispatching
+   *
+   * @param handler the handler, or {@code null} if none found
+   * @since 4.0
+   */
+  void setResolvedHandler(@Nullable Object handler) {
+    this.resolvedHandler = handler;
+    this.handlerResolved = true;
+  }
+
+  /**
+   * Whether the handler has been determined already
+   *
+   * @see #getResolvedHandler()
+   * @since 4.0
+   */
+  boolean isHandlerResolved() {
+    return handlerResolved;
+  }
+
+  @Nullable
+  Object getResolvedHandler() {
+    return resolvedHandler;
+  }
+
+  /**
+   * Whether the whole request body has been received
+   *
+   * @since 4.0
+   */
+  public boolean isRequestBodyComplete() {
+    return requestBody == null || requestBody.isComplete();
+  }
+
   @Override
   protected OutputStream doGetOutputStream() {
-    return new ByteBufOutputStream(responseBody());
+    assertNotReleased();
+    return new ResponseBodyOutputStream();
   }
 
+  /**
+   * A live view of the native request headers
+   */
   @Override
   protected cn.taketoday.http.HttpHeaders createRequestHeaders() {
-    HttpHeaders headers = request.headers();
-    DefaultHttpHeaders ret = new DefaultHttpHeaders();
-    for (Map.Entry<String, String> header : headers) {
-      ret.add(header.getKey(), header.getValue());
-    }
-    return ret;
+    assertNotReleased();
+    return new NettyHttpHeaders(request.headers());
   }
 
   @Override
@@ -197,6 +441,7 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public HttpCookie[] doGetCookies() {
+    assertNotReleased();
     List<String> allCookie = request.headers().getAll(HttpHeaderNames.COOKIE);
     if (CollectionUtils.isEmpty(allCookie)) {
       return EMPTY_COOKIES;
@@ -259,11 +504,17 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public long getContentLength() {
-    return request.content().readableBytes();
+    int readable = request.content().readableBytes();
+    if (readable == 0) {
+      // streamed or already decoded
+      return HttpUtil.getContentLength(request, 0L);
+    }
+    return readable;
   }
 
   @Override
   public void sendRedirect(String location) {
+    assertNotCommitted();
     this.status = HttpResponseStatus.FOUND;
     originalResponseHeaders().set(HttpHeaderNames.LOCATION, location);
     send();
@@ -275,6 +526,7 @@ public class NettyRequestContext extends RequestContext {
    * @return HTTP response body
    */
   public final ByteBuf responseBody() {
+    assertNotReleased();
     ByteBuf responseBody = this.responseBody;
     if (responseBody == null) {
       Supplier<ByteBuf> bufSupplier = config.getResponseBody();
@@ -282,7 +534,7 @@ public class NettyRequestContext extends RequestContext {
         responseBody = bufSupplier.get(); // may null
       }
       if (responseBody == null) {
-        responseBody = Unpooled.buffer(config.getBodyInitialSize());
+        responseBody = channelContext.alloc().buffer(config.getBodyInitialSize());
       }
       this.responseBody = responseBody;
     }
@@ -311,6 +563,7 @@ public class NettyRequestContext extends RequestContext {
    * Send HTTP message to the client
    */
   public void sendIfNotCommitted() {
+    assertNotReleased();
     if (!committed) {
       send();
     }
@@ -319,10 +572,32 @@ public class NettyRequestContext extends RequestContext {
   /**
    * Send HTTP message to the client
    *
-   * @throws IllegalStateException If the response has been committed
+   * @throws IllegalStateException If the response has been sent
    */
   private void send() {
-    assertNotCommitted();
+    if (committed) {
+      throw new IllegalStateException("The response has been committed");
+    }
+    if (writer != null) {
+      writer.flush(); // flush to responseBody
+    }
+    if (streaming) {
+      sendLastContent();
+    }
+    else {
+      sendFullResponse();
+    }
+    if (requestDecoder != null) {
+      requestDecoder.destroy();
+    }
+    if (requestBody != null) {
+      // discard the rest
+      requestBody.close();
+    }
+    setCommitted(true);
+  }
+
+  private void sendFullResponse() {
     // obtain response object
     if (response == null) {
       ByteBuf responseBody = this.responseBody;
@@ -355,11 +630,195 @@ public class NettyRequestContext extends RequestContext {
       channelContext.writeAndFlush(response)
               .addListener(ChannelFutureListener.CLOSE);
     }
+  }
 
-    if (requestDecoder != null) {
-      requestDecoder.destroy();
+  // streaming response body @since 4.0
+
+  /**
+   * Whether the body can be written out before the handler completes
+   */
+  private boolean isStreamable() {
+    if (config.getResponseBodyHighWaterMark() <= 0 || response != null) {
+      // the native full response holds the body
+      return false;
+    }
+    if (originalResponseHeaders().contains(HttpHeaderNames.CONTENT_LENGTH)) {
+      return true;
+    }
+    return isChunkedSupported();
+  }
+
+  /**
+   * chunked transfer encoding is not available on HTTP/1.0
+   */
+  private boolean isChunkedSupported() {
+    return config.getHttpVersion() != HttpVersion.HTTP_1_0
+            && request.protocolVersion() != HttpVersion.HTTP_1_0;
+  }
+
+  /**
+   * Write the buffered body as a part of the response, writes
+   * status line and headers first if necessary
+   *
+   * @throws IOException the connection has been closed
+   */
+  private void writeBufferedContent() throws IOException {
+    ByteBuf content = this.responseBody;
+    this.responseBody = null; // the channel owns it now
+    writeResponseHead();
+    writeContent(new DefaultHttpContent(content));
+  }
+
+  /**
+   * Write status line and headers if not written yet
+   */
+  private void writeResponseHead() {
+    if (!streaming) {
+      this.streaming = true;
+      HttpHeaders headers = originalResponseHeaders();
+      if (!headers.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+        if (isChunkedSupported()) {
+          headers.set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        }
+        else {
+          // HTTP/1.0: the body ends when the connection is closed
+          setKeepAlive(false);
+        }
+      }
+      if (isKeepAlive()) {
+        headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+      }
+      channelContext.write(new DefaultHttpResponse(config.getHttpVersion(), status, headers));
+    }
+  }
+
+  /**
+   * Write a part of the body and flush, blocks while the channel is not writable
+   *
+   * @throws IOException the connection has been closed
+   */
+  private void writeContent(Object content) throws IOException {
+    ChannelFuture future = channelContext.writeAndFlush(content);
+    Channel channel = channelContext.channel();
+    if (!channel.isWritable() && !channelContext.executor().inEventLoop()) {
+      // the outbound buffer is full, wait for the socket to drain it
+      // so the body is streamed with bounded memory
+      future.awaitUninterruptibly();
+    }
+    if (future.isDone() && !future.isSuccess()) {
+      throw new IOException("Writing response body failed", future.cause());
+    }
+    if (!channel.isActive()) {
+      throw new IOException("Connection closed");
     }
-    setCommitted(true);
+  }
+
+  // zero-copy file transfer @since 4.0
+
+  /**
+   * {@link FileRegion} can only be written as it is to a connection,
+   * not through SSL or content encoding handlers or to an HTTP/2 stream
+   */
+  @Override
+  public boolean supportsFileTransfer() {
+    if (response != null) {
+      // the native full response holds the body
+      return false;
+    }
+    if (!(channelContext.channel().parent() instanceof ServerChannel)) {
+      // HTTP/2 stream, its parent is the connection
+      return false;
+    }
+    ChannelPipeline pipeline = channelContext.pipeline();
+    if (pipeline.get(SslHandler.class) != null) {
+      return false;
+    }
+    HttpContentEncoder encoder = pipeline.get(HttpContentEncoder.class);
+    if (encoder != null) {
+      // the body is written as it is if it won't be compressed
+      return encoder instanceof NettyHttpContentCompressor compressor
+              && !compressor.isCompressible(originalResponseHeaders());
+    }
+    return true;
+  }
+
+  /**
+   * Write a {@link DefaultFileRegion}, so the file is sent by the kernel
+   * ({@code sendfile}) without copying through user space. The response
+   * is committed; chunked transfer encoding is used unless a
+   * {@code Content-Length} header has been set.
+   */
+  @Override
+  public void transferFrom(File file, long position, long count) throws IOException {
+    if (!supportsFileTransfer()) {
+      throw new UnsupportedOperationException("File transfer not supported");
+    }
+    if (committed) {
+      throw new IllegalStateException("The response has been committed");
+    }
+    if (writer != null) {
+      writer.flush(); // flush to responseBody
+    }
+    if (readableBytes() > 0) {
+      writeBufferedContent();
+    }
+    else {
+      writeResponseHead();
+    }
+    if (count > 0) {
+      writeContent(new DefaultFileRegion(file, position, count));
+    }
+  }
+
+  private void sendLastContent() {
+    ByteBuf content = this.responseBody;
+    this.responseBody = null;
+    if (content == null) {
+      content = Unpooled.EMPTY_BUFFER;
+    }
+    DefaultLastHttpContent lastContent = new DefaultLastHttpContent(content, config.isValidateHeaders());
+    lastContent.trailingHeaders().set(config.getTrailingHeaders().get());
+
+    ChannelFuture future = channelContext.writeAndFlush(lastContent);
+    if (!isKeepAlive()) {
+      future.addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  /**
+   * Writes to {@link #responseBody()}, the buffered body will be written
+   * out once it exceeds {@link NettyRequestContextConfig#getResponseBodyHighWaterMark()}
+   */
+  private final class ResponseBodyOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      ByteBuf responseBody = responseBody();
+      responseBody.writeByte(b);
+      if (responseBody.readableBytes() >= config.getResponseBodyHighWaterMark() && isStreamable()) {
+        writeBufferedContent();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (!isStreamable()) {
+        responseBody().writeBytes(b, off, len);
+        return;
+      }
+      int highWaterMark = config.getResponseBodyHighWaterMark();
+      while (len > 0) {
+        ByteBuf responseBody = responseBody();
+        int length = Math.min(len, Math.max(highWaterMark - responseBody.readableBytes(), 0));
+        responseBody.writeBytes(b, off, length);
+        off += length;
+        len -= length;
+        if (responseBody.readableBytes() >= highWaterMark) {
+          writeBufferedContent();
+        }
+      }
+    }
+
   }
 
   @Override
@@ -369,7 +828,7 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public boolean isCommitted() {
-    return committed;
+    return committed || streaming;
   }
 
   @Override
@@ -400,7 +859,7 @@ public class NettyRequestContext extends RequestContext {
    * @throws IllegalStateException if response is committed
    */
   private void assertNotCommitted() {
-    if (committed) {
+    if (committed || streaming) {
       throw new IllegalStateException("The response has been committed");
     }
   }
@@ -440,12 +899,14 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public void sendError(int sc) {
+    assertNotCommitted();
     this.status = HttpResponseStatus.valueOf(sc);
     send();
   }
 
   @Override
   public void sendError(int sc, String msg) {
+    assertNotCommitted();
     this.status = HttpResponseStatus.valueOf(sc, msg);
     send();
   }
@@ -453,6 +914,7 @@ public class NettyRequestContext extends RequestContext {
   @Override
   @SuppressWarnings("unchecked")
   public final FullHttpRequest nativeRequest() {
+    assertNotReleased();
     return request;
   }
 
@@ -472,6 +934,7 @@ public class NettyRequestContext extends RequestContext {
   }
 
   public HttpHeaders originalResponseHeaders() {
+    assertNotReleased();
     if (originalResponseHeaders == null) {
       this.originalResponseHeaders = config.isSingleFieldHeaders()
                                      ? new io.netty.handler.codec.http.DefaultHttpHeaders(config.isValidateHeaders())
@@ -502,6 +965,10 @@ public class NettyRequestContext extends RequestContext {
 
   @Override
   public void flush() {
+    assertNotReleased();
+    if (writer != null) {
+      writer.flush(); // flush to responseBody
+    }
     channelContext.flush();
   }
 
@@ -522,6 +989,7 @@ public class NettyRequestContext extends RequestContext {
   }
 
   public ChannelHandlerContext getChannelContext() {
+    assertNotReleased();
     return channelContext;
   }
 
@@ -42,7 +42,7 @@ public class NettyRequestContextConfig {
   /**
    * response body initial size
    *
-   * @see io.netty.buffer.Unpooled#buffer(int)
+   * @see io.netty.buffer.ByteBufAllocator#buffer(int)
    */
   private int bodyInitialSize = 64;
   private Supplier<ByteBuf> responseBody;
@@ -57,12 +57,55 @@ public class NettyRequestContextConfig {
 
   private HttpDataFactory httpDataFactory;
 
+  /**
+   * streaming request body: turn off auto-read above this many buffered bytes
+   *
+   * @since 4.0
+   */
+  private int requestBodyHighWaterMark = 256 * 1024;
+
+  /**
+   * streaming request body: turn on auto-read again below this many buffered bytes
+   *
+   * @since 4.0
+   */
+  private int requestBodyLowWaterMark = 64 * 1024;
+
+  /**
+   * streaming request body: the maximum length of a body which
+   * has to be buffered before dispatching
+   *
+   * @since 4.0
+   */
+  private int maxContentLength = 1024 * 1024 * 64;
+
+  /**
+   * response body: switch to a streamed (chunked) response once this many
+   * bytes are buffered, {@code 0} or less buffers the whole body
+   *
+   * @since 4.0
+   */
+  private int responseBodyHighWaterMark = 64 * 1024;
+
+  /**
+   * reuse request contexts, see {@link #setRecycleRequestContext(boolean)}
+   *
+   * @since 4.0
+   */
+  private boolean recycleRequestContext = false;
+
   public NettyRequestContextConfig() {
     this(SingletonSupplier.valueOf(EmptyHttpHeaders.INSTANCE));
   }
 
+  /**
+   * Multipart data larger than {@link DefaultHttpDataFactory#MINSIZE 16KB}
+   * spill to disk, smaller parts are kept in memory
+   *
+   * @param trailingHeaders trailing headers supplier
+   */
   public NettyRequestContextConfig(Supplier<HttpHeaders> trailingHeaders) {
-    this(new DefaultHttpDataFactory(true), trailingHeaders);
+    this(new DefaultHttpDataFactory(DefaultHttpDataFactory.MINSIZE), trailingHeaders);
   }
 
   public NettyRequestContextConfig(HttpDataFactory httpDataFactory, Supplier<HttpHeaders> trailingHeaders) {
@@ -132,7 +175,7 @@ public class NettyRequestContextConfig {
 
   /**
    * @return response body initial capacity
-   * @see io.netty.buffer.Unpooled#buffer(int)
+   * @see io.netty.buffer.ByteBufAllocator#buffer(int)
    */
   public int getBodyInitialSize() {
     return bodyInitialSize;
@@ -140,7 +183,7 @@ public class NettyRequestContextConfig {
 
   /**
    * @param bodyInitialSize response body initial capacity
-   * @see io.netty.buffer.Unpooled#buffer(int)
+   * @see io.netty.buffer.ByteBufAllocator#buffer(int)
    */
   public void setBodyInitialSize(int bodyInitialSize) {
     this.bodyInitialSize = bodyInitialSize;
@@ -175,4 +218,90 @@ public class NettyRequestContextConfig {
   public HttpDataFactory getHttpDataFactory() {
     return httpDataFactory;
   }
+
+  /**
+   * Set the number of buffered bytes of a streaming request body
+   * above which auto-read of the channel is turned off
+   *
+   * @since 4.0
+   */
+  public void setRequestBodyHighWaterMark(int requestBodyHighWaterMark) {
+    Assert.isTrue(requestBodyHighWaterMark > 0, "requestBodyHighWaterMark must be greater than 0");
+    this.requestBodyHighWaterMark = requestBodyHighWaterMark;
+  }
+
+  public int getRequestBodyHighWaterMark() {
+    return requestBodyHighWaterMark;
+  }
+
+  /**
+   * Set the number of buffered bytes of a streaming request body
+   * below which auto-read of the channel is turned on again
+   *
+   * @since 4.0
+   */
+  public void setRequestBodyLowWaterMark(int requestBodyLowWaterMark) {
+    Assert.isTrue(requestBodyLowWaterMark >= 0, "requestBodyLowWaterMark must not be negative");
+    this.requestBodyLowWaterMark = requestBodyLowWaterMark;
+  }
+
+  public int getRequestBodyLowWaterMark() {
+    return requestBodyLowWaterMark;
+  }
+
+  /**
+   * Set the maximum length of a request body which has to be buffered
+   * before dispatching when the server streams request bodies.
+   * Multipart and form bodies are decoded as they arrive instead.
+   *
+   * @since 4.0
+   */
+  public void setMaxContentLength(int maxContentLength) {
+    this.maxContentLength = maxContentLength;
+  }
+
+  public int getMaxContentLength() {
+    return maxContentLength;
+  }
+
+  /**
+   * Set the number of buffered response body bytes above which the response
+   * is committed and the body is written out in chunks, so large bodies are
+   * streamed with bounded memory. {@code 0} or less buffers the whole body and
+   * sends it as one full response.
+   * <p>
+   * Chunked transfer encoding is used unless a {@code Content-Length} header has
+   * been set; HTTP/1.0 responses without a {@code Content-Length} are always buffered.
+   *
+   * @since 4.0
+   */
+  public void setResponseBodyHighWaterMark(int responseBodyHighWaterMark) {
+    this.responseBodyHighWaterMark = responseBodyHighWaterMark;
+  }
+
+  public int getResponseBodyHighWaterMark() {
+    return responseBodyHighWaterMark;
+  }
+
+  /**
+   * Set whether {@link NettyRequestContext} instances are pooled per event loop
+   * and reused after their response has been sent, which saves the allocation
+   * of a context and its model and cookie structures per request.
+   * <p>
+   * A recycled context must not be used any more: handlers and interceptors
+   * must not keep it, or anything obtained from it, beyond the request.
+   * Start the JVM with assertions enabled or set
+   * {@code netty.request-context.recycle.debug} to detect such a late use,
+   * recycled contexts are not reused then.
+   *
+   * @since 4.0
+   */
+  public void setRecycleRequestContext(boolean recycleRequestContext) {
+    this.recycleRequestContext = recycleRequestContext;
+  }
+
+  public boolean isRecycleRequestContext() {
+    return recycleRequestContext;
+  }
+
 }
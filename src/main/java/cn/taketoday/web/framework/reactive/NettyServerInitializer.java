@@ -20,13 +20,31 @@
 package cn.taketoday.web.framework.reactive;
 
 import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.web.framework.config.CompressionConfiguration;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpObjectDecoder;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.AsciiString;
 
 /**
  * Framework Channel Initializer
@@ -90,6 +108,38 @@ public class NettyServerInitializer
    */
   private boolean validateHeaders = true;
 
+  /**
+   * Do not aggregate requests, request bodies are streamed or decoded
+   * as they arrive
+   *
+   * @see ReactiveChannelHandler
+   * @since 4.0
+   */
+  private boolean streamingRequestBody = false;
+
+  /**
+   * Serve HTTP/2, see {@link #setEnableHttp2(boolean)}
+   *
+   * @since 4.0
+   */
+  private boolean enableHttp2 = false;
+
+  /**
+   * TLS, HTTP/2 is negotiated with ALPN
+   *
+   * @since 4.0
+   */
+  @Nullable
+  private SslContext sslContext;
+
+  /**
+   * response compression
+   *
+   * @since 4.0
+   */
+  @Nullable
+  private CompressionConfiguration compression;
+
   public NettyServerInitializer(ReactiveChannelHandler reactiveDispatcher) {
     Assert.notNull(reactiveDispatcher, "ReactiveDispatcher must not be null");
     this.reactiveDispatcher = reactiveDispatcher;
@@ -97,13 +147,36 @@ public class NettyServerInitializer
 
   @Override
   protected void initChannel(final SocketChannel ch) {
-    final HttpServerCodec serverCodec
-            = new HttpServerCodec(maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders);
+    ChannelPipeline pipeline = ch.pipeline();
+    if (sslContext != null) {
+      pipeline.addLast("SslHandler", sslContext.newHandler(ch.alloc()));
+    }
+    if (enableHttp2) {
+      Http2Delegate.init(pipeline, this);
+    }
+    else {
+      pipeline.addLast("HttpServerCodec", createServerCodec());
+      configureHttp1(pipeline);
+    }
+  }
+
+  protected HttpServerCodec createServerCodec() {
+    return new HttpServerCodec(maxInitialLineLength, maxHeaderSize, maxChunkSize, validateHeaders);
+  }
 
-    ch.pipeline()
-            .addLast("HttpServerCodec", serverCodec)
-            .addLast("HttpObjectAggregator", new HttpObjectAggregator(maxContentLength, closeOnExpectationFailed))
-            .addLast("HttpServerExpectContinueHandler", new HttpServerExpectContinueHandler())
+  /**
+   * Add the handlers after the codec, for HTTP/1.x connections and HTTP/2 streams
+   *
+   * @since 4.0
+   */
+  protected void configureHttp1(ChannelPipeline pipeline) {
+    if (compression != null && NettyHttpContentCompressor.isEnabled(compression)) {
+      pipeline.addLast("HttpContentCompressor", new NettyHttpContentCompressor(compression));
+    }
+    if (!streamingRequestBody) {
+      pipeline.addLast("HttpObjectAggregator", new HttpObjectAggregator(maxContentLength, closeOnExpectationFailed));
+    }
+    pipeline.addLast("HttpServerExpectContinueHandler", new HttpServerExpectContinueHandler())
             .addLast("ReactiveChannelHandler", reactiveDispatcher);
   }
 
@@ -155,6 +228,97 @@ public class NettyServerInitializer
     return closeOnExpectationFailed;
   }
 
+  /**
+   * Set whether to stream request bodies instead of aggregating
+   * every request with {@link HttpObjectAggregator}.
+   * <p>
+   * Multipart and form bodies are then decoded as they arrive, large
+   * parts spill to disk. Other bodies are fed to the request input stream
+   * with back-pressure when handlers run off the event loop, see
+   * {@link OffloadingNettyDispatcher}; handlers on the event loop, and
+   * handlers marked {@link AggregatedRequestBody}, get the body buffered
+   * before dispatching, limited by
+   * {@link NettyRequestContextConfig#setMaxContentLength(int)}.
+   * <p>Default is "false".
+   *
+   * @since 4.0
+   */
+  public void setStreamingRequestBody(boolean streamingRequestBody) {
+    this.streamingRequestBody = streamingRequestBody;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public boolean isStreamingRequestBody() {
+    return streamingRequestBody;
+  }
+
+  /**
+   * Set whether to serve HTTP/2. Without {@link #setSslContext(SslContext) TLS}
+   * both prior-knowledge h2c and the HTTP/1.1 {@code Upgrade: h2c} path are
+   * accepted, other HTTP/1.1 requests are served as before; with TLS the
+   * protocol is negotiated with ALPN.
+   * <p>
+   * Every HTTP/2 stream gets a child channel whose pipeline converts frames
+   * to HTTP/1.1 objects, so the {@link ReactiveChannelHandler} and the
+   * handlers run unchanged while one connection multiplexes many requests.
+   * Requires {@code netty-codec-http2}.
+   * <p>Default is "false".
+   *
+   * @since 4.0
+   */
+  public void setEnableHttp2(boolean enableHttp2) {
+    this.enableHttp2 = enableHttp2;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public boolean isEnableHttp2() {
+    return enableHttp2;
+  }
+
+  /**
+   * Set the {@link SslContext} to serve HTTPS, {@code null} for plain text.
+   * <p>
+   * For HTTP/2 it must be configured with an
+   * {@link io.netty.handler.ssl.ApplicationProtocolConfig ApplicationProtocolConfig}
+   * that advertises {@code h2} and {@code http/1.1}.
+   *
+   * @since 4.0
+   */
+  public void setSslContext(@Nullable SslContext sslContext) {
+    this.sslContext = sslContext;
+  }
+
+  /**
+   * @since 4.0
+   */
+  @Nullable
+  public SslContext getSslContext() {
+    return sslContext;
+  }
+
+  /**
+   * Set the response compression, {@code null} or a disabled
+   * configuration writes responses as they are
+   *
+   * @see NettyHttpContentCompressor
+   * @since 4.0
+   */
+  public void setCompression(@Nullable CompressionConfiguration compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * @since 4.0
+   */
+  @Nullable
+  public CompressionConfiguration getCompression() {
+    return compression;
+  }
+
   /**
    * Get Netty {@link cn.taketoday.web.handler} implementation
    * like {@link cn.taketoday.web.servlet.DispatcherServlet}
@@ -248,4 +412,100 @@ public class NettyServerInitializer
   public int getMaxInitialLineLength() {
     return maxInitialLineLength;
   }
+  /**
+   * HTTP/2 pipelines, netty-codec-http2 is only loaded if HTTP/2 is enabled
+   *
+   * @since 4.0
+   */
+  static class Http2Delegate {
+
+    static void init(ChannelPipeline pipeline, NettyServerInitializer initializer) {
+      if (initializer.sslContext != null) {
+        pipeline.addLast("ApplicationProtocolNegotiationHandler",
+                new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                  @Override
+                  protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                    if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                      ctx.pipeline().addLast("Http2FrameCodec", createFrameCodec(initializer))
+                              .addLast("Http2MultiplexHandler", createMultiplexHandler(initializer));
+                    }
+                    else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                      ctx.pipeline().addLast("HttpServerCodec", initializer.createServerCodec());
+                      initializer.configureHttp1(ctx.pipeline());
+                    }
+                    else {
+                      throw new IllegalStateException("Unsupported protocol: " + protocol);
+                    }
+                  }
+                });
+      }
+      else {
+        // h2c: prior knowledge or HTTP/1.1 'Upgrade: h2c'
+        HttpServerCodec sourceCodec = initializer.createServerCodec();
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol -> {
+          if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+            return new Http2ServerUpgradeCodec(createFrameCodec(initializer),
+                    createMultiplexHandler(initializer), new Http1HandlersRemover());
+          }
+          return null;
+        }, initializer.maxContentLength);
+
+        ChannelHandler priorKnowledgeHandler = new ChannelInitializer<>() {
+          @Override
+          protected void initChannel(Channel ch) {
+            Http1HandlersRemover.remove(ch.pipeline());
+            ch.pipeline().addLast("Http2FrameCodec", createFrameCodec(initializer))
+                    .addLast("Http2MultiplexHandler", createMultiplexHandler(initializer));
+          }
+        };
+
+        pipeline.addLast("CleartextHttp2ServerUpgradeHandler",
+                new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledgeHandler));
+        initializer.configureHttp1(pipeline);
+      }
+    }
+
+    static Http2FrameCodec createFrameCodec(NettyServerInitializer initializer) {
+      return Http2FrameCodecBuilder.forServer()
+              .validateHeaders(initializer.validateHeaders)
+              .build();
+    }
+
+    /**
+     * every stream is a child channel with an HTTP/1.1 pipeline
+     */
+    static Http2MultiplexHandler createMultiplexHandler(NettyServerInitializer initializer) {
+      return new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+        @Override
+        protected void initChannel(Http2StreamChannel ch) {
+          ChannelPipeline pipeline = ch.pipeline();
+          pipeline.addLast("Http2StreamFrameToHttpObjectCodec",
+                  new Http2StreamFrameToHttpObjectCodec(true, initializer.validateHeaders));
+          initializer.configureHttp1(pipeline);
+        }
+      });
+    }
+  }
+
+  /**
+   * The HTTP/1.x handlers of a connection are not used after upgrading
+   * to HTTP/2, requests are handled by the stream pipelines
+   */
+  static class Http1HandlersRemover extends ChannelInitializer<Channel> {
+
+    @Override
+    protected void initChannel(Channel ch) {
+      remove(ch.pipeline());
+    }
+
+    static void remove(ChannelPipeline pipeline) {
+      for (String name : new String[] {
+              "HttpContentCompressor", "HttpObjectAggregator", "HttpServerExpectContinueHandler", "ReactiveChannelHandler" }) {
+        if (pipeline.get(name) != null) {
+          pipeline.remove(name);
+        }
+      }
+    }
+  }
+
 }
@@ -29,6 +29,7 @@ import cn.taketoday.util.ExceptionUtils;
 import cn.taketoday.web.framework.StandardWebServerApplicationContext;
 import cn.taketoday.web.framework.WebServerApplicationContext;
 import cn.taketoday.web.framework.WebServerException;
+import cn.taketoday.web.framework.config.CompressionConfiguration;
 import cn.taketoday.web.framework.server.AbstractWebServer;
 import cn.taketoday.web.framework.server.WebServer;
 import cn.taketoday.web.framework.server.WebServerApplicationLoader;
@@ -234,6 +235,17 @@ public class NettyWebServer extends AbstractWebServer implements WebServer {
         serverInitializer = new NettyServerInitializer(reactiveDispatcher);
       }
     }
+    if (isEnableHttp2()) {
+      serverInitializer.setEnableHttp2(true);
+    }
+    CompressionConfiguration compression = getCompression();
+    if (compression != null) {
+      getWebApplicationConfiguration().configureCompression(compression);
+      if (compression.isEnable()) {
+        log.info("Compression enabled");
+        serverInitializer.setCompression(compression);
+      }
+    }
     return serverInitializer;
   }
 
@@ -0,0 +1,384 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.taketoday.beans.factory.DisposableBean;
+import cn.taketoday.beans.factory.annotation.Autowired;
+import cn.taketoday.core.annotation.AnnotatedElementUtils;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.logging.Logger;
+import cn.taketoday.logging.LoggerFactory;
+import cn.taketoday.util.ConcurrentReferenceHashMap;
+import cn.taketoday.web.RequestContextHolder;
+import cn.taketoday.web.framework.WebApplicationUtils;
+import cn.taketoday.web.handler.DispatcherHandler;
+import cn.taketoday.web.handler.method.ActionMappingAnnotationHandler;
+import cn.taketoday.web.handler.method.HandlerMethod;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * {@link NettyDispatcher} which runs handlers on a worker {@link Executor}
+ * instead of the Netty event loop, so one blocking handler cannot stall
+ * every connection of that loop.
+ * <p>
+ * The handler is determined on the event loop, handlers annotated with
+ * {@link NonBlocking} are dispatched there directly. Other handlers run on
+ * the worker executor: virtual threads when the JVM supports them, otherwise
+ * a bounded thread pool. While a request is on a worker, the requests
+ * pipelined after it on the same connection wait, which keeps responses in
+ * order, and auto-read of its channel is turned off once its body has been
+ * received, which applies back-pressure. The response is sent from the
+ * channel's event loop.
+ * <p>
+ * If the server streams request bodies, the body is fed to the handler as
+ * it arrives, unless the handler is marked {@link AggregatedRequestBody} or
+ * {@link NonBlocking}: its body is buffered before dispatching.
+ * <p>
+ * If the executor rejects a request, {@code 503 Service Unavailable} is sent.
+ * The time requests wait for a worker is recorded, see {@link #getAverageQueueingDelay(TimeUnit)}.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see NonBlocking
+ * @see AggregatedRequestBody
+ * @see EnableNettyHandling#offload()
+ * @since 4.0
+ */
+public class OffloadingNettyDispatcher extends NettyDispatcher implements DisposableBean {
+  private static final Logger log = LoggerFactory.getLogger(OffloadingNettyDispatcher.class);
+
+  private Executor executor;
+
+  // shutdown executor on destroy, only if created by this dispatcher
+  private boolean shutdownExecutor;
+
+  private final ConcurrentReferenceHashMap<Object, Boolean> nonBlockingHandlers = new ConcurrentReferenceHashMap<>(64);
+
+  private final ConcurrentReferenceHashMap<Object, Boolean> aggregatedRequestBodyHandlers = new ConcurrentReferenceHashMap<>(64);
+
+  private final LongAdder offloadedCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder queueingDelayNanos = new LongAdder();
+  private final AtomicLong maxQueueingDelayNanos = new AtomicLong();
+
+  @Autowired
+  public OffloadingNettyDispatcher(DispatcherHandler dispatcherHandler) {
+    super(dispatcherHandler);
+  }
+
+  public OffloadingNettyDispatcher(DispatcherHandler dispatcherHandler, Executor executor) {
+    super(dispatcherHandler);
+    setExecutor(executor);
+  }
+
+  @Override
+  public void dispatch(final ChannelHandlerContext ctx, final NettyRequestContext nettyContext) throws Throwable {
+    Object handler;
+    if (nettyContext.isHandlerResolved()) {
+      // determined when the request head arrived
+      handler = nettyContext.getResolvedHandler();
+    }
+    else {
+      try {
+        handler = dispatcherHandler.lookupHandler(nettyContext);
+      }
+      catch (Throwable e) {
+        // let DispatcherHandler handle lookup failure
+        super.dispatch(ctx, nettyContext);
+        return;
+      }
+    }
+
+    // a handler on the event loop cannot wait for a streaming request body
+    if (handler == null || (isNonBlocking(handler) && nettyContext.isRequestBodyComplete())) {
+      RequestContextHolder.set(nettyContext);
+      try {
+        dispatcherHandler.dispatch(nettyContext, handler);
+        nettyContext.sendIfNotCommitted();
+      }
+      finally {
+        nettyContext.releaseRequestBody();
+        RequestContextHolder.remove();
+      }
+      nettyContext.recycle();
+    }
+    else {
+      offload(ctx, nettyContext, handler);
+    }
+  }
+
+  private void offload(ChannelHandlerContext ctx, NettyRequestContext nettyContext, Object handler) {
+    ChannelConfig channelConfig = ctx.channel().config();
+    // a streaming request body controls auto-read by itself until complete
+    boolean pauseReading = nettyContext.isRequestBodyComplete();
+    if (pauseReading) {
+      channelConfig.setAutoRead(false);
+    }
+    try {
+      obtainExecutor().execute(new HandlerTask(ctx, nettyContext, handler));
+      offloadedCount.increment();
+    }
+    catch (RejectedExecutionException e) {
+      rejectedCount.increment();
+      if (pauseReading) {
+        channelConfig.setAutoRead(true);
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Worker executor rejected request: {}", nettyContext, e);
+      }
+      nettyContext.releaseRequestBody();
+      nettyContext.sendError(HttpResponseStatus.SERVICE_UNAVAILABLE.code());
+      nettyContext.requestCompleted();
+      nettyContext.recycle();
+      return;
+    }
+    // one request at a time per connection
+    ReactiveChannelHandler.deferRequests(ctx);
+  }
+
+  final class HandlerTask implements Runnable {
+    private final ChannelHandlerContext ctx;
+    private final NettyRequestContext nettyContext;
+    private final Object handler;
+    private final long queuedAt = System.nanoTime();
+
+    HandlerTask(ChannelHandlerContext ctx, NettyRequestContext nettyContext, Object handler) {
+      this.ctx = ctx;
+      this.nettyContext = nettyContext;
+      this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+      recordQueueingDelay(System.nanoTime() - queuedAt);
+      Throwable failure = null;
+      RequestContextHolder.set(nettyContext);
+      try {
+        dispatcherHandler.dispatch(nettyContext, handler);
+      }
+      catch (Throwable e) {
+        failure = e;
+      }
+      finally {
+        // the handler is done with the request body
+        nettyContext.releaseRequestBody();
+        RequestContextHolder.remove();
+      }
+
+      // marshal response back onto the channel's event loop
+      final Throwable dispatchFailure = failure;
+      try {
+        ctx.executor().execute(() -> complete(dispatchFailure));
+      }
+      catch (RejectedExecutionException e) {
+        // event loop shutting down
+        nettyContext.discardResponseBody();
+        if (log.isDebugEnabled()) {
+          log.debug("Event loop rejected response of: {}", nettyContext, e);
+        }
+      }
+    }
+
+    private void complete(@Nullable Throwable failure) {
+      try {
+        if (failure != null) {
+          nettyContext.discardResponseBody();
+          ctx.fireExceptionCaught(failure);
+        }
+        else {
+          nettyContext.sendIfNotCommitted();
+          nettyContext.recycle();
+        }
+      }
+      catch (Throwable e) {
+        nettyContext.discardResponseBody();
+        ctx.fireExceptionCaught(e);
+      }
+      finally {
+        ReactiveChannelHandler.resumeRequests(ctx);
+      }
+    }
+  }
+
+  /**
+   * Whether the handler is annotated with {@link NonBlocking} and so
+   * stays on the event loop
+   *
+   * @param handler HTTP handler
+   */
+  protected boolean isNonBlocking(Object handler) {
+    Boolean nonBlocking = nonBlockingHandlers.get(handler);
+    if (nonBlocking == null) {
+      nonBlocking = isAnnotated(handler, NonBlocking.class);
+      nonBlockingHandlers.put(handler, nonBlocking);
+    }
+    return nonBlocking;
+  }
+
+  /**
+   * Whether the handler is annotated with {@link AggregatedRequestBody},
+   * its request body is buffered before dispatching then
+   *
+   * @param handler HTTP handler
+   */
+  protected boolean isAggregatedRequestBody(Object handler) {
+    Boolean aggregated = aggregatedRequestBodyHandlers.get(handler);
+    if (aggregated == null) {
+      aggregated = isAnnotated(handler, AggregatedRequestBody.class);
+      aggregatedRequestBodyHandlers.put(handler, aggregated);
+    }
+    return aggregated;
+  }
+
+  private static boolean isAnnotated(Object handler, Class<? extends Annotation> annotationType) {
+    if (handler instanceof ActionMappingAnnotationHandler annotationHandler) {
+      HandlerMethod handlerMethod = annotationHandler.getMethod();
+      return handlerMethod.isMethodPresent(annotationType)
+              || handlerMethod.isDeclaringClassPresent(annotationType);
+    }
+    return AnnotatedElementUtils.hasAnnotation(handler.getClass(), annotationType);
+  }
+
+  /**
+   * Stream the body unless the handler stays on the event loop or asks
+   * for the whole body. The handler is kept on the context, which is
+   * dispatched once the body is streamed or buffered, so it is looked up once.
+   */
+  @Override
+  public boolean supportsStreamingRequestBody(NettyRequestContext nettyContext) {
+    Object handler;
+    try {
+      handler = dispatcherHandler.lookupHandler(nettyContext);
+    }
+    catch (Throwable e) {
+      // dispatch reports the failure right away
+      return true;
+    }
+    nettyContext.setResolvedHandler(handler);
+    return handler == null || !(isNonBlocking(handler) || isAggregatedRequestBody(handler));
+  }
+
+  private void recordQueueingDelay(long delayNanos) {
+    queueingDelayNanos.add(delayNanos);
+    maxQueueingDelayNanos.accumulateAndGet(delayNanos, Math::max);
+  }
+
+  // Executor
+
+  public void setExecutor(Executor executor) {
+    Assert.notNull(executor, "executor is required");
+    this.executor = executor;
+    this.shutdownExecutor = false;
+  }
+
+  public Executor getExecutor() {
+    return obtainExecutor();
+  }
+
+  private Executor obtainExecutor() {
+    Executor executor = this.executor;
+    if (executor == null) {
+      synchronized(this) {
+        executor = this.executor;
+        if (executor == null) {
+          executor = WebApplicationUtils.createVirtualThreadExecutor();
+          if (executor == null) {
+            int threads = Runtime.getRuntime().availableProcessors() * 8;
+            executor = createWorkerPool(threads, threads * 64);
+          }
+          this.executor = executor;
+          this.shutdownExecutor = true;
+        }
+      }
+    }
+    return executor;
+  }
+
+  @Override
+  public void destroy() {
+    if (shutdownExecutor && executor instanceof ExecutorService executorService) {
+      executorService.shutdown();
+    }
+  }
+
+  // Metrics
+
+  /**
+   * Number of requests handed to the worker executor
+   */
+  public long getOffloadedCount() {
+    return offloadedCount.sum();
+  }
+
+  /**
+   * Number of requests the worker executor rejected
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /**
+   * Average time offloaded requests waited for a worker
+   */
+  public long getAverageQueueingDelay(TimeUnit unit) {
+    long count = offloadedCount.sum();
+    return count == 0 ? 0 : unit.convert(queueingDelayNanos.sum() / count, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Maximum time an offloaded request waited for a worker
+   */
+  public long getMaxQueueingDelay(TimeUnit unit) {
+    return unit.convert(maxQueueingDelayNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  //---------------------------------------------------------------------
+  // Static factory methods
+  //---------------------------------------------------------------------
+
+  /**
+   * Create a bounded worker pool, requests exceeding the queue capacity are rejected
+   *
+   * @param threads number of worker threads
+   * @param queueCapacity capacity of waiting requests
+   */
+  public static ThreadPoolExecutor createWorkerPool(int threads, int queueCapacity) {
+    Assert.isTrue(threads > 0, "threads must be greater than 0");
+    Assert.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity), new DefaultThreadFactory("netty-worker"),
+            new ThreadPoolExecutor.AbortPolicy());
+  }
+
+}
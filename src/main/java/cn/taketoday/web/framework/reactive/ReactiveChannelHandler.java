@@ -19,26 +19,71 @@
  */
 package cn.taketoday.web.framework.reactive;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+
 import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.web.WebApplicationContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandler;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.handler.codec.http.multipart.InterfaceHttpPostRequestDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * ChannelInboundHandler
+ * <p>
+ * Handles {@link FullHttpRequest} if the pipeline aggregates requests,
+ * otherwise assembles {@link HttpRequest} and {@link HttpContent}: multipart
+ * and form bodies are decoded as they arrive, spilling large parts to disk,
+ * other bodies are streamed to {@link NettyRequestContext#getInputStream()}
+ * if the {@link NettyDispatcher#supportsStreamingRequestBody(NettyRequestContext)
+ * dispatcher} runs their handler off the event loop, or buffered before dispatching.
+ * <p>
+ * While a response is completed off the event loop, the requests pipelined
+ * after it are deferred, so responses are sent in the order of requests.
  *
  * @author TODAY 2019-07-04 21:50
+ * @see NettyServerInitializer#setStreamingRequestBody(boolean)
  */
 public class ReactiveChannelHandler implements ChannelInboundHandler {
 
+  /** request whose body is still arriving @since 4.0 */
+  private static final AttributeKey<PendingRequest> PENDING_REQUEST_KEY
+          = AttributeKey.valueOf(ReactiveChannelHandler.class, "PendingRequest");
+
+  /** requests received while a response is pending @since 4.0 */
+  private static final AttributeKey<DeferredRequests> DEFERRED_REQUESTS_KEY
+          = AttributeKey.valueOf(ReactiveChannelHandler.class, "DeferredRequests");
+
   private NettyDispatcher nettyDispatcher;
   private NettyRequestContextConfig contextConfig;
 
+  /** pooled request contexts, per event loop @since 4.0 */
+  @Nullable
+  private Recycler<NettyRequestContext> contextRecycler;
+
   private final WebApplicationContext context;
 
   public ReactiveChannelHandler(NettyDispatcher nettyDispatcher, WebApplicationContext context) {
@@ -60,17 +105,283 @@ public class ReactiveChannelHandler implements ChannelInboundHandler {
 
   @Override
   public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+    DeferredRequests deferred = ctx.channel().attr(DEFERRED_REQUESTS_KEY).get();
+    if (deferred != null && deferred.defer(msg)) {
+      ctx.channel().config().setAutoRead(false);
+      return;
+    }
     if (msg instanceof FullHttpRequest) {
-      NettyRequestContext nettyContext = new NettyRequestContext(context, ctx, (FullHttpRequest) msg, contextConfig);
+      dispatch(ctx, createContext(ctx, (FullHttpRequest) msg));
+    }
+    else if (msg instanceof HttpRequest) {
+      readRequestHead(ctx, (HttpRequest) msg);
+    }
+    else if (msg instanceof HttpContent) {
+      readRequestContent(ctx, (HttpContent) msg);
+    }
+    else {
+      readExceptHttp(ctx, msg);
+    }
+  }
+
+  /**
+   * Obtain a request context, a pooled one if
+   * {@link NettyRequestContextConfig#isRecycleRequestContext() enabled}
+   *
+   * @since 4.0
+   */
+  protected NettyRequestContext createContext(ChannelHandlerContext ctx, FullHttpRequest request) {
+    Recycler<NettyRequestContext> recycler = this.contextRecycler;
+    if (recycler == null) {
+      return new NettyRequestContext(context, ctx, request, contextConfig);
+    }
+    NettyRequestContext nettyContext = recycler.get();
+    nettyContext.init(ctx, request);
+    return nettyContext;
+  }
+
+  private void dispatch(ChannelHandlerContext ctx, NettyRequestContext nettyContext) {
+    try {
+      nettyDispatcher.dispatch(ctx, nettyContext);
+    }
+    catch (Throwable e) {
+      // a new response is sent instead
+      nettyContext.discardResponseBody();
+      ctx.fireExceptionCaught(e);
+    }
+  }
+
+  // streaming request body @since 4.0
+
+  private void readRequestHead(ChannelHandlerContext ctx, HttpRequest request) {
+    if (!hasBody(request)) {
+      // dispatch right now, the empty last content will be dropped
+      dispatch(ctx, createContext(ctx, fullRequest(request, Unpooled.EMPTY_BUFFER, null)));
+      return;
+    }
+
+    PendingRequest pending;
+    if (isFormRequest(request)) {
+      HttpPostRequestDecoder decoder = new HttpPostRequestDecoder(
+              contextConfig.getHttpDataFactory(), request, contextConfig.getPostRequestDecoderCharset());
+      pending = new PendingRequest(request, decoder, null, null);
+    }
+    else {
+      NettyRequestContext nettyContext = createContext(ctx, fullRequest(request, Unpooled.EMPTY_BUFFER, null));
+      if (nettyDispatcher.supportsStreamingRequestBody(nettyContext)) {
+        RequestBodyInputStream body = new RequestBodyInputStream(ctx.channel(),
+                contextConfig.getRequestBodyHighWaterMark(), contextConfig.getRequestBodyLowWaterMark());
+        nettyContext.setRequestBody(body);
+        ctx.channel().attr(PENDING_REQUEST_KEY).set(new PendingRequest(request, body));
+        dispatch(ctx, nettyContext);
+        return;
+      }
+      // dispatched with the same context once the body has been buffered
+      if (HttpUtil.getContentLength(request, -1L) > contextConfig.getMaxContentLength()) {
+        requestEntityTooLarge(ctx);
+        return;
+      }
+      pending = new PendingRequest(request, null, ctx.alloc().compositeBuffer(1024), nettyContext);
+    }
+    ctx.channel().attr(PENDING_REQUEST_KEY).set(pending);
+  }
+
+  private void readRequestContent(ChannelHandlerContext ctx, HttpContent content) {
+    PendingRequest pending = ctx.channel().attr(PENDING_REQUEST_KEY).get();
+    if (pending == null) {
+      // body of a rejected or bodiless request
+      content.release();
+      return;
+    }
+
+    boolean last = content instanceof LastHttpContent;
+    if (last) {
+      ctx.channel().attr(PENDING_REQUEST_KEY).set(null);
+    }
+
+    if (pending.body != null) {
+      pending.body.offer(content.content(), last);
+    }
+    else if (pending.decoder != null) {
       try {
-        nettyDispatcher.dispatch(ctx, nettyContext);
+        pending.decoder.offer(content);
       }
-      catch (Throwable e) {
-        ctx.fireExceptionCaught(e);
+      catch (DecoderException e) {
+        ctx.channel().attr(PENDING_REQUEST_KEY).set(null);
+        pending.discard();
+        sendErrorAndClose(ctx, HttpResponseStatus.BAD_REQUEST);
+        return;
+      }
+      finally {
+        content.release();
+      }
+      if (last) {
+        NettyRequestContext nettyContext = createContext(ctx,
+                fullRequest(pending.request, Unpooled.EMPTY_BUFFER, (LastHttpContent) content));
+        nettyContext.setRequestDecoder(pending.decoder);
+        dispatch(ctx, nettyContext);
       }
     }
-    else {
-      readExceptHttp(ctx, msg);
+    else if (pending.content != null) {
+      CompositeByteBuf buffered = pending.content;
+      if (buffered.readableBytes() > contextConfig.getMaxContentLength() - content.content().readableBytes()) {
+        content.release();
+        ctx.channel().attr(PENDING_REQUEST_KEY).set(null);
+        pending.discard();
+        requestEntityTooLarge(ctx);
+        return;
+      }
+      buffered.addComponent(true, content.content());
+      if (last) {
+        NettyRequestContext nettyContext = pending.context;
+        // released by the dispatcher once the request has been handled
+        nettyContext.setBufferedRequest(fullRequest(pending.request, buffered, (LastHttpContent) content));
+        dispatch(ctx, nettyContext);
+      }
+    }
+  }
+
+  private static FullHttpRequest fullRequest(
+          HttpRequest request, ByteBuf content, @Nullable LastHttpContent last) {
+    HttpHeaders trailingHeaders = last != null ? last.trailingHeaders() : EmptyHttpHeaders.INSTANCE;
+    return new DefaultFullHttpRequest(request.protocolVersion(), request.method(),
+            request.uri(), content, request.headers(), trailingHeaders);
+  }
+
+  private static boolean hasBody(HttpRequest request) {
+    return HttpUtil.isTransferEncodingChunked(request)
+            || HttpUtil.getContentLength(request, 0L) > 0;
+  }
+
+  private static boolean isFormRequest(HttpRequest request) {
+    if (HttpPostRequestDecoder.isMultipart(request)) {
+      return true;
+    }
+    String contentType = request.headers().get(HttpHeaderNames.CONTENT_TYPE);
+    return contentType != null
+            && contentType.regionMatches(true, 0, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.toString(),
+            0, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED.length());
+  }
+
+  private static void requestEntityTooLarge(ChannelHandlerContext ctx) {
+    sendErrorAndClose(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+  }
+
+  private static void sendErrorAndClose(ChannelHandlerContext ctx, HttpResponseStatus status) {
+    DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+    response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, 0);
+    ctx.writeAndFlush(response)
+            .addListener(ChannelFutureListener.CLOSE);
+  }
+
+  static final class PendingRequest {
+    final HttpRequest request;
+
+    @Nullable
+    final RequestBodyInputStream body;
+
+    @Nullable
+    final InterfaceHttpPostRequestDecoder decoder;
+
+    @Nullable
+    final CompositeByteBuf content;
+
+    /** context created with the request head, if the body is buffered */
+    @Nullable
+    final NettyRequestContext context;
+
+    PendingRequest(HttpRequest request, RequestBodyInputStream body) {
+      this.request = request;
+      this.body = body;
+      this.decoder = null;
+      this.content = null;
+      this.context = null;
+    }
+
+    PendingRequest(HttpRequest request, @Nullable InterfaceHttpPostRequestDecoder decoder,
+            @Nullable CompositeByteBuf content, @Nullable NettyRequestContext context) {
+      this.request = request;
+      this.body = null;
+      this.decoder = decoder;
+      this.content = content;
+      this.context = context;
+    }
+
+    void discard() {
+      if (body != null) {
+        body.fail(new ClosedChannelException());
+      }
+      if (decoder != null) {
+        decoder.destroy();
+      }
+      if (content != null) {
+        content.release();
+      }
+    }
+  }
+
+  /**
+   * Defer the requests received from now on, until {@link #resumeRequests}.
+   * Called on the event loop by a dispatcher which completes the current
+   * response off the event loop.
+   *
+   * @since 4.0
+   */
+  static void deferRequests(ChannelHandlerContext ctx) {
+    DeferredRequests deferred = ctx.channel().attr(DEFERRED_REQUESTS_KEY).get();
+    if (deferred == null) {
+      deferred = new DeferredRequests();
+      ctx.channel().attr(DEFERRED_REQUESTS_KEY).set(deferred);
+    }
+    deferred.responsePending = true;
+  }
+
+  /**
+   * Handle the deferred requests once the pending response has been sent,
+   * called on the event loop
+   *
+   * @param ctx the context the request has been dispatched with
+   * @since 4.0
+   */
+  static void resumeRequests(ChannelHandlerContext ctx) {
+    DeferredRequests deferred = ctx.channel().attr(DEFERRED_REQUESTS_KEY).get();
+    if (deferred != null) {
+      deferred.responsePending = false;
+      ReactiveChannelHandler handler = (ReactiveChannelHandler) ctx.handler();
+      Object msg;
+      // stops at a request which is handled off the event loop again
+      while (!deferred.responsePending && (msg = deferred.messages.poll()) != null) {
+        handler.channelRead(ctx, msg);
+      }
+      if (deferred.responsePending) {
+        return;
+      }
+    }
+    ctx.channel().config().setAutoRead(true);
+  }
+
+  static final class DeferredRequests {
+    final ArrayDeque<Object> messages = new ArrayDeque<>(4);
+
+    boolean responsePending;
+
+    /**
+     * A new request and everything after it waits for the pending
+     * response, the body of the current request does not
+     */
+    boolean defer(Object msg) {
+      if (responsePending && (msg instanceof HttpRequest || !messages.isEmpty())) {
+        messages.add(msg);
+        return true;
+      }
+      return false;
+    }
+
+    void discard() {
+      Object msg;
+      while ((msg = messages.poll()) != null) {
+        ReferenceCountUtil.release(msg);
+      }
     }
   }
 
@@ -83,6 +394,10 @@ public class ReactiveChannelHandler implements ChannelInboundHandler {
 
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    PendingRequest pending = ctx.channel().attr(PENDING_REQUEST_KEY).getAndSet(null);
+    if (pending != null) {
+      pending.discard();
+    }
     DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.INTERNAL_SERVER_ERROR);
     ctx.writeAndFlush(response)
             .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
@@ -91,6 +406,17 @@ public class ReactiveChannelHandler implements ChannelInboundHandler {
   public void setContextConfig(NettyRequestContextConfig contextConfig) {
     Assert.notNull(contextConfig, "NettyRequestContextConfig cannot be null");
     this.contextConfig = contextConfig;
+    this.contextRecycler = contextConfig.isRecycleRequestContext() ? createRecycler(contextConfig) : null;
+  }
+
+  private Recycler<NettyRequestContext> createRecycler(NettyRequestContextConfig contextConfig) {
+    WebApplicationContext context = this.context;
+    return new Recycler<>() {
+      @Override
+      protected NettyRequestContext newObject(Handle<NettyRequestContext> handle) {
+        return new NettyRequestContext(context, contextConfig, handle);
+      }
+    };
   }
 
   public void setNettyDispatcher(NettyDispatcher nettyDispatcher) {
@@ -138,6 +464,14 @@ public class ReactiveChannelHandler implements ChannelInboundHandler {
 
   @Override
   public void channelInactive(ChannelHandlerContext ctx) {
+    PendingRequest pending = ctx.channel().attr(PENDING_REQUEST_KEY).getAndSet(null);
+    if (pending != null) {
+      pending.discard();
+    }
+    DeferredRequests deferred = ctx.channel().attr(DEFERRED_REQUESTS_KEY).getAndSet(null);
+    if (deferred != null) {
+      deferred.discard();
+    }
     ctx.fireChannelInactive();
   }
 
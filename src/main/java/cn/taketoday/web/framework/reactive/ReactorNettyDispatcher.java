@@ -60,6 +60,7 @@ public class ReactorNettyDispatcher extends NettyDispatcher {
     try {
       doDispatch(nettyContext);
       nettyContext.sendIfNotCommitted();
+      nettyContext.recycle();
     }
     finally {
       RequestContextHolder.remove();
@@ -0,0 +1,275 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cn.taketoday.lang.Nullable;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+/**
+ * Request body which is fed with {@code HttpContent} chunks on the
+ * event loop while a handler reads it on a worker thread.
+ * <p>
+ * Back-pressure: when more than the high-water mark is buffered, auto-read
+ * of the channel is turned off, and turned on again once the reader has
+ * drained the buffer below the low-water mark, unless the body is complete:
+ * then the requests pipelined after it wait for the response.
+ * <p>
+ * Reading blocks, so it must never happen on the event loop before the
+ * body is complete.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+final class RequestBodyInputStream extends InputStream {
+
+  private final Channel channel;
+
+  private final int highWaterMark;
+
+  private final int lowWaterMark;
+
+  // not synchronized: avoid pinning virtual threads
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition readable = lock.newCondition();
+
+  private final ArrayDeque<ByteBuf> chunks = new ArrayDeque<>();
+
+  private int bufferedBytes;
+
+  private boolean paused;
+
+  private boolean complete;
+
+  private boolean closed;
+
+  @Nullable
+  private IOException failure;
+
+  RequestBodyInputStream(Channel channel, int highWaterMark, int lowWaterMark) {
+    this.channel = channel;
+    this.highWaterMark = highWaterMark;
+    this.lowWaterMark = lowWaterMark;
+  }
+
+  /**
+   * Called on the event loop, takes ownership of the chunk
+   */
+  void offer(ByteBuf chunk, boolean last) {
+    lock.lock();
+    try {
+      if (closed || !chunk.isReadable()) {
+        chunk.release();
+      }
+      else {
+        chunks.add(chunk);
+        bufferedBytes += chunk.readableBytes();
+        if (!paused && bufferedBytes >= highWaterMark) {
+          paused = true;
+          channel.config().setAutoRead(false);
+        }
+      }
+      if (last) {
+        complete = true;
+      }
+      readable.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Called on the event loop if the connection failed before the body completed
+   */
+  void fail(Throwable cause) {
+    lock.lock();
+    try {
+      if (!complete) {
+        failure = new IOException("Request body is incomplete", cause);
+        complete = true;
+        readable.signalAll();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  boolean isComplete() {
+    lock.lock();
+    try {
+      return complete;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    int read = read(single, 0, 1);
+    return read == -1 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    lock.lock();
+    try {
+      ByteBuf chunk = awaitChunk();
+      if (chunk == null) {
+        return -1;
+      }
+      int read = Math.min(len, chunk.readableBytes());
+      chunk.readBytes(b, off, read);
+      consumed(chunk, read);
+      return read;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    lock.lock();
+    try {
+      ByteBuf chunk = awaitChunk();
+      if (chunk == null) {
+        return 0;
+      }
+      int skipped = (int) Math.min(n, chunk.readableBytes());
+      chunk.skipBytes(skipped);
+      consumed(chunk, skipped);
+      return skipped;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int available() {
+    lock.lock();
+    try {
+      return bufferedBytes;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discard the rest of the body, chunks still arriving are released
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (!closed) {
+        closed = true;
+        releaseChunks();
+        resume();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  // lock held
+  @Nullable
+  private ByteBuf awaitChunk() throws IOException {
+    while (true) {
+      if (closed) {
+        throw new IOException("Request body stream closed");
+      }
+      ByteBuf chunk = chunks.peek();
+      if (chunk != null) {
+        return chunk;
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (complete) {
+        return null;
+      }
+      if (channel.eventLoop().inEventLoop()) {
+        throw new IllegalStateException(
+                "Cannot block on request body in event loop, the handler must run on a worker");
+      }
+      try {
+        readable.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for request body", e);
+      }
+    }
+  }
+
+  // lock held
+  private void consumed(ByteBuf chunk, int bytes) {
+    bufferedBytes -= bytes;
+    if (!chunk.isReadable()) {
+      chunks.poll();
+      chunk.release();
+    }
+    if (paused && bufferedBytes <= lowWaterMark) {
+      resume();
+    }
+  }
+
+  // lock held
+  private void resume() {
+    if (paused) {
+      paused = false;
+      // once complete, reading is resumed when the response has been sent
+      if (!complete) {
+        channel.eventLoop().execute(() -> channel.config().setAutoRead(true));
+      }
+    }
+  }
+
+  // lock held
+  private void releaseChunks() {
+    ByteBuf chunk;
+    while ((chunk = chunks.poll()) != null) {
+      chunk.release();
+    }
+    bufferedBytes = 0;
+  }
+
+}
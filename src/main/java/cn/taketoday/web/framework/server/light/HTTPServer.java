@@ -23,17 +23,25 @@ package cn.taketoday.web.framework.server.light;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ServerSocketFactory;
 import javax.net.ssl.SSLServerSocketFactory;
@@ -42,10 +50,11 @@ import javax.net.ssl.SSLSocket;
 import cn.taketoday.http.HttpHeaders;
 import cn.taketoday.http.HttpStatus;
 import cn.taketoday.lang.Assert;
-import cn.taketoday.lang.NonNull;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.logging.Logger;
 import cn.taketoday.logging.LoggerFactory;
 import cn.taketoday.web.WebApplicationContext;
+import cn.taketoday.web.framework.WebApplicationUtils;
 import cn.taketoday.web.handler.DispatcherHandler;
 
 import static cn.taketoday.web.framework.server.light.Utils.splitElements;
@@ -145,6 +154,11 @@ public class HTTPServer {
   protected volatile boolean secure;
   protected volatile ServerSocketFactory serverSocketFactory;
   protected volatile Executor executor;
+  // shutdown executor on stop, only if created by this server @since 4.0
+  private boolean shutdownExecutor;
+  /** connection limit, null if unlimited @since 4.0 */
+  @Nullable
+  protected volatile Semaphore connectionPermits;
   protected volatile ServerSocket serv;
   protected LightHttpConfig config = new LightHttpConfig();
 
@@ -174,8 +188,23 @@ public class HTTPServer {
       setName(getClass().getSimpleName() + "-" + port);
       try {
         ServerSocket serv = HTTPServer.this.serv; // keep local to avoid NPE when stopped
+        Semaphore connectionPermits = HTTPServer.this.connectionPermits;
         while (serv != null && !serv.isClosed()) {
-          final Socket sock = serv.accept();
+          if (connectionPermits != null) {
+            // stop accepting while at the connection limit
+            while (!connectionPermits.tryAcquire(1, TimeUnit.SECONDS)) {
+              if (serv.isClosed())
+                return;
+            }
+          }
+          final Socket sock;
+          try {
+            sock = serv.accept();
+          }
+          catch (IOException e) {
+            releaseConnectionPermit();
+            throw e;
+          }
 
           final class AcceptRunnable implements Runnable {
             final Socket sock;
@@ -208,13 +237,32 @@ public class HTTPServer {
                 }
               }
               catch (IOException ignore) { }
+              finally {
+                releaseConnectionPermit();
+              }
             }
           }
 
-          executor.execute(new AcceptRunnable(sock));
+          try {
+            executor.execute(new AcceptRunnable(sock));
+          }
+          catch (RejectedExecutionException e) {
+            releaseConnectionPermit();
+            try {
+              sock.close();
+            }
+            catch (IOException ignore) { }
+          }
         }
       }
-      catch (IOException ignore) { }
+      catch (IOException | InterruptedException ignore) { }
+    }
+  }
+
+  private void releaseConnectionPermit() {
+    Semaphore connectionPermits = this.connectionPermits;
+    if (connectionPermits != null) {
+      connectionPermits.release();
     }
   }
 
@@ -302,7 +350,14 @@ public class HTTPServer {
    * @throws IOException if the socket cannot be created
    */
   protected ServerSocket createServerSocket() throws IOException {
-    ServerSocket serv = serverSocketFactory.createServerSocket();
+    ServerSocket serv;
+    if (config.isEnableFileTransfer() && serverSocketFactory == ServerSocketFactory.getDefault()) {
+      // plain sockets backed by channels, which files can be transferred to
+      serv = ServerSocketChannel.open().socket();
+    }
+    else {
+      serv = serverSocketFactory.createServerSocket();
+    }
     serv.setReuseAddress(true);
     final String host = getHost();
     final InetSocketAddress address = new InetSocketAddress(host, port);
@@ -324,8 +379,9 @@ public class HTTPServer {
     if (serverSocketFactory == null) // assign default server socket factory if needed
       serverSocketFactory = ServerSocketFactory.getDefault(); // plain sockets
     serv = createServerSocket();
-    if (executor == null) // assign default executor if needed
-      executor = Executors.newCachedThreadPool(); // consumes no resources when idle
+    initExecutor();
+    int maxConnections = getConnectionLimit();
+    connectionPermits = maxConnections > 0 ? new Semaphore(maxConnections) : null;
     // start handling incoming connections
     new SocketHandlerThread().start();
   }
@@ -341,6 +397,82 @@ public class HTTPServer {
     }
     catch (IOException ignore) { }
     serv = null;
+    shutdownExecutor();
+  }
+
+  /**
+   * Assigns the default executor if none has been set
+   *
+   * @see #createExecutor()
+   * @since 4.0
+   */
+  protected void initExecutor() {
+    if (executor == null) {
+      executor = createExecutor();
+      shutdownExecutor = true;
+    }
+  }
+
+  /**
+   * Shuts down the executor if it has been created by this server
+   *
+   * @since 4.0
+   */
+  protected void shutdownExecutor() {
+    if (shutdownExecutor && executor instanceof ExecutorService executorService) {
+      executorService.shutdown();
+      executor = null;
+      shutdownExecutor = false;
+    }
+  }
+
+  /**
+   * The maximum number of concurrently open connections, {@code <= 0} if unlimited.
+   * <p>
+   * A connection holds its thread while it is kept alive, so with the
+   * {@link LightHttpConfig.ThreadModel#BOUNDED bounded} pool created by this
+   * server, at most {@link LightHttpConfig#getMaxThreads() maxThreads}
+   * connections are accepted: further clients wait in the accept backlog
+   * instead of in the pool's queue.
+   *
+   * @see LightHttpConfig#getMaxConnections()
+   * @since 4.0
+   */
+  protected int getConnectionLimit() {
+    int maxConnections = config.getMaxConnections();
+    if (shutdownExecutor && config.getThreadModel() == LightHttpConfig.ThreadModel.BOUNDED) {
+      int maxThreads = config.getMaxThreads();
+      return maxConnections > 0 ? Math.min(maxConnections, maxThreads) : maxThreads;
+    }
+    return maxConnections;
+  }
+
+  /**
+   * Creates the default executor according to the
+   * {@link LightHttpConfig#getThreadModel() thread model}
+   *
+   * @since 4.0
+   */
+  protected ExecutorService createExecutor() {
+    switch (config.getThreadModel()) {
+      case VIRTUAL: {
+        ExecutorService executor = WebApplicationUtils.createVirtualThreadExecutor();
+        if (executor != null) {
+          return executor;
+        }
+        log.warn("Virtual threads are not supported by this JVM, using a platform thread pool");
+        return Executors.newCachedThreadPool();
+      }
+      case BOUNDED: {
+        int maxThreads = config.getMaxThreads();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+      }
+      default:
+        return Executors.newCachedThreadPool(); // consumes no resources when idle
+    }
   }
 
   /**
@@ -353,45 +485,41 @@ public class HTTPServer {
    * @throws IOException if an error occurs
    */
   protected void handleConnection(Socket socket) throws IOException {
-//    BufferedInputStream in = new BufferedInputStream(socket.getInputStream(), 4096);
-    final ByteArrayOutputStream inString = new ByteArrayOutputStream();
-    BufferedInputStream in = new BufferedInputStream(socket.getInputStream(), 4096) {
-
-      @Override
-      public synchronized int read() throws IOException {
-        final int read = super.read();
-        inString.write(read);
-        return read;
-      }
+    // not subclassed: since JDK 19 these lock with a ReentrantLock instead
+    // of synchronized, so blocking reads don't pin virtual threads
+    BufferedInputStream in = new BufferedInputStream(socket.getInputStream(), 4096);
+    BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream(), 4096);
+    HttpHeaderParser headerParser = new HttpHeaderParser(config); // buffers are reused
+    // TLS sockets have no channel
+    SocketChannel transferChannel = socket instanceof SSLSocket ? null : socket.getChannel();
+    while (handleTransaction(in, out, socket, headerParser, transferChannel)) {
+      // keep-alive: handle the next request
+    }
+  }
 
-      @Override
-      public synchronized int read(@NonNull byte[] b, int off, int len) throws IOException {
-        final int read = super.read(b, off, len);
-        inString.write(b, off, len);
-        return read;
-      }
-    };
-
-    final OutputStream socketOutputStream = socket.getOutputStream();
-    BufferedOutputStream out = new BufferedOutputStream(socketOutputStream, 4096);
-//    final ByteArrayOutputStream out = new ByteArrayOutputStream() {
-//      @Override
-//      public synchronized void write(byte[] b, int off, int len) {
-//        super.write(b, off, len);
-//        try {
-//          socketOutputStream.write(b, off, len);
-//        }
-//        catch (IOException e) {
-//          e.printStackTrace();
-//        }
-//      }
-//    };
+  /**
+   * Handles a single transaction: reads a request from the input stream,
+   * dispatches it and writes the response to the output stream.
+   *
+   * @param in the stream from which the request is read
+   * @param out the stream to which the response is written
+   * @param socket the connection
+   * @return whether the connection may be kept open for another request
+   * @throws IOException if an error occurs
+   * @since 4.0
+   */
+  protected boolean handleTransaction(InputStream in, OutputStream out, Socket socket) throws IOException {
+    return handleTransaction(in, out, socket, new HttpHeaderParser(config), null);
+  }
 
+  boolean handleTransaction(InputStream in, OutputStream out, Socket socket,
+                            HttpHeaderParser headerParser, @Nullable SocketChannel transferChannel) throws IOException {
     HttpRequest req = null;
     HttpResponse resp = new HttpResponse(out);
+    resp.setTransferChannel(transferChannel);
     // create request and response and handle transaction
     try {
-      req = new HttpRequest(in, socket, config);
+      req = new HttpRequest(in, socket, config, headerParser);
       resp.setClientCapabilities(req);
 
       if (preprocessTransaction(req, resp)) {
@@ -402,18 +530,28 @@ public class HTTPServer {
         else {
           WebApplicationContext webApplicationContext = httpHandler.getWebApplicationContext();
           final LightRequestContext context = new LightRequestContext(webApplicationContext, req, resp, config);
-          httpHandler.dispatch(context);
-          context.sendIfNotCommitted();
+          try {
+            httpHandler.dispatch(context);
+            context.sendIfNotCommitted();
+          }
+          finally {
+            context.cleanupMultipart();
+          }
         }
       }
+      boolean keepAlive = isKeepAlive(req, resp);
+      if (keepAlive) {
+        transfer(req.getBody(), null, -1); // skip the unread body, the next request follows it
+      }
+      return keepAlive;
     }
     catch (Throwable t) {
+      if (req == null && t instanceof IOException && t.getMessage().contains("missing request line"))
+        return false; // we're not in the middle of a transaction - so just disconnect
       log.error("Catch throwable", t);
       // TODO
       // unhandled errors (not normal error responses like 404)
       if (req == null) { // error reading request
-        if (t instanceof IOException && t.getMessage().contains("missing request line"))
-          return; // we're not in the middle of a transaction - so just disconnect
         resp.getHeaders().add("Connection", "close"); // about to close connection
         if (t instanceof InterruptedIOException) // e.g. SocketTimeoutException
           resp.sendError(HttpStatus.REQUEST_TIMEOUT, "Timeout waiting for client request");
@@ -425,17 +563,25 @@ public class HTTPServer {
         resp.getHeaders().add("Connection", "close"); // about to close connection
         resp.sendError(HttpStatus.INTERNAL_SERVER_ERROR, "Error processing request: " + t.getMessage());
       } // otherwise just abort the connection since we can't recover
-      return; // proceed to close connection
+      return false; // proceed to close connection
     }
     finally {
-//        System.out.println(out);
-//        final String name = StandardCharsets.ISO_8859_1.name();
-//        System.out.println(inString.toString(name));
-      System.out.println(inString);
       resp.close(); // close response and flush output
     }
   }
 
+  /**
+   * Whether the connection may be kept open after the transaction,
+   * only HTTP/1.1 connections are kept open (RFC7230#6.3)
+   *
+   * @since 4.0
+   */
+  protected boolean isKeepAlive(HttpRequest req, HttpResponse resp) {
+    return "HTTP/1.1".equals(req.getVersion())
+            && !"close".equalsIgnoreCase(req.getHeaders().getFirst(HttpHeaders.CONNECTION))
+            && !"close".equalsIgnoreCase(resp.getHeaders().getFirst(HttpHeaders.CONNECTION));
+  }
+
   /**
    * Preprocesses a transaction, performing various validation checks
    * and required special header handling, possibly returning an
@@ -460,9 +606,7 @@ public class HTTPServer {
       String expect = reqHeaders.getFirst(HttpHeaders.EXPECT);
       if (expect != null) {
         if (expect.equalsIgnoreCase(HttpHeaders.CONTINUE)) {
-          HttpResponse tempResp = new HttpResponse(resp.getOutputStream());
-          tempResp.send(HttpStatus.CONTINUE);
-          resp.getOutputStream().flush();
+          sendContinue(resp);
         }
         else {
           // RFC2616#14.20: if unknown expect, send 417
@@ -483,6 +627,20 @@ public class HTTPServer {
     return true;
   }
 
+  /**
+   * Send the interim {@code 100 Continue} response, the client sends
+   * the body after it
+   *
+   * @param resp the response of the transaction
+   * @throws IOException if an error occurs
+   * @since 4.0
+   */
+  protected void sendContinue(HttpResponse resp) throws IOException {
+    HttpResponse tempResp = new HttpResponse(resp.getOutputStream());
+    tempResp.send(HttpStatus.CONTINUE);
+    resp.getOutputStream().flush();
+  }
+
   static final byte[] TRACE_BYTES = "TRACE ".getBytes(StandardCharsets.UTF_8);
 
   /**
@@ -0,0 +1,377 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import cn.taketoday.http.HttpHeaders;
+
+/**
+ * Reads request headers with a byte-level state machine over a buffer,
+ * which is reused for every request on a connection.
+ * <p>
+ * Unlike {@link Utils#readHeaders(InputStream, LightHttpConfig)}, no
+ * {@code String} is created per line: well-known header names resolve to
+ * the {@link HttpHeaders} constants, other names and all values are kept
+ * as slices of the header bytes and decoded when asked for, see
+ * {@link LightHttpHeaders}.
+ * <p>
+ * If the stream supports {@link InputStream#mark(int) mark}, headers are read
+ * in bulk and the stream is reset to the end of the header section
+ * afterwards, otherwise byte by byte. The header section is limited to
+ * {@link LightHttpConfig#getMaxHeaderSize()} bytes and
+ * {@link LightHttpConfig#getHeaderMaxCount()} lines. Folded lines are
+ * joined with spaces.
+ * <p>
+ * Not thread-safe, use one parser per connection.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+final class HttpHeaderParser {
+
+  // states
+  private static final int LINE_START = 0;
+  private static final int NAME = 1;
+  private static final int VALUE_START = 2;
+  private static final int VALUE = 3;
+  private static final int LINE_CR = 4;
+  private static final int END_CR = 5;
+
+  private static final boolean[] TOKEN = new boolean[128];
+
+  private static final int KNOWN_MASK = 255;
+  private static final String[] KNOWN_NAMES = new String[KNOWN_MASK + 1];
+  private static final int[] KNOWN_HASHES = new int[KNOWN_MASK + 1];
+
+  static {
+    for (char c = '0'; c <= '9'; c++) TOKEN[c] = true;
+    for (char c = 'a'; c <= 'z'; c++) TOKEN[c] = true;
+    for (char c = 'A'; c <= 'Z'; c++) TOKEN[c] = true;
+    for (char c : "!#$%&'*+-.^_`|~".toCharArray()) TOKEN[c] = true;
+
+    String[] names = {
+            HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_CHARSET, HttpHeaders.ACCEPT_ENCODING,
+            HttpHeaders.ACCEPT_LANGUAGE, HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS,
+            HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, HttpHeaders.AUTHORIZATION,
+            HttpHeaders.CACHE_CONTROL, HttpHeaders.CONNECTION, HttpHeaders.CONTENT_DISPOSITION,
+            HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LANGUAGE, HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.COOKIE, HttpHeaders.DATE, HttpHeaders.EXPECT,
+            HttpHeaders.FROM, HttpHeaders.HOST, HttpHeaders.IF_MATCH, HttpHeaders.IF_MODIFIED_SINCE,
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_RANGE, HttpHeaders.IF_UNMODIFIED_SINCE,
+            HttpHeaders.MAX_FORWARDS, HttpHeaders.ORIGIN, HttpHeaders.PRAGMA,
+            HttpHeaders.PROXY_AUTHORIZATION, HttpHeaders.RANGE, HttpHeaders.REFERER, HttpHeaders.TE,
+            HttpHeaders.TRAILER, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE,
+            HttpHeaders.USER_AGENT, HttpHeaders.VIA, HttpHeaders.WARNING, HttpHeaders.X_REQUESTED_WITH,
+            HttpHeaders.SEC_WEBSOCKET_KEY, HttpHeaders.SEC_WEBSOCKET_VERSION,
+            HttpHeaders.SEC_WEBSOCKET_PROTOCOL, HttpHeaders.SEC_WEBSOCKET_EXTENSIONS,
+            "Keep-Alive", "DNT", "Upgrade-Insecure-Requests", "X-Forwarded-For",
+            "X-Forwarded-Host", "X-Forwarded-Port", "X-Forwarded-Proto", "X-Real-IP",
+            "Sec-Fetch-Dest", "Sec-Fetch-Mode", "Sec-Fetch-Site", "Sec-Fetch-User"
+    };
+    for (String name : names) {
+      int hash = 0;
+      for (int i = 0; i < name.length(); i++) {
+        hash = 31 * hash + (name.charAt(i) | 0x20);
+      }
+      int index = spread(hash);
+      while (KNOWN_NAMES[index] != null) {
+        index = (index + 1) & KNOWN_MASK;
+      }
+      KNOWN_NAMES[index] = name;
+      KNOWN_HASHES[index] = hash;
+    }
+  }
+
+  private final LightHttpConfig config;
+
+  private byte[] buffer = new byte[0]; // allocated on first use
+
+  /** name start, name end, value start, value end per header */
+  private int[] slices = new int[16 * 4];
+
+  private String[] names = new String[16];
+
+  // scan state
+
+  private int state;
+  private int count;
+  private int nameStart;
+  private int nameEnd;
+  private int nameHash;
+  private int valueStart;
+  private int valueEnd; // after the last non-whitespace byte
+  private boolean folding;
+
+  HttpHeaderParser(LightHttpConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Reads the headers following the request line
+   *
+   * @param in the stream positioned at the first header line,
+   * which is positioned after the header section on return
+   * @return the read headers (possibly empty, if none exist)
+   * @throws IOException if an IO error occurs or the headers are malformed
+   * or exceed the configured limits
+   */
+  public HttpHeaders parse(InputStream in) throws IOException {
+    this.state = LINE_START;
+    this.count = 0;
+    this.folding = false;
+
+    int maxSize = config.getMaxHeaderSize();
+    byte[] buffer = this.buffer;
+    int limit = 0;
+    int end;
+    if (in.markSupported()) {
+      in.mark(maxSize);
+      while (true) {
+        buffer = ensureCapacity(buffer, limit, maxSize);
+        int read = in.read(buffer, limit, Math.min(buffer.length, maxSize) - limit);
+        if (read == -1) {
+          end = endOfStream(limit);
+          break;
+        }
+        end = scan(buffer, limit, limit + read);
+        limit += read;
+        if (end >= 0) {
+          break;
+        }
+      }
+      // give back what has been read ahead
+      in.reset();
+      in.skipNBytes(end);
+    }
+    else {
+      do {
+        buffer = ensureCapacity(buffer, limit, maxSize);
+        int b = in.read();
+        if (b == -1) {
+          end = endOfStream(limit);
+          break;
+        }
+        buffer[limit] = (byte) b;
+        end = scan(buffer, limit, ++limit);
+      }
+      while (end < 0);
+    }
+
+    int count = this.count;
+    return new LightHttpHeaders(Arrays.copyOf(buffer, end),
+            Arrays.copyOf(slices, count * 4), Arrays.copyOf(names, count), count);
+  }
+
+  private byte[] ensureCapacity(byte[] buffer, int limit, int maxSize) throws IOException {
+    if (limit >= maxSize) {
+      throw new IOException("request headers too large");
+    }
+    if (limit == buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.min(maxSize, Math.max(1024, limit * 2)));
+      this.buffer = buffer;
+    }
+    return buffer;
+  }
+
+  private int endOfStream(int limit) throws EOFException {
+    if (state == LINE_START) {
+      return limit; // tolerate a missing empty line
+    }
+    throw new EOFException("unexpected end of stream");
+  }
+
+  /**
+   * Advances the state machine over the given bytes
+   *
+   * @return end of the header section, or {@code -1} if not reached yet
+   */
+  private int scan(byte[] buf, int from, int to) throws IOException {
+    for (int i = from; i < to; i++) {
+      byte b = buf[i];
+      switch (state) {
+        case LINE_START -> {
+          if (b == '\r') {
+            state = END_CR;
+          }
+          else if (b == '\n') {
+            return i + 1;
+          }
+          else if (b == ' ' || b == '\t') {
+            fold(buf, i);
+          }
+          else if (b > 0 && TOKEN[b]) {
+            nameStart = i;
+            nameHash = b | 0x20;
+            state = NAME;
+          }
+          else {
+            throw invalidHeader(buf, i);
+          }
+        }
+        case NAME -> {
+          if (b == ':') {
+            nameEnd = i;
+            state = VALUE_START;
+          }
+          else if (b > 0 && TOKEN[b]) {
+            nameHash = 31 * nameHash + (b | 0x20);
+          }
+          else {
+            throw invalidHeader(buf, nameStart);
+          }
+        }
+        case VALUE_START -> {
+          if (b == '\r' || b == '\n') {
+            valueStart = valueEnd = i;
+            endLine(buf, b);
+          }
+          else if (b != ' ' && b != '\t') {
+            valueStart = i;
+            valueEnd = i + 1;
+            state = VALUE;
+          }
+        }
+        case VALUE -> {
+          if (b == '\r' || b == '\n') {
+            endLine(buf, b);
+          }
+          else if (b != ' ' && b != '\t') {
+            valueEnd = i + 1;
+          }
+        }
+        case LINE_CR -> {
+          if (b != '\n') {
+            throw new IOException("invalid header line ending");
+          }
+          state = LINE_START;
+        }
+        case END_CR -> {
+          if (b != '\n') {
+            throw new IOException("invalid header line ending");
+          }
+          return i + 1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Continuation line (obsolete line folding), joins it to the previous value
+   */
+  private void fold(byte[] buf, int i) throws IOException {
+    if (count == 0) {
+      throw invalidHeader(buf, i);
+    }
+    int base = (count - 1) * 4;
+    valueStart = slices[base + 2];
+    valueEnd = slices[base + 3];
+    folding = true;
+    if (valueEnd > valueStart) {
+      // replace the line break by spaces, the value stays contiguous
+      Arrays.fill(buf, valueEnd, i, (byte) ' ');
+      state = VALUE;
+    }
+    else {
+      state = VALUE_START;
+    }
+  }
+
+  private void endLine(byte[] buf, byte b) throws IOException {
+    state = b == '\r' ? LINE_CR : LINE_START;
+    int count = this.count;
+    if (folding) {
+      folding = false;
+      int base = (count - 1) * 4;
+      slices[base + 2] = valueStart;
+      slices[base + 3] = valueEnd;
+      return;
+    }
+    if (count == config.getHeaderMaxCount()) {
+      throw new IOException("too many header lines");
+    }
+    if (count == names.length) {
+      names = Arrays.copyOf(names, count * 2);
+      slices = Arrays.copyOf(slices, count * 8);
+    }
+    int base = count * 4;
+    int[] slices = this.slices;
+    slices[base] = nameStart;
+    slices[base + 1] = nameEnd;
+    slices[base + 2] = valueStart;
+    slices[base + 3] = valueEnd;
+    names[count] = knownName(buf, nameStart, nameEnd, nameHash);
+    this.count = count + 1;
+  }
+
+  private static IOException invalidHeader(byte[] buf, int start) {
+    int end = start;
+    while (end < buf.length && buf[end] != '\r' && buf[end] != '\n' && end - start < 128) {
+      end++;
+    }
+    return new IOException("invalid header: \""
+            + new String(buf, start, end - start, StandardCharsets.ISO_8859_1) + "\"");
+  }
+
+  /**
+   * @return the well-known name, or {@code null} if the name is not known
+   */
+  static String knownName(byte[] buf, int start, int end, int hash) {
+    int index = spread(hash);
+    String name;
+    while ((name = KNOWN_NAMES[index]) != null) {
+      if (KNOWN_HASHES[index] == hash && equalsIgnoreCase(name, buf, start, end)) {
+        return name;
+      }
+      index = (index + 1) & KNOWN_MASK;
+    }
+    return null;
+  }
+
+  static boolean equalsIgnoreCase(String name, byte[] buf, int start, int end) {
+    int length = end - start;
+    if (name.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      int c = name.charAt(i);
+      int b = buf[start + i];
+      if (c != b && (c > 127 || toLowerCase(c) != toLowerCase(b))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int toLowerCase(int c) {
+    return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+  }
+
+  private static int spread(int hash) {
+    return (hash ^ (hash >>> 16)) & KNOWN_MASK;
+  }
+
+}
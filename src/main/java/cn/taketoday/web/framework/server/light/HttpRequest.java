@@ -38,8 +38,6 @@ import cn.taketoday.web.RequestContextUtils;
 import static cn.taketoday.web.framework.server.light.Utils.detectLocalHostName;
 import static cn.taketoday.web.framework.server.light.Utils.parseRange;
 import static cn.taketoday.web.framework.server.light.Utils.parseULong;
-import static cn.taketoday.web.framework.server.light.Utils.readHeaders;
-import static cn.taketoday.web.framework.server.light.Utils.readLine;
 import static cn.taketoday.web.framework.server.light.Utils.readToken;
 import static cn.taketoday.web.framework.server.light.Utils.split;
 import static cn.taketoday.web.framework.server.light.Utils.splitElements;
@@ -81,9 +79,22 @@ public final class HttpRequest {
    * @throws IOException if an error occurs
    */
   public HttpRequest(InputStream in, Socket socket, LightHttpConfig config) throws IOException {
+    this(in, socket, config, new HttpHeaderParser(config));
+  }
+
+  /**
+   * Constructs a Request from the data in the given input stream.
+   *
+   * @param in the input stream from which the request is read
+   * @param headerParser the parser of the connection
+   * @throws IOException if an error occurs
+   * @since 4.0
+   */
+  HttpRequest(InputStream in, Socket socket,
+              LightHttpConfig config, HttpHeaderParser headerParser) throws IOException {
     readRequestLine(in);
     this.socket = socket;
-    final HttpHeaders requestHeaders = readHeaders(in, config);
+    final HttpHeaders requestHeaders = headerParser.parse(in);
     this.requestHeaders = requestHeaders;
     // RFC2616#3.6 - if "chunked" is used, it must be the last one
     // RFC2616#4.4 - if non-identity Transfer-Encoding is present,
@@ -283,7 +294,8 @@ public final class HttpRequest {
     String line;
     try {
       do {
-        line = readLine(in);
+        // throws EOFException when the client closed a kept-alive connection
+        line = readToken(in, '\n', "ISO-8859-1", 8192);
       }
       while (line.length() == 0);
     }
@@ -21,13 +21,18 @@
 package cn.taketoday.web.framework.server.light;
 
 import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +43,7 @@ import cn.taketoday.http.DefaultHttpHeaders;
 import cn.taketoday.http.HttpHeaders;
 import cn.taketoday.http.HttpStatus;
 import cn.taketoday.http.MediaType;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.util.StringUtils;
 
 import static cn.taketoday.web.framework.server.light.Utils.escapeHTML;
@@ -66,6 +72,13 @@ public class HttpResponse implements Closeable {
 
   protected boolean committed = false;
 
+  /** the connection, if file regions may be transferred to it directly @since 4.0 */
+  @Nullable
+  private SocketChannel transferChannel;
+
+  /** the head has been sent without the body @since 4.0 */
+  private boolean streaming;
+
   /**
    * Constructs a Response whose output is written to the given stream.
    *
@@ -291,11 +304,136 @@ public class HttpResponse implements Closeable {
     return committed;
   }
 
+  /**
+   * Whether the head has been sent and the body is being written,
+   * see {@link #transferFrom(ResponseOutputBuffer, File, long, long)}
+   *
+   * @since 4.0
+   */
+  public boolean streaming() {
+    return streaming;
+  }
+
+  /**
+   * Set the connection to which files can be transferred directly,
+   * only a plain blocking connection which {@link #getOutputStream()}
+   * writes to qualifies
+   *
+   * @since 4.0
+   */
+  void setTransferChannel(@Nullable SocketChannel transferChannel) {
+    this.transferChannel = transferChannel;
+  }
+
+  /**
+   * Whether file regions can be transferred to the connection by the
+   * kernel ({@code sendfile}), which is not the case for TLS connections,
+   * NIO mode, or when the body is going to be compressed
+   *
+   * @since 4.0
+   */
+  public boolean supportsFileTransfer() {
+    if (transferChannel == null) {
+      return false;
+    }
+    if (committed) {
+      return streaming;
+    }
+    // the body has to be written as it is
+    return headers.getFirst(HttpHeaders.CONTENT_ENCODING) == null
+            && !headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+  }
+
+  /**
+   * Sends the head, if not sent yet, and the given buffered content,
+   * then transfers the given file region with {@link FileChannel#transferTo}
+   * straight to the connection.
+   * <p>
+   * The body is sent as it is if a {@code Content-Length} header has
+   * been set, otherwise chunked, or until the connection closes for
+   * HTTP/1.0 clients. Content written later is sent by
+   * {@link #writeStreamingContent(ResponseOutputBuffer)}.
+   *
+   * @param content buffered body content preceding the file region
+   * @throws UnsupportedOperationException if {@link #supportsFileTransfer()} returns {@code false}
+   * @since 4.0
+   */
+  public void transferFrom(@Nullable ResponseOutputBuffer content,
+                           File file, long position, long count) throws IOException {
+    SocketChannel channel = this.transferChannel;
+    if (!supportsFileTransfer() || channel == null) {
+      throw new UnsupportedOperationException("File transfer not supported");
+    }
+    if (!streaming) {
+      writeStreamingHead();
+    }
+    OutputStream body = getBody();
+    if (body == null) {
+      return; // discarded
+    }
+    writeStreamingContent(content);
+    if (count <= 0) {
+      return;
+    }
+    if (body instanceof ChunkedOutputStream chunked) {
+      chunked.initChunk(count);
+    }
+    body.flush(); // everything before the file region must be on the wire
+    try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long remaining = count;
+      while (remaining > 0) {
+        long transferred = fileChannel.transferTo(position, remaining, channel);
+        if (transferred <= 0 && position >= fileChannel.size()) {
+          // Content-Length or chunk size have been sent already
+          throw new EOFException("File '" + file + "' is shorter than expected");
+        }
+        position += transferred;
+        remaining -= transferred;
+      }
+    }
+  }
+
+  /**
+   * Sends content written after the head has been sent
+   *
+   * @since 4.0
+   */
+  public void writeStreamingContent(@Nullable ResponseOutputBuffer content) throws IOException {
+    if (content != null && content.size() > 0) {
+      OutputStream body = getBody();
+      if (body != null) {
+        content.writeTo(body);
+      }
+      content.reset();
+    }
+  }
+
+  private void writeStreamingHead() throws IOException {
+    committed = true;
+    streaming = true;
+    final OutputStream output = this.out;
+    writeStatusLine(output, status);
+    output.write(CRLF);
+
+    prepareCommonHeaders(headers);
+    if (!headers.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+      if (req != null && "HTTP/1.1".equals(req.getVersion())) {
+        headers.set(HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CHUNKED);
+      }
+      else {
+        headers.set(HttpHeaders.CONNECTION, HttpHeaders.CLOSE); // body ends when connection closes
+      }
+    }
+    writeHttpHeaders(headers, output);
+    output.write(CRLF);
+  }
+
   /**
    * reset status, headers, commit-status
    */
   public void reset() {
     committed = false;
+    streaming = false;
     status = HttpStatus.OK;
     headers.clear();
   }
@@ -359,6 +497,21 @@ public class HttpResponse implements Closeable {
   }
 
   protected void prepareHttpHeaders(HttpHeaders headers, ResponseOutputBuffer responseBody) {
+    prepareCommonHeaders(headers);
+    if (responseBody == null) {
+      headers.setContentLength(0);
+    }
+    else {
+      headers.setContentLength(responseBody.size());
+    }
+  }
+
+  /**
+   * Date, Server and Vary headers
+   *
+   * @since 4.0
+   */
+  protected void prepareCommonHeaders(HttpHeaders headers) {
     if (!headers.containsKey(HttpHeaders.DATE)) {
 //      final String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(LocalDateTime.now());
 //      headers.add(Constant.DATE, date);
@@ -371,12 +524,6 @@ public class HttpResponse implements Closeable {
       // RFC7231#7.1.4: Vary field should include headers
       headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING); // that are used in selecting representation
     }
-    if (responseBody == null) {
-      headers.setContentLength(0);
-    }
-    else {
-      headers.setContentLength(responseBody.size());
-    }
   }
 
   /**
@@ -31,6 +31,13 @@ public class LightHttpConfig {
   private int port = -1;
 
   private int headerMaxCount = 100;
+
+  /**
+   * the maximum size of the request header section in bytes
+   *
+   * @since 4.0
+   */
+  private int maxHeaderSize = 64 * 1024;
   /**
    * user determine the response body initial size
    */
@@ -50,6 +57,45 @@ public class LightHttpConfig {
    */
   private int multipartBufferSize;
 
+  /**
+   * NIO mode: the maximum size of a request, head and body, which is
+   * buffered before dispatching
+   *
+   * @since 4.0
+   */
+  private int maxBufferedRequestSize = 16 * 1024 * 1024;
+
+  /**
+   * how connections are mapped onto threads
+   *
+   * @since 4.0
+   */
+  private ThreadModel threadModel = ThreadModel.PLATFORM;
+
+  /**
+   * {@link ThreadModel#BOUNDED} mode: the worker pool size
+   *
+   * @since 4.0
+   */
+  private int maxThreads = 200;
+
+  /**
+   * the maximum number of concurrently open connections,
+   * a value {@code <= 0} means unlimited. In {@link ThreadModel#BOUNDED}
+   * mode it is at most {@link #maxThreads}, since every open connection
+   * holds a worker
+   *
+   * @since 4.0
+   */
+  private int maxConnections = -1;
+
+  /**
+   * whether file responses are transferred by the kernel ({@code sendfile})
+   *
+   * @since 4.0
+   */
+  private boolean enableFileTransfer = true;
+
   public void setMultipartConfig(MultipartConfiguration multipartConfig) {
     this.multipartConfig = multipartConfig;
   }
@@ -73,11 +119,27 @@ public class LightHttpConfig {
   /**
    * @return max header count
    * @see Utils#readHeaders(InputStream, LightHttpConfig)
+   * @see HttpHeaderParser
    */
   public int getHeaderMaxCount() {
     return headerMaxCount;
   }
 
+  /**
+   * Set the maximum size of the request header section in bytes,
+   * larger requests are rejected
+   *
+   * @see HttpHeaderParser
+   * @since 4.0
+   */
+  public void setMaxHeaderSize(int maxHeaderSize) {
+    this.maxHeaderSize = maxHeaderSize;
+  }
+
+  public int getMaxHeaderSize() {
+    return maxHeaderSize;
+  }
+
   public void setPort(int port) {
     this.port = port;
   }
@@ -109,10 +171,87 @@ public class LightHttpConfig {
   public void setMultipartBufferSize(int multipartBufferSize) {
     this.multipartBufferSize = multipartBufferSize;
   }
+
+  /**
+   * Set the maximum size of a request, head and body, which is buffered
+   * before dispatching in NIO mode, larger requests are rejected with
+   * {@code 413 Payload Too Large}
+   *
+   * @see NioHTTPServer
+   * @since 4.0
+   */
+  public void setMaxBufferedRequestSize(int maxBufferedRequestSize) {
+    this.maxBufferedRequestSize = maxBufferedRequestSize;
+  }
+
+  public int getMaxBufferedRequestSize() {
+    return maxBufferedRequestSize;
+  }
   // static
 
   public static LightHttpConfig defaultConfig() {
     return new LightHttpConfig();
   }
 
+
+  public void setThreadModel(ThreadModel threadModel) {
+    this.threadModel = threadModel;
+  }
+
+  public ThreadModel getThreadModel() {
+    return threadModel;
+  }
+
+  public void setMaxThreads(int maxThreads) {
+    this.maxThreads = maxThreads;
+  }
+
+  public int getMaxThreads() {
+    return maxThreads;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Set whether file responses on plain connections are transferred with
+   * {@link java.nio.channels.FileChannel#transferTo} instead of being
+   * buffered, requires the default server socket factory
+   *
+   * @since 4.0
+   */
+  public void setEnableFileTransfer(boolean enableFileTransfer) {
+    this.enableFileTransfer = enableFileTransfer;
+  }
+
+  public boolean isEnableFileTransfer() {
+    return enableFileTransfer;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public enum ThreadModel {
+
+    /** an unbounded, cached pool of platform threads */
+    PLATFORM,
+
+    /**
+     * a fixed number of platform threads, see {@link LightHttpConfig#getMaxThreads()},
+     * which also caps the open connections
+     */
+    BOUNDED,
+
+    /**
+     * one virtual thread per connection, requires a JDK with virtual
+     * threads and falls back to {@link #PLATFORM} otherwise
+     */
+    VIRTUAL
+  }
+
 }
@@ -0,0 +1,257 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cn.taketoday.http.DefaultHttpHeaders;
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.lang.Nullable;
+
+/**
+ * Request headers parsed by {@link HttpHeaderParser}, backed by the raw
+ * header bytes.
+ * <p>
+ * Lookups by name scan the parsed slices and decode a value only when it
+ * is asked for. Any other operation, like iterating or modifying the
+ * headers, copies them into a {@link DefaultHttpHeaders} once, which backs
+ * this instance from then on.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+final class LightHttpHeaders extends HttpHeaders {
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private final byte[] data;
+
+  /** name start, name end, value start, value end per header */
+  private final int[] slices;
+
+  /** names, well-known ones are resolved while parsing, others lazily */
+  private final String[] names;
+
+  private final int count;
+
+  @Nullable
+  private String[] values;
+
+  @Nullable
+  private DefaultHttpHeaders headers;
+
+  LightHttpHeaders(byte[] data, int[] slices, String[] names, int count) {
+    this.data = data;
+    this.slices = slices;
+    this.names = names;
+    this.count = count;
+  }
+
+  @Nullable
+  @Override
+  public String getFirst(String headerName) {
+    if (headers != null) {
+      return headers.getFirst(headerName);
+    }
+    int index = indexOf(headerName, 0);
+    return index < 0 ? null : value(index);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The returned list is unmodifiable
+   */
+  @Nullable
+  @Override
+  public List<String> get(Object headerName) {
+    if (headers != null) {
+      return headers.get(headerName);
+    }
+    int index = indexOf(headerName, 0);
+    if (index < 0) {
+      return null;
+    }
+    int next = indexOf(headerName, index + 1);
+    if (next < 0) {
+      return Collections.singletonList(value(index));
+    }
+    ArrayList<String> values = new ArrayList<>(2);
+    values.add(value(index));
+    do {
+      values.add(value(next));
+      next = indexOf(headerName, next + 1);
+    }
+    while (next >= 0);
+    return Collections.unmodifiableList(values);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (headers != null) {
+      return headers.containsKey(key);
+    }
+    return indexOf(key, 0) >= 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (headers != null) {
+      return headers.isEmpty();
+    }
+    return count == 0;
+  }
+
+  // materializing operations
+
+  @Override
+  public void add(String headerName, @Nullable String headerValue) {
+    headers().add(headerName, headerValue);
+  }
+
+  @Override
+  public void set(String headerName, @Nullable String headerValue) {
+    headers().set(headerName, headerValue);
+  }
+
+  @Nullable
+  @Override
+  public List<String> remove(Object headerName) {
+    return headers().remove(headerName);
+  }
+
+  @Override
+  public int size() {
+    return headers().size();
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    return headers().containsValue(value);
+  }
+
+  @Override
+  public List<String> put(String key, List<String> value) {
+    return headers().put(key, value);
+  }
+
+  @Override
+  public void putAll(Map<? extends String, ? extends List<String>> m) {
+    headers().putAll(m);
+  }
+
+  @Override
+  public void clear() {
+    headers().clear();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return headers().keySet();
+  }
+
+  @Override
+  public Collection<List<String>> values() {
+    return headers().values();
+  }
+
+  @Override
+  public Set<Entry<String, List<String>>> entrySet() {
+    return headers().entrySet();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other instanceof LightHttpHeaders lightHeaders) {
+      other = lightHeaders.headers();
+    }
+    return headers().equals(other);
+  }
+
+  @Override
+  public int hashCode() {
+    return headers().hashCode();
+  }
+
+  private DefaultHttpHeaders headers() {
+    DefaultHttpHeaders headers = this.headers;
+    if (headers == null) {
+      headers = new DefaultHttpHeaders();
+      for (int i = 0; i < count; i++) {
+        headers.add(name(i), value(i));
+      }
+      this.headers = headers;
+    }
+    return headers;
+  }
+
+  // slices
+
+  private int indexOf(Object key, int from) {
+    if (key instanceof String name) {
+      for (int i = from; i < count; i++) {
+        String known = names[i];
+        if (known != null
+                ? known == name || known.equalsIgnoreCase(name)
+                : HttpHeaderParser.equalsIgnoreCase(name, data, slices[i * 4], slices[i * 4 + 1])) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private String name(int index) {
+    String name = names[index];
+    if (name == null) {
+      int start = slices[index * 4];
+      name = new String(data, start, slices[index * 4 + 1] - start, StandardCharsets.ISO_8859_1);
+      names[index] = name;
+    }
+    return name;
+  }
+
+  private String value(int index) {
+    String[] values = this.values;
+    if (values == null) {
+      values = new String[count];
+      this.values = values;
+    }
+    String value = values[index];
+    if (value == null) {
+      int start = slices[index * 4 + 2];
+      value = new String(data, start, slices[index * 4 + 3] - start, StandardCharsets.ISO_8859_1);
+      values[index] = value;
+    }
+    return value;
+  }
+
+}
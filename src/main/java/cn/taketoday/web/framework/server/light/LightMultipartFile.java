@@ -20,52 +20,47 @@
 
 package cn.taketoday.web.framework.server.light;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import cn.taketoday.http.ContentDisposition;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.web.multipart.AbstractMultipartFile;
 
 /**
+ * A file part, held in memory or, when large, in a temporary file
+ * which is deleted after the request unless it has been saved
+ *
  * @author TODAY 2021/4/16 21:15
+ * @see MultipartIterator#obtainNext(LightHttpConfig, cn.taketoday.web.multipart.MultipartConfiguration)
  */
 public final class LightMultipartFile extends AbstractMultipartFile implements RequestPart {
 
-  private final int partSize;
+  private final long partSize;
   protected ContentDisposition contentDisposition;
 
   private String contentType;
 
+  @Nullable
   private File tempFile;
-  private InputStream inputStream;
 
-  LightMultipartFile(File tempFile, ContentDisposition contentDisposition, int partSize) {
-    this.contentDisposition = contentDisposition;
-    this.partSize = partSize;
-    this.tempFile = tempFile;
-  }
+  /** destination of a moved temporary file */
+  @Nullable
+  private File savedFile;
 
-  LightMultipartFile(File tempFile, ContentDisposition contentDisposition, String contentType, int partSize) {
+  LightMultipartFile(File tempFile, ContentDisposition contentDisposition, String contentType, long partSize) {
     this.partSize = partSize;
     this.tempFile = tempFile;
     this.contentType = contentType;
     this.contentDisposition = contentDisposition;
   }
 
-  LightMultipartFile(byte[] bytes, ContentDisposition contentDisposition, int partSize) {
-    this.partSize = partSize;
-    this.cachedBytes = bytes;
-    this.contentDisposition = contentDisposition;
-  }
-
-  public LightMultipartFile(byte[] bytes, ContentDisposition contentDisposition, String contentType, int partSize) {
+  public LightMultipartFile(byte[] bytes, ContentDisposition contentDisposition, String contentType, long partSize) {
     this.partSize = partSize;
     this.cachedBytes = bytes;
     this.contentType = contentType;
@@ -96,24 +91,30 @@ public final class LightMultipartFile extends AbstractMultipartFile implements R
     return contentDisposition;
   }
 
-  public void setTempFile(File tempFile) {
-    this.tempFile = tempFile;
+  /**
+   * Whether the content has been written to a temporary file
+   *
+   * @since 4.0
+   */
+  public boolean isInTempFile() {
+    return tempFile != null;
   }
 
   @Override
   public void saveInternal(File dest) throws IOException {
-    final InputStream inputStream = this.inputStream;
-    if (inputStream != null) {
-      if (!tempFile.renameTo(dest)) {
-        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(tempFile));
-                BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(dest))) {
-          Utils.copy(in, out);
-        }
-      }
+    final File tempFile = this.tempFile;
+    if (tempFile != null) {
+      Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      this.tempFile = null;
+      this.cachedBytes = null;
+      this.savedFile = dest; // content is read from there from now on
+    }
+    else if (savedFile != null) {
+      Files.copy(savedFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
     else {
       try (FileOutputStream fout = new FileOutputStream(dest)) {
-        fout.write(getBytes());
+        fout.write(cachedBytes);
       }
     }
   }
@@ -123,15 +124,9 @@ public final class LightMultipartFile extends AbstractMultipartFile implements R
     return partSize == 0L;
   }
 
-  protected void setCachedBytes(byte[] cachedBytes) {
-    this.cachedBytes = cachedBytes;
-  }
-
   @Override
   protected byte[] doGetBytes() throws IOException {
-    byte[] cachedBytes = new byte[partSize];
-    Utils.readBytes(inputStream, cachedBytes);
-    return cachedBytes;
+    return Files.readAllBytes(contentFile().toPath());
   }
 
   @Override
@@ -141,19 +136,27 @@ public final class LightMultipartFile extends AbstractMultipartFile implements R
 
   @Override
   public void delete() throws IOException {
+    final File tempFile = this.tempFile;
     if (tempFile != null) {
-      Files.delete(tempFile.toPath());
+      this.tempFile = null;
+      Files.deleteIfExists(tempFile.toPath());
     }
   }
 
   @Override
-  public InputStream getInputStream() {
-    InputStream inputStream = this.inputStream;
-    if (inputStream == null) {
-      inputStream = new ByteArrayInputStream(cachedBytes);
-      this.inputStream = inputStream;
+  public InputStream getInputStream() throws IOException {
+    if (cachedBytes != null) {
+      return new ByteArrayInputStream(cachedBytes);
+    }
+    return Files.newInputStream(contentFile().toPath());
+  }
+
+  private File contentFile() {
+    final File file = tempFile != null ? tempFile : savedFile;
+    if (file == null) {
+      throw new IllegalStateException("Content of '" + getFileName() + "' has been deleted");
     }
-    return inputStream;
+    return file;
   }
 
 }
@@ -20,6 +20,7 @@
 
 package cn.taketoday.web.framework.server.light;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -55,6 +56,9 @@ public class LightRequestContext extends RequestContext {
   private final LightHttpConfig config;
   private List<RequestPart> requestParts;
 
+  /** request body is being iterated by the handler @since 4.0 */
+  private MultipartIterator multipartIterator;
+
   public LightRequestContext(WebApplicationContext webApplicationContext, HttpRequest request, HttpResponse response, LightHttpConfig config) {
     super(webApplicationContext);
     this.config = config;
@@ -103,10 +107,12 @@ public class LightRequestContext extends RequestContext {
   protected Map<String, String[]> doGetParameters() {
     try {
       final MultiValueMap<String, String> parameters = request.getParameters();
-      // form-data
-      for (final RequestPart requestPart : getRequestParts()) {
-        if (requestPart instanceof FieldRequestPart) {
-          parameters.add(requestPart.getName(), ((FieldRequestPart) requestPart).getStringValue());
+      // form-data, unless the handler iterates the parts itself
+      if (multipartIterator == null && isMultipartRequest()) {
+        for (final RequestPart requestPart : getRequestParts()) {
+          if (requestPart instanceof FieldRequestPart) {
+            parameters.add(requestPart.getName(), ((FieldRequestPart) requestPart).getStringValue());
+          }
         }
       }
       return parameters.toArrayMap(String[]::new);
@@ -162,35 +168,97 @@ public class LightRequestContext extends RequestContext {
     return ret;
   }
 
+  /**
+   * Returns an iterator over the parts of this multipart request, which
+   * are read from the request body while the handler iterates them.
+   * So large uploads can be processed without buffering them, in memory
+   * or on disk. The content of a part is valid until the next part
+   * is requested.
+   * <p>
+   * Once the parts are being iterated, multipart files and form parameters
+   * are not available from this context, and vice versa.
+   *
+   * @throws cn.taketoday.web.resolver.NotMultipartRequestException if this request is not of type multipart/form-data
+   * @throws IllegalStateException if the request body has been parsed already
+   * @since 4.0
+   */
+  public MultipartIterator getMultipartIterator() {
+    if (multipartIterator == null) {
+      if (requestParts != null) {
+        throw new IllegalStateException("Multipart request has been parsed already");
+      }
+      multipartIterator = createMultipartIterator();
+    }
+    return multipartIterator;
+  }
+
+  private boolean isMultipartRequest() {
+    final String contentType = getContentType();
+    return contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, 10);
+  }
+
+  private MultipartIterator createMultipartIterator() {
+    final MultipartConfiguration multipartConfig = config.getMultipartConfig();
+    // reject early when the size is known, otherwise while reading
+    final long contentLength = request.getHeaders().getContentLength();
+    if (contentLength > multipartConfig.getMaxRequestSize().toBytes()) {
+      throw new FileSizeExceededException(multipartConfig.getMaxRequestSize(), null)
+              .setActual(DataSize.of(contentLength));
+    }
+    return new MultipartIterator(request, config, multipartConfig);
+  }
+
   /**
    * @throws FileSizeExceededException
    */
   private List<RequestPart> getRequestParts() {
     if (requestParts == null) {
+      if (multipartIterator != null) {
+        throw new IllegalStateException("Multipart request is being iterated");
+      }
+      final ArrayList<RequestPart> parts = new ArrayList<>();
       try {
-        final long contentLength = getContentLength();
-        final LightHttpConfig config = this.config;
-        final MultipartConfiguration multipartConfig = config.getMultipartConfig();
-        if (contentLength > multipartConfig.getMaxRequestSize().toBytes()) {
-          throw new FileSizeExceededException(multipartConfig.getMaxRequestSize(), null)
-                  .setActual(DataSize.of(contentLength));
-        }
-
-        final MultipartIterator multipartIterator = new MultipartIterator(request);
+        final MultipartIterator multipartIterator = createMultipartIterator();
         final MultipartInputStream inputStream = multipartIterator.getInputStream();
-        final ArrayList<RequestPart> parts = new ArrayList<>();
         while (multipartIterator.hasNext(inputStream)) {
-          parts.add(multipartIterator.obtainNext(config, multipartConfig));
+          parts.add(multipartIterator.obtainNext(config, config.getMultipartConfig()));
         }
-        requestParts = parts;
       }
       catch (IOException e) {
+        deleteTempFiles(parts);
         throw new MultipartParsingException("multipart read failed", e);
       }
+      catch (RuntimeException e) {
+        deleteTempFiles(parts);
+        throw e;
+      }
+      requestParts = parts;
     }
     return requestParts;
   }
 
+  /**
+   * Deletes temporary files of multipart files which have not been saved
+   *
+   * @since 4.0
+   */
+  void cleanupMultipart() {
+    if (requestParts != null) {
+      deleteTempFiles(requestParts);
+    }
+  }
+
+  private static void deleteTempFiles(List<RequestPart> parts) {
+    for (final RequestPart requestPart : parts) {
+      if (requestPart instanceof LightMultipartFile multipartFile) {
+        try {
+          multipartFile.delete();
+        }
+        catch (IOException ignore) { }
+      }
+    }
+  }
+
   @Override
   public String getContentType() {
     return request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
@@ -255,6 +323,23 @@ public class LightRequestContext extends RequestContext {
     return responseBody;
   }
 
+  /**
+   * Plain connections only, files are not transferred
+   * through TLS or in NIO mode
+   */
+  @Override
+  public boolean supportsFileTransfer() {
+    return response.supportsFileTransfer();
+  }
+
+  @Override
+  public void transferFrom(File file, long position, long count) throws IOException {
+    if (writer != null) {
+      writer.flush(); // flush to responseBody
+    }
+    response.transferFrom(responseBody, file, position, count);
+  }
+
   @Override
   public <T> T nativeRequest() {
     return (T) request;
@@ -301,6 +386,13 @@ public class LightRequestContext extends RequestContext {
     if (!isCommitted()) {
       send();
     }
+    else if (response.streaming()) {
+      if (writer != null) {
+        writer.flush();
+      }
+      // content written after a file transfer
+      response.writeStreamingContent(responseBody);
+    }
   }
 
   public void send() throws IOException {
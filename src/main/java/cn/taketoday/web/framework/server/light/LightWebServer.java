@@ -37,6 +37,9 @@ public class LightWebServer extends AbstractWebServer {
   protected int socketTimeout = 10000;
   protected Executor executor;
 
+  /** handle connections on a selector @since 4.0 */
+  private boolean enableNio = false;
+
   private DispatcherHandler httpHandler;
   private LightHttpConfig config;
 
@@ -83,7 +86,7 @@ public class LightWebServer extends AbstractWebServer {
   @Override
   protected void initializeContext() {
     super.initializeContext();
-    HTTPServer server = new HTTPServer(getPort());
+    HTTPServer server = enableNio ? new NioHTTPServer(getPort()) : new HTTPServer(getPort());
 
     server.setPort(getPort());
     server.setExecutor(executor);
@@ -110,6 +113,21 @@ public class LightWebServer extends AbstractWebServer {
     }
   }
 
+  /**
+   * Set whether connections are handled on a selector, so idle keep-alive
+   * connections cost no threads, instead of a thread per connection
+   *
+   * @see NioHTTPServer
+   * @since 4.0
+   */
+  public void setEnableNio(boolean enableNio) {
+    this.enableNio = enableNio;
+  }
+
+  public boolean isEnableNio() {
+    return enableNio;
+  }
+
   @Override
   public void start() {
     try {
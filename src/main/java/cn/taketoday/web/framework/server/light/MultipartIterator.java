@@ -20,16 +20,21 @@
 
 package cn.taketoday.web.framework.server.light;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
 
 import cn.taketoday.http.ContentDisposition;
 import cn.taketoday.http.FileSizeExceededException;
 import cn.taketoday.http.HttpHeaders;
-import cn.taketoday.util.DataSize;
 import cn.taketoday.http.MediaType;
-import cn.taketoday.util.StringUtils;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.util.DataSize;
 import cn.taketoday.web.multipart.MultipartConfiguration;
 import cn.taketoday.web.resolver.MultipartParsingException;
 import cn.taketoday.web.resolver.NotMultipartRequestException;
@@ -48,6 +53,13 @@ import cn.taketoday.web.resolver.NotMultipartRequestException;
  * <li>Iterate over the form {@link RequestPart}s, processing each named field as appropriate -
  *     for the file input field, read the uploaded file using the body input stream.
  * </ol>
+ * <p>
+ * Parts are parsed as they arrive: {@link #next()} returns a part whose content
+ * is read straight from the request body, {@link #obtainNext(LightHttpConfig, MultipartConfiguration)}
+ * reads the whole part, keeping fields and small files in memory and spilling
+ * larger files to a temporary file. The total size of the body is limited to
+ * {@link MultipartConfiguration#getMaxRequestSize()}, every part to
+ * {@link MultipartConfiguration#getMaxFileSize()}.
  *
  * @author TODAY 2021/4/13 10:53
  */
@@ -56,22 +68,41 @@ public class MultipartIterator {
   protected final MultipartInputStream inputStream;
   protected boolean hasNext;
 
+  private final LightHttpConfig config;
+
+  private final MultipartConfiguration multipartConfig;
+
   /**
    * Creates a new MultipartIterator from the given request.
    *
    * @param req the multipart/form-data request
    */
   public MultipartIterator(final HttpRequest req) {
+    this(req, LightHttpConfig.defaultConfig(), new MultipartConfiguration());
+  }
+
+  /**
+   * Creates a new MultipartIterator from the given request.
+   *
+   * @param req the multipart/form-data request
+   * @param config limits of part headers and in-memory parts
+   * @param multipartConfig size limits and temporary file location
+   * @since 4.0
+   */
+  public MultipartIterator(HttpRequest req, LightHttpConfig config, MultipartConfiguration multipartConfig) {
     final HttpHeaders headers = req.getHeaders();
     final MediaType contentType = headers.getContentType();
-    if (!contentType.isCompatibleWith(MediaType.MULTIPART_FORM_DATA)) {
+    if (contentType == null || !contentType.isCompatibleWith(MediaType.MULTIPART_FORM_DATA)) {
       throw new NotMultipartRequestException("Content-Type is not multipart/form-data");
     }
     final String boundary = contentType.getParameter("boundary"); // should be US-ASCII
     if (boundary == null) {
       throw new MultipartParsingException("Content-Type is missing boundary");
     }
-    inputStream = new MultipartInputStream(req.getBody(), boundary.getBytes()); // todo charset
+    this.config = config;
+    this.multipartConfig = multipartConfig;
+    InputStream body = new SizeLimitedInputStream(req.getBody(), multipartConfig.getMaxRequestSize());
+    this.inputStream = new MultipartInputStream(body, boundary.getBytes()); // todo charset
   }
 
   public boolean hasNext() throws IOException {
@@ -87,71 +118,158 @@ public class MultipartIterator {
   }
 
   /**
-   * @throws cn.taketoday.web.resolver.NotMultipartRequestException if this request is not of type multipart/form-data
-   * @throws cn.taketoday.web.resolver.MultipartParsingException multipart parse failed
+   * Reads the headers of the next part, its content is read from the
+   * request body as it arrives. The content that has not been read when
+   * {@link #hasNext()} is called again is skipped.
+   *
+   * @throws NoSuchElementException if there are no more parts
+   * @throws FileSizeExceededException if the request body or the part is too large
+   * @see #hasNext()
+   * @since 4.0
    */
-  public RequestPart obtainNext(LightHttpConfig config, MultipartConfiguration multipartConfig) throws IOException {
+  public StreamingRequestPart next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more parts");
+    }
     hasNext = false;
-    // 先解析 header
-    final String contentDispositionString = Utils.readLine(inputStream); // Content-Disposition
-    final String contentType = Utils.readLine(inputStream); // Content-Type
-
-//    final HttpHeaders httpHeaders = Utils.readHeaders(inputStream, config);
     final MultipartInputStream inputStream = this.inputStream;
-    final int partSize = inputStream.tail - inputStream.head;
-    final DataSize maxFileSize = multipartConfig.getMaxFileSize();
+    final HttpHeaders headers = Utils.readHeaders(inputStream, config);
+    final String contentDisposition = headers.getFirst(HttpHeaders.CONTENT_DISPOSITION);
+    if (contentDisposition == null) {
+      throw new MultipartParsingException("Part is missing Content-Disposition");
+    }
+    return new StreamingRequestPart(ContentDisposition.parse(contentDisposition), headers,
+            new SizeLimitedInputStream(inputStream, multipartConfig.getMaxFileSize()));
+  }
 
-    if (partSize > maxFileSize.toBytes()) {
-      throw new FileSizeExceededException(maxFileSize, null)
-              .setActual(DataSize.of(partSize));
+  /**
+   * Reads the next part entirely: fields and files up to
+   * {@link LightHttpConfig#getMaxMultipartInMemSize()} are kept in memory,
+   * larger files are written to a temporary file in
+   * {@link MultipartConfiguration#getLocation()} while they arrive.
+   *
+   * @throws cn.taketoday.web.resolver.NotMultipartRequestException if this request is not of type multipart/form-data
+   * @throws cn.taketoday.web.resolver.MultipartParsingException multipart parse failed
+   * @throws FileSizeExceededException if the request body or the part is too large
+   */
+  public RequestPart obtainNext(LightHttpConfig config, MultipartConfiguration multipartConfig) throws IOException {
+    final StreamingRequestPart part = next();
+    if (part.isFile()) {
+      return readFile(part, config, multipartConfig);
+    }
+    try (InputStream in = part.getInputStream()) {
+      return new FieldRequestPart(in.readAllBytes(), part.getName());
     }
+  }
 
-    final ContentDisposition contentDisposition = ContentDisposition.parse(contentDispositionString);
-
-//    if (httpHeaders.containsKey(Constant.CONTENT_TYPE)) {
-    if (StringUtils.isNotEmpty(contentType)) {
-      if (partSize > config.getMaxMultipartInMemSize()) {
-        final String tempLocation = multipartConfig.getLocation();
-        final File tempFileDir = new File(tempLocation);
-        final String randomString = StringUtils.generateRandomString(10);
-        final File tempFile = new File(tempFileDir, randomString);
-        // save to temp file
-        try (final FileOutputStream fileOutput = new FileOutputStream(tempFile)) {
-          final int bufferSize = config.getMultipartBufferSize();
-          final int readTimes = partSize / bufferSize; // readTimes > 1
-          if (readTimes == 0) {
-            // part size 太小了 直接一次性读完
-            byte[] buffer = Utils.readBytes(inputStream, partSize);
-            fileOutput.write(buffer, 0, partSize);
-            final LightMultipartFile multipartFile = new LightMultipartFile(tempFile, contentDisposition, contentType, partSize);
-            multipartFile.setCachedBytes(buffer);
-            return multipartFile;
-          }
-          else {
-            // 分次读取
-            byte[] buffer = new byte[bufferSize];
-            int bytesRead = 0;
-            for (int i = 0; i < readTimes; i++) {
-              bytesRead += inputStream.read(buffer, 0, bufferSize);
-              fileOutput.write(buffer, 0, bytesRead);
-            }
-            // 读取剩余字节
-            buffer = Utils.readBytes(inputStream, partSize - bytesRead);
-            fileOutput.write(buffer);
-            return new LightMultipartFile(tempFile, contentDisposition, contentType, partSize);
+  private static LightMultipartFile readFile(StreamingRequestPart part,
+          LightHttpConfig config, MultipartConfiguration multipartConfig) throws IOException {
+    final int threshold = config.getMaxMultipartInMemSize();
+    final int bufferSize = config.getMultipartBufferSize();
+    final byte[] buffer = new byte[bufferSize > 0 ? bufferSize : 8192];
+    ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(Math.max(threshold, 32), buffer.length));
+    Path tempFile = null;
+    OutputStream fileOutput = null;
+    long size = 0;
+    try (InputStream in = part.getInputStream()) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        size += read;
+        if (fileOutput == null && size > threshold) {
+          // too large for memory, continue on disk
+          Path location = Path.of(multipartConfig.getLocation());
+          Files.createDirectories(location);
+          tempFile = Files.createTempFile(location, "upload_", ".tmp");
+          fileOutput = Files.newOutputStream(tempFile);
+          memory.writeTo(fileOutput);
+          memory = null;
+        }
+        if (fileOutput != null) {
+          fileOutput.write(buffer, 0, read);
+        }
+        else {
+          memory.write(buffer, 0, read);
+        }
+      }
+      if (fileOutput != null) {
+        fileOutput.close();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      if (tempFile != null) {
+        try {
+          if (fileOutput != null) {
+            fileOutput.close();
           }
         }
+        finally {
+          Files.deleteIfExists(tempFile);
+        }
+      }
+      throw e;
+    }
+
+    if (tempFile != null) {
+      return new LightMultipartFile(tempFile.toFile(), part.getContentDisposition(), part.getContentType(), size);
+    }
+    return new LightMultipartFile(memory.toByteArray(), part.getContentDisposition(), part.getContentType(), size);
+  }
+
+  /**
+   * Throws {@link FileSizeExceededException} once more than the permitted
+   * bytes have been read, does not close the underlying stream
+   */
+  static final class SizeLimitedInputStream extends FilterInputStream {
+    private final DataSize permitted;
+    private final long limit;
+    private long count;
+
+    SizeLimitedInputStream(InputStream in, @Nullable DataSize permitted) {
+      super(in);
+      this.permitted = permitted;
+      this.limit = permitted != null ? permitted.toBytes() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      if (read > 0) {
+        count(read);
       }
-      else {
-        final byte[] bytes = Utils.readBytes(inputStream, partSize);
-        return new LightMultipartFile(bytes, contentDisposition, contentType, partSize); // inputStream memory
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    private void count(long read) {
+      count += read;
+      if (count > limit) {
+        throw new FileSizeExceededException(permitted, null)
+                .setActual(DataSize.of(count));
       }
     }
-    else {
-      final String name = contentDisposition.getName();
-      final byte[] bytes = Utils.readBytes(inputStream, partSize);
-      return new FieldRequestPart(bytes, name);
+
+    @Override
+    public boolean markSupported() {
+      return false;
     }
+
+    @Override
+    public void close() { }
   }
 
 }
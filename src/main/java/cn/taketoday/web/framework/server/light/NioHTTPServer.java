@@ -0,0 +1,749 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.HttpStatus;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.logging.Logger;
+import cn.taketoday.logging.LoggerFactory;
+
+/**
+ * {@link HTTPServer} which handles connections on a {@link Selector}
+ * instead of a thread per connection.
+ * <p>
+ * One selector thread accepts connections and reads requests incrementally
+ * through a reusable direct buffer. Only complete requests, head and body,
+ * are dispatched to the {@link #setExecutor executor}, and the response is
+ * written back by the selector thread. Idle keep-alive connections therefore
+ * cost no threads; they are closed after the {@link #setSocketTimeout socket timeout}.
+ * {@code Expect: 100-continue} is answered by the selector thread once the
+ * request head has been received.
+ * <p>
+ * Requests are buffered in memory up to
+ * {@link LightHttpConfig#getMaxBufferedRequestSize()}, responses are buffered
+ * as a whole. TLS is not supported.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see LightWebServer#setEnableNio(boolean)
+ * @since 4.0
+ */
+public class NioHTTPServer extends HTTPServer {
+  private static final Logger log = LoggerFactory.getLogger(NioHTTPServer.class);
+
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  private static final int INITIAL_REQUEST_BUFFER_SIZE = 4096;
+
+  private static final byte[] HTTP_1_1 = "HTTP/1.1".getBytes(StandardCharsets.ISO_8859_1);
+
+  private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+  @Nullable
+  private volatile ServerSocketChannel serverChannel;
+
+  @Nullable
+  private volatile Selector selector;
+
+  /** tasks to run on the selector thread */
+  private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+  public NioHTTPServer() { }
+
+  public NioHTTPServer(int port) {
+    super(port);
+  }
+
+  @Override
+  public synchronized void start() throws IOException {
+    if (serverChannel != null)
+      return;
+    if (secure)
+      throw new IllegalStateException("TLS is not supported in NIO mode");
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    Selector selector;
+    try {
+      serverChannel.configureBlocking(false);
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.bind(new InetSocketAddress(getHost(), port));
+      selector = Selector.open();
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    catch (IOException e) {
+      serverChannel.close();
+      throw e;
+    }
+    initExecutor(); // workers only run complete requests
+    this.selector = selector;
+    this.serverChannel = serverChannel;
+    new SelectorThread(serverChannel, selector).start();
+  }
+
+  @Override
+  public synchronized void stop() {
+    ServerSocketChannel serverChannel = this.serverChannel;
+    if (serverChannel != null) {
+      try {
+        serverChannel.close();
+      }
+      catch (IOException ignore) { }
+      Selector selector = this.selector;
+      if (selector != null) {
+        selector.wakeup(); // selector thread closes connections and exits
+      }
+      this.serverChannel = null;
+      this.selector = null;
+    }
+    shutdownExecutor();
+  }
+
+  /**
+   * The selector thread sends {@code 100 Continue} as soon as the request
+   * head has been received, the body is buffered before the request is processed
+   */
+  @Override
+  protected void sendContinue(HttpResponse resp) { }
+
+  private void runOnSelector(Selector selector, Runnable task) {
+    selectorTasks.add(task);
+    selector.wakeup();
+  }
+
+  /**
+   * Accepts connections and performs all reads and writes
+   */
+  final class SelectorThread extends Thread {
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+
+    /** shared by all connections, data is copied out right after reading */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    private int connections;
+
+    private final int maxConnections = config.getMaxConnections();
+
+    SelectorThread(ServerSocketChannel serverChannel, Selector selector) {
+      super("NioHTTPServer-" + port);
+      this.serverChannel = serverChannel;
+      this.selector = selector;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (serverChannel.isOpen()) {
+          selector.select(1000);
+          Runnable task;
+          while ((task = selectorTasks.poll()) != null) {
+            task.run();
+          }
+          Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+          while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            handleKey(key);
+          }
+          closeIdleConnections();
+        }
+      }
+      catch (IOException e) {
+        log.error("Selector failed, stopping server on port {}", port, e);
+      }
+      finally {
+        for (SelectionKey key : selector.keys()) {
+          if (key.attachment() instanceof Connection connection) {
+            connection.close();
+          }
+        }
+        try {
+          selector.close();
+        }
+        catch (IOException ignore) { }
+      }
+    }
+
+    private void handleKey(SelectionKey key) {
+      Connection connection = null;
+      try {
+        if (!key.isValid()) {
+          return;
+        }
+        if (key.isAcceptable()) {
+          accept();
+          return;
+        }
+        connection = (Connection) key.attachment();
+        if (key.isReadable()) {
+          connection.read(readBuffer);
+        }
+        if (key.isValid() && key.isWritable()) {
+          connection.flush();
+        }
+      }
+      catch (IOException | CancelledKeyException e) {
+        if (connection != null) {
+          connection.close();
+        }
+      }
+    }
+
+    private void accept() throws IOException {
+      SocketChannel channel;
+      while ((channel = serverChannel.accept()) != null) {
+        try {
+          channel.configureBlocking(false);
+          channel.socket().setTcpNoDelay(true);
+          SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+          key.attach(new Connection(channel, key, this));
+          connections++;
+        }
+        catch (IOException e) {
+          channel.close();
+          continue;
+        }
+        if (maxConnections > 0 && connections >= maxConnections) {
+          // stop accepting while at the connection limit
+          serverChannel.keyFor(selector).interestOps(0);
+          return;
+        }
+      }
+    }
+
+    void connectionClosed() {
+      if (connections-- == maxConnections) {
+        SelectionKey key = serverChannel.keyFor(selector);
+        if (key != null && key.isValid()) {
+          key.interestOps(SelectionKey.OP_ACCEPT);
+        }
+      }
+    }
+
+    private void closeIdleConnections() {
+      long now = System.currentTimeMillis();
+      if (now - lastIdleCheck < 1000) {
+        return;
+      }
+      lastIdleCheck = now;
+      int timeout = socketTimeout;
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection connection && connection.isIdle(now, timeout)) {
+          connection.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Connection state, only touched by the selector thread while no request
+   * of it is being processed by a worker
+   */
+  final class Connection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final SelectorThread selectorThread;
+
+    /** received bytes, starting at the current request */
+    @Nullable
+    private byte[] buffer;
+    private int limit;
+
+    // current request head, -1 if not parsed yet
+    private int scanned;
+    private int headerEnd = -1;
+    private long contentLength;
+    private boolean chunked;
+    /** {@code Expect: 100-continue} not answered yet */
+    private boolean expectContinue;
+
+    /** a worker processes a request or the response is being written */
+    private boolean processing;
+
+    @Nullable
+    private ByteBuffer pendingWrite;
+    private boolean closeAfterWrite;
+
+    /** interim {@code 100 Continue} response being written */
+    @Nullable
+    private ByteBuffer pendingContinue;
+
+    private long lastActive = System.currentTimeMillis();
+
+    /** used by the worker processing the current request */
+    private final HttpHeaderParser headerParser = new HttpHeaderParser(config);
+
+    Connection(SocketChannel channel, SelectionKey key, SelectorThread selectorThread) {
+      this.channel = channel;
+      this.key = key;
+      this.selectorThread = selectorThread;
+    }
+
+    void read(ByteBuffer readBuffer) throws IOException {
+      readBuffer.clear();
+      int read = channel.read(readBuffer);
+      if (read < 0) {
+        close();
+        return;
+      }
+      lastActive = System.currentTimeMillis();
+      if (read > 0) {
+        readBuffer.flip();
+        ensureCapacity(limit + read);
+        readBuffer.get(buffer, limit, read);
+        limit += read;
+        if (!processing) {
+          dispatchIfComplete();
+        }
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      byte[] buffer = this.buffer;
+      if (buffer == null) {
+        this.buffer = new byte[Math.max(INITIAL_REQUEST_BUFFER_SIZE, capacity)];
+      }
+      else if (buffer.length < capacity) {
+        byte[] expanded = new byte[Math.max(buffer.length * 2, capacity)];
+        System.arraycopy(buffer, 0, expanded, 0, limit);
+        this.buffer = expanded;
+      }
+    }
+
+    /**
+     * Dispatch the buffered request to a worker if it has been received completely
+     */
+    private void dispatchIfComplete() {
+      int requestEnd;
+      try {
+        requestEnd = requestEnd();
+      }
+      catch (RequestRejectedException e) {
+        reject(e.status, e.getMessage());
+        return;
+      }
+      if (requestEnd < 0) {
+        if (expectContinue) {
+          sendContinue();
+        }
+        return;
+      }
+      processing = true;
+      key.interestOps(0); // no reads until the response has been written
+      byte[] request = buffer;
+      try {
+        executor.execute(() -> process(request, requestEnd));
+      }
+      catch (RejectedExecutionException e) {
+        reject(HttpStatus.SERVICE_UNAVAILABLE, "Server busy");
+      }
+    }
+
+    /**
+     * Runs on a worker, the buffer is not touched by the selector thread meanwhile
+     */
+    private void process(byte[] request, int requestEnd) {
+      ResponseBuffer out = new ResponseBuffer();
+      boolean keepAlive;
+      try {
+        keepAlive = handleTransaction(
+                new ByteArrayInputStream(request, 0, requestEnd), out, channel.socket(), headerParser, null);
+      }
+      catch (Throwable e) {
+        log.error("Failed to handle request", e);
+        keepAlive = false;
+      }
+      boolean closeAfterWrite = !keepAlive;
+      runOnSelector(selectorThread.selector, () -> write(out.toByteBuffer(), closeAfterWrite, requestEnd));
+    }
+
+    private void write(ByteBuffer response, boolean closeAfterWrite, int requestEnd) {
+      // keep pipelined bytes of the next request
+      int remaining = limit - requestEnd;
+      if (remaining > 0) {
+        System.arraycopy(buffer, requestEnd, buffer, 0, remaining);
+      }
+      this.limit = remaining;
+      this.scanned = 0;
+      this.headerEnd = -1;
+      this.expectContinue = false;
+
+      this.pendingWrite = response;
+      this.closeAfterWrite = closeAfterWrite;
+      try {
+        flush();
+      }
+      catch (IOException | CancelledKeyException e) {
+        close();
+      }
+    }
+
+    /**
+     * The client waits for it before sending the body, written right
+     * away on the selector thread
+     */
+    private void sendContinue() {
+      expectContinue = false;
+      pendingContinue = ByteBuffer.wrap(CONTINUE_RESPONSE);
+      try {
+        flush();
+      }
+      catch (IOException | CancelledKeyException e) {
+        close();
+      }
+    }
+
+    void flush() throws IOException {
+      ByteBuffer pendingContinue = this.pendingContinue;
+      if (pendingContinue != null) {
+        channel.write(pendingContinue);
+        if (pendingContinue.hasRemaining()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          return;
+        }
+        this.pendingContinue = null;
+        if (pendingWrite == null) {
+          key.interestOps(processing ? 0 : SelectionKey.OP_READ);
+          return;
+        }
+      }
+      ByteBuffer pendingWrite = this.pendingWrite;
+      if (pendingWrite == null) {
+        return;
+      }
+      if (channel.write(pendingWrite) > 0) {
+        lastActive = System.currentTimeMillis();
+      }
+      if (pendingWrite.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+        return;
+      }
+      this.pendingWrite = null;
+      if (closeAfterWrite) {
+        close();
+        return;
+      }
+      this.processing = false;
+      if (limit == 0 && buffer != null && buffer.length > INITIAL_REQUEST_BUFFER_SIZE) {
+        this.buffer = null; // don't keep large buffers for idle connections
+      }
+      key.interestOps(SelectionKey.OP_READ);
+      if (limit > 0) {
+        dispatchIfComplete(); // pipelined request
+      }
+    }
+
+    /**
+     * Send an error response, the connection is closed after it
+     */
+    private void reject(HttpStatus status, String message) {
+      processing = true;
+      ResponseBuffer out = new ResponseBuffer();
+      try {
+        HttpResponse response = new HttpResponse(out);
+        response.getHeaders().add(HttpHeaders.CONNECTION, "close");
+        response.sendError(status, message);
+        response.close();
+      }
+      catch (IOException e) {
+        close();
+        return;
+      }
+      write(out.toByteBuffer(), true, limit);
+    }
+
+    /**
+     * @return end of the buffered request, {@code -1} if it is not complete yet
+     */
+    private int requestEnd() throws RequestRejectedException {
+      byte[] buffer = this.buffer;
+      if (headerEnd < 0) {
+        // RFC2616#4.1: should accept empty lines before request line
+        int start = 0;
+        while (start < limit && (buffer[start] == '\r' || buffer[start] == '\n')) {
+          start++;
+        }
+        if (start > 0) {
+          System.arraycopy(buffer, start, buffer, 0, limit - start);
+          limit -= start;
+          scanned = 0;
+        }
+        int headerEnd = findHeaderEnd(buffer, scanned, limit);
+        if (headerEnd < 0) {
+          if (limit > config.getMaxHeaderSize()) {
+            throw new RequestRejectedException(HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE, "Request header too large");
+          }
+          scanned = Math.max(0, limit - 3);
+          return -1;
+        }
+        parseBodyLength(buffer, headerEnd);
+        this.headerEnd = headerEnd;
+        this.expectContinue = isExpectContinue(buffer, headerEnd);
+      }
+      if (chunked) {
+        int end = findChunkedEnd(buffer, headerEnd, limit);
+        if (end < 0 && limit > config.getMaxBufferedRequestSize()) {
+          throw new RequestRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Request too large");
+        }
+        return end;
+      }
+      long end = headerEnd + contentLength;
+      return end <= limit ? (int) end : -1;
+    }
+
+    private void parseBodyLength(byte[] buffer, int headerEnd) throws RequestRejectedException {
+      // RFC2616#4.4: Transfer-Encoding takes precedence over Content-Length
+      String transferEncoding = headerValue(buffer, headerEnd, HttpHeaders.TRANSFER_ENCODING);
+      if (transferEncoding != null && !transferEncoding.equalsIgnoreCase(HttpHeaders.IDENTITY)) {
+        String[] encodings = Utils.splitElements(transferEncoding, true);
+        if (encodings.length == 0 || !HttpHeaders.CHUNKED.equals(encodings[encodings.length - 1])) {
+          // the body would end when the connection closes
+          throw new RequestRejectedException(HttpStatus.NOT_IMPLEMENTED, "Unsupported transfer encoding");
+        }
+        this.chunked = true;
+        this.contentLength = -1;
+        return;
+      }
+      this.chunked = false;
+      String contentLength = headerValue(buffer, headerEnd, HttpHeaders.CONTENT_LENGTH);
+      if (contentLength == null) {
+        this.contentLength = 0;
+        return;
+      }
+      long length;
+      try {
+        length = Utils.parseULong(contentLength, 10);
+      }
+      catch (NumberFormatException e) {
+        throw new RequestRejectedException(HttpStatus.BAD_REQUEST, "Invalid Content-Length");
+      }
+      if (headerEnd + length > config.getMaxBufferedRequestSize()) {
+        throw new RequestRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Request too large");
+      }
+      this.contentLength = length;
+    }
+
+    /**
+     * Waiting for a new request, or for the rest of one, or for the client
+     * to receive the response longer than the timeout
+     */
+    boolean isIdle(long now, int timeout) {
+      return (!processing || pendingWrite != null) && now - lastActive > timeout;
+    }
+
+    void close() {
+      if (!channel.isOpen()) {
+        return;
+      }
+      key.cancel();
+      try {
+        channel.close();
+      }
+      catch (IOException ignore) { }
+      selectorThread.connectionClosed();
+    }
+  }
+
+  /**
+   * Whether an HTTP/1.1 request head asks for {@code 100 Continue}
+   */
+  static boolean isExpectContinue(byte[] buffer, int headerEnd) {
+    String expect = headerValue(buffer, headerEnd, HttpHeaders.EXPECT);
+    if (expect == null || !expect.equalsIgnoreCase(HttpHeaders.CONTINUE)) {
+      return false;
+    }
+    int lineEnd = indexOf(buffer, '\n', 0, headerEnd);
+    if (lineEnd > 0 && buffer[lineEnd - 1] == '\r') {
+      lineEnd--;
+    }
+    if (lineEnd < HTTP_1_1.length) {
+      return false;
+    }
+    for (int i = 0; i < HTTP_1_1.length; i++) {
+      if (buffer[lineEnd - HTTP_1_1.length + i] != HTTP_1_1[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return end of the header section ({@code CRLF CRLF} or {@code LF LF}), or {@code -1}
+   */
+  static int findHeaderEnd(byte[] buffer, int from, int limit) {
+    for (int i = from; i < limit; i++) {
+      if (buffer[i] == '\n') {
+        if (i + 1 < limit && buffer[i + 1] == '\n') {
+          return i + 2;
+        }
+        if (i + 2 < limit && buffer[i + 1] == '\r' && buffer[i + 2] == '\n') {
+          return i + 3;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return end of a chunked body starting at {@code from}, or {@code -1} if not complete
+   */
+  static int findChunkedEnd(byte[] buffer, int from, int limit) throws RequestRejectedException {
+    int pos = from;
+    while (true) {
+      int lineEnd = indexOf(buffer, '\n', pos, limit);
+      if (lineEnd < 0) {
+        return -1;
+      }
+      long size = parseChunkSize(buffer, pos, lineEnd);
+      pos = lineEnd + 1;
+      if (size == 0) {
+        // trailers, up to an empty line
+        while (true) {
+          lineEnd = indexOf(buffer, '\n', pos, limit);
+          if (lineEnd < 0) {
+            return -1;
+          }
+          if (lineEnd == pos || (lineEnd == pos + 1 && buffer[pos] == '\r')) {
+            return lineEnd + 1;
+          }
+          pos = lineEnd + 1;
+        }
+      }
+      if (size > limit - pos) {
+        return -1;
+      }
+      pos += (int) size;
+      // chunk data is followed by CRLF
+      if (pos < limit && buffer[pos] == '\r') {
+        pos++;
+      }
+      if (pos >= limit) {
+        return -1;
+      }
+      if (buffer[pos] != '\n') {
+        throw new RequestRejectedException(HttpStatus.BAD_REQUEST, "Invalid chunk");
+      }
+      pos++;
+    }
+  }
+
+  private static long parseChunkSize(byte[] buffer, int from, int lineEnd) throws RequestRejectedException {
+    long size = 0;
+    int digits = 0;
+    for (int i = from; i < lineEnd; i++) {
+      int digit = Character.digit(buffer[i], 16);
+      if (digit < 0) {
+        break; // chunk extension or CR
+      }
+      if (++digits > 15) {
+        throw new RequestRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, "Chunk too large");
+      }
+      size = size << 4 | digit;
+    }
+    if (digits == 0) {
+      throw new RequestRejectedException(HttpStatus.BAD_REQUEST, "Invalid chunk size");
+    }
+    return size;
+  }
+
+  /**
+   * Find a header value in the raw header section, without parsing all headers
+   *
+   * @param name header name
+   * @return the first value, or {@code null} if not present
+   */
+  @Nullable
+  static String headerValue(byte[] buffer, int headerEnd, String name) {
+    int length = name.length();
+    int pos = indexOf(buffer, '\n', 0, headerEnd) + 1; // skip request line
+    while (pos > 0 && pos < headerEnd) {
+      int lineEnd = indexOf(buffer, '\n', pos, headerEnd);
+      if (lineEnd < 0) {
+        lineEnd = headerEnd;
+      }
+      if (lineEnd - pos > length && buffer[pos + length] == ':'
+              && regionMatchesIgnoreCase(buffer, pos, name)) {
+        return new String(buffer, pos + length + 1, lineEnd - pos - length - 1, StandardCharsets.ISO_8859_1).trim();
+      }
+      pos = lineEnd + 1;
+    }
+    return null;
+  }
+
+  private static boolean regionMatchesIgnoreCase(byte[] buffer, int offset, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = (char) (buffer[offset + i] & 0xff);
+      if (Character.toLowerCase(c) != Character.toLowerCase(name.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(byte[] buffer, char c, int from, int limit) {
+    for (int i = from; i < limit; i++) {
+      if (buffer[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  static final class RequestRejectedException extends Exception {
+    final HttpStatus status;
+
+    RequestRejectedException(HttpStatus status, String message) {
+      super(message, null, false, false);
+      this.status = status;
+    }
+  }
+
+  /**
+   * A whole response, handed to the selector thread without copying
+   */
+  static final class ResponseBuffer extends ByteArrayOutputStream {
+
+    ResponseBuffer() {
+      super(1024);
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+
+}
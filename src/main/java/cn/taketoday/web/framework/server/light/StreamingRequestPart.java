@@ -0,0 +1,95 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import java.io.InputStream;
+
+import cn.taketoday.http.ContentDisposition;
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.lang.Nullable;
+
+/**
+ * A part of a multipart request whose content is read straight from the
+ * request body, valid until the next part is requested.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see MultipartIterator#next()
+ * @see LightRequestContext#getMultipartIterator()
+ * @since 4.0
+ */
+public final class StreamingRequestPart implements RequestPart {
+
+  private final ContentDisposition contentDisposition;
+
+  private final HttpHeaders headers;
+
+  private final InputStream inputStream;
+
+  StreamingRequestPart(ContentDisposition contentDisposition, HttpHeaders headers, InputStream inputStream) {
+    this.contentDisposition = contentDisposition;
+    this.headers = headers;
+    this.inputStream = inputStream;
+  }
+
+  @Override
+  public String getName() {
+    return contentDisposition.getName();
+  }
+
+  /**
+   * @return the file name, {@code null} for form fields
+   */
+  @Nullable
+  public String getFileName() {
+    return contentDisposition.getFilename();
+  }
+
+  /**
+   * Whether this part is a file rather than a form field
+   */
+  public boolean isFile() {
+    return contentDisposition.getFilename() != null;
+  }
+
+  @Nullable
+  public String getContentType() {
+    return headers.getFirst(HttpHeaders.CONTENT_TYPE);
+  }
+
+  public ContentDisposition getContentDisposition() {
+    return contentDisposition;
+  }
+
+  public HttpHeaders getHeaders() {
+    return headers;
+  }
+
+  /**
+   * The content of this part, closing it does not close the request body
+   *
+   * @throws cn.taketoday.http.FileSizeExceededException while reading,
+   * if the part or the request body is too large
+   */
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.taketoday.core.AntPathMatcher;
+import cn.taketoday.core.PathMatcher;
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.HttpStatus;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.logging.Logger;
+import cn.taketoday.logging.LoggerFactory;
+import cn.taketoday.web.RequestContext;
+
+/**
+ * Admission control in front of the handlers: a request runs only if it
+ * gets a permit from the global {@link ConcurrencyLimiter} and from the
+ * limiter of its route, if any. Otherwise it is rejected at once with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, which
+ * keeps the latency of admitted requests bounded under overload.
+ * <p>
+ * Declare a bean of this type to enable it, see {@link DispatcherHandler#setAdmissionController}.
+ * Waiting in a {@link ConcurrencyLimiter#setMaxQueueSize(int) queue} blocks the
+ * dispatching thread, so only use it with servers which dispatch on worker threads.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see ConcurrencyLimiter
+ * @since 4.0
+ */
+public class AdmissionController {
+  private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+  @Nullable
+  private final ConcurrencyLimiter limiter;
+
+  /** request path pattern -> limiter, the first match applies */
+  private final LinkedHashMap<String, ConcurrencyLimiter> routeLimiters = new LinkedHashMap<>();
+
+  private PathMatcher pathMatcher = new AntPathMatcher();
+
+  private int retryAfterSeconds = 1;
+
+  private final LongAdder rejectedCount = new LongAdder();
+
+  /**
+   * Create with an adaptive global limit starting at {@code 100}
+   */
+  public AdmissionController() {
+    this(new ConcurrencyLimiter(100));
+  }
+
+  /**
+   * @param limiter global limiter, {@code null} to limit routes only
+   */
+  public AdmissionController(@Nullable ConcurrencyLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  /**
+   * Limit the requests which match the pattern to a fixed number
+   *
+   * @param pattern request path pattern, e.g. {@code /api/reports/**}
+   */
+  public void addRouteLimit(String pattern, int maxConcurrency) {
+    addRouteLimit(pattern, ConcurrencyLimiter.fixed(maxConcurrency));
+  }
+
+  /**
+   * Limit the requests which match the pattern by their own limiter,
+   * in addition to the global one
+   *
+   * @param pattern request path pattern, e.g. {@code /api/reports/**}
+   */
+  public void addRouteLimit(String pattern, ConcurrencyLimiter limiter) {
+    Assert.notNull(pattern, "pattern is required");
+    Assert.notNull(limiter, "limiter is required");
+    routeLimiters.put(pattern, limiter);
+  }
+
+  /**
+   * Acquire the permits for a request
+   *
+   * @return the permit to release once the request is done,
+   * {@code null} if the request is to be rejected
+   */
+  @Nullable
+  public Permit tryAdmit(RequestContext context) {
+    ConcurrencyLimiter routeLimiter = findRouteLimiter(context.getRequestPath());
+    if (routeLimiter != null && !routeLimiter.tryAcquire()) {
+      rejectedCount.increment();
+      return null;
+    }
+    ConcurrencyLimiter limiter = this.limiter;
+    if (limiter != null && !limiter.tryAcquire()) {
+      if (routeLimiter != null) {
+        routeLimiter.cancel();
+      }
+      rejectedCount.increment();
+      return null;
+    }
+    return new Permit(limiter, routeLimiter, System.nanoTime());
+  }
+
+  @Nullable
+  private ConcurrencyLimiter findRouteLimiter(String requestPath) {
+    if (!routeLimiters.isEmpty()) {
+      for (Map.Entry<String, ConcurrencyLimiter> entry : routeLimiters.entrySet()) {
+        if (pathMatcher.match(entry.getKey(), requestPath)) {
+          return entry.getValue();
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Send the rejection of a request
+   */
+  public void reject(RequestContext context) throws IOException {
+    if (log.isDebugEnabled()) {
+      log.debug("Rejected by admission control: {}", context);
+    }
+    context.responseHeaders().set(HttpHeaders.RETRY_AFTER, Integer.toString(retryAfterSeconds));
+    context.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+  }
+
+  public void setPathMatcher(PathMatcher pathMatcher) {
+    Assert.notNull(pathMatcher, "PathMatcher is required");
+    this.pathMatcher = pathMatcher;
+  }
+
+  /**
+   * Set the {@code Retry-After} seconds of rejections, defaults to {@code 1}
+   */
+  public void setRetryAfterSeconds(int retryAfterSeconds) {
+    Assert.isTrue(retryAfterSeconds >= 0, "retryAfterSeconds must not be negative");
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  // metrics
+
+  /**
+   * Current global limit, {@code -1} if there is no global limiter
+   */
+  public int getLimit() {
+    return limiter != null ? limiter.getLimit() : -1;
+  }
+
+  /**
+   * Requests running under the global limiter
+   */
+  public int getInFlight() {
+    return limiter != null ? limiter.getInFlight() : 0;
+  }
+
+  /**
+   * All rejected requests, by the global or a route limiter
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  @Nullable
+  public ConcurrencyLimiter getLimiter() {
+    return limiter;
+  }
+
+  public Map<String, ConcurrencyLimiter> getRouteLimiters() {
+    return Collections.unmodifiableMap(routeLimiters);
+  }
+
+  /**
+   * Permits of an admitted request
+   */
+  public static final class Permit {
+
+    @Nullable
+    private final ConcurrencyLimiter limiter;
+
+    @Nullable
+    private final ConcurrencyLimiter routeLimiter;
+
+    private final long startTime;
+
+    Permit(@Nullable ConcurrencyLimiter limiter, @Nullable ConcurrencyLimiter routeLimiter, long startTime) {
+      this.limiter = limiter;
+      this.routeLimiter = routeLimiter;
+      this.startTime = startTime;
+    }
+
+    /**
+     * Release the permits, the time since admission adapts the limits
+     */
+    public void release() {
+      long latency = System.nanoTime() - startTime;
+      if (limiter != null) {
+        limiter.release(latency);
+      }
+      if (routeLimiter != null) {
+        routeLimiter.release(latency);
+      }
+    }
+  }
+
+}
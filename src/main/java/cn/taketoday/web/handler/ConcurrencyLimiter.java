@@ -0,0 +1,347 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cn.taketoday.lang.Assert;
+
+/**
+ * Limits the number of requests in flight, the limit adapts to the
+ * measured latency unless it is {@link #setAdaptive(boolean) fixed}.
+ * <p>
+ * The adaptive limit follows the gradient between the long-term and the
+ * recent latency: while recent requests are as fast as usual the limit
+ * grows slowly, once they slow down, e.g. a downstream service or a lock
+ * is saturated, the limit shrinks proportionally, so the excess is rejected
+ * instead of piling up in executors.
+ * <p>
+ * Up to {@link #setMaxQueueSize(int) maxQueueSize} callers may wait for a
+ * permit at most {@link #setMaxWait(long, TimeUnit) maxWait}, others are
+ * rejected at once. Waiting uses a {@link ReentrantLock} rather than a
+ * monitor so that it does not pin carriers of virtual threads.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see AdmissionController
+ * @since 4.0
+ */
+public class ConcurrencyLimiter {
+
+  /** samples averaged by the long-term latency */
+  private static final int LONG_WINDOW = 600;
+
+  /** samples averaged by the recent latency */
+  private static final int SHORT_WINDOW = 10;
+
+  private boolean adaptive = true;
+
+  private int minLimit = 8;
+
+  private int maxLimit = 1000;
+
+  /** how much slower recent requests may be before the limit shrinks */
+  private double rttTolerance = 1.5;
+
+  /** portion of a new limit applied at each sample */
+  private double smoothing = 0.2;
+
+  private int maxQueueSize = 0;
+
+  private long maxWaitNanos = 0;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition permitReleased = lock.newCondition();
+
+  // guarded by lock
+
+  private double limit;
+
+  private int inFlight;
+
+  private int queued;
+
+  private double longRtt;
+
+  private double shortRtt;
+
+  private final LongAdder rejectedCount = new LongAdder();
+
+  /**
+   * Create an adaptive limiter
+   *
+   * @param initialLimit limit before any latency has been measured
+   */
+  public ConcurrencyLimiter(int initialLimit) {
+    Assert.isTrue(initialLimit > 0, "initialLimit must be greater than 0");
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Create a limiter with a fixed limit
+   */
+  public static ConcurrencyLimiter fixed(int limit) {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+    limiter.setAdaptive(false);
+    return limiter;
+  }
+
+  /**
+   * Acquire a permit, waiting in the queue if the limit has been reached
+   *
+   * @return {@code false} if the request is to be rejected
+   */
+  public boolean tryAcquire() {
+    ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      if (inFlight < (int) limit) {
+        inFlight++;
+        return true;
+      }
+      if (queued >= maxQueueSize || maxWaitNanos <= 0) {
+        rejectedCount.increment();
+        return false;
+      }
+      queued++;
+      try {
+        long remaining = maxWaitNanos;
+        while (inFlight >= (int) limit) {
+          if (remaining <= 0) {
+            rejectedCount.increment();
+            return false;
+          }
+          remaining = permitReleased.awaitNanos(remaining);
+        }
+        inFlight++;
+        return true;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        rejectedCount.increment();
+        return false;
+      }
+      finally {
+        queued--;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release a permit
+   *
+   * @param latencyNanos time the request took, adapts the limit
+   */
+  public void release(long latencyNanos) {
+    ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      int inFlight = this.inFlight--;
+      if (adaptive && latencyNanos > 0) {
+        adjustLimit(latencyNanos, inFlight);
+      }
+      if (queued > 0) {
+        permitReleased.signalAll();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release a permit which has not been used, the request did not run
+   */
+  public void cancel() {
+    ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      inFlight--;
+      if (queued > 0) {
+        permitReleased.signal();
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void adjustLimit(long latencyNanos, int inFlight) {
+    if (longRtt == 0) {
+      this.longRtt = latencyNanos;
+      this.shortRtt = latencyNanos;
+      return;
+    }
+    double shortRtt = this.shortRtt + (latencyNanos - this.shortRtt) / SHORT_WINDOW;
+    double longRtt = this.longRtt + (latencyNanos - this.longRtt) / LONG_WINDOW;
+    if (longRtt > shortRtt * 2) {
+      // latency went down for good, follow it faster
+      longRtt *= 0.95;
+    }
+    this.shortRtt = shortRtt;
+    this.longRtt = longRtt;
+
+    double limit = this.limit;
+    if (inFlight < limit / 2) {
+      // not limited by the limit, no evidence to grow it
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+    double newLimit = limit * gradient + Math.sqrt(limit);
+    newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+  }
+
+  // config
+
+  /**
+   * Set whether the limit adapts to the measured latency,
+   * otherwise the initial limit is kept
+   */
+  public void setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+  }
+
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Set the bounds of the adaptive limit
+   */
+  public void setLimitBounds(int minLimit, int maxLimit) {
+    Assert.isTrue(minLimit > 0, "minLimit must be greater than 0");
+    Assert.isTrue(minLimit <= maxLimit, "minLimit must not be greater than maxLimit");
+    lock.lock();
+    try {
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * Set how much slower than usual recent requests may be before the
+   * limit shrinks, defaults to {@code 1.5}
+   */
+  public void setRttTolerance(double rttTolerance) {
+    Assert.isTrue(rttTolerance >= 1, "rttTolerance must not be less than 1");
+    this.rttTolerance = rttTolerance;
+  }
+
+  /**
+   * Set the portion of a new limit applied at each sample,
+   * defaults to {@code 0.2}
+   */
+  public void setSmoothing(double smoothing) {
+    Assert.isTrue(smoothing > 0 && smoothing <= 1, "smoothing must be in (0, 1]");
+    this.smoothing = smoothing;
+  }
+
+  /**
+   * Set the maximum number of callers waiting for a permit,
+   * defaults to {@code 0}: reject at once
+   */
+  public void setMaxQueueSize(int maxQueueSize) {
+    this.maxQueueSize = maxQueueSize;
+  }
+
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * Set how long a caller may wait for a permit
+   */
+  public void setMaxWait(long maxWait, TimeUnit unit) {
+    this.maxWaitNanos = unit.toNanos(maxWait);
+  }
+
+  public long getMaxWait(TimeUnit unit) {
+    return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+  }
+
+  // metrics
+
+  /**
+   * Current limit
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Number of callers waiting for a permit
+   */
+  public int getQueued() {
+    lock.lock();
+    try {
+      return queued;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrencyLimiter{limit=" + getLimit() + ", inFlight=" + getInFlight()
+            + ", queued=" + getQueued() + ", rejected=" + getRejectedCount() + '}';
+  }
+
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -40,6 +41,7 @@ import cn.taketoday.lang.Constant;
 import cn.taketoday.lang.Nullable;
 import cn.taketoday.logging.Logger;
 import cn.taketoday.logging.LoggerFactory;
+import cn.taketoday.util.ConcurrentReferenceHashMap;
 import cn.taketoday.web.RequestContext;
 import cn.taketoday.web.ReturnValueHandler;
 import cn.taketoday.web.WebApplicationContext;
@@ -119,6 +121,14 @@ public class DispatcherHandler implements ApplicationContextAware {
 
   private WebApplicationContext webApplicationContext;
 
+  /** admission control in front of handlers @since 4.0 */
+  @Nullable
+  private AdmissionController admissionController;
+
+  /** handler -> bound adapter and return-value handler @since 4.0 */
+  private final ConcurrentReferenceHashMap<Object, HandlerPipeline> handlerPipelines
+          = new ConcurrentReferenceHashMap<>(64);
+
   public DispatcherHandler() { }
 
   public DispatcherHandler(WebApplicationContext context) {
@@ -139,6 +149,7 @@ public class DispatcherHandler implements ApplicationContextAware {
     initHandlerAdapters(context);
     initReturnValueHandler(context);
     initExceptionHandler(context);
+    initAdmissionController(context);
   }
 
   /**
@@ -263,6 +274,18 @@ public class DispatcherHandler implements ApplicationContextAware {
     }
   }
 
+  /**
+   * Initialize the AdmissionController used by this class, if a bean is defined.
+   *
+   * @see AdmissionController
+   * @since 4.0
+   */
+  private void initAdmissionController(ApplicationContext context) {
+    if (admissionController == null) {
+      this.admissionController = context.getBean(AdmissionController.class);
+    }
+  }
+
   // Handler
   // ----------------------------------
 
@@ -292,12 +315,7 @@ public class DispatcherHandler implements ApplicationContextAware {
     if (handler instanceof HandlerAdapterProvider) {
       return ((HandlerAdapterProvider) handler).getHandlerAdapter();
     }
-    for (final HandlerAdapter requestHandler : handlerAdapters) {
-      if (requestHandler.supports(handler)) {
-        return requestHandler;
-      }
-    }
-    throw new HandlerAdapterNotFoundException(handler);
+    return getHandlerPipeline(handler).getHandlerAdapter();
   }
 
   /**
@@ -316,16 +334,118 @@ public class DispatcherHandler implements ApplicationContextAware {
     if (handler instanceof ReturnValueHandlerProvider) {
       return ((ReturnValueHandlerProvider) handler).getReturnValueHandler();
     }
-    ReturnValueHandler selected = this.returnValueHandler.selectHandler(handler, returnValue);
+    if (handler == null) {
+      return selectReturnValueHandler(null, returnValue);
+    }
+    ReturnValueHandler selected = getHandlerPipeline(handler).selectReturnValueHandler(returnValue);
     if (selected == null) {
-      if (returnValue == null) {
-        throw new ReturnValueHandlerNotFoundException(handler);
+      throw returnValueHandlerNotFound(handler, returnValue);
+    }
+    return selected;
+  }
+
+  /**
+   * Return the {@link HandlerPipeline} bound to the given handler,
+   * creating it on first access.
+   *
+   * @param handler HTTP handler
+   * @return bound pipeline never {@code null}
+   * @throws HandlerAdapterNotFoundException If there isn't a {@link HandlerAdapter} for target handler
+   * @see #createHandlerPipeline(Object)
+   * @since 4.0
+   */
+  public HandlerPipeline getHandlerPipeline(Object handler) {
+    HandlerPipeline pipeline = handlerPipelines.get(handler);
+    if (pipeline == null) {
+      pipeline = createHandlerPipeline(handler);
+      HandlerPipeline existing = handlerPipelines.putIfAbsent(handler, pipeline);
+      if (existing != null) {
+        pipeline = existing;
       }
-      throw new ReturnValueHandlerNotFoundException(returnValue, handler);
+    }
+    return pipeline;
+  }
+
+  /**
+   * Bind the {@link HandlerAdapter} and the {@link ReturnValueHandler}
+   * selection to the given handler.
+   * <p>
+   * The first return-value handler supporting the handler itself is bound,
+   * the ones ahead of it are kept to be matched against the actual
+   * return-value per request, in the order of the chain.
+   *
+   * @param handler HTTP handler
+   * @return a new pipeline
+   * @throws HandlerAdapterNotFoundException If there isn't a {@link HandlerAdapter} for target handler
+   * @since 4.0
+   */
+  protected HandlerPipeline createHandlerPipeline(Object handler) {
+    HandlerAdapter adapter = null;
+    if (handler instanceof HandlerAdapter) {
+      adapter = (HandlerAdapter) handler;
+    }
+    else if (handler instanceof HandlerAdapterProvider) {
+      adapter = ((HandlerAdapterProvider) handler).getHandlerAdapter();
+    }
+    else {
+      for (final HandlerAdapter requestHandler : handlerAdapters) {
+        if (requestHandler.supports(handler)) {
+          adapter = requestHandler;
+          break;
+        }
+      }
+      if (adapter == null) {
+        throw new HandlerAdapterNotFoundException(handler);
+      }
+    }
+
+    if (handler instanceof ReturnValueHandler) {
+      return new HandlerPipeline(handler, adapter, (ReturnValueHandler) handler);
+    }
+    if (handler instanceof ReturnValueHandlerProvider) {
+      return new HandlerPipeline(handler, adapter, ((ReturnValueHandlerProvider) handler).getReturnValueHandler());
+    }
+
+    List<ReturnValueHandler> chain = returnValueHandler.getInternalHandlers();
+    int i = 0;
+    ReturnValueHandler bound = null;
+    for (ReturnValueHandler candidate : chain) {
+      if (candidate.supportsHandler(handler)) {
+        bound = candidate;
+        break;
+      }
+      i++;
+    }
+    ReturnValueHandler[] candidates = chain.subList(0, i).toArray(new ReturnValueHandler[i]);
+    return new HandlerPipeline(handler, adapter, bound, candidates);
+  }
+
+  /**
+   * Clear all bound {@link HandlerPipeline}s, they will be re-created on next request
+   *
+   * @since 4.0
+   */
+  public void clearHandlerPipelines() {
+    handlerPipelines.clear();
+  }
+
+  private ReturnValueHandler selectReturnValueHandler(
+          @Nullable Object handler, @Nullable Object returnValue) {
+    ReturnValueHandler selected = this.returnValueHandler.selectHandler(handler, returnValue);
+    if (selected == null) {
+      throw returnValueHandlerNotFound(handler, returnValue);
     }
     return selected;
   }
 
+  private static ReturnValueHandlerNotFoundException returnValueHandlerNotFound(
+          @Nullable Object handler, @Nullable Object returnValue) {
+    if (returnValue == null) {
+      return new ReturnValueHandlerNotFoundException(handler);
+    }
+    return new ReturnValueHandlerNotFoundException(returnValue, handler);
+  }
+
   /**
    * Handle HTTP request
    *
@@ -348,6 +468,7 @@ public class DispatcherHandler implements ApplicationContextAware {
     finally {
       // @since 3.0 cleanup MultipartFiles
       context.cleanupMultipartFiles();
+      context.requestCompleted();
     }
   }
 
@@ -396,16 +517,57 @@ public class DispatcherHandler implements ApplicationContextAware {
    * @since 4.0
    */
   public void dispatch(RequestContext context) throws Throwable {
-    Object handler = null;
-    Object returnValue = null;
-    Throwable throwable = null;
+    Object handler;
     try {
       // Determine handler for the current request.
       handler = lookupHandler(context);
+    }
+    catch (Throwable ex) {
+      try {
+        processDispatchResult(context, null, null, ex);
+      }
+      finally {
+        context.cleanupMultipartFiles();
+        context.requestCompleted();
+        logResult(context, ex);
+      }
+      return;
+    }
+    dispatch(context, handler);
+  }
+
+  /**
+   * Process the actual dispatching to a handler which has been
+   * determined by {@link #lookupHandler(RequestContext)}.
+   * <p>
+   * Allows callers to inspect the handler before deciding where
+   * to run it.
+   *
+   * @param context current HTTP request and HTTP response
+   * @param handler the handler, or {@code null} if none found
+   * @throws Exception in case of any kind of processing failure
+   * @see #setAdmissionController(AdmissionController)
+   * @since 4.0
+   */
+  public void dispatch(RequestContext context, @Nullable Object handler) throws Throwable {
+    Object returnValue = null;
+    Throwable throwable = null;
+    AdmissionController.Permit permit = null;
+    try {
       if (handler == null) {
         noHandlerFound(context);
         return;
       }
+      AdmissionController admissionController = this.admissionController;
+      if (admissionController != null) {
+        permit = admissionController.tryAdmit(context);
+        if (permit == null) {
+          // rejected response has been sent
+          returnValue = HandlerAdapter.NONE_RETURN_VALUE;
+          admissionController.reject(context);
+          return;
+        }
+      }
       // Actually invoke the handler.
       returnValue = lookupHandlerAdapter(handler).handle(context, handler);
     }
@@ -413,10 +575,22 @@ public class DispatcherHandler implements ApplicationContextAware {
       throwable = ex;
     }
     finally {
-      processDispatchResult(context, handler, returnValue, throwable);
-      // @since 3.0 cleanup MultipartFiles
-      context.cleanupMultipartFiles();
-      logResult(context, throwable);
+      try {
+        processDispatchResult(context, handler, returnValue, throwable);
+      }
+      finally {
+        try {
+          // @since 3.0 cleanup MultipartFiles
+          context.cleanupMultipartFiles();
+          context.requestCompleted();
+          logResult(context, throwable);
+        }
+        finally {
+          if (permit != null) {
+            permit.release();
+          }
+        }
+      }
     }
   }
 
@@ -430,10 +604,14 @@ public class DispatcherHandler implements ApplicationContextAware {
 
     if (exception != null) {
       returnValue = processHandlerException(request, handler, exception);
+      // exception handler result, the bound return-value handler does not apply
+      if (returnValue != HandlerAdapter.NONE_RETURN_VALUE) {
+        selectReturnValueHandler(handler, returnValue)
+                .handleReturnValue(request, handler, returnValue);
+      }
     }
-
     // Did the handler return a view to render?
-    if (returnValue != HandlerAdapter.NONE_RETURN_VALUE) {
+    else if (returnValue != HandlerAdapter.NONE_RETURN_VALUE) {
       lookupReturnValueHandler(handler, returnValue)
               .handleReturnValue(request, handler, returnValue);
     }
@@ -556,6 +734,22 @@ public class DispatcherHandler implements ApplicationContextAware {
     logger.info(msg);
   }
 
+  /**
+   * Set the admission control in front of handlers, requests are rejected
+   * with {@code 503 Service Unavailable} once its limits are reached.
+   *
+   * @param admissionController admission control, {@code null} to admit all requests
+   * @since 4.0
+   */
+  public void setAdmissionController(@Nullable AdmissionController admissionController) {
+    this.admissionController = admissionController;
+  }
+
+  @Nullable
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
   public HandlerAdapter[] getHandlerAdapters() {
     return handlerAdapters;
   }
@@ -576,6 +770,7 @@ public class DispatcherHandler implements ApplicationContextAware {
   public void setHandlerAdapters(HandlerAdapter... handlerAdapters) {
     Assert.notNull(handlerAdapters, "handlerAdapters must not be null");
     this.handlerAdapters = handlerAdapters;
+    clearHandlerPipelines();
   }
 
   public void setExceptionHandler(HandlerExceptionHandler exceptionHandler) {
@@ -590,6 +785,7 @@ public class DispatcherHandler implements ApplicationContextAware {
   public void setReturnValueHandler(SelectableReturnValueHandler returnValueHandler) {
     Assert.notNull(returnValueHandler, "returnValueHandler must not be null");
     this.returnValueHandler = returnValueHandler;
+    clearHandlerPipelines();
   }
 
   /**
@@ -0,0 +1,121 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler;
+
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.web.ReturnValueHandler;
+
+/**
+ * The {@link HandlerAdapter} and the {@link ReturnValueHandler} selection
+ * bound to a handler object.
+ * <p>
+ * Created once per handler by {@link DispatcherHandler} so that the
+ * {@link HandlerAdapter#supports(Object)} and
+ * {@link ReturnValueHandler#supportsHandler(Object)} scans do not run on
+ * every request. The first return-value handler supporting the handler is
+ * bound; the handlers ahead of it in the chain may still support the actual
+ * return-value, so only their {@link ReturnValueHandler#supportsReturnValue(Object)}
+ * is checked per request, which selects the same handler as a scan of the
+ * whole chain.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see DispatcherHandler#getHandlerPipeline(Object)
+ * @since 4.0
+ */
+public final class HandlerPipeline {
+
+  private static final ReturnValueHandler[] EMPTY = new ReturnValueHandler[0];
+
+  private final Object handler;
+
+  private final HandlerAdapter handlerAdapter;
+
+  @Nullable
+  private final ReturnValueHandler returnValueHandler;
+
+  /** handlers ahead of the bound one, selected by return-value only */
+  private final ReturnValueHandler[] returnValueCandidates;
+
+  public HandlerPipeline(
+          Object handler, HandlerAdapter handlerAdapter, @Nullable ReturnValueHandler returnValueHandler) {
+    this(handler, handlerAdapter, returnValueHandler, EMPTY);
+  }
+
+  /**
+   * @param returnValueHandler the first return-value handler supporting the handler
+   * @param returnValueCandidates the return-value handlers ahead of it in the chain,
+   * or the whole chain if none supports the handler
+   */
+  public HandlerPipeline(Object handler, HandlerAdapter handlerAdapter,
+          @Nullable ReturnValueHandler returnValueHandler, ReturnValueHandler[] returnValueCandidates) {
+    this.handler = handler;
+    this.handlerAdapter = handlerAdapter;
+    this.returnValueHandler = returnValueHandler;
+    this.returnValueCandidates = returnValueCandidates;
+  }
+
+  public Object getHandler() {
+    return handler;
+  }
+
+  public HandlerAdapter getHandlerAdapter() {
+    return handlerAdapter;
+  }
+
+  /**
+   * Return the first return-value handler supporting the handler,
+   * or {@code null} if only the return-value can decide.
+   */
+  @Nullable
+  public ReturnValueHandler getReturnValueHandler() {
+    return returnValueHandler;
+  }
+
+  /**
+   * Whether the return-value handler does not depend on the return-value.
+   */
+  public boolean isReturnValueHandlerBound() {
+    return returnValueHandler != null && returnValueCandidates.length == 0;
+  }
+
+  /**
+   * Select the return-value handler for the given return-value
+   *
+   * @param returnValue handler execution result
+   * @return the selected handler, or {@code null} if none supports it
+   */
+  @Nullable
+  public ReturnValueHandler selectReturnValueHandler(@Nullable Object returnValue) {
+    for (ReturnValueHandler candidate : returnValueCandidates) {
+      if (candidate.supportsReturnValue(returnValue)) {
+        return candidate;
+      }
+    }
+    return returnValueHandler;
+  }
+
+  @Override
+  public String toString() {
+    return "HandlerPipeline{handler=" + handler + ", handlerAdapter=" + handlerAdapter
+            + ", returnValueHandler=" + (returnValueHandler != null ? returnValueHandler : "dynamic") + '}';
+  }
+
+}
@@ -52,6 +52,12 @@ public abstract class ActionMappingAnnotationHandler
   // handler fast invoker
   private /*volatile*/ MethodInvoker handlerInvoker;
 
+  // generated whole handler-method invoker @since 4.0
+  private /*volatile*/ HandlerMethodInvoker methodInvoker;
+
+  // use generated HandlerMethodInvoker @since 4.0
+  private boolean generateInvoker;
+
   // return-value handlers(registry)
   private ReturnValueHandlerManager returnValueHandlerManager;
 
@@ -71,6 +77,8 @@ public abstract class ActionMappingAnnotationHandler
   public ActionMappingAnnotationHandler(ActionMappingAnnotationHandler handler) {
     this.handlerMethod = handler.handlerMethod;
     this.handlerInvoker = handler.handlerInvoker;
+    this.methodInvoker = handler.methodInvoker;
+    this.generateInvoker = handler.generateInvoker;
     this.returnValueHandlerManager = handler.returnValueHandlerManager;
     this.returnValueHandler = handler.returnValueHandler;
     this.resolvableParameters = handler.resolvableParameters;
@@ -93,10 +101,35 @@ public abstract class ActionMappingAnnotationHandler
     this.returnValueHandlerManager = resultHandlers;
   }
 
+  /**
+   * Set whether to invoke this handler through a generated
+   * {@link HandlerMethodInvoker} which resolves parameters and invokes
+   * the handler method without an argument array.
+   * <p>Default is "false".
+   *
+   * @param generateInvoker use generated invoker or not
+   * @see HandlerMethodInvoker#forHandler(HandlerMethod, ResolvableMethodParameter[])
+   * @since 4.0
+   */
+  public void setGenerateInvoker(boolean generateInvoker) {
+    this.generateInvoker = generateInvoker;
+  }
+
+  /**
+   * @since 4.0
+   */
+  public boolean isGenerateInvoker() {
+    return generateInvoker;
+  }
+
   // InterceptableRequestHandler
 
   @Override
   protected Object handleInternal(RequestContext context) throws Throwable {
+    if (generateInvoker) {
+      return obtainMethodInvoker().invoke(getHandlerBean(), context);
+    }
+
     MethodInvoker handlerInvoker = this.handlerInvoker;
     if (handlerInvoker == null) {
       synchronized(this) {
@@ -122,6 +155,20 @@ public abstract class ActionMappingAnnotationHandler
     return handlerInvoker.invoke(handlerBean, args);
   }
 
+  private HandlerMethodInvoker obtainMethodInvoker() {
+    HandlerMethodInvoker methodInvoker = this.methodInvoker;
+    if (methodInvoker == null) {
+      synchronized(this) {
+        methodInvoker = this.methodInvoker;
+        if (methodInvoker == null) {
+          methodInvoker = HandlerMethodInvoker.forHandler(handlerMethod, resolvableParameters);
+          this.methodInvoker = methodInvoker;
+        }
+      }
+    }
+    return methodInvoker;
+  }
+
   protected abstract Object getHandlerBean();
 
   // HandlerAdapter
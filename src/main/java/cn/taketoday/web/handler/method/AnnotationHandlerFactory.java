@@ -42,6 +42,9 @@ public class AnnotationHandlerFactory<T extends ActionMappingAnnotationHandler>
   private ReturnValueHandlerManager returnValueHandlerManager;
   private ResolvableParameterFactory parameterFactory;
 
+  /** @since 4.0 */
+  private boolean generateInvoker;
+
   public AnnotationHandlerFactory() { }
 
   /**
@@ -68,6 +71,7 @@ public class AnnotationHandlerFactory<T extends ActionMappingAnnotationHandler>
     ActionMappingAnnotationHandler handler = ActionMappingAnnotationHandler.from(
             handlerBean, method, parameterFactory);
     handler.setReturnValueHandlers(returnValueHandlerManager);
+    handler.setGenerateInvoker(generateInvoker);
     return (T) handler;
   }
 
@@ -88,6 +92,7 @@ public class AnnotationHandlerFactory<T extends ActionMappingAnnotationHandler>
     T handler = (T) ActionMappingAnnotationHandler.from(handlerBean, method, parameterFactory);
     handler.setInterceptors(interceptors);
     handler.setReturnValueHandlers(returnValueHandlerManager);
+    handler.setGenerateInvoker(generateInvoker);
     return handler;
   }
 
@@ -99,4 +104,14 @@ public class AnnotationHandlerFactory<T extends ActionMappingAnnotationHandler>
     this.parameterFactory = parameterFactory;
   }
 
+  /**
+   * Set whether created handlers use a generated {@link HandlerMethodInvoker}
+   *
+   * @see ActionMappingAnnotationHandler#setGenerateInvoker(boolean)
+   * @since 4.0
+   */
+  public void setGenerateInvoker(boolean generateInvoker) {
+    this.generateInvoker = generateInvoker;
+  }
+
 }
@@ -0,0 +1,341 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler.method;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+
+import cn.taketoday.core.bytecode.ClassVisitor;
+import cn.taketoday.core.bytecode.Opcodes;
+import cn.taketoday.core.bytecode.Type;
+import cn.taketoday.core.bytecode.commons.MethodSignature;
+import cn.taketoday.core.bytecode.core.ClassEmitter;
+import cn.taketoday.core.bytecode.core.ClassGenerator;
+import cn.taketoday.core.bytecode.core.CodeEmitter;
+import cn.taketoday.core.bytecode.core.EmitUtils;
+import cn.taketoday.core.bytecode.core.MethodInfo;
+import cn.taketoday.core.reflect.Accessor;
+import cn.taketoday.core.reflect.GeneratorSupport;
+import cn.taketoday.core.reflect.MethodInvoker;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.logging.LoggerFactory;
+import cn.taketoday.util.ObjectUtils;
+import cn.taketoday.util.ReflectionUtils;
+import cn.taketoday.web.RequestContext;
+import cn.taketoday.web.resolver.ParameterResolvingStrategy;
+
+/**
+ * Invokes a handler method including its parameter resolving.
+ * <p>
+ * {@link #forHandler} generates one class per handler method which holds
+ * every {@link ResolvableMethodParameter} and its {@link ParameterResolvingStrategy}
+ * in its own field, calls the strategies directly, unboxes primitive arguments
+ * in place and invokes the target method without an argument array.
+ * Each generated class has its own call sites, so the strategy calls stay
+ * monomorphic on hot endpoints.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see ActionMappingAnnotationHandler#setGenerateInvoker(boolean)
+ * @since 4.0
+ */
+public abstract class HandlerMethodInvoker implements Accessor {
+  private final Method method;
+
+  protected HandlerMethodInvoker(Method method) {
+    Assert.notNull(method, "method must not be null");
+    this.method = method;
+  }
+
+  /**
+   * Resolve the parameters from the given request and invoke the handler method
+   *
+   * @param handlerBean the handler bean, ignored if the method is static
+   * @param context current request context
+   * @return handler method return-value, {@code null} if the method is void
+   * @throws Throwable if parameter resolving or handler method failed
+   */
+  @Nullable
+  public abstract Object invoke(Object handlerBean, RequestContext context) throws Throwable;
+
+  public Method getMethod() {
+    return method;
+  }
+
+  /**
+   * Create a {@link HandlerMethodInvoker} for the given handler method
+   *
+   * @param handlerMethod target handler method
+   * @param parameters resolvable parameters of handler method
+   * @return a generated invoker, or an argument array based invoker
+   * if target method cannot be accessed from generated class
+   */
+  public static HandlerMethodInvoker forHandler(
+          HandlerMethod handlerMethod, @Nullable ResolvableMethodParameter[] parameters) {
+    Assert.notNull(handlerMethod, "handlerMethod must not be null");
+    return new HandlerMethodInvokerGenerator(handlerMethod.getMethod(), parameters).create();
+  }
+
+  /**
+   * Returns the strategy which can be called directly from generated class
+   */
+  static ParameterResolvingStrategy obtainStrategy(ResolvableMethodParameter parameter) {
+    // subclasses may customize resolveParameter
+    if (parameter.getClass() == ParameterResolverMethodParameter.class) {
+      return ((ParameterResolverMethodParameter) parameter).obtainResolver();
+    }
+    return new ParameterDelegate();
+  }
+
+  /**
+   * delegate to {@link ResolvableMethodParameter#resolveParameter(RequestContext)}
+   * which is not accessible from generated class
+   */
+  static final class ParameterDelegate implements ParameterResolvingStrategy {
+
+    @Override
+    public boolean supportsParameter(ResolvableMethodParameter resolvable) {
+      return true;
+    }
+
+    @Override
+    public Object resolveParameter(RequestContext context, ResolvableMethodParameter resolvable) throws Throwable {
+      return resolvable.resolveParameter(context);
+    }
+  }
+
+  /**
+   * Fallback if target method cannot be accessed from generated class
+   */
+  static final class ArgumentsHandlerMethodInvoker extends HandlerMethodInvoker {
+    private final MethodInvoker invoker;
+
+    @Nullable
+    private final ResolvableMethodParameter[] parameters;
+
+    ArgumentsHandlerMethodInvoker(Method method, @Nullable ResolvableMethodParameter[] parameters) {
+      super(method);
+      this.parameters = parameters;
+      this.invoker = MethodInvoker.fromMethod(method);
+    }
+
+    @Override
+    public Object invoke(Object handlerBean, RequestContext context) throws Throwable {
+      ResolvableMethodParameter[] parameters = this.parameters;
+      if (ObjectUtils.isEmpty(parameters)) {
+        return invoker.invoke(handlerBean, null);
+      }
+      Object[] args = new Object[parameters.length];
+      int i = 0;
+      for (ResolvableMethodParameter parameter : parameters) {
+        args[i++] = parameter.resolveParameter(context);
+      }
+      return invoker.invoke(handlerBean, args);
+    }
+  }
+
+  // HandlerMethodInvoker object generator
+  // --------------------------------------------------------------
+
+  static final class HandlerMethodInvokerGenerator
+          extends GeneratorSupport<HandlerMethodInvoker> implements ClassGenerator {
+
+    private static final String superType = "Lcn/taketoday/web/handler/method/HandlerMethodInvoker;";
+
+    private static final MethodInfo invokeInfo = MethodInfo.from(
+            ReflectionUtils.getMethod(HandlerMethodInvoker.class, "invoke", Object.class, RequestContext.class));
+
+    private static final Type TYPE_PARAMETER = Type.fromClass(ResolvableMethodParameter.class);
+    private static final Type TYPE_STRATEGY = Type.fromClass(ParameterResolvingStrategy.class);
+
+    private static final MethodSignature SIG_RESOLVE_PARAMETER = MethodSignature.from(
+            ReflectionUtils.getMethod(ParameterResolvingStrategy.class,
+                    "resolveParameter", RequestContext.class, ResolvableMethodParameter.class));
+
+    private static final MethodSignature SIG_SUPER_CONSTRUCTOR
+            = new MethodSignature(MethodSignature.CONSTRUCTOR_NAME, "(Ljava/lang/reflect/Method;)V");
+
+    private static final MethodSignature SIG_CONSTRUCTOR = new MethodSignature(MethodSignature.CONSTRUCTOR_NAME,
+            "(Ljava/lang/reflect/Method;[Lcn/taketoday/web/handler/method/ResolvableMethodParameter;"
+                    + "[Lcn/taketoday/web/resolver/ParameterResolvingStrategy;)V");
+
+    private static final ResolvableMethodParameter[] EMPTY_PARAMETERS = new ResolvableMethodParameter[0];
+
+    private final Method targetMethod;
+
+    private final ResolvableMethodParameter[] parameters;
+
+    HandlerMethodInvokerGenerator(Method method, @Nullable ResolvableMethodParameter[] parameters) {
+      super(method.getDeclaringClass());
+      this.targetMethod = method;
+      this.parameters = parameters == null ? EMPTY_PARAMETERS : parameters;
+    }
+
+    @Override
+    public void generateClass(ClassVisitor v) {
+      ClassEmitter classEmitter = beginClass(v);
+
+      CodeEmitter codeEmitter = EmitUtils.beginMethod(classEmitter, invokeInfo, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL);
+      if (!Modifier.isStatic(targetMethod.getModifiers())) {
+        codeEmitter.loadArg(0);
+        codeEmitter.checkCast(Type.fromClass(targetClass));
+      }
+
+      Class<?>[] parameterTypes = targetMethod.getParameterTypes();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        // strategy.resolveParameter(context, parameter)
+        codeEmitter.loadThis();
+        codeEmitter.getField(strategyField(i));
+        codeEmitter.loadArg(1);
+        codeEmitter.loadThis();
+        codeEmitter.getField(parameterField(i));
+        codeEmitter.invokeInterface(TYPE_STRATEGY, SIG_RESOLVE_PARAMETER);
+        // null -> zero for primitives
+        codeEmitter.unbox_or_zero(Type.fromClass(parameterTypes[i]));
+      }
+
+      codeEmitter.invoke(MethodInfo.from(targetMethod));
+      codeEmitter.valueOf(Type.fromClass(targetMethod.getReturnType()));
+
+      codeEmitter.returnValue();
+      codeEmitter.end_method();
+      classEmitter.endClass();
+    }
+
+    @Override
+    protected void generateConstructor(ClassEmitter ce) {
+      int parameterCount = parameters.length;
+      for (int i = 0; i < parameterCount; i++) {
+        ce.declare_field(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, parameterField(i), TYPE_PARAMETER, null);
+        ce.declare_field(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, strategyField(i), TYPE_STRATEGY, null);
+      }
+
+      CodeEmitter e = ce.beginMethod(Opcodes.ACC_PUBLIC, SIG_CONSTRUCTOR);
+      e.loadThis();
+      e.loadArg(0);
+      e.super_invoke_constructor(SIG_SUPER_CONSTRUCTOR);
+      for (int i = 0; i < parameterCount; i++) {
+        e.loadThis();
+        e.loadArg(1);
+        e.aaload(i);
+        e.putField(parameterField(i));
+
+        e.loadThis();
+        e.loadArg(2);
+        e.aaload(i);
+        e.putField(strategyField(i));
+      }
+      e.returnValue();
+      e.end_method();
+    }
+
+    private static String parameterField(int i) {
+      return "parameter" + i;
+    }
+
+    private static String strategyField(int i) {
+      return "strategy" + i;
+    }
+
+    @Override
+    protected HandlerMethodInvoker newInstance(Class<HandlerMethodInvoker> accessorClass) throws NoSuchMethodException {
+      ParameterResolvingStrategy[] strategies = new ParameterResolvingStrategy[parameters.length];
+      for (int i = 0; i < parameters.length; i++) {
+        strategies[i] = obtainStrategy(parameters[i]);
+      }
+      Constructor<HandlerMethodInvoker> constructor = accessorClass.getDeclaredConstructor(
+              Method.class, ResolvableMethodParameter[].class, ParameterResolvingStrategy[].class);
+      return ReflectionUtils.invokeConstructor(constructor, new Object[] { targetMethod, parameters, strategies });
+    }
+
+    @Override
+    protected void appendClassName(StringBuilder builder) {
+      builder.append('$')
+              .append(targetMethod.getName());
+      buildClassNameSuffix(builder, targetMethod);
+      builder.append("$$HandlerMethodInvoker");
+    }
+
+    @Override
+    protected HandlerMethodInvoker fallback(Exception exception) {
+      LoggerFactory.getLogger(HandlerMethodInvokerGenerator.class)
+              .warn("Cannot generate invoker for handler method: [{}], using fallback instance", targetMethod, exception);
+      return fallbackInstance();
+    }
+
+    @Override
+    protected HandlerMethodInvoker fallbackInstance() {
+      return new ArgumentsHandlerMethodInvoker(targetMethod, parameters);
+    }
+
+    @Override
+    protected boolean cannotAccess() {
+      return Modifier.isPrivate(targetClass.getModifiers())
+              || Modifier.isPrivate(targetMethod.getModifiers())
+              || parameters.length != targetMethod.getParameterCount();
+    }
+
+    @Override
+    protected ClassGenerator getClassGenerator() {
+      return this;
+    }
+
+    @Override
+    protected Object cacheKey() {
+      // one class per method, one instance per parameters
+      return new InvokerCacheKey(targetMethod, parameters);
+    }
+
+    @Override
+    public String getSuperType() {
+      return superType;
+    }
+  }
+
+  static final class InvokerCacheKey {
+    private final int hash;
+    private final Method targetMethod;
+    private final ResolvableMethodParameter[] parameters;
+
+    InvokerCacheKey(Method targetMethod, ResolvableMethodParameter[] parameters) {
+      this.targetMethod = targetMethod;
+      this.parameters = parameters;
+      this.hash = Objects.hash(targetMethod, System.identityHashCode(parameters));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof InvokerCacheKey that))
+        return false;
+      return targetMethod.equals(that.targetMethod) && parameters == that.parameters;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+}
@@ -25,7 +25,7 @@ import java.util.List;
 import java.util.Map;
 
 import cn.taketoday.cache.Cache;
-import cn.taketoday.cache.support.ConcurrentMapCache;
+import cn.taketoday.cache.support.TinyLfuCache;
 import cn.taketoday.context.ApplicationContext;
 import cn.taketoday.core.AntPathMatcher;
 import cn.taketoday.core.PathMatcher;
@@ -65,6 +65,12 @@ public class MappedHandlerRegistry extends AbstractUrlHandlerRegistry {
   /** @since 3.0 */
   private Cache patternMatchingCache;
 
+  /** @since 4.0 */
+  private int patternMatchingCacheSize = 1024;
+
+  /** @since 4.0 */
+  private boolean cacheNotFoundPatternMatching = true;
+
   /**
    * @since 3.0.1 init {@link #handlerCustomizer} delete initHandlerRegistry()
    */
@@ -155,10 +161,41 @@ public class MappedHandlerRegistry extends AbstractUrlHandlerRegistry {
     return matchingCache;
   }
 
-  /** @since 3.0 */
+  /**
+   * Create the pattern matching cache, a size-bounded {@link TinyLfuCache}
+   * by default
+   *
+   * @see #setPatternMatchingCacheSize(int)
+   * @see #setCacheNotFoundPatternMatching(boolean)
+   * @since 3.0
+   */
   @NonNull
-  protected ConcurrentMapCache createPatternMatchingCache() {
-    return new ConcurrentMapCache(CACHE_NAME, 128);
+  protected Cache createPatternMatchingCache() {
+    TinyLfuCache cache = new TinyLfuCache(CACHE_NAME, patternMatchingCacheSize);
+    cache.setCacheNullValues(cacheNotFoundPatternMatching);
+    return cache;
+  }
+
+  /**
+   * Set the maximum number of request paths kept in the default
+   * pattern matching cache. Default is 1024.
+   *
+   * @since 4.0
+   */
+  public void setPatternMatchingCacheSize(int patternMatchingCacheSize) {
+    Assert.isTrue(patternMatchingCacheSize > 0, "patternMatchingCacheSize must be greater than 0");
+    this.patternMatchingCacheSize = patternMatchingCacheSize;
+  }
+
+  /**
+   * Set whether request paths that match no handler are kept in the
+   * default pattern matching cache. Disable it to prevent junk paths
+   * from competing with real ones. Default is {@code true}
+   *
+   * @since 4.0
+   */
+  public void setCacheNotFoundPatternMatching(boolean cacheNotFoundPatternMatching) {
+    this.cacheNotFoundPatternMatching = cacheNotFoundPatternMatching;
   }
 
   /**
@@ -34,6 +34,7 @@ import cn.taketoday.lang.Nullable;
 import cn.taketoday.http.InvalidMediaTypeException;
 import cn.taketoday.http.MediaType;
 import cn.taketoday.util.ObjectUtils;
+import cn.taketoday.web.RequestContext;
 import cn.taketoday.web.annotation.ActionMapping;
 import cn.taketoday.web.handler.method.ActionMappingAnnotationHandler;
 import cn.taketoday.web.handler.method.HandlerMethod;
@@ -58,6 +59,12 @@ final class AnnotationMappingInfo implements Ordered {
   // it's pathPattern
   private final PathPattern pathPattern;
 
+  // @since 4.0 compiled request conditions
+  private final RequestConditionMatcher conditionMatcher;
+
+  // @since 4.0
+  private final int order;
+
   /**
    * @throws InvalidMediaTypeException if the media type (consumes) value cannot be parsed
    */
@@ -71,6 +78,8 @@ final class AnnotationMappingInfo implements Ordered {
     this.produces = compute(produces, MediaType::valueOf, MediaType[]::new);
     this.consumes = compute(consumes, MediaType::valueOf, MediaType[]::new);
     this.params = compute(params, RequestParameter::parse, RequestParameter[]::new);
+    this.conditionMatcher = RequestConditionMatcher.compile(this.method, this.consumes, this.produces, this.params);
+    this.order = computeOrder();
   }
 
   private static <T, R> R[] compute(T[] values, Function<T, R> converter, IntFunction<R[]> array) {
@@ -117,6 +126,8 @@ final class AnnotationMappingInfo implements Ordered {
     this.produces = mapping.produces;
     this.consumes = mapping.consumes;
     this.pathPattern = mapping.pathPattern;
+    this.conditionMatcher = mapping.conditionMatcher;
+    this.order = computeOrder();
   }
 
   //
@@ -127,6 +138,20 @@ final class AnnotationMappingInfo implements Ordered {
     return pathPattern.matchAndExtract(pathContainer);
   }
 
+  /**
+   * Test request method, params, consumes and produces conditions
+   *
+   * @since 4.0
+   */
+  public boolean matches(RequestContext context) {
+    return conditionMatcher.matches(context);
+  }
+
+  // @since 4.0
+  RequestConditionMatcher getConditionMatcher() {
+    return conditionMatcher;
+  }
+
   //
 
   public ActionMappingAnnotationHandler getHandler() {
@@ -180,11 +205,15 @@ final class AnnotationMappingInfo implements Ordered {
   // order
 
   @Override
-  public int getOrder() { // FIXME
+  public int getOrder() {
+    return order;
+  }
+
+  private int computeOrder() { // FIXME
     final HandlerMethod method = handler.getMethod();
-    final int handlerOrder = OrderUtils.getOrder(method.getMethod());
+    final Integer handlerOrder = OrderUtils.getOrder(method.getMethod());
     final int paramsOrder = params == null ? 0 : params.length;
     final int consumesOrder = consumes == null ? 0 : consumes.length;
-    return handlerOrder + consumesOrder + paramsOrder;
+    return (handlerOrder != null ? handlerOrder : 0) + consumesOrder + paramsOrder;
   }
 }
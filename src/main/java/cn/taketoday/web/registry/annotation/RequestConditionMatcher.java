@@ -0,0 +1,199 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.registry.annotation;
+
+import java.util.List;
+
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.HttpMethod;
+import cn.taketoday.http.MediaType;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.util.ConcurrentLruCache;
+import cn.taketoday.util.InvalidMimeTypeException;
+import cn.taketoday.util.MimeType;
+import cn.taketoday.util.StringUtils;
+import cn.taketoday.web.RequestContext;
+
+/**
+ * Request conditions of an {@link AnnotationMappingInfo}, compiled once at
+ * registration: the request methods become a bitmask, the consumes and
+ * produces media types are parsed up front and the params become parallel
+ * name/value arrays. Conditions are tested cheapest first.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see AnnotationMappingInfo#getConditionMatcher()
+ * @since 4.0
+ */
+final class RequestConditionMatcher {
+
+  static final RequestConditionMatcher ALWAYS = new RequestConditionMatcher(0, null, null, null, null);
+
+  // parsed Accept headers, there are only a few distinct values in practice
+  private static final ConcurrentLruCache<String, List<MediaType>> acceptCache =
+          new ConcurrentLruCache<>(64, MediaType::parseMediaTypes);
+
+  // bit per HttpMethod ordinal, 0 matches all methods
+  private final int methodMask;
+
+  @Nullable
+  private final String[] paramNames;
+
+  @Nullable
+  private final String[] paramValues;
+
+  @Nullable
+  private final MediaType[] consumes;
+
+  @Nullable
+  private final MediaType[] produces;
+
+  private RequestConditionMatcher(
+          int methodMask, @Nullable String[] paramNames, @Nullable String[] paramValues,
+          @Nullable MediaType[] consumes, @Nullable MediaType[] produces) {
+    this.methodMask = methodMask;
+    this.paramNames = paramNames;
+    this.paramValues = paramValues;
+    this.consumes = consumes;
+    this.produces = produces;
+  }
+
+  /**
+   * Test the request against all conditions.
+   */
+  boolean matches(RequestContext context) {
+    if (methodMask != 0) {
+      HttpMethod method = context.getMethod();
+      if (method == null || (methodMask & (1 << method.ordinal())) == 0) {
+        return false;
+      }
+    }
+
+    String[] paramNames = this.paramNames;
+    if (paramNames != null) {
+      String[] paramValues = this.paramValues;
+      for (int i = 0; i < paramNames.length; i++) {
+        String parameter = context.getParameter(paramNames[i]);
+        if (parameter == null || (paramValues[i] != null && !paramValues[i].equals(parameter))) {
+          return false;
+        }
+      }
+    }
+
+    return (consumes == null || matchConsumes(context, consumes))
+            && (produces == null || matchProduces(context, produces));
+  }
+
+  /**
+   * Content-Type must be included in one of the consumable media types.
+   */
+  private static boolean matchConsumes(RequestContext context, MediaType[] consumes) {
+    String contentType = context.getContentType();
+    if (StringUtils.isEmpty(contentType)) {
+      return false;
+    }
+    MimeType requestType;
+    try {
+      // MimeType parsing is cached
+      requestType = MimeType.valueOf(contentType);
+    }
+    catch (InvalidMimeTypeException e) {
+      return false;
+    }
+    for (MediaType consume : consumes) {
+      if (consume.includes(requestType)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * One of the producible media types must be acceptable, a missing
+   * Accept header accepts all media types.
+   */
+  private static boolean matchProduces(RequestContext context, MediaType[] produces) {
+    String accept = context.requestHeaders().getFirst(HttpHeaders.ACCEPT);
+    if (StringUtils.isEmpty(accept)) {
+      return true;
+    }
+    List<MediaType> acceptedMediaTypes = acceptCache.get(accept);
+    for (MediaType produce : produces) {
+      if (matchMediaType(produce, acceptedMediaTypes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchMediaType(MediaType produce, List<MediaType> acceptedMediaTypes) {
+    for (MediaType acceptedMediaType : acceptedMediaTypes) {
+      if (produce.isCompatibleWith(acceptedMediaType) && matchParameters(produce, acceptedMediaType)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchParameters(MediaType produce, MediaType acceptedMediaType) {
+    if (!produce.getParameters().isEmpty()) {
+      for (var entry : produce.getParameters().entrySet()) {
+        String s1 = entry.getValue();
+        String s2 = acceptedMediaType.getParameter(entry.getKey());
+        if (StringUtils.hasText(s1) && StringUtils.hasText(s2) && !s1.equalsIgnoreCase(s2)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // static
+
+  /**
+   * Compile the given conditions, {@code null} arrays indicate
+   * that the condition is absent.
+   */
+  static RequestConditionMatcher compile(
+          @Nullable HttpMethod[] methods, @Nullable MediaType[] consumes,
+          @Nullable MediaType[] produces, @Nullable RequestParameter[] params) {
+    if (methods == null && consumes == null && produces == null && params == null) {
+      return ALWAYS;
+    }
+    int methodMask = 0;
+    if (methods != null) {
+      for (HttpMethod method : methods) {
+        methodMask |= 1 << method.ordinal();
+      }
+    }
+    String[] paramNames = null;
+    String[] paramValues = null;
+    if (params != null) {
+      paramNames = new String[params.length];
+      paramValues = new String[params.length];
+      for (int i = 0; i < params.length; i++) {
+        paramNames[i] = params[i].getName();
+        paramValues[i] = params[i].getValue();
+      }
+    }
+    return new RequestConditionMatcher(methodMask, paramNames, paramValues, consumes, produces);
+  }
+
+}
@@ -36,14 +36,12 @@ import cn.taketoday.http.HttpMethod;
 import cn.taketoday.lang.Nullable;
 import cn.taketoday.util.CollectionUtils;
 import cn.taketoday.http.MediaType;
-import cn.taketoday.util.MimeType;
 import cn.taketoday.util.StringUtils;
 import cn.taketoday.web.RequestContext;
 import cn.taketoday.web.annotation.ActionMapping;
 import cn.taketoday.web.handler.method.ActionMappingAnnotationHandler;
 import cn.taketoday.web.registry.HandlerRegistry;
 import cn.taketoday.web.util.WebUtils;
-import cn.taketoday.web.util.pattern.PathMatchInfo;
 import cn.taketoday.web.util.pattern.PathPattern;
 
 /**
@@ -209,14 +207,18 @@ public class RequestPathMappingHandlerRegistry extends HandlerMethodRegistry {
     if (handler != null) {
       if (handler instanceof AnnotationMappingInfo mappingInfo) {  // single MappingInfo
         if (testMapping(mappingInfo, request)) {
+          exposePathVariables(request);
           return mappingInfo.getHandler();
         }
         // cannot pass the condition
         return null;
       }
-      else if (handler instanceof List) { // list of MappingInfo
-        for (AnnotationMappingInfo mappingInfo : ((List<AnnotationMappingInfo>) handler)) {
+      else if (handler instanceof List) { // list of MappingInfo, ranked at registration
+        List<AnnotationMappingInfo> mappingInfos = (List<AnnotationMappingInfo>) handler;
+        for (int i = 0, size = mappingInfos.size(); i < size; i++) {
+          AnnotationMappingInfo mappingInfo = mappingInfos.get(i);
           if (testMapping(mappingInfo, request)) {
+            exposePathVariables(request);
             return mappingInfo.getHandler();
           }
         }
@@ -227,86 +229,36 @@ public class RequestPathMappingHandlerRegistry extends HandlerMethodRegistry {
     return handler;
   }
 
+  /**
+   * Test the request conditions compiled at registration
+   *
+   * @see AnnotationMappingInfo#matches(RequestContext)
+   */
   protected boolean testMapping(AnnotationMappingInfo mappingInfo, RequestContext context) {
-    // test request method
-    HttpMethod[] supportedMethods = mappingInfo.method();
-    if (supportedMethods != null) {
-      String requestMethod = context.getMethodValue();
-      boolean matched = false;
-      for (HttpMethod testMethod : supportedMethods) {
-        if (testMethod.matches(requestMethod)) {
-          matched = true;
-          break;
-        }
-      }
-      if (!matched) {
-        return false;
-      }
-    }
-
-    // test contentType
-    MediaType[] consumes = mappingInfo.consumes();
-    if (consumes != null) {
-      MimeType contentType = MimeType.valueOf(context.getContentType());
-      for (MediaType consume : consumes) {
-        if (!consume.includes(contentType)) {
-          return false;
-        }
-      }
-    }
-    // test params
-    RequestParameter[] params = mappingInfo.params();
-    if (params != null) {
-      for (RequestParameter param : params) {
-        if (!param.matches(context)) {
-          return false;
-        }
-      }
-    }
-
-    // test produces (Accept header)
-    MediaType[] produces = mappingInfo.produces();
-    if (produces != null) {
-      List<MediaType> acceptedMediaTypes = context.requestHeaders().getAccept();
-      for (MediaType produce : produces) {
-        if (!matchMediaType(produce, acceptedMediaTypes)) {
-          return false;
-        }
-      }
-      context.setAttribute(HandlerRegistry.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, produces.clone());
-    }
-
-    // PathMatchInfo
-    PathMatchInfo extract = mappingInfo.matches(context.getLookupPath());
-    if (extract != null) {
-      context.setPathMatchInfo(extract);
-      Map<String, String> uriVariables = extract.getUriVariables();
-      context.setAttribute(MATRIX_VARIABLES_ATTRIBUTE, extractMatrixVariables(uriVariables));
-      // URI_TEMPLATE_VARIABLES_ATTRIBUTE
-      uriVariables = WebUtils.decodePathVariables(uriVariables);
-      context.setAttribute(URI_TEMPLATE_VARIABLES_ATTRIBUTE, uriVariables);
-    }
-    return true;
-  }
-
-  private boolean matchMediaType(MediaType accept, List<MediaType> acceptedMediaTypes) {
-    for (MediaType acceptedMediaType : acceptedMediaTypes) {
-      if (accept.isCompatibleWith(acceptedMediaType) && matchParameters(accept, acceptedMediaType)) {
-        return true;
+    if (mappingInfo.matches(context)) {
+      MediaType[] produces = mappingInfo.produces();
+      if (produces != null) {
+        context.setAttribute(HandlerRegistry.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, produces);
       }
+      return true;
     }
     return false;
   }
 
-  private boolean matchParameters(MediaType accept, MediaType acceptedMediaType) {
-    for (Map.Entry<String, String> entry : accept.getParameters().entrySet()) {
-      String s1 = entry.getValue();
-      String s2 = acceptedMediaType.getParameter(entry.getKey());
-      if (StringUtils.hasText(s1) && StringUtils.hasText(s2) && !s1.equalsIgnoreCase(s2)) {
-        return false;
-      }
+  /**
+   * Expose the matrix and URI template variables extracted by
+   * {@link #lookupHandler(RequestContext) pattern matching}
+   */
+  private void exposePathVariables(RequestContext context) {
+    Map<String, String> uriVariables = context.pathMatchInfo().getUriVariables();
+    if (!uriVariables.isEmpty()) {
+      // matrix variables are stripped from the values
+      uriVariables = new LinkedHashMap<>(uriVariables);
     }
-    return true;
+    context.setAttribute(MATRIX_VARIABLES_ATTRIBUTE, extractMatrixVariables(uriVariables));
+    // URI_TEMPLATE_VARIABLES_ATTRIBUTE
+    uriVariables = WebUtils.decodePathVariables(uriVariables);
+    context.setAttribute(URI_TEMPLATE_VARIABLES_ATTRIBUTE, uriVariables);
   }
 
   private Map<String, MultiValueMap<String, String>> extractMatrixVariables(Map<String, String> uriVariables) {
@@ -29,8 +29,11 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
 
+import cn.taketoday.cache.Cache;
+import cn.taketoday.cache.support.TinyLfuCache;
 import cn.taketoday.core.GenericTypeResolver;
 import cn.taketoday.core.MethodParameter;
 import cn.taketoday.core.ResolvableType;
@@ -59,6 +62,9 @@ import cn.taketoday.web.RequestContextHttpOutputMessage;
 import cn.taketoday.web.ReturnValueHandler;
 import cn.taketoday.web.ServletDetector;
 import cn.taketoday.web.accept.ContentNegotiationManager;
+import cn.taketoday.web.accept.ContentNegotiationStrategy;
+import cn.taketoday.web.accept.FixedContentNegotiationStrategy;
+import cn.taketoday.web.accept.HeaderContentNegotiationStrategy;
 import cn.taketoday.web.registry.HandlerRegistry;
 import cn.taketoday.web.servlet.ServletUtils;
 import cn.taketoday.web.util.UriUtils;
@@ -100,6 +106,15 @@ public abstract class AbstractMessageConverterMethodProcessor
 
   private final HashSet<String> safeExtensions = new HashSet<>();
 
+  /**
+   * Negotiated media type and converter per {@link NegotiationKey},
+   * {@code null} if negotiation does not depend on the Accept header only
+   *
+   * @since 4.0
+   */
+  @Nullable
+  private Cache negotiationCache;
+
   /**
    * Constructor with list of converters only.
    */
@@ -128,6 +143,46 @@ public abstract class AbstractMessageConverterMethodProcessor
     this.contentNegotiationManager = manager != null ? manager : new ContentNegotiationManager();
     this.safeExtensions.addAll(this.contentNegotiationManager.getAllFileExtensions());
     this.safeExtensions.addAll(SAFE_EXTENSIONS);
+    if (isHeaderOnlyNegotiation(this.contentNegotiationManager)) {
+      this.negotiationCache = new TinyLfuCache(getClass().getName() + "-negotiation", 256);
+    }
+  }
+
+  /**
+   * Set the maximum number of content negotiation results kept, a negotiation
+   * result is the media type and converter selected for a (return type,
+   * value type, Accept header, producible media types) combination.
+   * <p>Only applies when the {@link ContentNegotiationManager} resolves media
+   * types from the Accept header alone. {@code 0} disables the cache.
+   * Default is 256.
+   *
+   * @since 4.0
+   */
+  public void setNegotiationCacheSize(int negotiationCacheSize) {
+    if (negotiationCacheSize > 0 && isHeaderOnlyNegotiation(this.contentNegotiationManager)) {
+      this.negotiationCache = new TinyLfuCache(getClass().getName() + "-negotiation", negotiationCacheSize);
+    }
+    else {
+      this.negotiationCache = null;
+    }
+  }
+
+  /**
+   * @since 4.0
+   */
+  @Nullable
+  public Cache getNegotiationCache() {
+    return negotiationCache;
+  }
+
+  private static boolean isHeaderOnlyNegotiation(ContentNegotiationManager manager) {
+    for (ContentNegotiationStrategy strategy : manager.getStrategies()) {
+      if (!(strategy instanceof HeaderContentNegotiationStrategy)
+              && !(strategy instanceof FixedContentNegotiationStrategy)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -184,6 +239,9 @@ public abstract class AbstractMessageConverterMethodProcessor
     }
 
     MediaType selectedMediaType = null;
+    HttpMessageConverter<?> selectedConverter = null;
+    NegotiationKey negotiationKey = null;
+
     MediaType contentType = responseHeaders.getContentType();
     boolean isContentTypePreset = contentType != null && contentType.isConcrete();
     if (isContentTypePreset) {
@@ -193,97 +251,107 @@ public abstract class AbstractMessageConverterMethodProcessor
       selectedMediaType = contentType;
     }
     else {
-      List<MediaType> acceptableTypes;
-      try {
-        acceptableTypes = getAcceptableMediaTypes(context);
-      }
-      catch (HttpMediaTypeNotAcceptableException ex) {
-        int series = context.getStatus() / 100;
-        if (body == null || series == 4 || series == 5) {
-          if (log.isDebugEnabled()) {
-            log.debug("Ignoring error response content (if any). {}", ex.toString());
-          }
-          return;
+      Cache negotiationCache = this.negotiationCache;
+      if (negotiationCache != null && body != null) {
+        negotiationKey = new NegotiationKey(returnType, valueType, targetType,
+                requestHeaders.get(HttpHeaders.ACCEPT),
+                (MediaType[]) context.getAttribute(HandlerRegistry.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE));
+        if (negotiationCache.get(negotiationKey) instanceof NegotiatedConverter negotiated) {
+          selectedMediaType = negotiated.mediaType;
+          selectedConverter = negotiated.converter;
         }
-        throw ex;
       }
-      List<MediaType> producibleTypes = getProducibleMediaTypes(context, valueType, targetType);
 
-      if (body != null && producibleTypes.isEmpty()) {
-        throw new HttpMessageNotWritableException(
-                "No converter found for return value of type: " + valueType);
-      }
-      ArrayList<MediaType> mediaTypesToUse = new ArrayList<>();
-      for (MediaType requestedType : acceptableTypes) {
-        for (MediaType producibleType : producibleTypes) {
-          if (requestedType.isCompatibleWith(producibleType)) {
-            mediaTypesToUse.add(getMostSpecificMediaType(requestedType, producibleType));
+      if (selectedConverter == null) {
+        List<MediaType> acceptableTypes;
+        try {
+          acceptableTypes = getAcceptableMediaTypes(context);
+        }
+        catch (HttpMediaTypeNotAcceptableException ex) {
+          int series = context.getStatus() / 100;
+          if (body == null || series == 4 || series == 5) {
+            if (log.isDebugEnabled()) {
+              log.debug("Ignoring error response content (if any). {}", ex.toString());
+            }
+            return;
           }
+          throw ex;
         }
-      }
-      if (mediaTypesToUse.isEmpty()) {
-        if (body != null) {
-          throw new HttpMediaTypeNotAcceptableException(producibleTypes);
+        List<MediaType> producibleTypes = getProducibleMediaTypes(context, valueType, targetType);
+
+        if (body != null && producibleTypes.isEmpty()) {
+          throw new HttpMessageNotWritableException(
+                  "No converter found for return value of type: " + valueType);
         }
-        if (log.isDebugEnabled()) {
-          log.debug("No match for {}, supported: {}", acceptableTypes, producibleTypes);
+        ArrayList<MediaType> mediaTypesToUse = new ArrayList<>();
+        for (MediaType requestedType : acceptableTypes) {
+          for (MediaType producibleType : producibleTypes) {
+            if (requestedType.isCompatibleWith(producibleType)) {
+              mediaTypesToUse.add(getMostSpecificMediaType(requestedType, producibleType));
+            }
+          }
+        }
+        if (mediaTypesToUse.isEmpty()) {
+          if (body != null) {
+            throw new HttpMediaTypeNotAcceptableException(producibleTypes);
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("No match for {}, supported: {}", acceptableTypes, producibleTypes);
+          }
+          return;
         }
-        return;
-      }
 
-      MimeTypeUtils.sortBySpecificity(mediaTypesToUse);
+        MimeTypeUtils.sortBySpecificity(mediaTypesToUse);
 
-      for (MediaType mediaType : mediaTypesToUse) {
-        if (mediaType.isConcrete()) {
-          selectedMediaType = mediaType;
-          break;
-        }
-        else if (mediaType.isPresentIn(ALL_APPLICATION_MEDIA_TYPES)) {
-          selectedMediaType = MediaType.APPLICATION_OCTET_STREAM;
-          break;
+        for (MediaType mediaType : mediaTypesToUse) {
+          if (mediaType.isConcrete()) {
+            selectedMediaType = mediaType;
+            break;
+          }
+          else if (mediaType.isPresentIn(ALL_APPLICATION_MEDIA_TYPES)) {
+            selectedMediaType = MediaType.APPLICATION_OCTET_STREAM;
+            break;
+          }
         }
-      }
 
-      if (log.isDebugEnabled()) {
-        log.debug("Using '{}', given {} and supported {}", selectedMediaType, acceptableTypes, producibleTypes);
+        if (log.isDebugEnabled()) {
+          log.debug("Using '{}', given {} and supported {}", selectedMediaType, acceptableTypes, producibleTypes);
+        }
       }
     }
 
     if (selectedMediaType != null) {
-      RequestResponseBodyAdviceChain advice = getAdvice();
-      selectedMediaType = selectedMediaType.removeQualityValue();
-      for (HttpMessageConverter<?> converter : this.messageConverters) {
-        GenericHttpMessageConverter genericConverter =
-                converter instanceof GenericHttpMessageConverter
-                ? (GenericHttpMessageConverter<?>) converter : null;
-        if (genericConverter != null
-            ? ((GenericHttpMessageConverter) converter).canWrite(targetType, valueType, selectedMediaType)
-            : converter.canWrite(valueType, selectedMediaType)) {
-
-          body = advice.beforeBodyWrite(
-                  body, returnType, selectedMediaType,
-                  (Class<? extends HttpMessageConverter<?>>) converter.getClass(), context);
-          if (body != null) {
-            Object theBody = body;
-            LogFormatUtils.traceDebug(
-                    log, traceOn -> "Writing [" + LogFormatUtils.formatValue(theBody, !traceOn) + "]");
-            addContentDispositionHeader(context);
-            if (genericConverter != null) {
-              genericConverter.write(
-                      body, targetType, selectedMediaType, new RequestContextHttpOutputMessage(context));
-            }
-            else {
-              ((HttpMessageConverter) converter).write(
-                      body, selectedMediaType, new RequestContextHttpOutputMessage(context));
-            }
+      if (selectedConverter == null) {
+        selectedMediaType = selectedMediaType.removeQualityValue();
+        selectedConverter = findConverter(targetType, valueType, selectedMediaType);
+        if (selectedConverter != null && negotiationKey != null) {
+          negotiationCache.put(negotiationKey, new NegotiatedConverter(selectedMediaType, selectedConverter));
+        }
+      }
+      if (selectedConverter != null) {
+        body = getAdvice().beforeBodyWrite(
+                body, returnType, selectedMediaType,
+                (Class<? extends HttpMessageConverter<?>>) selectedConverter.getClass(), context);
+        if (body != null) {
+          Object theBody = body;
+          LogFormatUtils.traceDebug(
+                  log, traceOn -> "Writing [" + LogFormatUtils.formatValue(theBody, !traceOn) + "]");
+          addContentDispositionHeader(context);
+          if (selectedConverter instanceof GenericHttpMessageConverter genericConverter) {
+            genericConverter.write(
+                    body, targetType, selectedMediaType, new RequestContextHttpOutputMessage(context));
           }
           else {
-            if (log.isDebugEnabled()) {
-              log.debug("Nothing to write: null body");
-            }
+            ((HttpMessageConverter) selectedConverter).write(
+                    body, selectedMediaType, new RequestContextHttpOutputMessage(context));
+          }
+        }
+        else {
+          if (log.isDebugEnabled()) {
+            log.debug("Nothing to write: null body");
           }
-          return;
         }
+        return;
       }
     }
 
@@ -299,6 +367,22 @@ public abstract class AbstractMessageConverterMethodProcessor
     }
   }
 
+  /**
+   * Find the first converter that can write the value with the given media type.
+   */
+  @Nullable
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private HttpMessageConverter<?> findConverter(Type targetType, Class<?> valueType, MediaType selectedMediaType) {
+    for (HttpMessageConverter<?> converter : this.messageConverters) {
+      if (converter instanceof GenericHttpMessageConverter
+          ? ((GenericHttpMessageConverter) converter).canWrite(targetType, valueType, selectedMediaType)
+          : converter.canWrite(valueType, selectedMediaType)) {
+        return converter;
+      }
+    }
+    return null;
+  }
+
   /**
    * Return the type of the value to be written to the response. Typically this is
    * a simple check via getClass on the value but if the value is null, then the
@@ -487,4 +571,52 @@ public abstract class AbstractMessageConverterMethodProcessor
 
   }
 
+
+  /**
+   * Everything content negotiation depends on when media types are
+   * resolved from the Accept header only.
+   */
+  static final class NegotiationKey {
+    private final MethodParameter returnType;
+    private final Class<?> valueType;
+    @Nullable
+    private final Type targetType;
+    @Nullable
+    private final List<String> accept;
+    @Nullable
+    private final MediaType[] producibleTypes;
+    private final int hash;
+
+    NegotiationKey(MethodParameter returnType, Class<?> valueType, @Nullable Type targetType,
+                   @Nullable List<String> accept, @Nullable MediaType[] producibleTypes) {
+      this.returnType = returnType;
+      this.valueType = valueType;
+      this.targetType = targetType;
+      this.accept = accept;
+      this.producibleTypes = producibleTypes;
+      this.hash = 31 * Objects.hash(returnType, valueType, targetType, accept) + Arrays.hashCode(producibleTypes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof NegotiationKey that))
+        return false;
+      return hash == that.hash
+              && valueType == that.valueType
+              && returnType.equals(that.returnType)
+              && Objects.equals(targetType, that.targetType)
+              && Objects.equals(accept, that.accept)
+              && Arrays.equals(producibleTypes, that.producibleTypes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  record NegotiatedConverter(MediaType mediaType, HttpMessageConverter<?> converter) { }
+
 }
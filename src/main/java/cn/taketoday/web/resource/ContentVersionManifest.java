@@ -0,0 +1,370 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.resource;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import cn.taketoday.core.io.Resource;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.logging.Logger;
+import cn.taketoday.logging.LoggerFactory;
+
+/**
+ * Persistent record of content versions for {@link ContentVersionStrategy},
+ * so that resources are only hashed again when they have changed.
+ * <p>
+ * Each version is recorded with the size and the last-modified time of its
+ * resource; a resource whose size and last-modified time match its record
+ * is not read at all. {@link #scan(List)} brings the record up to date for
+ * all files under the given locations, hashing the changed ones in parallel,
+ * and saves it, {@link ResourceHttpRequestHandler} does so on startup for the
+ * manifests of its {@link VersionResourceResolver}. After a restart with
+ * unchanged resources nothing is hashed. Versions recorded when resources
+ * are requested are saved after a {@link #setSaveDelay delay}, and when the
+ * handler is destroyed.
+ * <p>
+ * Versions are 64 bit CRC-32C/CRC-32 checksums, which are computed with
+ * hardware support and are more than enough to tell versions of the same
+ * file apart, but are no protection against deliberate collisions.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see ContentVersionStrategy#ContentVersionStrategy(ContentVersionManifest)
+ * @since 4.0
+ */
+public class ContentVersionManifest {
+  private static final Logger log = LoggerFactory.getLogger(ContentVersionManifest.class);
+
+  private static final String HEADER = "# content versions: version size last-modified path";
+
+  private final Path manifestFile;
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private volatile boolean modified;
+
+  private volatile long saveDelay = 10_000;
+
+  private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+  /**
+   * Create a manifest persisted in the given file, recorded versions
+   * are read from it if it exists
+   *
+   * @param manifestFile the file to read from and save to, usually
+   * next to the resources
+   */
+  public ContentVersionManifest(Path manifestFile) {
+    Assert.notNull(manifestFile, "manifestFile is required");
+    this.manifestFile = manifestFile.toAbsolutePath().normalize();
+    load();
+  }
+
+  public Path getManifestFile() {
+    return manifestFile;
+  }
+
+  /**
+   * Set the milliseconds after which versions recorded by {@link #getVersion}
+   * are saved, so that a burst of first requests is saved at once. {@code 0}
+   * or less only saves on {@link #scan(List) scan} and {@link #save()}.
+   * <p>Default is 10 seconds.
+   */
+  public void setSaveDelay(long saveDelay) {
+    this.saveDelay = saveDelay;
+  }
+
+  public long getSaveDelay() {
+    return saveDelay;
+  }
+
+  /**
+   * Return the version of the given resource, hashing its content only if
+   * it is not recorded or has changed since
+   *
+   * @throws IOException if the resource cannot be read
+   */
+  public String getVersion(Resource resource) throws IOException {
+    String key = getKey(resource);
+    long size = resource.contentLength();
+    long lastModified = resource.lastModified();
+    Entry entry = entries.get(key);
+    if (entry != null && entry.matches(size, lastModified)) {
+      return entry.version;
+    }
+    String version;
+    try (InputStream in = resource.getInputStream()) {
+      version = record(key, size, lastModified, in);
+    }
+    scheduleSave();
+    return version;
+  }
+
+  private void scheduleSave() {
+    long saveDelay = this.saveDelay;
+    if (saveDelay > 0 && saveScheduled.compareAndSet(false, true)) {
+      SaveScheduler.INSTANCE.schedule(() -> {
+        saveScheduled.set(false);
+        save();
+      }, saveDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Bring the recorded versions of all files under the given locations up to
+   * date, hashing new and changed files in parallel, then save the manifest.
+   * Locations which are not directories in the file system, e.g. in a jar,
+   * are skipped, their resources are hashed when first requested.
+   *
+   * @param locations resource locations, as configured on the handler
+   * @return the number of files hashed
+   */
+  public int scan(List<? extends Resource> locations) {
+    ArrayList<Path> roots = new ArrayList<>(locations.size());
+    for (Resource location : locations) {
+      try {
+        File file = location.getFile();
+        if (file.isDirectory()) {
+          roots.add(file.toPath().toAbsolutePath().normalize());
+        }
+      }
+      catch (IOException e) {
+        // not in the file system
+      }
+    }
+
+    Set<String> present = new HashSet<>();
+    ArrayList<Path> changed = new ArrayList<>();
+    for (Path root : roots) {
+      try (Stream<Path> stream = Files.walk(root)) {
+        stream.forEach(path -> {
+          if (path.equals(manifestFile)) {
+            return;
+          }
+          try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+              String key = path.toString();
+              present.add(key);
+              Entry entry = entries.get(key);
+              if (entry == null || !entry.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                changed.add(path);
+              }
+            }
+          }
+          catch (IOException e) {
+            log.debug("Cannot read attributes of '{}'", path, e);
+          }
+        });
+      }
+      catch (IOException | UncheckedIOException e) {
+        log.warn("Cannot scan resources in '{}'", root, e);
+      }
+    }
+
+    changed.parallelStream().forEach(this::record);
+
+    // forget removed files
+    for (String key : entries.keySet()) {
+      if (!present.contains(key) && isUnder(key, roots)) {
+        entries.remove(key);
+        modified = true;
+      }
+    }
+
+    log.debug("Hashed {} of {} resources", changed.size(), present.size());
+    save();
+    return changed.size();
+  }
+
+  /**
+   * Save the manifest if versions have been recorded since it was read
+   */
+  public synchronized void save() {
+    if (!modified) {
+      return;
+    }
+    modified = false;
+    try {
+      Path parent = manifestFile.getParent();
+      Files.createDirectories(parent);
+      Path tempFile = Files.createTempFile(parent, ".versions", ".tmp");
+      try {
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+          writer.write(HEADER);
+          writer.newLine();
+          for (Map.Entry<String, Entry> mapping : entries.entrySet()) {
+            Entry entry = mapping.getValue();
+            writer.write(entry.version + ' ' + entry.size + ' ' + entry.lastModified + ' ' + mapping.getKey());
+            writer.newLine();
+          }
+        }
+        try {
+          Files.move(tempFile, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+    catch (IOException e) {
+      modified = true;
+      log.warn("Cannot save content version manifest '{}'", manifestFile, e);
+    }
+  }
+
+  /**
+   * Return the number of recorded versions
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void load() {
+    try {
+      for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+        String[] parts = line.split(" ", 4);
+        if (parts.length == 4) {
+          try {
+            entries.put(parts[3], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+          }
+          catch (NumberFormatException e) {
+            // skip, hashed again
+          }
+        }
+      }
+    }
+    catch (NoSuchFileException e) {
+      // not created yet
+    }
+    catch (IOException e) {
+      log.warn("Cannot read content version manifest '{}', versions are computed again", manifestFile, e);
+    }
+  }
+
+  private void record(Path path) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      try (InputStream in = Files.newInputStream(path)) {
+        record(path.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), in);
+      }
+    }
+    catch (IOException e) {
+      log.debug("Cannot hash '{}'", path, e);
+    }
+  }
+
+  private String record(String key, long size, long lastModified, InputStream in) throws IOException {
+    String version = hash(in);
+    entries.put(key, new Entry(version, size, lastModified));
+    modified = true;
+    return version;
+  }
+
+  static String hash(InputStream in) throws IOException {
+    CRC32C crc32c = new CRC32C();
+    CRC32 crc32 = new CRC32();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      crc32c.update(buffer, 0, read);
+      crc32.update(buffer, 0, read);
+    }
+    String hex = Long.toHexString(crc32c.getValue() << 32 | crc32.getValue());
+    return "0".repeat(16 - hex.length()) + hex;
+  }
+
+  private static String getKey(Resource resource) throws IOException {
+    URI uri = resource.getURI();
+    if ("file".equals(uri.getScheme())) {
+      // same key as the scan, whichever way the resource was created
+      return Path.of(uri).toAbsolutePath().normalize().toString();
+    }
+    return uri.toString();
+  }
+
+  private static boolean isUnder(String key, List<Path> roots) {
+    Path path;
+    try {
+      path = Path.of(key);
+    }
+    catch (InvalidPathException e) {
+      // not a file
+      return false;
+    }
+    for (Path root : roots) {
+      // by name elements, '/static' is not a parent of '/static2/foo.css'
+      if (path.startsWith(root)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Saves manifests in the background, its thread does not keep the JVM running
+   */
+  static final class SaveScheduler {
+    static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "content-version-manifest");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private record Entry(String version, long size, long lastModified) {
+
+    boolean matches(long size, long lastModified) {
+      return this.size == size && this.lastModified == lastModified;
+    }
+  }
+
+}
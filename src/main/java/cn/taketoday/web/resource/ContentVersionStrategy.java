@@ -23,6 +23,8 @@ package cn.taketoday.web.resource;
 import java.io.IOException;
 
 import cn.taketoday.core.io.Resource;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
 import cn.taketoday.util.DigestUtils;
 import cn.taketoday.util.FileCopyUtils;
 
@@ -31,6 +33,9 @@ import cn.taketoday.util.FileCopyUtils;
  * of the resource and appends it to the file name, e.g.
  * {@code "styles/main-e36d2e05253c6c7085a91522ce43a0b4.css"}.
  *
+ * <p>With a {@link ContentVersionManifest} versions are recorded, and
+ * a resource is only hashed again once it has changed.
+ *
  * @author Brian Clozel
  * @author Rossen Stoyanchev
  * @see VersionResourceResolver
@@ -38,13 +43,40 @@ import cn.taketoday.util.FileCopyUtils;
  */
 public class ContentVersionStrategy extends AbstractVersionStrategy {
 
+  @Nullable
+  private final ContentVersionManifest manifest;
+
   public ContentVersionStrategy() {
     super(new FileNameVersionPathStrategy());
+    this.manifest = null;
+  }
+
+  /**
+   * Create a strategy which takes versions from the given manifest
+   *
+   * @param manifest records the versions, which are checksums
+   * rather than MD5 hashes
+   */
+  public ContentVersionStrategy(ContentVersionManifest manifest) {
+    super(new FileNameVersionPathStrategy());
+    Assert.notNull(manifest, "ContentVersionManifest is required");
+    this.manifest = manifest;
+  }
+
+  /**
+   * Return the manifest versions are taken from, if any
+   */
+  @Nullable
+  public ContentVersionManifest getManifest() {
+    return this.manifest;
   }
 
   @Override
   public String getResourceVersion(Resource resource) {
     try {
+      if (manifest != null) {
+        return manifest.getVersion(resource);
+      }
       byte[] content = FileCopyUtils.copyToByteArray(resource.getInputStream());
       return DigestUtils.md5DigestAsHex(content);
     }
@@ -0,0 +1,504 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+import cn.taketoday.core.io.Resource;
+import cn.taketoday.http.MediaType;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.logging.Logger;
+import cn.taketoday.logging.LoggerFactory;
+import cn.taketoday.util.DigestUtils;
+import cn.taketoday.util.StringUtils;
+
+/**
+ * Bounded in-memory cache of small static resources for
+ * {@link ResourceHttpRequestHandler}.
+ * <p>
+ * Unlike {@link CachingResourceResolver}, which caches the resolved
+ * {@link Resource} handle, an entry holds everything needed to answer a
+ * request: the content, a strong ETag derived from the content, the
+ * Content-Type and the encoded variants. A cached response is a single
+ * write of a prepared byte array, and conditional requests are answered
+ * without touching the file system.
+ * <p>
+ * Entries are looked up by request path and keep the last-modified time of
+ * their resource, which is checked at most once every
+ * {@link #setCheckInterval(long, TimeUnit) checkInterval}; an entry whose
+ * resource has changed is dropped and loaded again.
+ * <p>
+ * The gzip variant is compressed when the entry is loaded; the JDK comes
+ * without a brotli encoder, so the brotli variant is taken from a
+ * precompressed {@code ".br"} file next to the resource, if there is one.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @see ResourceHttpRequestHandler#setContentCache(ResourceContentCache)
+ * @since 4.0
+ */
+public class ResourceContentCache {
+  private static final Logger log = LoggerFactory.getLogger(ResourceContentCache.class);
+
+  public static final String GZIP = "gzip";
+
+  public static final String BROTLI = "br";
+
+  private long maxEntrySize = 64 * 1024;
+
+  private long maxSize = 32 * 1024 * 1024;
+
+  private long checkIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+  private boolean compress = true;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // guarded by lock, in access order
+  private final LinkedHashMap<String, CachedContent> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+  // guarded by lock
+  private long size;
+
+  /**
+   * Set the largest resource to cache, larger resources are streamed
+   * as before, defaults to 64 KiB
+   */
+  public void setMaxEntrySize(long maxEntrySize) {
+    Assert.isTrue(maxEntrySize > 0, "maxEntrySize must be greater than 0");
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  public long getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  /**
+   * Set the total bytes held by the cache, including encoded variants,
+   * the least recently used entries are evicted beyond it,
+   * defaults to 32 MiB
+   */
+  public void setMaxSize(long maxSize) {
+    Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+    this.maxSize = maxSize;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Set how often the last-modified time of a cached resource is checked,
+   * {@code 0} checks on every request, defaults to 1 second
+   */
+  public void setCheckInterval(long checkInterval, TimeUnit unit) {
+    Assert.isTrue(checkInterval >= 0, "checkInterval must not be negative");
+    this.checkIntervalNanos = unit.toNanos(checkInterval);
+  }
+
+  public long getCheckInterval(TimeUnit unit) {
+    return unit.convert(checkIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Set whether to prepare a gzip variant of each entry, defaults to {@code true}
+   */
+  public void setCompress(boolean compress) {
+    this.compress = compress;
+  }
+
+  public boolean isCompress() {
+    return compress;
+  }
+
+  /**
+   * Return the entry cached for the given path
+   *
+   * @return {@code null} if there is none, or the resource has been modified
+   */
+  @Nullable
+  public CachedContent get(String path) {
+    CachedContent content;
+    ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      content = entries.get(path);
+    }
+    finally {
+      lock.unlock();
+    }
+    if (content != null && isModified(content)) {
+      remove(path, content);
+      return null;
+    }
+    return content;
+  }
+
+  /**
+   * Load the given resource and cache it under the given path
+   *
+   * @param mediaType the Content-Type of the resource, may be {@code null}
+   * @return {@code null} if the resource is not cacheable: it is too large,
+   * not readable, or carries its own response headers
+   */
+  @Nullable
+  public CachedContent put(String path, Resource resource, @Nullable MediaType mediaType) {
+    if (resource instanceof HttpResource) {
+      // encoded or transformed, response depends on more than the content
+      return null;
+    }
+    CachedContent content;
+    try {
+      content = load(resource, mediaType);
+    }
+    catch (IOException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Cannot cache content of [{}]", resource, e);
+      }
+      return null;
+    }
+    if (content == null) {
+      return null;
+    }
+
+    ReentrantLock lock = this.lock;
+    lock.lock();
+    try {
+      CachedContent previous = entries.put(path, content);
+      if (previous != null) {
+        size -= previous.size;
+      }
+      size += content.size;
+      evict();
+    }
+    finally {
+      lock.unlock();
+    }
+    return content;
+  }
+
+  /**
+   * Remove all entries
+   */
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      size = 0;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return the number of cached entries
+   */
+  public int getEntryCount() {
+    lock.lock();
+    try {
+      return entries.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return the bytes held by the cache
+   */
+  public long getSize() {
+    lock.lock();
+    try {
+      return size;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void remove(String path, CachedContent content) {
+    lock.lock();
+    try {
+      if (entries.remove(path, content)) {
+        size -= content.size;
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  // guarded by lock
+  private void evict() {
+    Iterator<CachedContent> iterator = entries.values().iterator();
+    while (size > maxSize && iterator.hasNext()) {
+      size -= iterator.next().size;
+      iterator.remove();
+    }
+  }
+
+  private boolean isModified(CachedContent content) {
+    long now = System.nanoTime();
+    if (now - content.checkedAt < checkIntervalNanos) {
+      return false;
+    }
+    try {
+      if (content.resource.lastModified() != content.lastModified) {
+        return true;
+      }
+    }
+    catch (IOException e) {
+      // deleted or no longer readable
+      return true;
+    }
+    content.checkedAt = now;
+    return false;
+  }
+
+  @Nullable
+  private CachedContent load(Resource resource, @Nullable MediaType mediaType) throws IOException {
+    long contentLength = resource.contentLength();
+    if (contentLength > maxEntrySize) {
+      return null;
+    }
+    // before the content, a concurrent modification is detected on the next check
+    long lastModified = resource.lastModified();
+    byte[] content = readContent(resource);
+    if (content == null) {
+      return null;
+    }
+
+    String hash = DigestUtils.md5DigestAsHex(content);
+    CachedContent cachedContent = new CachedContent(
+            resource, content, "\"" + hash + "\"", mediaType != null ? mediaType.toString() : null, lastModified);
+
+    byte[] brotli = readPrecompressed(resource, ".br");
+    if (brotli != null) {
+      cachedContent.addVariant(BROTLI, brotli, "\"" + hash + "-br\"");
+    }
+    if (compress) {
+      byte[] gzip = readPrecompressed(resource, ".gz");
+      if (gzip == null) {
+        gzip = gzip(content);
+      }
+      if (gzip.length < content.length) {
+        cachedContent.addVariant(GZIP, gzip, "\"" + hash + "-gzip\"");
+      }
+    }
+    return cachedContent;
+  }
+
+  @Nullable
+  private byte[] readContent(Resource resource) throws IOException {
+    try (InputStream in = resource.getInputStream()) {
+      byte[] content = in.readNBytes((int) maxEntrySize + 1);
+      return content.length > maxEntrySize ? null : content;
+    }
+  }
+
+  @Nullable
+  private byte[] readPrecompressed(Resource resource, String extension) {
+    try {
+      Resource encoded = resource.createRelative(resource.getName() + extension);
+      if (encoded.exists()) {
+        return readContent(encoded);
+      }
+    }
+    catch (IOException e) {
+      if (log.isTraceEnabled()) {
+        log.trace("No {} variant for [{}]", extension, resource, e);
+      }
+    }
+    return null;
+  }
+
+  private static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 32);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+      gzip.write(content);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Content of a cached resource, ready to be written to a response
+   */
+  public static final class CachedContent {
+
+    private final Resource resource;
+
+    private final byte[] content;
+
+    private final String eTag;
+
+    @Nullable
+    private final String contentType;
+
+    private final long lastModified;
+
+    // coding -> variant, in order of preference
+    private final LinkedHashMap<String, Variant> variants = new LinkedHashMap<>(4);
+
+    private long size;
+
+    volatile long checkedAt = System.nanoTime();
+
+    CachedContent(Resource resource, byte[] content,
+            String eTag, @Nullable String contentType, long lastModified) {
+      this.resource = resource;
+      this.content = content;
+      this.eTag = eTag;
+      this.contentType = contentType;
+      this.lastModified = lastModified;
+      this.size = content.length;
+    }
+
+    void addVariant(String coding, byte[] content, String eTag) {
+      variants.put(coding, new Variant(content, eTag));
+      size += content.length;
+    }
+
+    /**
+     * Select the encoded variant the client accepts with the highest
+     * quality value, the preferred one on a tie. A coding with
+     * {@code q=0} is not acceptable.
+     *
+     * @param acceptEncoding the {@code Accept-Encoding} request header
+     * @return the content coding, or {@code null} to send the content as is
+     */
+    @Nullable
+    public String selectCoding(@Nullable String acceptEncoding) {
+      if (acceptEncoding == null || variants.isEmpty()) {
+        return null;
+      }
+      String[] tokens = StringUtils.tokenizeToStringArray(acceptEncoding, ",");
+      String selected = null;
+      double selectedQuality = 0;
+      for (String coding : variants.keySet()) {
+        double quality = getQuality(tokens, coding);
+        if (quality > selectedQuality) {
+          selected = coding;
+          selectedQuality = quality;
+        }
+      }
+      return selected;
+    }
+
+    /**
+     * Quality value of the coding in the {@code Accept-Encoding} tokens,
+     * {@code 0} if not acceptable
+     */
+    private static double getQuality(String[] tokens, String coding) {
+      double wildcard = 0;
+      for (String token : tokens) {
+        int paramsIndex = token.indexOf(';');
+        String name = paramsIndex == -1 ? token : token.substring(0, paramsIndex).trim();
+        if (name.equalsIgnoreCase(coding)) {
+          return paramsIndex == -1 ? 1 : parseQuality(token.substring(paramsIndex + 1));
+        }
+        if (name.equals("*")) {
+          wildcard = paramsIndex == -1 ? 1 : parseQuality(token.substring(paramsIndex + 1));
+        }
+      }
+      return wildcard;
+    }
+
+    private static double parseQuality(String params) {
+      for (String param : StringUtils.tokenizeToStringArray(params, ";")) {
+        if (param.length() > 2 && param.regionMatches(true, 0, "q=", 0, 2)) {
+          try {
+            return Double.parseDouble(param.substring(2));
+          }
+          catch (NumberFormatException e) {
+            return 0; // send the content as is
+          }
+        }
+      }
+      return 1;
+    }
+
+    /**
+     * Return whether the response depends on the {@code Accept-Encoding} header
+     */
+    public boolean hasVariants() {
+      return !variants.isEmpty();
+    }
+
+    /**
+     * Return the content in the given coding
+     *
+     * @param coding a coding returned by {@link #selectCoding(String)}
+     */
+    public byte[] getContent(@Nullable String coding) {
+      if (coding != null) {
+        Variant variant = variants.get(coding);
+        if (variant != null) {
+          return variant.content;
+        }
+      }
+      return content;
+    }
+
+    /**
+     * Return the strong ETag of the content in the given coding
+     *
+     * @param coding a coding returned by {@link #selectCoding(String)}
+     */
+    public String getETag(@Nullable String coding) {
+      if (coding != null) {
+        Variant variant = variants.get(coding);
+        if (variant != null) {
+          return variant.eTag;
+        }
+      }
+      return eTag;
+    }
+
+    @Nullable
+    public String getContentType() {
+      return contentType;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public Resource getResource() {
+      return resource;
+    }
+
+    @Override
+    public String toString() {
+      return "CachedContent{" + resource + ", size=" + content.length + ", variants=" + variants.keySet() + '}';
+    }
+  }
+
+  private record Variant(byte[] content, String eTag) { }
+
+}
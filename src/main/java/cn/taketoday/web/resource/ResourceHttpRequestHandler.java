@@ -25,12 +25,16 @@ import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import cn.taketoday.beans.factory.DisposableBean;
 import cn.taketoday.beans.factory.InitializingBean;
 import cn.taketoday.context.ApplicationContext;
 import cn.taketoday.context.expression.EmbeddedValueResolverAware;
@@ -98,7 +102,7 @@ import cn.taketoday.web.servlet.ServletUtils;
  * @since 4.0
  */
 public class ResourceHttpRequestHandler extends WebContentGenerator
-        implements RequestHandler, EmbeddedValueResolverAware, InitializingBean, CorsConfigurationSource {
+        implements RequestHandler, EmbeddedValueResolverAware, InitializingBean, DisposableBean, CorsConfigurationSource {
 
   private static final Logger logger = LoggerFactory.getLogger(ResourceHttpRequestHandler.class);
 
@@ -140,6 +144,9 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
 
   private boolean optimizeLocations = false;
 
+  @Nullable
+  private ResourceContentCache contentCache;
+
   @Nullable
   private StringValueResolver embeddedValueResolver;
 
@@ -368,6 +375,25 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
     return this.optimizeLocations;
   }
 
+  /**
+   * Set the cache of small static resources served from memory, with
+   * their ETag and encoded variants prepared upfront.
+   * <p>By default no content is cached, each request reads the resource.
+   *
+   * @see ResourceContentCache
+   */
+  public void setContentCache(@Nullable ResourceContentCache contentCache) {
+    this.contentCache = contentCache;
+  }
+
+  /**
+   * Return the configured content cache.
+   */
+  @Nullable
+  public ResourceContentCache getContentCache() {
+    return this.contentCache;
+  }
+
   @Override
   public void setEmbeddedValueResolver(@Nullable StringValueResolver resolver) {
     this.embeddedValueResolver = resolver;
@@ -382,6 +408,7 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
     }
 
     initAllowedLocations();
+    initVersionManifests();
 
     // Initialize immutable resolver and transformer chains
     this.resolvingChain = new DefaultResourceResolvingChain(this.resourceResolvers);
@@ -474,6 +501,48 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
     }
   }
 
+  /**
+   * Bring the {@link ContentVersionManifest manifests} of content-based
+   * version strategies up to date with the configured locations, so that
+   * unchanged resources are not hashed again after a restart.
+   */
+  protected void initVersionManifests() {
+    List<Resource> locations = getLocations();
+    if (CollectionUtils.isEmpty(locations)) {
+      return;
+    }
+    for (ContentVersionManifest manifest : getVersionManifests()) {
+      manifest.scan(locations);
+    }
+  }
+
+  /**
+   * Save the versions recorded since the last scan or save
+   */
+  @Override
+  public void destroy() {
+    for (ContentVersionManifest manifest : getVersionManifests()) {
+      manifest.save();
+    }
+  }
+
+  private Set<ContentVersionManifest> getVersionManifests() {
+    Set<ContentVersionManifest> manifests = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (ResourceResolver resolver : getResourceResolvers()) {
+      if (resolver instanceof VersionResourceResolver versionResolver) {
+        for (VersionStrategy strategy : versionResolver.getStrategyMap().values()) {
+          if (strategy instanceof ContentVersionStrategy contentStrategy) {
+            ContentVersionManifest manifest = contentStrategy.getManifest();
+            if (manifest != null) {
+              manifests.add(manifest);
+            }
+          }
+        }
+      }
+    }
+    return manifests;
+  }
+
   /**
    * Processes a resource request.
    * <p>Checks for the existence of the requested resource in the configured list of locations.
@@ -488,6 +557,16 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
    */
   @Override
   public Object handleRequest(RequestContext request) throws Exception {
+    ResourceContentCache contentCache = getCacheFor(request);
+    if (contentCache != null) {
+      ResourceContentCache.CachedContent content = contentCache.get(getCacheKey(request));
+      if (content != null) {
+        checkRequest(request);
+        writeCachedContent(request, content);
+        return HandlerAdapter.NONE_RETURN_VALUE;
+      }
+    }
+
     // For very general mappings (e.g. "/") we need to check 404 first
     Resource resource = getResource(request);
     if (resource == null) {
@@ -504,6 +583,15 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
     // Supported methods and required session
     checkRequest(request);
 
+    if (contentCache != null) {
+      ResourceContentCache.CachedContent content =
+              contentCache.put(getCacheKey(request), resource, getMediaType(request, resource));
+      if (content != null) {
+        writeCachedContent(request, content);
+        return HandlerAdapter.NONE_RETURN_VALUE;
+      }
+    }
+
     // Header phase
     if (isUseLastModified() && request.checkNotModified(resource.lastModified())) {
       logger.trace("Resource not modified");
@@ -542,6 +630,64 @@ public class ResourceHttpRequestHandler extends WebContentGenerator
     return HandlerAdapter.NONE_RETURN_VALUE;
   }
 
+  @Nullable
+  private ResourceContentCache getCacheFor(RequestContext request) {
+    ResourceContentCache contentCache = this.contentCache;
+    if (contentCache != null) {
+      String method = request.getMethodValue();
+      if (("GET".equals(method) || "HEAD".equals(method))
+              && request.requestHeaders().getFirst(HttpHeaders.RANGE) == null) {
+        return contentCache;
+      }
+    }
+    return null;
+  }
+
+  private String getCacheKey(RequestContext request) {
+    return request.pathWithinApplication().value();
+  }
+
+  /**
+   * Write the cached content of a resource, the variant is selected by
+   * the {@code Accept-Encoding} request header.
+   * <p>Conditional requests are evaluated against the cached ETag and
+   * last-modified time, so a {@code 304} involves no I/O at all.
+   *
+   * @param request current request
+   * @param content the cached resource content
+   * @throws IOException in case of errors while writing the content
+   */
+  protected void writeCachedContent(RequestContext request, ResourceContentCache.CachedContent content)
+          throws IOException {
+    HttpHeaders responseHeaders = request.responseHeaders();
+    String coding = content.selectCoding(request.requestHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+    if (content.hasVariants()) {
+      responseHeaders.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    long lastModified = isUseLastModified() ? content.getLastModified() : -1;
+    if (request.checkNotModified(content.getETag(coding), lastModified)) {
+      logger.trace("Resource not modified");
+      return;
+    }
+
+    prepareResponse(request);
+    String contentType = content.getContentType();
+    if (contentType != null) {
+      request.setContentType(contentType);
+    }
+    if (coding != null) {
+      responseHeaders.set(HttpHeaders.CONTENT_ENCODING, coding);
+    }
+    responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    byte[] body = content.getContent(coding);
+    responseHeaders.setContentLength(body.length);
+    if (!HttpMethod.HEAD.matches(request.getMethodValue())) {
+      request.getOutputStream().write(body);
+    }
+  }
+
   @Nullable
   protected Resource getResource(RequestContext request) throws IOException {
     String path = request.pathWithinApplication().value();
@@ -110,6 +110,22 @@ public class VersionResourceResolver extends AbstractResourceResolver {
     return this;
   }
 
+  /**
+   * Insert a content-based version in resource URLs that match the given path
+   * patterns, the versions are recorded in the given manifest so that a file
+   * is only hashed again once it has changed.
+   *
+   * @param manifest the manifest recording the versions
+   * @param pathPatterns one or more resource URL path patterns,
+   * relative to the pattern configured with the resource handler
+   * @return the current instance for chained method invocation
+   * @see ContentVersionManifest
+   */
+  public VersionResourceResolver addContentVersionStrategy(ContentVersionManifest manifest, String... pathPatterns) {
+    addVersionStrategy(new ContentVersionStrategy(manifest), pathPatterns);
+    return this;
+  }
+
   /**
    * Insert a fixed, prefix-based version in resource URLs that match the given
    * path patterns, for example: <code>"{version}/js/main.js"</code>. This is useful (vs.
@@ -21,11 +21,22 @@ package cn.taketoday.web.session;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 
 import cn.taketoday.core.AttributeAccessorSupport;
+import cn.taketoday.lang.Nullable;
 
 /**
+ * Default {@link WebSession}, which records the names of the attributes
+ * changed through {@link #setAttribute}, {@link #removeAttribute} and
+ * {@link #computeAttribute}, so that a storage only needs to save those.
+ * Modifying an attribute value in place, or the map returned by
+ * {@link #getAttributes()}, is not recorded: set the attribute again.
+ *
  * @author TODAY <br>
  * 2019-09-27 19:40
  */
@@ -37,10 +48,97 @@ public class DefaultSession extends AttributeAccessorSupport implements WebSessi
   private final long creationTime;
   private final WebSessionStorage storage;
 
+  /** names of attributes changed since last saved @since 4.0 */
+  @Nullable
+  private transient LinkedHashSet<String> changedAttributes;
+
   public DefaultSession(String id, WebSessionStorage storage) {
+    this(id, System.currentTimeMillis(), storage);
+  }
+
+  /**
+   * Restore a stored session
+   *
+   * @since 4.0
+   */
+  public DefaultSession(String id, long creationTime, WebSessionStorage storage) {
     this.id = id;
     this.storage = storage;
-    this.creationTime = System.currentTimeMillis();
+    this.creationTime = creationTime;
+  }
+
+  @Override
+  public void setAttribute(String name, Object value) {
+    super.setAttribute(name, value);
+    attributeChanged(name);
+  }
+
+  @Override
+  public Object removeAttribute(String name) {
+    Object removed = super.removeAttribute(name);
+    if (removed != null) {
+      attributeChanged(name);
+    }
+    return removed;
+  }
+
+  @Override
+  public <T> T computeAttribute(String name, Function<String, T> computeFunction) {
+    boolean present = hasAttribute(name);
+    T value = super.computeAttribute(name, computeFunction);
+    if (!present) {
+      attributeChanged(name);
+    }
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    if (attributes != null) {
+      for (String name : attributes.keySet()) {
+        attributeChanged(name);
+      }
+    }
+    super.clear();
+  }
+
+  private void attributeChanged(String name) {
+    LinkedHashSet<String> changedAttributes = this.changedAttributes;
+    if (changedAttributes == null) {
+      changedAttributes = new LinkedHashSet<>();
+      this.changedAttributes = changedAttributes;
+    }
+    changedAttributes.add(name);
+  }
+
+  /**
+   * Return the names of the attributes set or removed since the session
+   * was created or last saved
+   *
+   * @since 4.0
+   */
+  public Set<String> getChangedAttributeNames() {
+    return changedAttributes != null
+           ? Collections.unmodifiableSet(changedAttributes) : Collections.emptySet();
+  }
+
+  /**
+   * Return whether attributes have been set or removed since the session
+   * was created or last saved
+   *
+   * @since 4.0
+   */
+  public boolean hasChangedAttributes() {
+    return changedAttributes != null && !changedAttributes.isEmpty();
+  }
+
+  /**
+   * Forget the changed attributes, called once they have been saved
+   *
+   * @since 4.0
+   */
+  public void clearChangedAttributes() {
+    this.changedAttributes = null;
   }
 
   @Override
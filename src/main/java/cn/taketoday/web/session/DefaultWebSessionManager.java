@@ -92,6 +92,7 @@ public class DefaultWebSessionManager implements WebSessionManager {
   public WebSession createSession(RequestContext context) {
     WebSession ret = createSession();
     obtainTokenResolver().saveToken(context, ret);
+    saveChangesOnCompletion(context, ret);
     return ret;
   }
 
@@ -119,9 +120,22 @@ public class DefaultWebSessionManager implements WebSessionManager {
     if ((StringUtils.isEmpty(token) || (ret = obtainSessionStorage().get(token)) == null) && create) {
       return createSession(context);
     }
+    if (ret != null) {
+      saveChangesOnCompletion(context, ret);
+    }
     return ret;
   }
 
+  /**
+   * Save the changes made to the session once the request has been handled
+   *
+   * @see WebSessionStorage#saveChanges(WebSession)
+   * @since 4.0
+   */
+  protected void saveChangesOnCompletion(RequestContext context, WebSession session) {
+    context.registerRequestCompletedCallback(new SaveChangesCallback(obtainSessionStorage(), session));
+  }
+
   //
   // -------------------------------------------
 
@@ -152,4 +166,27 @@ public class DefaultWebSessionManager implements WebSessionManager {
   public void setTokenResolver(TokenResolver tokenResolver) {
     this.tokenResolver = tokenResolver;
   }
+
+  /**
+   * Equal for the same session, so it is registered once per request
+   */
+  private record SaveChangesCallback(WebSessionStorage storage, WebSession session) implements Runnable {
+
+    @Override
+    public void run() {
+      storage.saveChanges(session);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return this == other || (other instanceof SaveChangesCallback callback
+              && callback.session == session && callback.storage == storage);
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(session);
+    }
+  }
+
 }
@@ -17,45 +17,355 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see [http://www.gnu.org/licenses/]
  */
+
 package cn.taketoday.web.session;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cn.taketoday.beans.factory.DisposableBean;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
+ * In-memory {@link WebSessionStorage}, safe for concurrent requests.
+ * <p>
+ * A session expires once it has not been accessed for {@link #getExpire()}
+ * milliseconds. Sessions are kept in an expiry queue in the order they were
+ * queued, a background sweeper visits the ones queued longer than the idle
+ * timeout at {@link #setSweepInterval(Duration) sweepInterval}, removes the
+ * expired ones and re-queues those which have been accessed since, so that
+ * abandoned sessions do not pile up.
+ * <p>
+ * With {@link #setMaxSessions(int) maxSessions} a new session evicts the least
+ * recently used one once the limit is reached; the queue doubles as a second
+ * chance list, approximating LRU order without a lock on every access.
+ *
  * @author TODAY <br>
  * 2019-09-28 10:31
  */
 public class MemWebSessionStorage
-        extends AbstractWebSessionStorage implements WebSessionStorage {
+        extends AbstractWebSessionStorage implements WebSessionStorage, DisposableBean {
+
+  private final ConcurrentHashMap<String, SessionEntry> sessions = new ConcurrentHashMap<>(1024);
+
+  /** in order of queueing, queue time ascending */
+  private final ConcurrentLinkedQueue<SessionEntry> expiryQueue = new ConcurrentLinkedQueue<>();
+
+  /** polling the expiry queue */
+  private final ReentrantLock queueLock = new ReentrantLock();
+
+  private int maxSessions = -1;
+
+  private Duration sweepInterval = Duration.ofMinutes(1);
+
+  private Clock clock = Clock.systemDefaultZone();
 
-  private final Map<String, WebSession> sessions;
+  @Nullable
+  private volatile ScheduledExecutorService sweeper;
+
+  private final LongAdder expiredCount = new LongAdder();
+
+  private final LongAdder evictedCount = new LongAdder();
 
   public MemWebSessionStorage() {
     this(3600_000);
   }
 
+  /**
+   * @param expire idle timeout in milliseconds
+   */
   public MemWebSessionStorage(long expire) {
-    this(expire, new HashMap<>(1024));
+    super(expire);
   }
 
-  public MemWebSessionStorage(long expire, Map<String, WebSession> sessions) {
+  /**
+   * @param expire idle timeout in milliseconds
+   * @param maxSessions the maximum number of sessions, {@code -1} for no limit
+   * @since 4.0
+   */
+  public MemWebSessionStorage(long expire, int maxSessions) {
     super(expire);
-    this.sessions = sessions;
+    setMaxSessions(maxSessions);
+  }
+
+  /**
+   * Set the maximum number of sessions, the least recently used session
+   * is evicted beyond it, defaults to {@code -1}: no limit
+   *
+   * @since 4.0
+   */
+  public void setMaxSessions(int maxSessions) {
+    Assert.isTrue(maxSessions == -1 || maxSessions > 0, "maxSessions must be greater than 0 or -1");
+    this.maxSessions = maxSessions;
+  }
+
+  public int getMaxSessions() {
+    return maxSessions;
+  }
+
+  /**
+   * Set how often expired sessions are removed in the background,
+   * {@code null} or zero to remove them only when they are requested,
+   * defaults to 1 minute
+   *
+   * @since 4.0
+   */
+  public void setSweepInterval(@Nullable Duration sweepInterval) {
+    this.sweepInterval = sweepInterval;
+  }
+
+  @Nullable
+  public Duration getSweepInterval() {
+    return sweepInterval;
+  }
+
+  /**
+   * Set the clock session access times are taken from,
+   * defaults to the system clock
+   *
+   * @see Clock#systemDefaultZone()
+   * @since 4.0
+   */
+  public void setClock(Clock clock) {
+    Assert.notNull(clock, "Clock is required");
+    this.clock = clock;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  @Override
+  @Nullable
+  public WebSession get(String id) {
+    SessionEntry entry = sessions.get(id);
+    if (entry != null) {
+      long now = clock.millis();
+      if (isExpired(entry, now)) {
+        if (sessions.remove(id, entry)) {
+          expiredCount.increment();
+        }
+        return null;
+      }
+      if (entry.lastAccessTime != now) {
+        entry.lastAccessTime = now;
+      }
+      return entry.session;
+    }
+    return null;
+  }
+
+  @Override
+  public boolean contains(String id) {
+    SessionEntry entry = sessions.get(id);
+    return entry != null && !isExpired(entry, clock.millis());
   }
 
   @Override
   protected WebSession getInternal(String id) {
-    return sessions.get(id);
+    SessionEntry entry = sessions.get(id);
+    return entry != null ? entry.session : null;
   }
 
   @Override
   public WebSession removeInternal(String id) {
-    return sessions.remove(id);
+    SessionEntry entry = sessions.remove(id);
+    return entry != null ? entry.session : null;
   }
 
   @Override
   protected void storeInternal(String id, WebSession session) {
-    sessions.put(id, session);
+    SessionEntry entry = new SessionEntry(id, session, clock.millis());
+    sessions.put(id, entry);
+    expiryQueue.offer(entry);
+    if (maxSessions > 0 && sessions.size() > maxSessions) {
+      evict();
+    }
+    startSweeper();
+  }
+
+  /**
+   * Remove expired sessions, called by the background sweeper
+   *
+   * @return the number of removed sessions
+   * @since 4.0
+   */
+  public int removeExpiredSessions() {
+    int removed = 0;
+    long now = clock.millis();
+    ReentrantLock queueLock = this.queueLock;
+    queueLock.lock();
+    try {
+      SessionEntry entry;
+      while ((entry = expiryQueue.peek()) != null) {
+        if (!isQueued(entry)) {
+          expiryQueue.poll();
+        }
+        else if (!isExpired(entry.queuedAt, now)) {
+          // the rest of the queue is not due
+          break;
+        }
+        else {
+          expiryQueue.poll();
+          if (isExpired(entry, now)) {
+            if (sessions.remove(entry.id, entry)) {
+              expiredCount.increment();
+              removed++;
+            }
+          }
+          else {
+            requeue(entry, now);
+          }
+        }
+      }
+    }
+    finally {
+      queueLock.unlock();
+    }
+    return removed;
+  }
+
+  private void evict() {
+    long now = clock.millis();
+    ReentrantLock queueLock = this.queueLock;
+    queueLock.lock();
+    try {
+      SessionEntry entry;
+      while (sessions.size() > maxSessions && (entry = expiryQueue.poll()) != null) {
+        if (isQueued(entry)) {
+          if (entry.lastAccessTime != entry.queuedAccessTime) {
+            // accessed since queued, second chance
+            requeue(entry, now);
+          }
+          else if (sessions.remove(entry.id, entry)) {
+            evictedCount.increment();
+          }
+        }
+      }
+    }
+    finally {
+      queueLock.unlock();
+    }
+  }
+
+  /**
+   * Queue the entry again, behind the entries queued before {@code now}
+   */
+  private void requeue(SessionEntry entry, long now) {
+    entry.queuedAt = now;
+    entry.queuedAccessTime = entry.lastAccessTime;
+    expiryQueue.offer(entry);
+  }
+
+  private boolean isQueued(SessionEntry entry) {
+    // removed or replaced sessions stay in the queue until polled
+    return sessions.get(entry.id) == entry;
+  }
+
+  private boolean isExpired(SessionEntry entry, long now) {
+    return isExpired(entry.lastAccessTime, now);
+  }
+
+  private boolean isExpired(long accessTime, long now) {
+    return now - accessTime > getExpire();
+  }
+
+  private void startSweeper() {
+    if (sweeper == null) {
+      Duration sweepInterval = this.sweepInterval;
+      if (sweepInterval != null && !sweepInterval.isZero() && !sweepInterval.isNegative()) {
+        synchronized(this) {
+          if (sweeper == null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("session-sweeper-");
+            threadFactory.setDaemon(true);
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+            executor.setRemoveOnCancelPolicy(true);
+            long interval = sweepInterval.toMillis();
+            executor.scheduleWithFixedDelay(this::removeExpiredSessions, interval, interval, TimeUnit.MILLISECONDS);
+            this.sweeper = executor;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop the background sweeper
+   */
+  @Override
+  public void destroy() {
+    ScheduledExecutorService sweeper = this.sweeper;
+    if (sweeper != null) {
+      this.sweeper = null;
+      sweeper.shutdownNow();
+    }
+  }
+
+  // metrics
+
+  /**
+   * Number of stored sessions, including expired ones not removed yet
+   *
+   * @since 4.0
+   */
+  public int getActiveCount() {
+    return sessions.size();
   }
+
+  /**
+   * Number of sessions removed after the idle timeout
+   *
+   * @since 4.0
+   */
+  public long getExpiredCount() {
+    return expiredCount.sum();
+  }
+
+  /**
+   * Number of sessions evicted to stay within {@link #setMaxSessions(int) maxSessions}
+   *
+   * @since 4.0
+   */
+  public long getEvictedCount() {
+    return evictedCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "MemWebSessionStorage{active=" + getActiveCount() + ", expired="
+            + getExpiredCount() + ", evicted=" + getEvictedCount() + '}';
+  }
+
+  static final class SessionEntry {
+
+    final String id;
+
+    final WebSession session;
+
+    volatile long lastAccessTime;
+
+    /** time queued, the order of the expiry queue, guarded by queueLock once queued */
+    long queuedAt;
+
+    /** last access time when queued, guarded by queueLock once queued */
+    long queuedAccessTime;
+
+    SessionEntry(String id, WebSession session, long now) {
+      this.id = id;
+      this.session = session;
+      this.lastAccessTime = now;
+      this.queuedAt = now;
+      this.queuedAccessTime = now;
+    }
+  }
+
 }
@@ -17,39 +17,69 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see [http://www.gnu.org/licenses/]
  */
+
 package cn.taketoday.web.session;
 
-import org.redisson.api.RMapCache;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
 import org.redisson.api.RedissonClient;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+
 /**
+ * {@link WebSessionStorage} keeping each session in a Redis hash, with a
+ * field per attribute.
+ * <p>
+ * A session is written as a whole only when it is stored, afterwards
+ * {@link #saveChanges(WebSession)} writes only the attributes changed
+ * during the request, see {@link DefaultSession#getChangedAttributeNames()},
+ * and refreshes the expiry in the same round trip. The hash expires
+ * {@link #getExpire()} milliseconds after the last request.
+ *
  * @author TODAY <br>
  * 2019-09-28 10:31
  */
 public class RedissonSessionStorage
         extends AbstractWebSessionStorage implements WebSessionStorage {
 
-  private final String prefix;
-  private final RMapCache<String, WebSession> sessions;
+  /** hash field of the creation time @since 4.0 */
+  static final String CREATION_TIME_FIELD = "creationTime";
 
-//    private static final String DEFAULT_NAME = "sessions:";
+  /** prefix of the hash fields of attributes @since 4.0 */
+  static final String ATTRIBUTE_PREFIX = "attr:";
 
-  public RedissonSessionStorage() {
-    this(3600_000);
-  }
+  @Nullable
+  private final String prefix;
+
+  private final RedissonClient redisson;
 
   public RedissonSessionStorage(RedissonClient redisson) {
-    this(3600_000, null, redisson.getMapCache("sessions"));
+    this(redisson, 3600_000);
   }
 
-  public RedissonSessionStorage(long expire) {
-    this(expire, "sessions:", null);
+  /**
+   * @param expire idle timeout in milliseconds
+   */
+  public RedissonSessionStorage(RedissonClient redisson, long expire) {
+    this(redisson, expire, "sessions:");
   }
 
-  public RedissonSessionStorage(long expire, String prefix, RMapCache<String, WebSession> sessions) {
+  /**
+   * @param expire idle timeout in milliseconds
+   * @param prefix prefix of the keys of the session hashes
+   */
+  public RedissonSessionStorage(RedissonClient redisson, long expire, @Nullable String prefix) {
     super(expire);
+    Assert.notNull(redisson, "RedissonClient is required");
     this.prefix = prefix;
-    this.sessions = sessions;
+    this.redisson = redisson;
   }
 
   @Override
@@ -61,19 +91,112 @@ public class RedissonSessionStorage
     return prefix.concat(id);
   }
 
+  /**
+   * Expired sessions are removed by Redis, the expiry is refreshed
+   * on each request
+   */
+  @Override
+  @Nullable
+  public WebSession get(String id) {
+    return getInternal(computeId(id));
+  }
+
+  @Override
+  public boolean contains(String id) {
+    return getMap(computeId(id)).isExists();
+  }
+
   @Override
-  protected WebSession getInternal(String id) {
-    return sessions.get(id);
+  @Nullable
+  protected WebSession getInternal(String key) {
+    return readSession(key, getMap(key).readAllMap());
   }
 
   @Override
-  protected WebSession removeInternal(String id) {
-    return sessions.remove(id);
+  @Nullable
+  protected WebSession removeInternal(String key) {
+    RMap<String, Object> map = getMap(key);
+    WebSession session = readSession(key, map.readAllMap());
+    map.delete();
+    return session;
   }
 
   @Override
-  protected void storeInternal(String id, WebSession session) {
-    sessions.put(id, session);
+  protected void storeInternal(String key, WebSession session) {
+    HashMap<String, Object> fields = new HashMap<>();
+    fields.put(CREATION_TIME_FIELD, session.getCreationTime());
+    for (Map.Entry<String, Object> attribute : session.getAttributes().entrySet()) {
+      fields.put(ATTRIBUTE_PREFIX.concat(attribute.getKey()), attribute.getValue());
+    }
+
+    RBatch batch = redisson.createBatch();
+    RMapAsync<String, Object> map = batch.getMap(key);
+    map.deleteAsync();
+    map.putAllAsync(fields);
+    map.expireAsync(getExpire(), TimeUnit.MILLISECONDS);
+    batch.execute();
+
+    if (session instanceof DefaultSession defaultSession) {
+      defaultSession.clearChangedAttributes();
+    }
+  }
+
+  /**
+   * Write the attributes changed during the request and refresh the expiry,
+   * in one round trip. For sessions not tracking their changes, i.e. not a
+   * {@link DefaultSession}, only the expiry is refreshed.
+   */
+  @Override
+  public void saveChanges(WebSession session) {
+    RBatch batch = redisson.createBatch();
+    RMapAsync<String, Object> map = batch.getMap(computeId(session.getId()));
+    if (session instanceof DefaultSession defaultSession && defaultSession.hasChangedAttributes()) {
+      HashMap<String, Object> changed = new HashMap<>();
+      ArrayList<String> removed = new ArrayList<>();
+      for (String name : defaultSession.getChangedAttributeNames()) {
+        Object value = defaultSession.getAttribute(name);
+        if (value != null) {
+          changed.put(ATTRIBUTE_PREFIX.concat(name), value);
+        }
+        else {
+          removed.add(ATTRIBUTE_PREFIX.concat(name));
+        }
+      }
+      if (!changed.isEmpty()) {
+        // recreates the hash if it expired meanwhile
+        changed.put(CREATION_TIME_FIELD, session.getCreationTime());
+        map.putAllAsync(changed);
+      }
+      if (!removed.isEmpty()) {
+        map.fastRemoveAsync(removed.toArray(new String[removed.size()]));
+      }
+      defaultSession.clearChangedAttributes();
+    }
+    map.expireAsync(getExpire(), TimeUnit.MILLISECONDS);
+    batch.execute();
+  }
+
+  @Nullable
+  private WebSession readSession(String key, Map<String, Object> fields) {
+    if (fields.isEmpty()) {
+      return null;
+    }
+    String id = prefix != null && key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+    long creationTime = fields.get(CREATION_TIME_FIELD) instanceof Long time ? time : System.currentTimeMillis();
+    DefaultSession session = new DefaultSession(id, creationTime, this);
+    // restored attributes are not changes
+    Map<String, Object> attributes = session.getAttributes();
+    for (Map.Entry<String, Object> field : fields.entrySet()) {
+      String name = field.getKey();
+      if (name.startsWith(ATTRIBUTE_PREFIX)) {
+        attributes.put(name.substring(ATTRIBUTE_PREFIX.length()), field.getValue());
+      }
+    }
+    return session;
+  }
+
+  private RMap<String, Object> getMap(String key) {
+    return redisson.getMap(key);
   }
 
 }
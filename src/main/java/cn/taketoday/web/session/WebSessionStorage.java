@@ -40,4 +40,16 @@ public interface WebSessionStorage {
 
   void store(String id, WebSession session);
 
+  /**
+   * Save the changes made to a session during a request, called once
+   * the request has been handled.
+   * <p>Storages holding the session objects themselves, like
+   * {@link MemWebSessionStorage}, have nothing to save.
+   *
+   * @param session the session used by the request
+   * @see DefaultSession#getChangedAttributeNames()
+   * @since 4.0
+   */
+  default void saveChanges(WebSession session) { }
+
 }
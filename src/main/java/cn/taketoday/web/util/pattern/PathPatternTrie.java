@@ -0,0 +1,330 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.util.pattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import cn.taketoday.http.server.PathContainer;
+import cn.taketoday.http.server.PathContainer.Element;
+import cn.taketoday.http.server.PathContainer.PathSegment;
+import cn.taketoday.lang.Assert;
+import cn.taketoday.lang.Nullable;
+
+/**
+ * A segment trie (radix tree) compiled from the {@link PathElement} chains of
+ * registered {@link PathPattern PathPatterns}.
+ *
+ * <p>Every separator and literal segment of a pattern becomes an edge of the
+ * tree; all other segment elements ({@link CaptureVariablePathElement},
+ * {@link WildcardPathElement}, {@link RegexPathElement} and
+ * {@link SingleCharWildcardedPathElement}) share a single "dynamic" edge per
+ * node, and catch-all elements ({@link WildcardTheRestPathElement},
+ * {@link CaptureTheRestPathElement}) terminate the chain at the node they
+ * start from. A lookup walks the candidate path once, so its cost depends on
+ * the depth of the path rather than on the number of registered patterns.
+ *
+ * <p>The few patterns collected along the walk are then tried in
+ * {@link PathPattern#SPECIFICITY_COMPARATOR specificity} order (registration
+ * order breaks ties) with {@link PathPattern#matchAndExtract(PathContainer)},
+ * so the winning pattern is matched and its URI variables are captured in a
+ * single pass. The result is the same as matching every pattern and sorting
+ * the hits.
+ *
+ * <p>This class is not thread-safe for concurrent registration; lookups are
+ * safe once registration is complete.
+ *
+ * @param <T> the type of value mapped to each pattern
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+public class PathPatternTrie<T> {
+
+  private final Node<T> root = new Node<>();
+
+  private int size = 0;
+
+  /**
+   * Register a value for the given pattern, replacing any value previously
+   * registered for an equal pattern.
+   *
+   * @param pattern the pattern to index
+   * @param value the value to associate with the pattern
+   * @return the previous value, or {@code null} if none
+   */
+  @Nullable
+  public T put(PathPattern pattern, T value) {
+    Assert.notNull(pattern, "PathPattern must not be null");
+    Node<T> node = root;
+    boolean catchAll = false;
+    PathElement element = pattern.getHeadSection();
+    while (element != null) {
+      if (element instanceof WildcardTheRestPathElement || element instanceof CaptureTheRestPathElement) {
+        catchAll = true;
+        break;
+      }
+      node = node.child(element, pattern.isCaseSensitive());
+      element = element.next;
+    }
+
+    ArrayList<Entry<T>> entries = catchAll ? node.catchAll : node.terminals;
+    if (entries == null) {
+      entries = new ArrayList<>(1);
+      if (catchAll) {
+        node.catchAll = entries;
+      }
+      else {
+        node.terminals = entries;
+      }
+    }
+    else {
+      for (Entry<T> entry : entries) {
+        if (entry.pattern.equals(pattern)) {
+          T previous = entry.value;
+          entry.value = value;
+          return previous;
+        }
+      }
+    }
+    entries.add(new Entry<>(pattern, value, size++));
+    return null;
+  }
+
+  /**
+   * Find the most specific pattern matching the given path.
+   *
+   * @param path the candidate path
+   * @return the best match with its extracted variables,
+   * or {@code null} if no pattern matches
+   */
+  @Nullable
+  public Match<T> lookup(PathContainer path) {
+    List<Element> elements = path.elements();
+    ArrayList<Entry<T>> candidates = new ArrayList<>(4);
+    collect(root, elements, 0, elements.size(), candidates);
+
+    int size = candidates.size();
+    if (size > 1) {
+      candidates.sort(Entry::compareTo);
+    }
+    for (int i = 0; i < size; i++) {
+      Entry<T> candidate = candidates.get(i);
+      PathMatchInfo matchInfo = candidate.pattern.matchAndExtract(path);
+      if (matchInfo != null) {
+        return new Match<>(candidate.pattern, candidate.value, matchInfo);
+      }
+    }
+    return null;
+  }
+
+  private void collect(Node<T> node, List<Element> elements, int index, int length, ArrayList<Entry<T>> candidates) {
+    if (node.catchAll != null) {
+      // the rest of the path may be anything starting with a separator
+      candidates.addAll(node.catchAll);
+    }
+    if (index == length) {
+      if (node.terminals != null) {
+        candidates.addAll(node.terminals);
+      }
+      // a trailing '*' may match the empty remainder
+      Node<T> dynamic = node.dynamic;
+      if (dynamic != null && dynamic.terminals != null) {
+        candidates.addAll(dynamic.terminals);
+      }
+      return;
+    }
+
+    Element element = elements.get(index);
+    if (element instanceof PathSegment segment) {
+      if (node.literals != null) {
+        Node<T> child = node.literals.get(segment.valueToMatch());
+        if (child != null) {
+          collect(child, elements, index + 1, length, candidates);
+        }
+      }
+      if (node.caseInsensitiveLiterals != null) {
+        Node<T> child = node.caseInsensitiveLiterals.get(toLowerCase(segment.valueToMatch()));
+        if (child != null) {
+          collect(child, elements, index + 1, length, candidates);
+        }
+      }
+      if (node.dynamic != null) {
+        collect(node.dynamic, elements, index + 1, length, candidates);
+      }
+    }
+    else {
+      if (index + 1 == length && node.terminals != null) {
+        // optional trailing separator
+        candidates.addAll(node.terminals);
+      }
+      if (node.separator != null) {
+        collect(node.separator, elements, index + 1, length, candidates);
+      }
+    }
+  }
+
+  // same folding as LiteralPathElement
+  private static String toLowerCase(String value) {
+    int length = value.length();
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = Character.toLowerCase(value.charAt(i));
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Return the number of indexed patterns.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all indexed patterns.
+   */
+  public void clear() {
+    root.clear();
+    this.size = 0;
+  }
+
+  /**
+   * The result of a {@link #lookup(PathContainer)}: the matched pattern,
+   * its value and the variables extracted while matching.
+   *
+   * @param <T> the type of mapped value
+   */
+  public static final class Match<T> {
+
+    private final PathPattern pattern;
+    private final T value;
+    private final PathMatchInfo matchInfo;
+
+    Match(PathPattern pattern, T value, PathMatchInfo matchInfo) {
+      this.pattern = pattern;
+      this.value = value;
+      this.matchInfo = matchInfo;
+    }
+
+    public PathPattern getPattern() {
+      return pattern;
+    }
+
+    public T getValue() {
+      return value;
+    }
+
+    public PathMatchInfo getMatchInfo() {
+      return matchInfo;
+    }
+
+    @Override
+    public String toString() {
+      return "Match[pattern=" + pattern + ", value=" + value + ", " + matchInfo + "]";
+    }
+  }
+
+  private static final class Entry<T> implements Comparable<Entry<T>> {
+    final PathPattern pattern;
+    final int order;
+    T value;
+
+    Entry(PathPattern pattern, T value, int order) {
+      this.pattern = pattern;
+      this.value = value;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(Entry<T> other) {
+      int result = PathPattern.SPECIFICITY_COMPARATOR.compare(pattern, other.pattern);
+      return result != 0 ? result : Integer.compare(order, other.order);
+    }
+  }
+
+  private static final class Node<T> {
+
+    @Nullable
+    HashMap<String, Node<T>> literals;
+
+    @Nullable
+    HashMap<String, Node<T>> caseInsensitiveLiterals;
+
+    // shared by all non-literal segment elements
+    @Nullable
+    Node<T> dynamic;
+
+    @Nullable
+    Node<T> separator;
+
+    // patterns ending at this node
+    @Nullable
+    ArrayList<Entry<T>> terminals;
+
+    // patterns ending with '/**' or '/{*var}' starting at this node
+    @Nullable
+    ArrayList<Entry<T>> catchAll;
+
+    Node<T> child(PathElement element, boolean caseSensitive) {
+      if (element instanceof SeparatorPathElement) {
+        if (separator == null) {
+          separator = new Node<>();
+        }
+        return separator;
+      }
+      else if (element instanceof LiteralPathElement) {
+        // LiteralPathElement keeps lower-cased text when not case-sensitive
+        String text = String.valueOf(element.getChars());
+        HashMap<String, Node<T>> literals;
+        if (caseSensitive) {
+          if (this.literals == null) {
+            this.literals = new HashMap<>();
+          }
+          literals = this.literals;
+        }
+        else {
+          if (this.caseInsensitiveLiterals == null) {
+            this.caseInsensitiveLiterals = new HashMap<>();
+          }
+          literals = this.caseInsensitiveLiterals;
+        }
+        return literals.computeIfAbsent(text, key -> new Node<>());
+      }
+      else {
+        if (dynamic == null) {
+          dynamic = new Node<>();
+        }
+        return dynamic;
+      }
+    }
+
+    void clear() {
+      this.literals = null;
+      this.caseInsensitiveLiterals = null;
+      this.dynamic = null;
+      this.separator = null;
+      this.terminals = null;
+      this.catchAll = null;
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.cache;
+
+import org.junit.jupiter.api.Test;
+
+import cn.taketoday.cache.support.TinyLfuCache;
+import cn.taketoday.lang.NullValue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+public class TinyLfuCacheTest extends AbstractCacheTest {
+
+  public TinyLfuCacheTest() {
+    super(new TinyLfuCache());
+  }
+
+  @Test
+  public void sizeBounded() {
+    TinyLfuCache cache = new TinyLfuCache("bounded", 100);
+    for (int i = 0; i < 10_000; i++) {
+      cache.put("key" + i, i);
+    }
+    assertThat(cache.size()).isLessThanOrEqualTo(100);
+    assertThat(cache.getEvictionCount()).isGreaterThanOrEqualTo(10_000 - 100);
+  }
+
+  @Test
+  public void frequentEntriesSurviveScan() {
+    TinyLfuCache cache = new TinyLfuCache("scan", 100);
+    for (int i = 0; i < 50; i++) {
+      cache.put("hot" + i, i);
+    }
+    // one-hit wonders interleaved with the regular traffic
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 50; i++) {
+        cache.get("hot" + i);
+      }
+      for (int i = 0; i < 100; i++) {
+        cache.put("/probe/" + round + "/" + i, NullValue.INSTANCE);
+      }
+    }
+
+    int survivors = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.get("hot" + i) != null) {
+        survivors++;
+      }
+    }
+    assertThat(survivors).isGreaterThanOrEqualTo(45);
+  }
+
+  @Test
+  public void statistics() {
+    TinyLfuCache cache = new TinyLfuCache("stats", 16);
+    cache.put("a", "1");
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+
+    assertThat(cache.getHitCount()).isEqualTo(2L);
+    assertThat(cache.getMissCount()).isEqualTo(1L);
+    assertThat(cache.getEvictionCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void skipNullValues() {
+    TinyLfuCache cache = new TinyLfuCache("negative", 16);
+    cache.setCacheNullValues(false);
+    cache.put("missing", null);
+    cache.put("present", "value");
+
+    assertThat(cache.get("missing", false)).isNull();
+    assertThat(cache.get("present")).isEqualTo("value");
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void evictAndClear() {
+    TinyLfuCache cache = new TinyLfuCache("evict", 16);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.evict("a");
+    assertThat(cache.get("a")).isNull();
+    assertThat(cache.size()).isEqualTo(1);
+
+    cache.clear();
+    assertThat(cache.size()).isEqualTo(0);
+    cache.put("c", "3");
+    assertThat(cache.get("c")).isEqualTo("3");
+  }
+
+}
@@ -21,20 +21,29 @@
 package cn.taketoday.http.converter;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import cn.taketoday.core.TypeReference;
 import cn.taketoday.core.io.ClassPathResource;
+import cn.taketoday.core.io.FileBasedResource;
 import cn.taketoday.core.io.Resource;
 import cn.taketoday.core.io.ResourceRegion;
+import cn.taketoday.http.FileTransferHttpOutputMessage;
 import cn.taketoday.http.HttpHeaders;
 import cn.taketoday.http.HttpRange;
 import cn.taketoday.http.MockHttpOutputMessage;
@@ -204,4 +213,104 @@ public class ResourceRegionHttpMessageConverterTests {
     assertThat(outputMessage.getBodyAsString(StandardCharsets.UTF_8)).isEqualTo("Spring");
   }
 
+  @Test
+  public void shouldTransferFileByteRange(@TempDir Path tempDir) throws Exception {
+    FileTransferOutputMessage outputMessage = new FileTransferOutputMessage();
+    Resource body = createFileResource(tempDir);
+    ResourceRegion region = HttpRange.createByteRange(7).toResourceRegion(body);
+    converter.write(region, MediaType.TEXT_PLAIN, outputMessage);
+
+    HttpHeaders headers = outputMessage.getHeaders();
+    assertThat(headers.getContentLength()).isEqualTo(32L);
+    assertThat(headers.getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-38/39");
+    assertThat(outputMessage.transfers).isEqualTo(1);
+    assertThat(outputMessage.getBodyAsString(StandardCharsets.UTF_8)).isEqualTo("Framework test resource content.");
+  }
+
+  @Test
+  public void shouldTransferFileMultipleByteRanges(@TempDir Path tempDir) throws Exception {
+    FileTransferOutputMessage outputMessage = new FileTransferOutputMessage();
+    Resource body = createFileResource(tempDir);
+    List<ResourceRegion> regions = new ArrayList<>();
+    for (HttpRange range : HttpRange.parseRanges("bytes=7-15,0-5")) {
+      regions.add(range.toResourceRegion(body));
+    }
+
+    converter.write(regions, MediaType.TEXT_PLAIN, outputMessage);
+
+    HttpHeaders headers = outputMessage.getHeaders();
+    String boundary = "--" + headers.getContentType().toString().substring(30);
+    String content = outputMessage.getBodyAsString(StandardCharsets.UTF_8);
+    String[] ranges = StringUtils.tokenizeToStringArray(content, "\r\n", false, true);
+
+    assertThat(outputMessage.transfers).isEqualTo(2);
+    assertThat(ranges[0]).isEqualTo(boundary);
+    assertThat(ranges[2]).isEqualTo("Content-Range: bytes 7-15/39");
+    assertThat(ranges[3]).isEqualTo("Framework");
+    assertThat(ranges[4]).isEqualTo(boundary);
+    assertThat(ranges[6]).isEqualTo("Content-Range: bytes 0-5/39");
+    assertThat(ranges[7]).isEqualTo("Spring");
+    assertThat(ranges[8]).isEqualTo(boundary + "--");
+  }
+
+  @Test
+  public void shouldReadFileByteRangesAtPosition(@TempDir Path tempDir) throws Exception {
+    byte[] content = new byte[200_000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) ('a' + i % 26);
+    }
+    Path file = tempDir.resolve("large.txt");
+    Files.write(file, content);
+    Resource body = new FileBasedResource(file);
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(HttpRange.createByteRange(100_000, 199_999).toResourceRegion(body), MediaType.TEXT_PLAIN, outputMessage);
+    assertThat(outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100000-199999/200000");
+    assertThat(outputMessage.getBodyAsBytes()).isEqualTo(Arrays.copyOfRange(content, 100_000, 200_000));
+
+    outputMessage = new MockHttpOutputMessage();
+    List<ResourceRegion> regions = new ArrayList<>();
+    for (HttpRange range : HttpRange.parseRanges("bytes=199990-199995,26-29")) {
+      regions.add(range.toResourceRegion(body));
+    }
+    converter.write(regions, MediaType.TEXT_PLAIN, outputMessage);
+
+    String boundary = "--" + outputMessage.getHeaders().getContentType().toString().substring(30);
+    String[] ranges = StringUtils.tokenizeToStringArray(
+            outputMessage.getBodyAsString(StandardCharsets.UTF_8), "\r\n", false, true);
+    assertThat(ranges[2]).isEqualTo("Content-Range: bytes 199990-199995/200000");
+    assertThat(ranges[3]).isEqualTo(new String(content, 199_990, 6, StandardCharsets.US_ASCII));
+    assertThat(ranges[6]).isEqualTo("Content-Range: bytes 26-29/200000");
+    assertThat(ranges[7]).isEqualTo("abcd");
+    assertThat(ranges[8]).isEqualTo(boundary + "--");
+  }
+
+  private Resource createFileResource(Path tempDir) throws IOException {
+    Path file = tempDir.resolve("byterangeresource.txt");
+    try (var in = new ClassPathResource("byterangeresource.txt", getClass()).getInputStream()) {
+      Files.copy(in, file);
+    }
+    return new FileBasedResource(file);
+  }
+
+  static class FileTransferOutputMessage extends MockHttpOutputMessage implements FileTransferHttpOutputMessage {
+    int transfers;
+
+    @Override
+    public boolean supportsFileTransfer() {
+      return true;
+    }
+
+    @Override
+    public void transferFrom(File file, long position, long count) throws IOException {
+      transfers++;
+      byte[] bytes = new byte[(int) count];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        raf.seek(position);
+        raf.readFully(bytes);
+      }
+      getBody().write(bytes);
+    }
+  }
+
 }
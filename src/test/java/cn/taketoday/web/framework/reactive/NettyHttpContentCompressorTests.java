@@ -0,0 +1,130 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import cn.taketoday.web.framework.config.CompressionConfiguration;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NettyHttpContentCompressorTests {
+
+  final CompressionConfiguration compression = new CompressionConfiguration();
+
+  EmbeddedChannel channel;
+
+  @AfterEach
+  void close() {
+    if (channel != null) {
+      channel.finishAndReleaseAll();
+    }
+  }
+
+  @Test
+  void isCompressible() {
+    NettyHttpContentCompressor compressor = new NettyHttpContentCompressor(compression);
+    HttpHeaders headers = new DefaultHttpHeaders();
+    assertThat(compressor.isCompressible(headers)).isFalse();
+
+    headers.set(HttpHeaderNames.CONTENT_TYPE, "application/json;charset=UTF-8");
+    assertThat(compressor.isCompressible(headers)).isTrue();
+
+    headers.setInt(HttpHeaderNames.CONTENT_LENGTH, 100);
+    assertThat(compressor.isCompressible(headers)).isFalse();
+
+    headers.setInt(HttpHeaderNames.CONTENT_LENGTH, 4096);
+    assertThat(compressor.isCompressible(headers)).isTrue();
+
+    headers.set(HttpHeaderNames.CONTENT_TYPE, "image/png");
+    assertThat(compressor.isCompressible(headers)).isFalse();
+
+    headers.set(HttpHeaderNames.CONTENT_TYPE, "text/html");
+    headers.set(HttpHeaderNames.CONTENT_ENCODING, "br");
+    assertThat(compressor.isCompressible(headers)).isFalse();
+  }
+
+  @Test
+  void compressLargeBody() {
+    HttpResponse response = exchange("/api", "gzip, deflate", 4096);
+    assertThat(response.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+  }
+
+  @Test
+  void deflate() {
+    HttpResponse response = exchange("/api", "deflate", 4096);
+    assertThat(response.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("deflate");
+  }
+
+  @Test
+  void skipSmallBody() {
+    HttpResponse response = exchange("/api", "gzip", 100);
+    assertThat(response.headers().contains(HttpHeaderNames.CONTENT_ENCODING)).isFalse();
+  }
+
+  @Test
+  void skipExcludedPath() {
+    compression.setExcludePaths(new String[] { "/download/**" });
+    HttpResponse response = exchange("/download/data?id=1", "gzip", 4096);
+    assertThat(response.headers().contains(HttpHeaderNames.CONTENT_ENCODING)).isFalse();
+
+    response = exchange("/api", "gzip", 4096);
+    assertThat(response.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+  }
+
+  private HttpResponse exchange(String uri, String acceptEncoding, int length) {
+    if (channel == null) {
+      channel = new EmbeddedChannel(new NettyHttpContentCompressor(compression));
+    }
+    DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+    channel.writeInbound(request);
+    channel.releaseInbound();
+
+    FullHttpResponse response = new DefaultFullHttpResponse(
+            HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(new byte[length]));
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+    response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, length);
+    channel.writeOutbound(response);
+
+    HttpResponse written = channel.readOutbound();
+    channel.releaseOutbound();
+    return written;
+  }
+
+}
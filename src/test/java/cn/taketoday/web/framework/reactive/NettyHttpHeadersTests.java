@@ -0,0 +1,73 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.Test;
+
+import cn.taketoday.http.MediaType;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NettyHttpHeadersTests {
+
+  final DefaultHttpHeaders original = new DefaultHttpHeaders();
+
+  final NettyHttpHeaders headers = new NettyHttpHeaders(original);
+
+  @Test
+  void liveView() {
+    original.set(HttpHeaderNames.AUTHORIZATION, "Bearer token");
+    assertThat(headers.getFirst("authorization")).isEqualTo("Bearer token");
+    assertThat(headers.containsKey("Authorization")).isTrue();
+
+    headers.add("X-Trace", "1");
+    assertThat(original.get("x-trace")).isEqualTo("1");
+    assertThat(headers.size()).isEqualTo(2);
+  }
+
+  @Test
+  void absentHeader() {
+    assertThat(headers.get("Accept")).isNull();
+    assertThat(headers.getFirst("Accept")).isNull();
+    assertThat(headers.getAccept()).isEmpty();
+    assertThat(headers.getContentType()).isNull();
+    assertThat(headers.getContentLength()).isEqualTo(-1);
+  }
+
+  @Test
+  void commonHeaders() {
+    original.set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+    original.set(HttpHeaderNames.CONTENT_LENGTH, "42");
+    original.add(HttpHeaderNames.ACCEPT, "text/html");
+    original.add(HttpHeaderNames.ACCEPT, "application/json");
+
+    assertThat(headers.getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    assertThat(headers.getContentLength()).isEqualTo(42);
+    assertThat(headers.getAccept()).containsExactly(MediaType.TEXT_HTML, MediaType.APPLICATION_JSON);
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NettyRequestContextRecycleTests {
+
+  final AtomicInteger recycled = new AtomicInteger();
+
+  final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+  final NettyRequestContext nettyContext = new NettyRequestContext(
+          null, new NettyRequestContextConfig(), object -> recycled.incrementAndGet());
+
+  @AfterEach
+  void close() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void recycleAfterResponseSent() {
+    nettyContext.init(channelContext(), request("/users?id=1"));
+    nettyContext.setAttribute("user", "TODAY");
+    assertThat(nettyContext.getRequestPath()).isEqualTo("/users");
+
+    nettyContext.recycle(); // not sent yet
+    assertThat(recycled).hasValue(0);
+    assertThat(nettyContext.getQueryString()).isEqualTo("id=1");
+
+    nettyContext.sendIfNotCommitted();
+    nettyContext.recycle();
+    assertThat(recycled).hasValue(NettyRequestContext.RECYCLE_DEBUG ? 0 : 1);
+    assertThat(channel.<FullHttpResponse>readOutbound().release()).isTrue();
+
+    assertThatIllegalStateException().isThrownBy(nettyContext::getRequestPath);
+    assertThatIllegalStateException().isThrownBy(nettyContext::sendIfNotCommitted);
+
+    // reused for another request
+    nettyContext.init(channelContext(), request("/orders"));
+    assertThat(nettyContext.getRequestPath()).isEqualTo("/orders");
+    assertThat(nettyContext.getQueryString()).isEmpty();
+    assertThat(nettyContext.getAttribute("user")).isNull();
+    assertThat(nettyContext.isCommitted()).isFalse();
+  }
+
+  @Test
+  void notPooled() {
+    NettyRequestContext nettyContext = new NettyRequestContext(
+            null, channelContext(), request("/"), new NettyRequestContextConfig());
+    nettyContext.sendIfNotCommitted();
+    nettyContext.recycle();
+    assertThat(nettyContext.getRequestPath()).isEqualTo("/");
+    assertThat(channel.<FullHttpResponse>readOutbound().release()).isTrue();
+  }
+
+  private ChannelHandlerContext channelContext() {
+    return channel.pipeline().firstContext();
+  }
+
+  private static DefaultFullHttpRequest request(String uri) {
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri, Unpooled.EMPTY_BUFFER);
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Streaming response bodies of {@link NettyRequestContext}
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NettyResponseBodyTests {
+
+  final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+  final NettyRequestContextConfig config = new NettyRequestContextConfig();
+
+  NettyResponseBodyTests() {
+    config.setResponseBodyHighWaterMark(8);
+  }
+
+  @AfterEach
+  void close() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void bufferedBelowHighWaterMark() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_1);
+    context.getOutputStream().write(bytes("1234"));
+    assertThat((Object) channel.readOutbound()).isNull();
+    assertThat(context.isCommitted()).isFalse();
+
+    context.sendIfNotCommitted();
+    FullHttpResponse response = channel.readOutbound();
+    assertThat(response.content().toString(StandardCharsets.UTF_8)).isEqualTo("1234");
+    assertThat(response.headers().contains(HttpHeaderNames.TRANSFER_ENCODING)).isFalse();
+    response.release();
+  }
+
+  @Test
+  void chunkedAboveHighWaterMark() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_1);
+    OutputStream output = context.getOutputStream();
+    output.write(bytes("0123456789abcdefghij"));
+    assertThat(context.isCommitted()).isTrue();
+
+    HttpResponse head = channel.readOutbound();
+    assertThat(head).isNotInstanceOf(FullHttpResponse.class);
+    assertThat(head.headers().get(HttpHeaderNames.TRANSFER_ENCODING))
+            .isEqualTo(HttpHeaderValues.CHUNKED.toString());
+    assertContent(channel.readOutbound(), "01234567");
+    assertContent(channel.readOutbound(), "89abcdef");
+    assertThat((Object) channel.readOutbound()).isNull();
+
+    output.write('k');
+    context.sendIfNotCommitted();
+    HttpContent last = channel.readOutbound();
+    assertThat(last).isInstanceOf(LastHttpContent.class);
+    assertContent(last, "ghijk");
+  }
+
+  @Test
+  void contentLengthNotChunked() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_1);
+    context.setContentLength(10);
+    context.getOutputStream().write(bytes("0123456789"));
+
+    HttpResponse head = channel.readOutbound();
+    assertThat(head.headers().get(HttpHeaderNames.CONTENT_LENGTH)).isEqualTo("10");
+    assertThat(head.headers().contains(HttpHeaderNames.TRANSFER_ENCODING)).isFalse();
+    assertContent(channel.readOutbound(), "01234567");
+
+    context.sendIfNotCommitted();
+    assertContent(channel.readOutbound(), "89");
+  }
+
+  @Test
+  void http10BodyBuffered() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_0);
+    context.getOutputStream().write(bytes("0123456789abcdefghij"));
+    assertThat((Object) channel.readOutbound()).isNull();
+
+    context.sendIfNotCommitted();
+    FullHttpResponse response = channel.readOutbound();
+    assertThat(response.content().readableBytes()).isEqualTo(20);
+    response.release();
+  }
+
+  @Test
+  void writerWaitsWhileChannelNotWritable() throws Exception {
+    Channel channel = mock(Channel.class);
+    given(channel.isWritable()).willReturn(false);
+    given(channel.isActive()).willReturn(true);
+
+    ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+    given(ctx.channel()).willReturn(channel);
+    given(ctx.alloc()).willReturn(ByteBufAllocator.DEFAULT);
+    // the writer is not on the event loop
+    given(ctx.executor()).willReturn(mock(EventExecutor.class));
+
+    ChannelPromise first = new DefaultChannelPromise(channel, GlobalEventExecutor.INSTANCE);
+    ChannelPromise second = new DefaultChannelPromise(channel, GlobalEventExecutor.INSTANCE).setSuccess();
+    willAnswer(invocation -> {
+      ReferenceCountUtil.release(invocation.getArgument(0));
+      return first.isDone() ? second : first;
+    }).given(ctx).writeAndFlush(any());
+
+    NettyRequestContext context = new NettyRequestContext(null, ctx,
+            new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/", Unpooled.EMPTY_BUFFER), config);
+
+    CompletableFuture<Void> writing = CompletableFuture.runAsync(() -> {
+      try {
+        context.getOutputStream().write(bytes("0123456789abcdef"));
+      }
+      catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    Thread.sleep(100);
+    // the outbound buffer is full
+    assertThat(writing).isNotDone();
+
+    first.setSuccess();
+    writing.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void unsentBodyDiscarded() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_1);
+    context.getOutputStream().write(bytes("1234"));
+    ByteBuf responseBody = context.responseBody();
+
+    context.discardResponseBody();
+    assertThat(responseBody.refCnt()).isZero();
+    assertThat((Object) channel.readOutbound()).isNull();
+  }
+
+  @Test
+  void sentBodyNotDiscarded() throws IOException {
+    NettyRequestContext context = createContext(HttpVersion.HTTP_1_1);
+    context.getOutputStream().write(bytes("1234"));
+    context.sendIfNotCommitted();
+
+    context.discardResponseBody();
+    assertContent(channel.readOutbound(), "1234");
+  }
+
+  private NettyRequestContext createContext(HttpVersion version) {
+    return new NettyRequestContext(null, channel.pipeline().firstContext(),
+            new DefaultFullHttpRequest(version, HttpMethod.GET, "/", Unpooled.EMPTY_BUFFER), config);
+  }
+
+  private static void assertContent(HttpContent content, String expected) {
+    try {
+      assertThat(content.content().toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+    }
+    finally {
+      content.release();
+    }
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import cn.taketoday.web.WebApplicationContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * HTTP/2 pipelines of {@link NettyServerInitializer}
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NettyServerInitializerTests {
+
+  final NettyDispatcher nettyDispatcher = mock(NettyDispatcher.class);
+
+  final NettyServerInitializer initializer = new NettyServerInitializer(
+          new ReactiveChannelHandler(nettyDispatcher, mock(WebApplicationContext.class)));
+
+  final EmbeddedChannel channel = new EmbeddedChannel();
+
+  NettyServerInitializerTests() {
+    initializer.setEnableHttp2(true);
+  }
+
+  @AfterEach
+  void close() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void cleartextHttp11() throws Throwable {
+    NettyServerInitializer.Http2Delegate.init(channel.pipeline(), initializer);
+
+    channel.writeInbound(ascii("GET /users HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+    verify(nettyDispatcher).dispatch(any(), any());
+    assertThat(channel.pipeline().get(Http2FrameCodec.class)).isNull();
+  }
+
+  @Test
+  void cleartextPriorKnowledge() {
+    NettyServerInitializer.Http2Delegate.init(channel.pipeline(), initializer);
+
+    channel.writeInbound(Http2CodecUtil.connectionPrefaceBuf());
+    assertHttp2Pipeline(channel.pipeline());
+  }
+
+  @Test
+  void cleartextUpgrade() throws Throwable {
+    NettyServerInitializer.Http2Delegate.init(channel.pipeline(), initializer);
+
+    channel.writeInbound(ascii("GET /users HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Connection: Upgrade, HTTP2-Settings\r\n"
+            + "Upgrade: h2c\r\n"
+            + "HTTP2-Settings: AAMAAABkAARAAAAAAAIAAAAA\r\n\r\n"));
+    channel.runPendingTasks();
+
+    ByteBuf response = channel.readOutbound();
+    try {
+      assertThat(response.toString(StandardCharsets.US_ASCII)).startsWith("HTTP/1.1 101 Switching Protocols");
+    }
+    finally {
+      response.release();
+    }
+    assertHttp2Pipeline(channel.pipeline());
+    // the upgrade request is served on stream 1
+    verify(nettyDispatcher).dispatch(any(), any());
+  }
+
+  @Test
+  void alpnHttp2() {
+    negotiate(ApplicationProtocolNames.HTTP_2);
+    assertHttp2Pipeline(channel.pipeline());
+  }
+
+  @Test
+  void alpnHttp11() {
+    negotiate(ApplicationProtocolNames.HTTP_1_1);
+    ChannelPipeline pipeline = channel.pipeline();
+    assertThat(pipeline.get(HttpServerCodec.class)).isNotNull();
+    assertThat(pipeline.get("ReactiveChannelHandler")).isNotNull();
+    assertThat(pipeline.get(Http2FrameCodec.class)).isNull();
+  }
+
+  /**
+   * fires a completed TLS handshake which negotiated the given protocol
+   */
+  private void negotiate(String protocol) {
+    SslHandler sslHandler = mock(SslHandler.class);
+    given(sslHandler.applicationProtocol()).willReturn(protocol);
+    channel.pipeline().addLast("SslHandler", sslHandler);
+
+    initializer.setSslContext(mock(SslContext.class));
+    NettyServerInitializer.Http2Delegate.init(channel.pipeline(), initializer);
+    channel.pipeline().context(sslHandler).fireUserEventTriggered(SslHandshakeCompletionEvent.SUCCESS);
+    // negotiated once
+    assertThat(channel.pipeline().get("ApplicationProtocolNegotiationHandler")).isNull();
+  }
+
+  private static void assertHttp2Pipeline(ChannelPipeline pipeline) {
+    assertThat(pipeline.get(Http2FrameCodec.class)).isNotNull();
+    assertThat(pipeline.get(Http2MultiplexHandler.class)).isNotNull();
+    // requests are handled by the stream pipelines
+    assertThat(pipeline.get(HttpServerCodec.class)).isNull();
+    assertThat(pipeline.get("HttpObjectAggregator")).isNull();
+    assertThat(pipeline.get("ReactiveChannelHandler")).isNull();
+  }
+
+  private static ByteBuf ascii(String text) {
+    return Unpooled.copiedBuffer(text, StandardCharsets.US_ASCII);
+  }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.taketoday.web.WebApplicationContext;
+import cn.taketoday.web.handler.DispatcherHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class OffloadingNettyDispatcherTests {
+
+  final List<Runnable> tasks = new ArrayList<>();
+
+  final DispatcherHandler dispatcherHandler = mock(DispatcherHandler.class);
+
+  final List<Thread> handlingThreads = new ArrayList<>();
+
+  EmbeddedChannel channel;
+
+  OffloadingNettyDispatcher dispatcher;
+
+  OffloadingNettyDispatcherTests() throws Throwable {
+    willAnswer(invocation -> {
+      handlingThreads.add(Thread.currentThread());
+      NettyRequestContext context = invocation.getArgument(0);
+      context.responseHeaders().set("X-Path", context.getRequestPath());
+      context.requestCompleted();
+      return null;
+    }).given(dispatcherHandler).dispatch(any(), any());
+  }
+
+  @AfterEach
+  void close() {
+    if (channel != null) {
+      channel.finishAndReleaseAll();
+    }
+  }
+
+  @Test
+  void offloadToExecutor() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new Object());
+    setup(tasks::add);
+
+    channel.writeInbound(request("/offload"));
+    assertThat(tasks).hasSize(1);
+    assertThat(handlingThreads).isEmpty();
+    assertThat(channel.config().isAutoRead()).isFalse();
+    assertThat((Object) channel.readOutbound()).isNull();
+
+    tasks.remove(0).run();
+    assertThat(handlingThreads).hasSize(1);
+    // response is sent from the event loop
+    assertThat((Object) channel.readOutbound()).isNull();
+
+    channel.runPendingTasks();
+    assertResponse("/offload", 200);
+    assertThat(channel.config().isAutoRead()).isTrue();
+    assertThat(dispatcher.getOffloadedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void nonBlockingHandlerRunsInline() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new InlineHandler());
+    setup(tasks::add);
+
+    channel.writeInbound(request("/inline"));
+    assertThat(tasks).isEmpty();
+    assertThat(handlingThreads).containsExactly(Thread.currentThread());
+    assertResponse("/inline", 200);
+    assertThat(channel.config().isAutoRead()).isTrue();
+    assertThat(dispatcher.getOffloadedCount()).isZero();
+  }
+
+  @Test
+  void executorRejection() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new Object());
+    setup(task -> {
+      throw new RejectedExecutionException("busy");
+    });
+
+    channel.writeInbound(request("/rejected"));
+    assertThat(handlingThreads).isEmpty();
+    assertResponse(null, 503);
+    // next requests are read again
+    assertThat(channel.config().isAutoRead()).isTrue();
+    assertThat(dispatcher.getRejectedCount()).isEqualTo(1);
+
+    channel.writeInbound(request("/next"));
+    assertResponse(null, 503);
+    assertThat(dispatcher.getRejectedCount()).isEqualTo(2);
+  }
+
+  @Test
+  void pipelinedRequestsHandledInOrder() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new Object());
+    setup(tasks::add);
+
+    channel.writeInbound(request("/first"), request("/second"));
+    assertThat(tasks).hasSize(1);
+
+    tasks.remove(0).run();
+    channel.runPendingTasks();
+    assertResponse("/first", 200);
+    assertThat(tasks).hasSize(1);
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    tasks.remove(0).run();
+    channel.runPendingTasks();
+    assertResponse("/second", 200);
+    assertThat(channel.config().isAutoRead()).isTrue();
+  }
+
+  @Test
+  void responseBodyReleasedOnHandlerFailure() throws Throwable {
+    AtomicReference<ByteBuf> responseBody = new AtomicReference<>();
+    willAnswer(invocation -> {
+      NettyRequestContext context = invocation.getArgument(0);
+      context.getOutputStream().write('a');
+      responseBody.set(context.responseBody());
+      throw new IllegalStateException("handler failed");
+    }).given(dispatcherHandler).dispatch(any(), any());
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new Object());
+    setup(tasks::add);
+
+    channel.writeInbound(request("/failure"));
+    tasks.remove(0).run();
+    channel.runPendingTasks();
+    assertResponse(null, 500);
+    assertThat(responseBody.get().refCnt()).isZero();
+  }
+
+  private void setup(Executor executor) {
+    dispatcher = new OffloadingNettyDispatcher(dispatcherHandler, executor);
+    channel = new EmbeddedChannel(new ReactiveChannelHandler(dispatcher, mock(WebApplicationContext.class)));
+  }
+
+  private void assertResponse(String path, int status) {
+    FullHttpResponse response = channel.readOutbound();
+    try {
+      assertThat(response.status().code()).isEqualTo(status);
+      assertThat(response.headers().get("X-Path")).isEqualTo(path);
+    }
+    finally {
+      response.release();
+    }
+  }
+
+  private static FullHttpRequest request(String uri) {
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+  }
+
+  @NonBlocking
+  static class InlineHandler {
+
+  }
+
+}
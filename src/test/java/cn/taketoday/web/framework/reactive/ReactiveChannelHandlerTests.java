@@ -0,0 +1,208 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.taketoday.web.WebApplicationContext;
+import cn.taketoday.web.handler.DispatcherHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Streaming request bodies with {@link OffloadingNettyDispatcher}
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class ReactiveChannelHandlerTests {
+
+  final List<Runnable> tasks = new ArrayList<>();
+
+  final DispatcherHandler dispatcherHandler = mock(DispatcherHandler.class);
+
+  final OffloadingNettyDispatcher dispatcher = new OffloadingNettyDispatcher(dispatcherHandler, tasks::add);
+
+  final EmbeddedChannel channel = new EmbeddedChannel(
+          new ReactiveChannelHandler(dispatcher, mock(WebApplicationContext.class)));
+
+  final AtomicReference<ByteBuf> requestContent = new AtomicReference<>();
+
+  ReactiveChannelHandlerTests() throws Throwable {
+    // echoes the request body
+    willAnswer(invocation -> {
+      NettyRequestContext context = invocation.getArgument(0);
+      requestContent.set(context.nativeRequest().content());
+      context.responseHeaders().set("X-Path", context.getRequestPath());
+      context.getOutputStream().write(context.getInputStream().readAllBytes());
+      return null;
+    }).given(dispatcherHandler).dispatch(any(), any());
+  }
+
+  @AfterEach
+  void close() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  void pipelinedRequestWaitsForStreamingResponse() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new Object());
+
+    channel.writeInbound(post("/first", 5));
+    // dispatched as soon as the head arrived
+    assertThat(tasks).hasSize(1);
+
+    channel.writeInbound(content("hel"), lastContent("lo"),
+            get("/second"), LastHttpContent.EMPTY_LAST_CONTENT);
+    assertThat(tasks).hasSize(1);
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    runTask();
+    assertResponse("/first", "hello");
+    // the second request was handed off in turn
+    assertThat(tasks).hasSize(1);
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    runTask();
+    assertResponse("/second", "");
+    assertThat(tasks).isEmpty();
+    assertThat(channel.config().isAutoRead()).isTrue();
+  }
+
+  @Test
+  void aggregatedRequestBody() throws Throwable {
+    willAnswer(invocation -> {
+      NettyRequestContext context = invocation.getArgument(0);
+      context.setAttribute("lookup", "head");
+      return new AggregatingHandler();
+    }).given(dispatcherHandler).lookupHandler(any());
+
+    channel.writeInbound(post("/upload", 5), content("hel"));
+    assertThat(tasks).isEmpty();
+
+    channel.writeInbound(lastContent("lo"));
+    assertThat(tasks).hasSize(1);
+
+    runTask();
+    assertResponse("/upload", "hello");
+    // looked up once, the context of the head is dispatched
+    verify(dispatcherHandler).lookupHandler(any());
+    verify(dispatcherHandler).dispatch(argThat(context -> "head".equals(context.getAttribute("lookup"))), any());
+    // buffered body released once the request has been handled
+    assertThat(requestContent.get().refCnt()).isZero();
+    assertThat(channel.config().isAutoRead()).isTrue();
+  }
+
+  @Test
+  void bufferedBodyReleasedOnHandlerFailure() throws Throwable {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new AggregatingHandler());
+    willAnswer(invocation -> {
+      NettyRequestContext context = invocation.getArgument(0);
+      requestContent.set(context.nativeRequest().content());
+      throw new IllegalStateException("handler failed");
+    }).given(dispatcherHandler).dispatch(any(), any());
+
+    channel.writeInbound(post("/upload", 5), content("hel"), lastContent("lo"));
+    runTask();
+
+    FullHttpResponse response = channel.readOutbound();
+    assertThat(response.status()).isEqualTo(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    response.release();
+    assertThat(requestContent.get().refCnt()).isZero();
+  }
+
+  @Test
+  void bufferedBodyReleasedOnClose() {
+    given(dispatcherHandler.lookupHandler(any())).willReturn(new AggregatingHandler());
+
+    ByteBuf chunk = Unpooled.copiedBuffer("hel", StandardCharsets.UTF_8);
+    channel.writeInbound(post("/upload", 5), new DefaultHttpContent(chunk));
+    channel.close();
+    assertThat(chunk.refCnt()).isZero();
+    assertThat(tasks).isEmpty();
+  }
+
+  private void runTask() {
+    tasks.remove(0).run();
+    channel.runPendingTasks();
+  }
+
+  private void assertResponse(String path, String body) {
+    FullHttpResponse response = channel.readOutbound();
+    try {
+      assertThat(response.headers().get("X-Path")).isEqualTo(path);
+      assertThat(response.content().toString(StandardCharsets.UTF_8)).isEqualTo(body);
+    }
+    finally {
+      response.release();
+    }
+  }
+
+  private static HttpRequest post(String uri, int contentLength) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri);
+    request.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/octet-stream");
+    request.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+    return request;
+  }
+
+  private static HttpRequest get(String uri) {
+    return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+  }
+
+  private static DefaultHttpContent content(String text) {
+    return new DefaultHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+  }
+
+  private static DefaultLastHttpContent lastContent(String text) {
+    return new DefaultLastHttpContent(Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+  }
+
+  @AggregatedRequestBody
+  static class AggregatingHandler {
+
+  }
+
+}
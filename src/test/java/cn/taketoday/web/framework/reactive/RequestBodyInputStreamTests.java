@@ -0,0 +1,119 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.reactive;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class RequestBodyInputStreamTests {
+
+  final EmbeddedChannel channel = new EmbeddedChannel();
+
+  @Test
+  void readChunks() throws IOException {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 1024, 256);
+    body.offer(chunk("hello "), false);
+    body.offer(chunk("world"), true);
+
+    assertThat(body.isComplete()).isTrue();
+    assertThat(body.available()).isEqualTo(11);
+    assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hello world");
+    assertThat(body.read()).isEqualTo(-1);
+  }
+
+  @Test
+  void backPressure() throws IOException {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 8, 2);
+    body.offer(chunk("1234"), false);
+    assertThat(channel.config().isAutoRead()).isTrue();
+
+    body.offer(chunk("5678"), false);
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    byte[] bytes = new byte[4];
+    assertThat(body.read(bytes)).isEqualTo(4);
+    channel.runPendingTasks();
+    // 4 bytes still buffered
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    assertThat(body.read(bytes, 0, 3)).isEqualTo(3);
+    channel.runPendingTasks();
+    assertThat(channel.config().isAutoRead()).isTrue();
+  }
+
+  @Test
+  void completeBodyKeepsReadingPaused() throws IOException {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 8, 2);
+    body.offer(chunk("12345678"), true);
+    assertThat(channel.config().isAutoRead()).isFalse();
+
+    assertThat(body.readAllBytes()).hasSize(8);
+    channel.runPendingTasks();
+    // pipelined requests wait for the response
+    assertThat(channel.config().isAutoRead()).isFalse();
+  }
+
+  @Test
+  void closeReleasesChunks() {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 1024, 256);
+    ByteBuf first = chunk("first");
+    body.offer(first, false);
+    body.close();
+    assertThat(first.refCnt()).isZero();
+
+    ByteBuf late = chunk("late");
+    body.offer(late, true);
+    assertThat(late.refCnt()).isZero();
+    assertThatThrownBy(body::read).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void failure() {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 1024, 256);
+    body.fail(new IllegalStateException("closed"));
+    assertThatThrownBy(body::read).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void cannotBlockEventLoop() {
+    RequestBodyInputStream body = new RequestBodyInputStream(channel, 1024, 256);
+    // EmbeddedChannel reads on its event loop
+    assertThatThrownBy(body::read).isInstanceOf(IllegalStateException.class);
+  }
+
+  private static ByteBuf chunk(String text) {
+    return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import cn.taketoday.web.framework.server.light.LightHttpConfig.ThreadModel;
+import cn.taketoday.web.framework.server.light.NioHTTPServerTests.Client;
+import cn.taketoday.web.framework.server.light.NioHTTPServerTests.EchoHandler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class HTTPServerTests {
+
+  private final HTTPServer server = new HTTPServer();
+
+  private final LightHttpConfig config = new LightHttpConfig();
+
+  private int port;
+
+  HTTPServerTests() {
+    server.setConfig(config);
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop();
+  }
+
+  @Test
+  void threadModel() {
+    ExecutorService platform = server.createExecutor();
+    assertThat(platform).isInstanceOf(ThreadPoolExecutor.class);
+    assertThat(((ThreadPoolExecutor) platform).getMaximumPoolSize()).isEqualTo(Integer.MAX_VALUE);
+    platform.shutdown();
+
+    config.setThreadModel(ThreadModel.BOUNDED);
+    config.setMaxThreads(4);
+    ExecutorService bounded = server.createExecutor();
+    assertThat(((ThreadPoolExecutor) bounded).getMaximumPoolSize()).isEqualTo(4);
+    bounded.shutdown();
+
+    // platform threads if the JVM has no virtual threads
+    config.setThreadModel(ThreadModel.VIRTUAL);
+    ExecutorService virtual = server.createExecutor();
+    assertThat(virtual).isNotNull();
+    virtual.shutdown();
+  }
+
+  @Test
+  void boundedConnectionLimit() {
+    config.setThreadModel(ThreadModel.BOUNDED);
+    config.setMaxThreads(4);
+    server.initExecutor();
+    assertThat(server.getConnectionLimit()).isEqualTo(4);
+
+    config.setMaxConnections(2);
+    assertThat(server.getConnectionLimit()).isEqualTo(2);
+    config.setMaxConnections(8);
+    assertThat(server.getConnectionLimit()).isEqualTo(4);
+    server.shutdownExecutor();
+
+    // threads of a given executor are not known
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    server.setExecutor(executor);
+    server.initExecutor();
+    assertThat(server.getConnectionLimit()).isEqualTo(8);
+    executor.shutdown();
+
+    config.setThreadModel(ThreadModel.PLATFORM);
+    config.setMaxConnections(-1);
+    assertThat(server.getConnectionLimit()).isEqualTo(-1);
+  }
+
+  @Test
+  void keepAlive() throws Exception {
+    start();
+    try (Client client = new Client(port)) {
+      client.send("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(client.read().body).isEqualTo("/first:");
+
+      client.send("POST /second HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello");
+      assertThat(client.read().body).isEqualTo("/second:hello");
+
+      client.send("GET /last HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+      assertThat(client.read().body).isEqualTo("/last:");
+      assertThat(client.isClosed()).isTrue();
+    }
+  }
+
+  @Test
+  void connectionsCappedByBoundedPool() throws Exception {
+    config.setThreadModel(ThreadModel.BOUNDED);
+    config.setMaxThreads(1);
+    start();
+
+    try (Client first = new Client(port); Client second = new Client(port)) {
+      first.send("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(first.read().body).isEqualTo("/first:");
+
+      // the kept-alive connection holds the only worker
+      second.send("GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      second.setReadTimeout(500);
+      assertThatExceptionOfType(SocketTimeoutException.class).isThrownBy(second::read);
+
+      // end of stream ends the keep-alive loop and releases the worker
+      first.close();
+      second.setReadTimeout(5000);
+      assertThat(second.read().body).isEqualTo("/second:");
+    }
+  }
+
+  private void start() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    server.setPort(port);
+    server.setHost("localhost");
+    server.setHttpHandler(new EchoHandler());
+    server.start();
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import cn.taketoday.http.HttpHeaders;
+
+/**
+ * {@link HttpHeaderParser} against {@link Utils#readHeaders}, on the
+ * headers of a typical browser request
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HttpHeaderParserBenchmark {
+
+  private final LightHttpConfig config = LightHttpConfig.defaultConfig();
+
+  private HttpHeaderParser parser;
+
+  private byte[] headers;
+
+  @Setup
+  public void setup() {
+    parser = new HttpHeaderParser(config);
+    headers = HttpHeaderParserTests.headers.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  @Benchmark
+  public String readHeaders() throws IOException {
+    return Utils.readHeaders(stream(), config).getFirst(HttpHeaders.ACCEPT);
+  }
+
+  @Benchmark
+  public String headerParser() throws IOException {
+    return parser.parse(stream()).getFirst(HttpHeaders.ACCEPT);
+  }
+
+  private BufferedInputStream stream() {
+    return new BufferedInputStream(new ByteArrayInputStream(headers));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+            .include(HttpHeaderParserBenchmark.class.getSimpleName())
+            .build()).run();
+  }
+
+}
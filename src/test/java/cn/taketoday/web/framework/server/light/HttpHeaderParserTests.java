@@ -0,0 +1,142 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import cn.taketoday.http.HttpHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class HttpHeaderParserTests {
+
+  static final String headers = "Host: developer.mozilla.org\r\n" +
+          "User-Agent: Mozilla/5.0 (Macintosh; Intel Mac OS X 10.9; rv:50.0) Gecko/20100101 Firefox/50.0\r\n" +
+          "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+          "Accept-Language: en-US,en;q=0.5\r\n" +
+          "Accept-Encoding: gzip, deflate, br\r\n" +
+          "Referer: https://developer.mozilla.org/testpage.html\r\n" +
+          "Connection: keep-alive\r\n" +
+          "Upgrade-Insecure-Requests: 1\r\n" +
+          "If-Modified-Since: Mon, 18 Jul 2016 02:36:04 GMT\r\n" +
+          "If-None-Match: \"c561c68d0ba92bbeb8b0fff2a9199f722e3a621a\"\r\n" +
+          "Cache-Control: max-age=0\r\n" +
+          "\r\n";
+
+  final LightHttpConfig config = LightHttpConfig.defaultConfig();
+
+  final HttpHeaderParser parser = new HttpHeaderParser(config);
+
+  @Test
+  void parse() throws IOException {
+    HttpHeaders parsed = parser.parse(stream(headers));
+
+    assertThat(parsed.getFirst("host")).isEqualTo("developer.mozilla.org");
+    assertThat(parsed.getFirst(HttpHeaders.ACCEPT_ENCODING)).isEqualTo("gzip, deflate, br");
+    assertThat(parsed.getFirst("upgrade-insecure-requests")).isEqualTo("1");
+    assertThat(parsed.getIfModifiedSince()).isEqualTo(1468809364000L);
+    assertThat(parsed.getFirst("Content-Type")).isNull();
+    assertThat(parsed.containsKey("X-Unknown")).isFalse();
+    assertThat(parsed).isEqualTo(Utils.readHeaders(stream(headers), config));
+  }
+
+  @Test
+  void valuesAndRemainder() throws IOException {
+    InputStream in = new BufferedInputStream(stream(
+            "X-Custom:   a b  \r\nAccept: a\nEmpty:\r\nfolded: one\r\n  two\r\naccept: b\r\n\r\nbody"), 8);
+    HttpHeaders parsed = parser.parse(in);
+
+    assertThat(parsed.getFirst("x-custom")).isEqualTo("a b");
+    assertThat(parsed.get("Accept")).containsExactly("a", "b");
+    assertThat(parsed.getFirst("Empty")).isEmpty();
+    assertThat(parsed.getFirst("Folded")).startsWith("one").endsWith("two");
+    assertThat(new String(in.readAllBytes(), StandardCharsets.ISO_8859_1)).isEqualTo("body");
+  }
+
+  @Test
+  void withoutMarkSupport() throws IOException {
+    InputStream in = new FilterInputStream(stream("Host: a\r\n\r\nbody")) {
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+    assertThat(parser.parse(in).getFirst("Host")).isEqualTo("a");
+    assertThat(new String(in.readAllBytes(), StandardCharsets.ISO_8859_1)).isEqualTo("body");
+  }
+
+  @Test
+  void modify() throws IOException {
+    HttpHeaders parsed = parser.parse(stream("Host: a\r\nX-A: 1\r\n\r\n"));
+    parsed.add("X-A", "2");
+    parsed.remove("Host");
+
+    assertThat(parsed.get("x-a")).containsExactly("1", "2");
+    assertThat(parsed.keySet()).containsExactly("X-A");
+  }
+
+  @Test
+  void reuse() throws IOException {
+    HttpHeaders first = parser.parse(stream("Host: first\r\n\r\n"));
+    HttpHeaders second = parser.parse(stream("Host: second\r\n\r\n"));
+    assertThat(first.getFirst("Host")).isEqualTo("first");
+    assertThat(second.getFirst("Host")).isEqualTo("second");
+  }
+
+  @Test
+  void limits() {
+    config.setHeaderMaxCount(2);
+    assertThatThrownBy(() -> parser.parse(stream("A: 1\r\nB: 2\r\nC: 3\r\n\r\n")))
+            .hasMessage("too many header lines");
+
+    config.setMaxHeaderSize(16);
+    assertThatThrownBy(() -> parser.parse(stream("A: 0123456789abcdef\r\n\r\n")))
+            .hasMessage("request headers too large");
+  }
+
+  @Test
+  void malformed() {
+    assertThatThrownBy(() -> parser.parse(stream("Bad Name: 1\r\n\r\n")))
+            .hasMessageStartingWith("invalid header");
+    assertThatThrownBy(() -> parser.parse(stream(" leading: 1\r\n\r\n")))
+            .hasMessageStartingWith("invalid header");
+    assertThatThrownBy(() -> parser.parse(stream("A: 1\r\nB: 2")))
+            .isInstanceOf(EOFException.class);
+  }
+
+  static InputStream stream(String data) {
+    return new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+}
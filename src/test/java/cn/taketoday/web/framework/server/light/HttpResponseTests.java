@@ -0,0 +1,128 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import cn.taketoday.http.HttpHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class HttpResponseTests {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void transferFromWithContentLength() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("report.txt"), "0123456789");
+
+    String received = exchange("HTTP/1.1", response -> {
+      response.getHeaders().setContentLength(4);
+      response.transferFrom(null, file.toFile(), 3, 4);
+    });
+
+    assertThat(received).startsWith("HTTP/1.1 200 OK\r\n")
+            .contains("Content-Length: 4\r\n")
+            .doesNotContain(HttpHeaders.TRANSFER_ENCODING)
+            .endsWith("\r\n\r\n3456");
+  }
+
+  @Test
+  void transferFromChunked() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("report.txt"), "0123456789");
+
+    String received = exchange("HTTP/1.1", response -> {
+      ResponseOutputBuffer content = new ResponseOutputBuffer();
+      content.write("ab".getBytes(StandardCharsets.ISO_8859_1));
+      response.transferFrom(content, file.toFile(), 3, 4);
+      content.write("cd".getBytes(StandardCharsets.ISO_8859_1));
+      response.writeStreamingContent(content);
+    });
+
+    assertThat(received).contains("Transfer-Encoding: chunked\r\n")
+            .endsWith("\r\n\r\n2\r\nab\r\n4\r\n3456\r\n2\r\ncd\r\n0\r\n\r\n");
+  }
+
+  @Test
+  void transferFromHttp10ClosesConnection() throws IOException {
+    Path file = Files.writeString(tempDir.resolve("report.txt"), "0123456789");
+
+    String received = exchange("HTTP/1.0", response -> response.transferFrom(null, file.toFile(), 0, 10));
+
+    assertThat(received).contains("Connection: close\r\n").endsWith("\r\n\r\n0123456789");
+  }
+
+  @Test
+  void supportsFileTransfer() throws IOException {
+    HttpResponse response = new HttpResponse(new ByteArrayOutputStream());
+    assertThat(response.supportsFileTransfer()).isFalse();
+
+    try (SocketChannel channel = SocketChannel.open()) {
+      response.setTransferChannel(channel);
+      assertThat(response.supportsFileTransfer()).isTrue();
+
+      response.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+      assertThat(response.supportsFileTransfer()).isFalse();
+    }
+  }
+
+  interface ResponseCallback {
+    void write(HttpResponse response) throws IOException;
+  }
+
+  private static String exchange(String version, ResponseCallback callback) throws IOException {
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    try (ServerSocketChannel server = ServerSocketChannel.open().bind(address);
+            SocketChannel client = SocketChannel.open(server.getLocalAddress());
+            SocketChannel accepted = server.accept()) {
+
+      HttpResponse response = new HttpResponse(new BufferedOutputStream(accepted.socket().getOutputStream()));
+      response.setClientCapabilities(new HttpRequest(new ByteArrayInputStream(
+              ("GET /report " + version + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1)),
+              accepted.socket(), LightHttpConfig.defaultConfig()));
+      response.setTransferChannel(accepted);
+
+      callback.write(response);
+      response.close();
+      accepted.shutdownOutput();
+      return new String(client.socket().getInputStream().readAllBytes(), StandardCharsets.ISO_8859_1);
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import cn.taketoday.http.FileSizeExceededException;
+import cn.taketoday.util.DataSize;
+import cn.taketoday.web.multipart.MultipartConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class MultipartIteratorTests {
+
+  @TempDir
+  Path tempDir;
+
+  final LightHttpConfig config = LightHttpConfig.defaultConfig();
+
+  final MultipartConfiguration multipartConfig = new MultipartConfiguration();
+
+  @Test
+  void fieldsInMemoryLargeFilesOnDisk() throws IOException {
+    multipartConfig.setLocation(tempDir.toString());
+    config.setMaxMultipartInMemSize(16);
+    String large = "x".repeat(10000);
+
+    MultipartIterator iterator = iterator(
+            field("name", "value"),
+            file("small", "a.txt", "hello"),
+            file("large", "b.txt", large));
+
+    assertThat(iterator.hasNext()).isTrue();
+    RequestPart field = iterator.obtainNext(config, multipartConfig);
+    assertThat(field).isInstanceOf(FieldRequestPart.class);
+    assertThat(((FieldRequestPart) field).getStringValue()).isEqualTo("value");
+
+    assertThat(iterator.hasNext()).isTrue();
+    LightMultipartFile small = (LightMultipartFile) iterator.obtainNext(config, multipartConfig);
+    assertThat(small.isInTempFile()).isFalse();
+    assertThat(small.getFileName()).isEqualTo("a.txt");
+    assertThat(small.getContentType()).isEqualTo("text/plain");
+    assertThat(small.getBytes()).asString().isEqualTo("hello");
+
+    assertThat(iterator.hasNext()).isTrue();
+    LightMultipartFile largeFile = (LightMultipartFile) iterator.obtainNext(config, multipartConfig);
+    assertThat(largeFile.isInTempFile()).isTrue();
+    assertThat(largeFile.getSize()).isEqualTo(large.length());
+    assertThat(largeFile.getInputStream()).hasContent(large);
+    assertThat(iterator.hasNext()).isFalse();
+
+    File dest = tempDir.resolve("saved/b.txt").toFile();
+    largeFile.save(dest);
+    assertThat(dest).hasContent(large);
+    assertThat(largeFile.getBytes()).hasSize(large.length());
+
+    largeFile.delete();
+    assertThat(dest).exists();
+    try (var files = Files.list(tempDir)) {
+      assertThat(files).noneMatch(path -> path.getFileName().toString().startsWith("upload_"));
+    }
+  }
+
+  @Test
+  void streaming() throws IOException {
+    MultipartIterator iterator = iterator(
+            field("name", "value"),
+            file("skipped", "a.txt", "not read"),
+            file("file", "b.txt", "content"));
+
+    assertThat(iterator.hasNext()).isTrue();
+    StreamingRequestPart field = iterator.next();
+    assertThat(field.isFile()).isFalse();
+    assertThat(field.getName()).isEqualTo("name");
+
+    assertThat(iterator.hasNext()).isTrue();
+    assertThat(iterator.next().getFileName()).isEqualTo("a.txt");
+
+    assertThat(iterator.hasNext()).isTrue();
+    StreamingRequestPart file = iterator.next();
+    assertThat(file.isFile()).isTrue();
+    assertThat(file.getInputStream()).hasContent("content");
+    assertThat(iterator.hasNext()).isFalse();
+  }
+
+  @Test
+  void maxRequestSize() {
+    multipartConfig.setMaxRequestSize(DataSize.ofBytes(100));
+
+    assertThatThrownBy(() -> {
+      MultipartIterator iterator = iterator(file("file", "a.txt", "x".repeat(1000)));
+      while (iterator.hasNext()) {
+        iterator.obtainNext(config, multipartConfig);
+      }
+    }).isInstanceOf(FileSizeExceededException.class);
+  }
+
+  @Test
+  void maxFileSize() {
+    multipartConfig.setLocation(tempDir.toString());
+    multipartConfig.setMaxFileSize(DataSize.ofBytes(100));
+
+    assertThatThrownBy(() -> {
+      MultipartIterator iterator = iterator(file("file", "a.txt", "x".repeat(1000)));
+      while (iterator.hasNext()) {
+        iterator.obtainNext(config, multipartConfig);
+      }
+    }).isInstanceOf(FileSizeExceededException.class);
+  }
+
+  static final String BOUNDARY = "----boundary";
+
+  MultipartIterator iterator(String... parts) throws IOException {
+    String body = String.join("", parts) + "--" + BOUNDARY + "--\r\n";
+    byte[] content = body.getBytes(StandardCharsets.ISO_8859_1);
+    String head = "POST /upload HTTP/1.1\r\n"
+            + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+            + "Content-Length: " + content.length + "\r\n\r\n";
+    byte[] request = (head + body).getBytes(StandardCharsets.ISO_8859_1);
+    HttpRequest req = new HttpRequest(new ByteArrayInputStream(request), null, config);
+    return new MultipartIterator(req, config, multipartConfig);
+  }
+
+  static String field(String name, String value) {
+    return "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+            + value + "\r\n";
+  }
+
+  static String file(String name, String fileName, String content) {
+    return "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + content + "\r\n";
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.framework.server.light;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.web.RequestContext;
+import cn.taketoday.web.handler.DispatcherHandler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class NioHTTPServerTests {
+
+  private NioHTTPServer server;
+
+  private int port;
+
+  @AfterEach
+  void stop() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  void findHeaderEnd() {
+    byte[] request = bytes("GET / HTTP/1.1\r\nHost: localhost\r\n\r\nbody");
+    assertThat(NioHTTPServer.findHeaderEnd(request, 0, request.length)).isEqualTo(request.length - 4);
+    // incomplete
+    assertThat(NioHTTPServer.findHeaderEnd(request, 0, request.length - 6)).isEqualTo(-1);
+
+    byte[] lf = bytes("GET / HTTP/1.0\nHost: localhost\n\n");
+    assertThat(NioHTTPServer.findHeaderEnd(lf, 0, lf.length)).isEqualTo(lf.length);
+  }
+
+  @Test
+  void headerValue() {
+    byte[] request = bytes("POST / HTTP/1.1\r\nHost: localhost\r\ncontent-LENGTH:  12 \r\n\r\n");
+    int headerEnd = NioHTTPServer.findHeaderEnd(request, 0, request.length);
+    assertThat(NioHTTPServer.headerValue(request, headerEnd, HttpHeaders.CONTENT_LENGTH)).isEqualTo("12");
+    assertThat(NioHTTPServer.headerValue(request, headerEnd, HttpHeaders.HOST)).isEqualTo("localhost");
+    assertThat(NioHTTPServer.headerValue(request, headerEnd, HttpHeaders.TRANSFER_ENCODING)).isNull();
+  }
+
+  @Test
+  void findChunkedEnd() throws Exception {
+    byte[] body = bytes("5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nTrailer: value\r\n\r\nGET");
+    assertThat(NioHTTPServer.findChunkedEnd(body, 0, body.length)).isEqualTo(body.length - 3);
+
+    for (int limit = 0; limit < body.length - 3; limit++) {
+      assertThat(NioHTTPServer.findChunkedEnd(body, 0, limit)).isEqualTo(-1);
+    }
+
+    byte[] invalid = bytes("5\r\nhello!\r\n0\r\n\r\n");
+    assertThatThrownBy(() -> NioHTTPServer.findChunkedEnd(invalid, 0, invalid.length))
+            .isInstanceOf(NioHTTPServer.RequestRejectedException.class);
+  }
+
+  @Test
+  void isExpectContinue() {
+    byte[] request = bytes("POST / HTTP/1.1\r\nExpect: 100-Continue\r\n\r\n");
+    assertThat(NioHTTPServer.isExpectContinue(request, request.length)).isTrue();
+
+    byte[] http10 = bytes("POST / HTTP/1.0\r\nExpect: 100-continue\r\n\r\n");
+    assertThat(NioHTTPServer.isExpectContinue(http10, http10.length)).isFalse();
+
+    byte[] none = bytes("POST / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+    assertThat(NioHTTPServer.isExpectContinue(none, none.length)).isFalse();
+  }
+
+  // end to end
+
+  @Test
+  void keepAlive() throws Exception {
+    start(new LightHttpConfig());
+    try (Client client = new Client(port)) {
+      client.send("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(client.read().body).isEqualTo("/first:");
+
+      client.send("POST /second HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello");
+      Response response = client.read();
+      assertThat(response.status).isEqualTo(200);
+      assertThat(response.body).isEqualTo("/second:hello");
+    }
+  }
+
+  @Test
+  void pipelinedRequests() throws Exception {
+    start(new LightHttpConfig());
+    try (Client client = new Client(port)) {
+      client.send("POST /first HTTP/1.1\r\nHost: localhost\r\nContent-Length: 3\r\n\r\none"
+              + "GET /second HTTP/1.1\r\nHost: localhost\r\n\r\n"
+              + "POST /third HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nthree\r\n0\r\n\r\n");
+      assertThat(client.read().body).isEqualTo("/first:one");
+      assertThat(client.read().body).isEqualTo("/second:");
+      assertThat(client.read().body).isEqualTo("/third:three");
+    }
+  }
+
+  @Test
+  void expectContinue() throws Exception {
+    start(new LightHttpConfig());
+    try (Client client = new Client(port)) {
+      client.send("POST /upload HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\nContent-Length: 5\r\n\r\n");
+      // sent before the body has been received
+      assertThat(client.read().status).isEqualTo(100);
+
+      client.send("hello");
+      Response response = client.read();
+      assertThat(response.status).isEqualTo(200);
+      assertThat(response.body).isEqualTo("/upload:hello");
+    }
+  }
+
+  @Test
+  void requestTooLarge() throws Exception {
+    LightHttpConfig config = new LightHttpConfig();
+    config.setMaxBufferedRequestSize(1024);
+    start(config);
+    try (Client client = new Client(port)) {
+      client.send("POST / HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\nContent-Length: 4096\r\n\r\n");
+      // no 100 Continue
+      assertThat(client.read().status).isEqualTo(413);
+      assertThat(client.isClosed()).isTrue();
+    }
+  }
+
+  @Test
+  void requestHeaderTooLarge() throws Exception {
+    LightHttpConfig config = new LightHttpConfig();
+    config.setMaxHeaderSize(512);
+    start(config);
+    try (Client client = new Client(port)) {
+      client.send("GET / HTTP/1.1\r\nHost: localhost\r\nX-Large: " + "a".repeat(1024) + "\r\n");
+      assertThat(client.read().status).isEqualTo(431);
+      assertThat(client.isClosed()).isTrue();
+    }
+  }
+
+  @Test
+  void idleConnectionClosed() throws Exception {
+    start(new LightHttpConfig());
+    server.setSocketTimeout(100);
+    try (Client client = new Client(port)) {
+      client.send("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(client.read().status).isEqualTo(200);
+      // checked every second
+      assertThat(client.isClosed()).isTrue();
+    }
+  }
+
+  private void start(LightHttpConfig config) throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    server = new NioHTTPServer(port);
+    server.setHost("localhost");
+    server.setConfig(config);
+    server.setHttpHandler(new EchoHandler());
+    server.start();
+  }
+
+  /**
+   * writes the request path and body
+   */
+  static class EchoHandler extends DispatcherHandler {
+
+    @Override
+    public void dispatch(RequestContext context) throws Throwable {
+      byte[] body = context.getInputStream().readAllBytes();
+      OutputStream output = context.getOutputStream();
+      output.write(bytes(context.getRequestPath() + ':'));
+      output.write(body);
+    }
+  }
+
+  static final class Response {
+    final int status;
+    final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  static final class Client implements Closeable {
+    private final Socket socket;
+    private final InputStream in;
+
+    Client(int port) throws IOException {
+      this.socket = new Socket("localhost", port);
+      socket.setSoTimeout(5000);
+      this.in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    void setReadTimeout(int timeout) throws IOException {
+      socket.setSoTimeout(timeout);
+    }
+
+    void send(String data) throws IOException {
+      OutputStream out = socket.getOutputStream();
+      out.write(bytes(data));
+      out.flush();
+    }
+
+    Response read() throws IOException {
+      String statusLine = readLine();
+      int contentLength = 0;
+      String line;
+      while (!(line = readLine()).isEmpty()) {
+        int colon = line.indexOf(':');
+        if (line.substring(0, colon).equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+          contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+        }
+      }
+      byte[] body = in.readNBytes(contentLength);
+      return new Response(Integer.parseInt(statusLine.split(" ")[1]),
+              new String(body, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Whether the server closed the connection, without sending anything else
+     */
+    boolean isClosed() throws IOException {
+      try {
+        return in.read() == -1;
+      }
+      catch (SocketException e) {
+        // connection reset
+        return true;
+      }
+    }
+
+    private String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = in.read()) != '\n') {
+        if (c < 0) {
+          throw new EOFException("Connection closed");
+        }
+        if (c != '\r') {
+          line.append((char) c);
+        }
+      }
+      return line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class ConcurrencyLimiterTests {
+
+  @Test
+  void fixedLimit() {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(2);
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+    assertThat(limiter.getInFlight()).isEqualTo(2);
+    assertThat(limiter.getRejectedCount()).isEqualTo(1);
+
+    limiter.release(TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(limiter.getLimit()).isEqualTo(2);
+    assertThat(limiter.tryAcquire()).isTrue();
+
+    limiter.cancel();
+    assertThat(limiter.getInFlight()).isEqualTo(1);
+  }
+
+  @Test
+  void limitFollowsLatency() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(20);
+    limiter.setLimitBounds(4, 100);
+
+    runAtLimit(limiter, 50, TimeUnit.MILLISECONDS.toNanos(10));
+    int grown = limiter.getLimit();
+    assertThat(grown).isGreaterThan(20);
+
+    // downstream slows down
+    runAtLimit(limiter, 50, TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(limiter.getLimit()).isLessThan(grown);
+    assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(4);
+  }
+
+  private static void runAtLimit(ConcurrencyLimiter limiter, int rounds, long latency) {
+    for (int i = 0; i < rounds; i++) {
+      int limit = limiter.getLimit();
+      for (int j = 0; j < limit; j++) {
+        assertThat(limiter.tryAcquire()).isTrue();
+      }
+      for (int j = 0; j < limit; j++) {
+        limiter.release(latency);
+      }
+    }
+  }
+
+  @Test
+  void waitInQueue() throws Exception {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(1);
+    limiter.setMaxQueueSize(1);
+    limiter.setMaxWait(5, TimeUnit.SECONDS);
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(limiter::tryAcquire);
+    while (limiter.getQueued() == 0) {
+      Thread.sleep(1);
+    }
+    // queue is full
+    assertThat(limiter.tryAcquire()).isFalse();
+
+    limiter.release(1);
+    assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(limiter.getQueued()).isZero();
+    assertThat(limiter.getInFlight()).isEqualTo(1);
+  }
+
+}
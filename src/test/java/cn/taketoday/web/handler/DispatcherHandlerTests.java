@@ -0,0 +1,254 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.HttpStatus;
+import cn.taketoday.lang.Nullable;
+import cn.taketoday.web.MockRequestContext;
+import cn.taketoday.web.RequestContext;
+import cn.taketoday.web.ReturnValueHandler;
+import cn.taketoday.web.annotation.ResponseBody;
+import cn.taketoday.web.handler.method.ActionMappingAnnotationHandler;
+import cn.taketoday.web.handler.method.HandlerMethod;
+import cn.taketoday.web.resolver.RequestResponseBodyMethodProcessor;
+import cn.taketoday.web.view.template.DefaultTemplateViewResolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class DispatcherHandlerTests {
+
+  final ReturnValueHandlerManager manager = new ReturnValueHandlerManager();
+
+  final DispatcherHandler dispatcher = new DispatcherHandler();
+
+  DispatcherHandlerTests() {
+    manager.setViewResolver(new DefaultTemplateViewResolver());
+    manager.registerDefaultHandlers();
+    dispatcher.setReturnValueHandler(manager.asSelectable());
+  }
+
+  @Test
+  void handlerAdapterBoundOnce() {
+    CountingAdapter adapter = new CountingAdapter();
+    dispatcher.setHandlerAdapters(adapter);
+
+    Object handler = new Object();
+    assertThat(dispatcher.lookupHandlerAdapter(handler)).isSameAs(adapter);
+    assertThat(dispatcher.lookupHandlerAdapter(handler)).isSameAs(adapter);
+    assertThat(adapter.supports.get()).isEqualTo(1);
+
+    HandlerPipeline pipeline = dispatcher.getHandlerPipeline(handler);
+    assertThat(pipeline.getHandler()).isSameAs(handler);
+    assertThat(pipeline.getHandlerAdapter()).isSameAs(adapter);
+    assertThat(pipeline.isReturnValueHandlerBound()).isFalse();
+
+    // re-bind after adapters changed
+    dispatcher.setHandlerAdapters(new CountingAdapter());
+    assertThat(dispatcher.lookupHandlerAdapter(handler)).isNotSameAs(adapter);
+  }
+
+  @Test
+  void handlerAdapterNotFound() {
+    dispatcher.setHandlerAdapters(new CountingAdapter() {
+      @Override
+      public boolean supports(Object handler) {
+        return false;
+      }
+    });
+    assertThatThrownBy(() -> dispatcher.lookupHandlerAdapter(new Object()))
+            .isInstanceOf(HandlerAdapterNotFoundException.class);
+  }
+
+  @Test
+  void returnValueHandlerSelectedDynamically() {
+    dispatcher.setHandlerAdapters(new CountingAdapter());
+    Object handler = new Object();
+
+    assertThat(dispatcher.lookupReturnValueHandler(handler, HttpStatus.OK))
+            .isInstanceOf(HttpStatusReturnValueHandler.class);
+    assertThat(dispatcher.lookupReturnValueHandler(handler, null))
+            .isInstanceOf(VoidReturnValueHandler.class);
+  }
+
+  @Test
+  void returnValueHandlerBoundByDeclaredReturnType() throws Exception {
+    ActionMappingAnnotationHandler status = annotationHandler("status");
+    HandlerPipeline pipeline = dispatcher.getHandlerPipeline(status);
+    assertThat(pipeline.getHandlerAdapter()).isSameAs(status);
+    assertThat(pipeline.getReturnValueHandler()).isInstanceOf(HttpStatusReturnValueHandler.class);
+    assertThat(dispatcher.lookupReturnValueHandler(status, HttpStatus.OK))
+            .isSameAs(pipeline.getReturnValueHandler());
+
+    ActionMappingAnnotationHandler object = annotationHandler("object");
+    assertThat(dispatcher.getHandlerPipeline(object).isReturnValueHandlerBound()).isFalse();
+    assertThat(dispatcher.lookupReturnValueHandler(object, HttpStatus.OK))
+            .isInstanceOf(HttpStatusReturnValueHandler.class);
+  }
+
+  @Test
+  void responseBodyDeclaredObject() throws Exception {
+    ActionMappingAnnotationHandler body = annotationHandler("body");
+    assertThat(dispatcher.getHandlerPipeline(body).getReturnValueHandler())
+            .isInstanceOf(RequestResponseBodyMethodProcessor.class);
+
+    assertThat(dispatcher.lookupReturnValueHandler(body, new Pojo()))
+            .isInstanceOf(RequestResponseBodyMethodProcessor.class);
+    // a handler ahead in the chain supporting the value still wins
+    assertThat(dispatcher.lookupReturnValueHandler(body, "body"))
+            .isSameAs(manager.asSelectable().selectHandler(body, "body"));
+  }
+
+  @Test
+  void returnValueHandlerSelectionKeepsChainOrder() throws Exception {
+    SelectableReturnValueHandler chain = manager.asSelectable();
+    for (String name : List.of("status", "object", "body", "bodyString")) {
+      ActionMappingAnnotationHandler handler = annotationHandler(name);
+      for (Object returnValue : List.of("view", HttpStatus.OK, new Pojo())) {
+        ReturnValueHandler expected = chain.selectHandler(handler, returnValue);
+        if (expected != null) {
+          assertThat(dispatcher.lookupReturnValueHandler(handler, returnValue))
+                  .as("%s returning %s", name, returnValue)
+                  .isSameAs(expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  void returnValueHandlerProvider() {
+    HttpStatusReturnValueHandler provided = new HttpStatusReturnValueHandler();
+    dispatcher.setHandlerAdapters(new CountingAdapter());
+    ReturnValueHandlerProvider handler = () -> provided;
+
+    assertThat(dispatcher.getHandlerPipeline(handler).getReturnValueHandler()).isSameAs(provided);
+    assertThat(dispatcher.lookupReturnValueHandler(handler, "view")).isSameAs(provided);
+  }
+
+  @Test
+  void admissionRejectionCompletesRequest() throws Throwable {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.fixed(1);
+    AdmissionController admissionController = new AdmissionController(limiter);
+    dispatcher.setAdmissionController(admissionController);
+    dispatcher.setHandlerAdapters(new CountingAdapter());
+
+    AtomicInteger completed = new AtomicInteger();
+    assertThat(limiter.tryAcquire()).isTrue();
+    MockRequestContext rejected = new MockRequestContext();
+    rejected.registerRequestCompletedCallback(completed::incrementAndGet);
+    dispatcher.dispatch(rejected, new Object());
+
+    assertThat(rejected.responseHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+    assertThat(admissionController.getRejectedCount()).isEqualTo(1);
+    assertThat(completed).hasValue(1);
+
+    limiter.cancel();
+    MockRequestContext admitted = new MockRequestContext();
+    admitted.registerRequestCompletedCallback(completed::incrementAndGet);
+    dispatcher.dispatch(admitted, new Object());
+    assertThat(completed).hasValue(2);
+    assertThat(limiter.getInFlight()).isZero();
+  }
+
+  @Test
+  void unresolvedExceptionCompletesRequest() {
+    IllegalStateException failure = new IllegalStateException("handler failed");
+    dispatcher.setExceptionHandler((context, exception, handler) -> null);
+    dispatcher.setHandlerAdapters(new CountingAdapter() {
+      @Override
+      public Object handle(RequestContext context, Object handler) {
+        throw failure;
+      }
+    });
+
+    AtomicInteger completed = new AtomicInteger();
+    MockRequestContext context = new MockRequestContext();
+    context.registerRequestCompletedCallback(completed::incrementAndGet);
+    assertThatThrownBy(() -> dispatcher.dispatch(context, new Object()))
+            .isSameAs(failure);
+    assertThat(completed).hasValue(1);
+  }
+
+  private ActionMappingAnnotationHandler annotationHandler(String name) throws NoSuchMethodException {
+    HandlerMethod handlerMethod = HandlerMethod.from(Controller.class.getDeclaredMethod(name));
+    return new ActionMappingAnnotationHandler(handlerMethod, null) {
+      @Override
+      protected Object getHandlerBean() {
+        return new Controller();
+      }
+    };
+  }
+
+  static class Controller {
+
+    HttpStatus status() {
+      return HttpStatus.OK;
+    }
+
+    Object object() {
+      return HttpStatus.OK;
+    }
+
+    @ResponseBody
+    Object body() {
+      return new Pojo();
+    }
+
+    @ResponseBody
+    String bodyString() {
+      return "body";
+    }
+  }
+
+  static class Pojo {
+
+    public String getName() {
+      return "pojo";
+    }
+  }
+
+  static class CountingAdapter implements HandlerAdapter {
+    final AtomicInteger supports = new AtomicInteger();
+
+    @Override
+    public boolean supports(Object handler) {
+      supports.incrementAndGet();
+      return true;
+    }
+
+    @Nullable
+    @Override
+    public Object handle(RequestContext context, Object handler) {
+      return NONE_RETURN_VALUE;
+    }
+  }
+
+}
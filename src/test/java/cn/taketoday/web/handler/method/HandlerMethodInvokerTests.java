@@ -0,0 +1,154 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.handler.method;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import cn.taketoday.core.MethodParameter;
+import cn.taketoday.web.MockRequestContext;
+import cn.taketoday.web.RequestContext;
+import cn.taketoday.web.resolver.ParameterResolvingRegistry;
+import cn.taketoday.web.resolver.ParameterResolvingStrategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class HandlerMethodInvokerTests {
+
+  final MockRequestContext context = new MockRequestContext();
+
+  final ParameterResolvingRegistry registry = new ParameterResolvingRegistry();
+
+  HandlerMethodInvokerTests() {
+    registry.getCustomizedStrategies().add(new FixedStrategy("today"));
+  }
+
+  @Test
+  void generated() throws Throwable {
+    Method method = Controller.class.getDeclaredMethod("hello", String.class, int.class, long.class);
+    ResolvableMethodParameter[] parameters = {
+            new ParameterResolverMethodParameter(new MethodParameter(method, 0), registry),
+            new FixedParameter(new MethodParameter(method, 1), 23),
+            // null -> 0
+            new FixedParameter(new MethodParameter(method, 2), null)
+    };
+
+    HandlerMethodInvoker invoker = HandlerMethodInvoker.forHandler(HandlerMethod.from(method), parameters);
+    assertThat(invoker).isNotInstanceOf(HandlerMethodInvoker.ArgumentsHandlerMethodInvoker.class);
+    assertThat(invoker.getMethod()).isEqualTo(method);
+    assertThat(invoker.invoke(new Controller(), context)).isEqualTo("today-23-0");
+  }
+
+  @Test
+  void primitiveReturnValue() throws Throwable {
+    Method method = Controller.class.getDeclaredMethod("twice", int.class);
+    HandlerMethodInvoker invoker = HandlerMethodInvoker.forHandler(HandlerMethod.from(method),
+            new ResolvableMethodParameter[] { new FixedParameter(new MethodParameter(method, 0), 21) });
+    assertThat(invoker.invoke(new Controller(), context)).isEqualTo(42);
+  }
+
+  @Test
+  void voidAndStatic() throws Throwable {
+    Method noop = Controller.class.getDeclaredMethod("noop");
+    assertThat(HandlerMethodInvoker.forHandler(HandlerMethod.from(noop), null)
+            .invoke(new Controller(), context)).isNull();
+
+    Method staticMethod = Controller.class.getDeclaredMethod("staticMethod");
+    assertThat(HandlerMethodInvoker.forHandler(HandlerMethod.from(staticMethod), null)
+            .invoke(null, context)).isEqualTo("static");
+  }
+
+  @Test
+  void privateMethodFallback() throws Throwable {
+    Method method = Controller.class.getDeclaredMethod("privateMethod", String.class);
+    HandlerMethodInvoker invoker = HandlerMethodInvoker.forHandler(HandlerMethod.from(method),
+            new ResolvableMethodParameter[] { new FixedParameter(new MethodParameter(method, 0), "private") });
+    assertThat(invoker).isInstanceOf(HandlerMethodInvoker.ArgumentsHandlerMethodInvoker.class);
+    assertThat(invoker.invoke(new Controller(), context)).isEqualTo("private");
+  }
+
+  @Test
+  void actionMappingAnnotationHandler() throws Throwable {
+    Method method = Controller.class.getDeclaredMethod("twice", int.class);
+    ResolvableMethodParameter[] parameters = { new FixedParameter(new MethodParameter(method, 0), 1) };
+    SingletonActionMappingAnnotationHandler handler = new SingletonActionMappingAnnotationHandler(
+            new Controller(), HandlerMethod.from(method), parameters);
+    assertThat(handler.isGenerateInvoker()).isFalse();
+    assertThat(handler.invokeHandler(context)).isEqualTo(2);
+
+    handler.setGenerateInvoker(true);
+    assertThat(handler.invokeHandler(context)).isEqualTo(2);
+  }
+
+  static class FixedParameter extends ResolvableMethodParameter {
+    private final Object value;
+
+    FixedParameter(MethodParameter parameter, Object value) {
+      super(parameter);
+      this.value = value;
+    }
+
+    @Override
+    protected Object resolveParameter(RequestContext request) {
+      return value;
+    }
+  }
+
+  record FixedStrategy(String value) implements ParameterResolvingStrategy {
+
+    @Override
+    public boolean supportsParameter(ResolvableMethodParameter resolvable) {
+      return resolvable.is(String.class);
+    }
+
+    @Override
+    public Object resolveParameter(RequestContext context, ResolvableMethodParameter resolvable) {
+      return value;
+    }
+  }
+
+  public static class Controller {
+
+    public String hello(String name, int age, long id) {
+      return name + "-" + age + "-" + id;
+    }
+
+    public int twice(int value) {
+      return value * 2;
+    }
+
+    public void noop() { }
+
+    public static String staticMethod() {
+      return "static";
+    }
+
+    private String privateMethod(String value) {
+      return value;
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.registry.annotation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cn.taketoday.http.DefaultHttpHeaders;
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.HttpMethod;
+import cn.taketoday.http.MediaType;
+import cn.taketoday.web.MockRequestContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class RequestConditionMatcherTests {
+
+  @Test
+  void noConditions() {
+    RequestConditionMatcher matcher = RequestConditionMatcher.compile(null, null, null, null);
+    assertThat(matcher).isSameAs(RequestConditionMatcher.ALWAYS);
+    assertThat(matcher.matches(new Request("DELETE"))).isTrue();
+  }
+
+  @Test
+  void methodMask() {
+    RequestConditionMatcher matcher = RequestConditionMatcher.compile(
+            new HttpMethod[] { HttpMethod.GET, HttpMethod.POST }, null, null, null);
+
+    assertThat(matcher.matches(new Request("GET"))).isTrue();
+    assertThat(matcher.matches(new Request("POST"))).isTrue();
+    assertThat(matcher.matches(new Request("PUT"))).isFalse();
+    assertThat(matcher.matches(new Request("UNKNOWN"))).isFalse();
+  }
+
+  @Test
+  void params() {
+    RequestConditionMatcher matcher = RequestConditionMatcher.compile(null, null, null, new RequestParameter[] {
+            RequestParameter.parse("name=TODAY"), RequestParameter.parse("q")
+    });
+
+    assertThat(matcher.matches(new Request("GET").param("name", "TODAY").param("q", "1"))).isTrue();
+    assertThat(matcher.matches(new Request("GET").param("name", "other").param("q", "1"))).isFalse();
+    assertThat(matcher.matches(new Request("GET").param("name", "TODAY"))).isFalse();
+  }
+
+  @Test
+  void consumes() {
+    RequestConditionMatcher matcher = RequestConditionMatcher.compile(null, new MediaType[] {
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML
+    }, null, null);
+
+    assertThat(matcher.matches(new Request("POST").contentType("application/json"))).isTrue();
+    assertThat(matcher.matches(new Request("POST").contentType("application/xml;charset=UTF-8"))).isTrue();
+    assertThat(matcher.matches(new Request("POST").contentType("text/plain"))).isFalse();
+    assertThat(matcher.matches(new Request("POST").contentType("not a type"))).isFalse();
+    assertThat(matcher.matches(new Request("POST"))).isFalse();
+  }
+
+  @Test
+  void produces() {
+    RequestConditionMatcher matcher = RequestConditionMatcher.compile(null, null, new MediaType[] {
+            MediaType.APPLICATION_JSON
+    }, null);
+
+    assertThat(matcher.matches(new Request("GET").accept("application/json"))).isTrue();
+    assertThat(matcher.matches(new Request("GET").accept("text/html, */*;q=0.8"))).isTrue();
+    assertThat(matcher.matches(new Request("GET").accept("text/html"))).isFalse();
+    assertThat(matcher.matches(new Request("GET"))).isTrue();
+  }
+
+  static class Request extends MockRequestContext {
+    private final String method;
+    private final Map<String, String[]> parameters = new LinkedHashMap<>();
+    private final HttpHeaders headers = new DefaultHttpHeaders();
+
+    Request(String method) {
+      this.method = method;
+    }
+
+    Request param(String name, String value) {
+      parameters.put(name, new String[] { value });
+      return this;
+    }
+
+    Request contentType(String contentType) {
+      headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+      return this;
+    }
+
+    Request accept(String accept) {
+      headers.set(HttpHeaders.ACCEPT, accept);
+      return this;
+    }
+
+    @Override
+    protected String doGetMethod() {
+      return method;
+    }
+
+    @Override
+    public Map<String, String[]> doGetParameters() {
+      return parameters;
+    }
+
+    @Override
+    public String getContentType() {
+      return headers.getFirst(HttpHeaders.CONTENT_TYPE);
+    }
+
+    @Override
+    protected HttpHeaders createRequestHeaders() {
+      return headers;
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.resolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import cn.taketoday.core.MethodParameter;
+import cn.taketoday.http.DefaultHttpHeaders;
+import cn.taketoday.http.HttpHeaders;
+import cn.taketoday.http.MediaType;
+import cn.taketoday.http.converter.ByteArrayHttpMessageConverter;
+import cn.taketoday.http.converter.HttpMessageConverter;
+import cn.taketoday.http.converter.StringHttpMessageConverter;
+import cn.taketoday.web.MockRequestContext;
+import cn.taketoday.web.RequestContext;
+import cn.taketoday.web.accept.ContentNegotiationManager;
+import cn.taketoday.web.accept.ParameterContentNegotiationStrategy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Content negotiation cache of {@link AbstractMessageConverterMethodProcessor}
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class MessageConverterNegotiationCacheTests {
+
+  private final ArrayList<HttpMessageConverter<?>> converters = new ArrayList<>(
+          List.of(new ByteArrayHttpMessageConverter(), new StringHttpMessageConverter()));
+
+  private final CountingProcessor processor = new CountingProcessor(converters, null);
+
+  private final MethodParameter returnType = new MethodParameter(
+          MessageConverterNegotiationCacheTests.class.getDeclaredMethod("handle"), -1);
+
+  MessageConverterNegotiationCacheTests() throws NoSuchMethodException { }
+
+  String handle() {
+    return "body";
+  }
+
+  @Test
+  void negotiateOncePerAcceptHeader() throws Exception {
+    Request request = new Request("text/plain");
+    processor.writeWithMessageConverters("body", returnType, request);
+    assertThat(request.getOutput()).isEqualTo("body");
+    assertThat(request.responseHeaders().getContentType().isCompatibleWith(MediaType.TEXT_PLAIN)).isTrue();
+
+    request = new Request("text/plain");
+    processor.writeWithMessageConverters("body", returnType, request);
+    assertThat(request.getOutput()).isEqualTo("body");
+    assertThat(request.responseHeaders().getContentType().isCompatibleWith(MediaType.TEXT_PLAIN)).isTrue();
+    assertThat(processor.negotiations).isEqualTo(1);
+
+    processor.writeWithMessageConverters("body", returnType, new Request("*/*"));
+    assertThat(processor.negotiations).isEqualTo(2);
+  }
+
+  @Test
+  void disabled() throws Exception {
+    processor.setNegotiationCacheSize(0);
+    assertThat(processor.getNegotiationCache()).isNull();
+
+    processor.writeWithMessageConverters("body", returnType, new Request("text/plain"));
+    processor.writeWithMessageConverters("body", returnType, new Request("text/plain"));
+    assertThat(processor.negotiations).isEqualTo(2);
+  }
+
+  @Test
+  void notCachedWhenNegotiationDependsOnMoreThanAcceptHeader() {
+    ContentNegotiationManager manager = new ContentNegotiationManager(
+            new ParameterContentNegotiationStrategy(java.util.Map.of("json", MediaType.APPLICATION_JSON)));
+    assertThat(new CountingProcessor(converters, manager).getNegotiationCache()).isNull();
+  }
+
+  static class CountingProcessor extends RequestResponseBodyMethodProcessor {
+    int negotiations;
+
+    CountingProcessor(List<HttpMessageConverter<?>> converters, ContentNegotiationManager manager) {
+      super(converters, manager);
+    }
+
+    @Override
+    protected List<MediaType> getProducibleMediaTypes(RequestContext request, Class<?> valueClass, Type targetType) {
+      negotiations++;
+      return super.getProducibleMediaTypes(request, valueClass, targetType);
+    }
+  }
+
+  static class Request extends MockRequestContext {
+    private final HttpHeaders headers = new DefaultHttpHeaders();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    Request(String accept) {
+      headers.set(HttpHeaders.ACCEPT, accept);
+    }
+
+    String getOutput() {
+      return output.toString();
+    }
+
+    @Override
+    protected String doGetRequestPath() {
+      return "/body";
+    }
+
+    @Override
+    protected HttpHeaders createRequestHeaders() {
+      return headers;
+    }
+
+    @Override
+    protected OutputStream doGetOutputStream() {
+      return output;
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.resource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cn.taketoday.core.io.FileBasedResource;
+import cn.taketoday.core.io.Resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class ContentVersionManifestTests {
+
+  @TempDir
+  Path dir;
+
+  Path root;
+
+  List<Resource> locations;
+
+  @BeforeEach
+  void setup() throws IOException {
+    root = Files.createDirectories(dir.resolve("static"));
+    Files.writeString(root.resolve("foo.css"), "h1 { color:red; }");
+    Files.writeString(root.resolve("bar.css"), "h1 { color:blue; }");
+    Files.createDirectories(root.resolve("js"));
+    Files.writeString(root.resolve("js/foo.js"), "function foo() {}");
+    locations = List.of(new FileBasedResource(root.toString() + "/"));
+  }
+
+  @Test
+  void scanOnlyHashesChangedFiles() throws IOException {
+    Path manifestFile = dir.resolve("versions.manifest");
+    ContentVersionManifest manifest = new ContentVersionManifest(manifestFile);
+    assertThat(manifest.scan(locations)).isEqualTo(3);
+    assertThat(manifestFile).exists();
+
+    // restart
+    manifest = new ContentVersionManifest(manifestFile);
+    assertThat(manifest.size()).isEqualTo(3);
+    assertThat(manifest.scan(locations)).isZero();
+
+    Path foo = root.resolve("foo.css");
+    Files.writeString(foo, "h1 { color:green; }");
+    assertThat(manifest.scan(locations)).isEqualTo(1);
+
+    Files.delete(root.resolve("bar.css"));
+    assertThat(manifest.scan(locations)).isZero();
+    assertThat(manifest.size()).isEqualTo(2);
+  }
+
+  @Test
+  void getVersion() throws IOException {
+    ContentVersionManifest manifest = new ContentVersionManifest(dir.resolve("versions.manifest"));
+    Resource foo = new FileBasedResource(root.resolve("foo.css"));
+
+    String version = manifest.getVersion(foo);
+    assertThat(version).hasSize(16).isEqualTo(
+            ContentVersionManifest.hash(new ByteArrayInputStream("h1 { color:red; }".getBytes())));
+    assertThat(manifest.scan(locations)).isEqualTo(2);
+    assertThat(manifest.getVersion(foo)).isEqualTo(version);
+
+    Files.writeString(root.resolve("foo.css"), "h1 { color:green; }");
+    assertThat(manifest.getVersion(foo)).isNotEqualTo(version);
+  }
+
+  @Test
+  void requestTimeVersionsSavedLater() throws IOException {
+    Path manifestFile = dir.resolve("versions.manifest");
+    ContentVersionManifest manifest = new ContentVersionManifest(manifestFile);
+    manifest.setSaveDelay(50);
+
+    manifest.getVersion(new FileBasedResource(root.resolve("foo.css")));
+    manifest.getVersion(new FileBasedResource(root.resolve("bar.css")));
+    await().atMost(5, TimeUnit.SECONDS)
+            .until(() -> new ContentVersionManifest(manifestFile).size() == 2);
+  }
+
+  @Test
+  void savedOnHandlerDestroy() throws Exception {
+    Path manifestFile = dir.resolve("versions.manifest");
+    ContentVersionManifest manifest = new ContentVersionManifest(manifestFile);
+    manifest.setSaveDelay(0);
+
+    VersionResourceResolver resolver = new VersionResourceResolver();
+    resolver.addContentVersionStrategy(manifest, "/**");
+    ResourceHttpRequestHandler handler = new ResourceHttpRequestHandler();
+    handler.setResourceResolvers(List.of(resolver));
+
+    manifest.getVersion(new FileBasedResource(root.resolve("foo.css")));
+    assertThat(manifestFile).doesNotExist();
+    handler.destroy();
+    assertThat(new ContentVersionManifest(manifestFile).size()).isEqualTo(1);
+  }
+
+  @Test
+  void scanKeepsSiblingDirectoryVersions() throws IOException {
+    Path sibling = Files.createDirectories(dir.resolve("static2"));
+    Files.writeString(sibling.resolve("baz.css"), "h1 { color:black; }");
+    ContentVersionManifest manifest = new ContentVersionManifest(dir.resolve("versions.manifest"));
+    manifest.getVersion(new FileBasedResource(sibling.resolve("baz.css")));
+
+    manifest.scan(locations);
+    // '/static2/baz.css' is not under '/static'
+    assertThat(manifest.size()).isEqualTo(4);
+  }
+
+  @Test
+  void versionStrategy() throws IOException {
+    ContentVersionManifest manifest = new ContentVersionManifest(dir.resolve("versions.manifest"));
+    ContentVersionStrategy strategy = new ContentVersionStrategy(manifest);
+    Resource foo = new FileBasedResource(root.resolve("foo.css"));
+
+    assertThat(strategy.getResourceVersion(foo)).isEqualTo(manifest.getVersion(foo));
+    assertThat(strategy.getManifest()).isSameAs(manifest);
+    assertThat(new ContentVersionStrategy().getManifest()).isNull();
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.resource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import cn.taketoday.core.io.FileBasedResource;
+import cn.taketoday.core.io.Resource;
+import cn.taketoday.http.MediaType;
+import cn.taketoday.web.mock.MockHttpServletRequest;
+import cn.taketoday.web.mock.MockHttpServletResponse;
+import cn.taketoday.web.mock.MockServletContext;
+import cn.taketoday.web.servlet.ServletRequestContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class ResourceContentCacheTests {
+
+  static final String CONTENT = "h1 { color:red; }\n".repeat(20);
+
+  @TempDir
+  Path dir;
+
+  Path file;
+
+  final ResourceContentCache cache = new ResourceContentCache();
+
+  @BeforeEach
+  void setup() throws IOException {
+    file = dir.resolve("foo.css");
+    Files.writeString(file, CONTENT);
+  }
+
+  @Test
+  void cacheContent() throws IOException {
+    ResourceContentCache.CachedContent content = cache.put("foo.css", new FileBasedResource(file), MediaType.TEXT_PLAIN);
+
+    assertThat(content).isNotNull();
+    assertThat(cache.get("foo.css")).isSameAs(content);
+    assertThat(content.getContent(null)).asString().isEqualTo(CONTENT);
+    assertThat(content.getContentType()).isEqualTo("text/plain");
+    assertThat(content.getETag(null)).startsWith("\"").endsWith("\"");
+    assertThat(content.getLastModified()).isEqualTo(file.toFile().lastModified());
+
+    assertThat(content.selectCoding("deflate")).isNull();
+    assertThat(content.selectCoding("gzip, deflate")).isEqualTo("gzip");
+    assertThat(content.getETag("gzip")).isNotEqualTo(content.getETag(null));
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(content.getContent("gzip")))) {
+      assertThat(in.readAllBytes()).asString().isEqualTo(CONTENT);
+    }
+  }
+
+  @Test
+  void precompressedBrotli() throws IOException {
+    Files.write(dir.resolve("foo.css.br"), new byte[] { 1, 2, 3 });
+    ResourceContentCache.CachedContent content = cache.put("foo.css", new FileBasedResource(file), null);
+
+    assertThat(content).isNotNull();
+    assertThat(content.selectCoding("gzip, br")).isEqualTo("br");
+    assertThat(content.getContent("br")).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void selectCodingByQuality() throws IOException {
+    Files.write(dir.resolve("foo.css.br"), new byte[] { 1, 2, 3 });
+    ResourceContentCache.CachedContent content = cache.put("foo.css", new FileBasedResource(file), null);
+
+    assertThat(content).isNotNull();
+    assertThat(content.selectCoding("identity, gzip;q=0")).isNull();
+    assertThat(content.selectCoding("gzip;q=0, br;q=0")).isNull();
+    assertThat(content.selectCoding("GZIP;Q=0.5, br;q=0.2")).isEqualTo("gzip");
+    assertThat(content.selectCoding("br;q=0, *")).isEqualTo("gzip");
+    assertThat(content.selectCoding("*;q=0")).isNull();
+    // whole coding names only
+    assertThat(content.selectCoding("brotli, xgzip")).isNull();
+  }
+
+  @Test
+  void modified() throws IOException {
+    cache.setCheckInterval(0, TimeUnit.MILLISECONDS);
+    cache.put("foo.css", new FileBasedResource(file), null);
+    assertThat(cache.get("foo.css")).isNotNull();
+
+    assertThat(file.toFile().setLastModified(file.toFile().lastModified() - 10000)).isTrue();
+    assertThat(cache.get("foo.css")).isNull();
+    assertThat(cache.getEntryCount()).isZero();
+    assertThat(cache.getSize()).isZero();
+  }
+
+  @Test
+  void notModifiedWithinCheckInterval() throws IOException {
+    cache.setCheckInterval(1, TimeUnit.HOURS);
+    cache.put("foo.css", new FileBasedResource(file), null);
+
+    assertThat(file.toFile().setLastModified(file.toFile().lastModified() - 10000)).isTrue();
+    assertThat(cache.get("foo.css")).isNotNull();
+  }
+
+  @Test
+  void bounded() throws IOException {
+    cache.setCompress(false);
+    cache.setMaxEntrySize(CONTENT.length() - 1);
+    assertThat(cache.put("foo.css", new FileBasedResource(file), null)).isNull();
+
+    cache.setMaxEntrySize(CONTENT.length());
+    cache.setMaxSize(CONTENT.length() * 2L);
+    cache.put("a", new FileBasedResource(file), null);
+    cache.put("b", new FileBasedResource(file), null);
+    cache.get("a");
+    cache.put("c", new FileBasedResource(file), null);
+
+    assertThat(cache.getEntryCount()).isEqualTo(2);
+    assertThat(cache.getSize()).isEqualTo(CONTENT.length() * 2L);
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNotNull();
+  }
+
+  @Test
+  void handler() throws Exception {
+    ResourceHttpRequestHandler handler = new ResourceHttpRequestHandler();
+    handler.setLocations(List.<Resource>of(new FileBasedResource(dir.toString() + "/")));
+    handler.setContentCache(cache);
+    handler.afterPropertiesSet();
+
+    MockHttpServletResponse response = handle(handler, null);
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getContentType()).isEqualTo("text/css");
+    assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(response.getHeader("Vary")).isEqualTo("Accept-Encoding");
+    assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+    String eTag = response.getHeader("ETag");
+    assertThat(eTag).isNotNull();
+    assertThat(cache.getEntryCount()).isEqualTo(1);
+
+    // served from memory, even if the file is gone
+    Files.delete(file);
+    response = handle(handler, eTag);
+    assertThat(response.getStatus()).isEqualTo(304);
+    assertThat(response.getContentAsByteArray()).isEmpty();
+  }
+
+  private MockHttpServletResponse handle(ResourceHttpRequestHandler handler, String ifNoneMatch) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest(new MockServletContext(), "GET", "");
+    request.setRequestURI("foo.css");
+    request.addHeader("Accept-Encoding", "gzip, deflate");
+    if (ifNoneMatch != null) {
+      request.addHeader("If-None-Match", ifNoneMatch);
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    ServletRequestContext context = new ServletRequestContext(null, request, response);
+    handler.handleRequest(context);
+    return response;
+  }
+
+}
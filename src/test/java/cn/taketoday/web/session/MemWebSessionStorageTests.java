@@ -0,0 +1,224 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class MemWebSessionStorageTests {
+
+  final MutableClock clock = new MutableClock();
+
+  MemWebSessionStorage storage = createStorage(100, -1);
+
+  @AfterEach
+  void destroy() {
+    storage.destroy();
+  }
+
+  @Test
+  void expiresAfterIdleTimeout() {
+    storage.setSweepInterval(null);
+    WebSession session = store("1");
+    for (int i = 0; i < 4; i++) {
+      clock.advance(40);
+      // accessed, older than the timeout though
+      assertThat(storage.get("1")).isSameAs(session);
+    }
+    clock.advance(100);
+    assertThat(storage.contains("1")).isTrue();
+    clock.advance(1);
+    assertThat(storage.contains("1")).isFalse();
+    assertThat(storage.get("1")).isNull();
+    assertThat(storage.getExpiredCount()).isEqualTo(1);
+    assertThat(storage.getActiveCount()).isZero();
+  }
+
+  @Test
+  void removeExpiredSessions() {
+    storage.setSweepInterval(null);
+    store("1");
+    store("2");
+    clock.advance(60);
+    store("3");
+    storage.get("1");
+    clock.advance(60);
+
+    assertThat(storage.removeExpiredSessions()).isEqualTo(1);
+    assertThat(storage.contains("1")).isTrue();
+    assertThat(storage.contains("2")).isFalse();
+    assertThat(storage.contains("3")).isTrue();
+
+    clock.advance(120);
+    assertThat(storage.removeExpiredSessions()).isEqualTo(2);
+    assertThat(storage.getActiveCount()).isZero();
+    assertThat(storage.getExpiredCount()).isEqualTo(3);
+  }
+
+  @Test
+  void sweeper() throws InterruptedException {
+    storage.setSweepInterval(Duration.ofMillis(20));
+    store("1");
+    clock.advance(101);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (storage.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(storage.getActiveCount()).isZero();
+    assertThat(storage.getExpiredCount()).isEqualTo(1);
+  }
+
+  @Test
+  void evictsLeastRecentlyUsed() {
+    storage = createStorage(60_000, 2);
+    storage.setSweepInterval(null);
+    store("1");
+    store("2");
+    clock.advance(5);
+    storage.get("1");
+    store("3");
+
+    assertThat(storage.contains("1")).isTrue();
+    assertThat(storage.contains("2")).isFalse();
+    assertThat(storage.contains("3")).isTrue();
+    assertThat(storage.getEvictedCount()).isEqualTo(1);
+    assertThat(storage.getActiveCount()).isEqualTo(2);
+  }
+
+  @Test
+  void evictionRequeuesInOrder() {
+    storage = createStorage(100, 2);
+    storage.setSweepInterval(null);
+    store("1");
+    store("2");
+    clock.advance(10);
+    storage.get("1");
+    clock.advance(40);
+    // evicts "2", re-queues "1" behind "3"
+    store("3");
+    assertThat(storage.getEvictedCount()).isEqualTo(1);
+
+    clock.advance(101);
+    assertThat(storage.removeExpiredSessions()).isEqualTo(2);
+    assertThat(storage.getActiveCount()).isZero();
+  }
+
+  @Test
+  void removeAndInvalidate() {
+    WebSession session = store("1");
+    session.setAttribute("name", "value");
+    session.invalidate();
+    assertThat(storage.get("1")).isNull();
+    assertThat(storage.getExpiredCount()).isZero();
+
+    store("2");
+    assertThat(storage.remove("2")).isNotNull();
+    assertThat(storage.removeExpiredSessions()).isZero();
+  }
+
+  @Test
+  void concurrentAccess() throws Exception {
+    storage = new MemWebSessionStorage(60_000, 1000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 2000; i++) {
+            String id = thread + "-" + i;
+            store(id);
+            assertThat(storage.get(id)).isNotNull();
+            storage.get(thread + "-" + (i / 2));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    assertThat(storage.getActiveCount()).isLessThanOrEqualTo(1000);
+    assertThat(storage.getActiveCount() + storage.getEvictedCount()).isEqualTo(16000);
+  }
+
+  private MemWebSessionStorage createStorage(long expire, int maxSessions) {
+    MemWebSessionStorage storage = new MemWebSessionStorage(expire, maxSessions);
+    storage.setClock(clock);
+    return storage;
+  }
+
+  private WebSession store(String id) {
+    DefaultSession session = new DefaultSession(id, storage);
+    storage.store(id, session);
+    return session;
+  }
+
+  static final class MutableClock extends Clock {
+
+    private volatile long millis = 1_000_000;
+
+    void advance(long millis) {
+      this.millis += millis;
+    }
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+
+    @Override
+    public Instant instant() {
+      return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
+}
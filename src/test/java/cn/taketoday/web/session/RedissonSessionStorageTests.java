@@ -0,0 +1,183 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.session;
+
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class RedissonSessionStorageTests {
+
+  /** hashes in 'redis' */
+  final Map<String, Map<String, Object>> hashes = new HashMap<>();
+
+  final Map<String, Long> expires = new HashMap<>();
+
+  /** commands of each executed batch */
+  final List<List<String>> batches = new ArrayList<>();
+
+  final RedissonSessionStorage storage = new RedissonSessionStorage(redissonClient(), 60_000);
+
+  @Test
+  void storeWritesHash() {
+    DefaultSession session = new DefaultSession("1", 100, storage);
+    session.setAttribute("user", "today");
+    storage.store("1", session);
+
+    assertThat(hashes.get("sessions:1"))
+            .containsEntry("creationTime", 100L)
+            .containsEntry("attr:user", "today")
+            .hasSize(2);
+    assertThat(expires.get("sessions:1")).isEqualTo(60_000L);
+    assertThat(batches).containsExactly(List.of("del", "put [attr:user, creationTime]", "expire"));
+    assertThat(session.hasChangedAttributes()).isFalse();
+  }
+
+  @Test
+  void getRestoresSession() {
+    hashes.put("sessions:1", new HashMap<>(Map.of("creationTime", 100L, "attr:user", "today")));
+
+    WebSession session = storage.get("1");
+    assertThat(session).isInstanceOf(DefaultSession.class);
+    assertThat(session.getId()).isEqualTo("1");
+    assertThat(session.getCreationTime()).isEqualTo(100);
+    assertThat(session.getAttribute("user")).isEqualTo("today");
+    assertThat(((DefaultSession) session).hasChangedAttributes()).isFalse();
+
+    assertThat(storage.contains("1")).isTrue();
+    assertThat(storage.get("2")).isNull();
+    assertThat(storage.contains("2")).isFalse();
+  }
+
+  @Test
+  void saveChangesWritesOnlyChangedAttributes() {
+    hashes.put("sessions:1", new HashMap<>(Map.of(
+            "creationTime", 100L, "attr:user", "today", "attr:cart", "1", "attr:locale", "zh")));
+
+    DefaultSession session = (DefaultSession) storage.get("1");
+    session.setAttribute("cart", "2");
+    session.removeAttribute("locale");
+    storage.saveChanges(session);
+
+    assertThat(batches).containsExactly(List.of("put [attr:cart, creationTime]", "remove [attr:locale]", "expire"));
+    assertThat(hashes.get("sessions:1"))
+            .containsEntry("attr:user", "today")
+            .containsEntry("attr:cart", "2")
+            .doesNotContainKey("attr:locale");
+    assertThat(session.hasChangedAttributes()).isFalse();
+
+    // nothing changed: only refresh expiry
+    batches.clear();
+    storage.saveChanges(session);
+    assertThat(batches).containsExactly(List.of("expire"));
+  }
+
+  @Test
+  void removeDeletesHash() {
+    hashes.put("sessions:1", new HashMap<>(Map.of("creationTime", 100L, "attr:user", "today")));
+
+    WebSession removed = storage.remove("1");
+    assertThat(removed.getAttribute("user")).isEqualTo("today");
+    assertThat(hashes).doesNotContainKey("sessions:1");
+    assertThat(storage.remove("1")).isNull();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private RedissonClient redissonClient() {
+    RedissonClient redisson = mock(RedissonClient.class);
+    willAnswer(invocation -> {
+      String key = invocation.getArgument(0);
+      RMap map = mock(RMap.class);
+      willAnswer(i -> new HashMap<>(hashes.getOrDefault(key, Map.of()))).given(map).readAllMap();
+      willAnswer(i -> hashes.containsKey(key)).given(map).isExists();
+      willAnswer(i -> hashes.remove(key) != null).given(map).delete();
+      return map;
+    }).given(redisson).getMap(anyString());
+
+    willAnswer(invocation -> {
+      List<String> commands = new ArrayList<>();
+      List<Runnable> operations = new ArrayList<>();
+      RBatch batch = mock(RBatch.class);
+      willAnswer(i -> {
+        String key = i.getArgument(0);
+        RMapAsync map = mock(RMapAsync.class);
+        willAnswer(a -> {
+          commands.add("del");
+          operations.add(() -> hashes.remove(key));
+          return null;
+        }).given(map).deleteAsync();
+        willAnswer(a -> {
+          Map<String, Object> fields = a.getArgument(0);
+          commands.add("put " + fields.keySet().stream().sorted().toList());
+          operations.add(() -> hashes.computeIfAbsent(key, k -> new HashMap<>()).putAll(fields));
+          return null;
+        }).given(map).putAllAsync(any());
+        willAnswer(a -> {
+          Object[] fields = a.getArguments();
+          commands.add("remove " + List.of(fields));
+          operations.add(() -> {
+            Map<String, Object> hash = hashes.get(key);
+            if (hash != null) {
+              for (Object field : fields) {
+                hash.remove(field);
+              }
+            }
+          });
+          return null;
+        }).given(map).fastRemoveAsync(any());
+        willAnswer(a -> {
+          commands.add("expire");
+          long ttl = ((TimeUnit) a.getArgument(1)).toMillis(a.getArgument(0));
+          operations.add(() -> expires.put(key, ttl));
+          return null;
+        }).given(map).expireAsync(anyLong(), any(TimeUnit.class));
+        return map;
+      }).given(batch).getMap(anyString());
+      willAnswer(i -> {
+        operations.forEach(Runnable::run);
+        batches.add(commands);
+        return null;
+      }).given(batch).execute();
+      return batch;
+    }).given(redisson).createBatch();
+    return redisson;
+  }
+
+}
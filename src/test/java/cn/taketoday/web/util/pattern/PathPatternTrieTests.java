@@ -0,0 +1,203 @@
+/*
+ * Original Author -> Harry Yang (taketoday@foxmail.com) https://taketoday.cn
+ * Copyright © TODAY & 2017 - 2022 All Rights Reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see [http://www.gnu.org/licenses/]
+ */
+
+package cn.taketoday.web.util.pattern;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cn.taketoday.http.server.PathContainer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link PathPatternTrie}.
+ *
+ * @author <a href="https://github.com/TAKETODAY">Harry Yang</a>
+ * @since 4.0
+ */
+class PathPatternTrieTests {
+
+  private final PathPatternParser parser = new PathPatternParser();
+
+  private final PathPatternTrie<String> trie = new PathPatternTrie<>();
+
+  @Test
+  void literalMatch() {
+    register("/users", "/users/list", "/orders/list");
+
+    assertMatch("/users", "/users");
+    assertMatch("/users/list", "/users/list");
+    assertMatch("/orders/list", "/orders/list");
+    assertNoMatch("/orders");
+    assertNoMatch("/users/list/more");
+  }
+
+  @Test
+  void captureVariables() {
+    register("/users/{id}", "/users/{id}/orders/{orderId}");
+
+    PathPatternTrie.Match<String> match = trie.lookup(path("/users/42/orders/7"));
+    assertThat(match).isNotNull();
+    assertThat(match.getValue()).isEqualTo("/users/{id}/orders/{orderId}");
+    assertThat(match.getMatchInfo().getUriVariables())
+            .containsEntry("id", "42")
+            .containsEntry("orderId", "7");
+
+    match = trie.lookup(path("/users/42"));
+    assertThat(match).isNotNull();
+    assertThat(match.getMatchInfo().getUriVariable("id")).isEqualTo("42");
+  }
+
+  @Test
+  void mostSpecificWins() {
+    register("/**", "/users/**", "/users/{id}", "/users/me", "/users/*");
+
+    assertMatch("/users/me", "/users/me");
+    assertMatch("/users/42", "/users/{id}");
+    assertMatch("/users/42/orders", "/users/**");
+    assertMatch("/other", "/**");
+  }
+
+  @Test
+  void registrationOrderBreaksTies() {
+    register("/users/{id}", "/users/{name}");
+    assertMatch("/users/42", "/users/{id}");
+  }
+
+  @Test
+  void catchAll() {
+    register("/static/{*path}", "/resources/**");
+
+    PathPatternTrie.Match<String> match = trie.lookup(path("/static/css/site.css"));
+    assertThat(match).isNotNull();
+    assertThat(match.getMatchInfo().getUriVariable("path")).isEqualTo("/css/site.css");
+
+    assertMatch("/static", "/static/{*path}");
+    assertMatch("/resources", "/resources/**");
+    assertMatch("/resources/a/b", "/resources/**");
+    assertNoMatch("/resourcesX");
+  }
+
+  @Test
+  void wildcardsAndRegex() {
+    register("/files/*.txt", "/img/{name:[a-z]+}.png", "/t?st", "/end/*");
+
+    assertMatch("/files/readme.txt", "/files/*.txt");
+    assertNoMatch("/files/readme.md");
+    assertMatch("/img/logo.png", "/img/{name:[a-z]+}.png");
+    assertNoMatch("/img/logo1.png");
+    assertMatch("/test", "/t?st");
+    assertMatch("/end/", "/end/*");
+    assertMatch("/end/x", "/end/*");
+  }
+
+  @Test
+  void optionalTrailingSeparator() {
+    register("/users", "/users/{id}");
+
+    assertMatch("/users/", "/users");
+    assertMatch("/users/42/", "/users/{id}");
+  }
+
+  @Test
+  void caseInsensitive() {
+    PathPatternParser parser = new PathPatternParser();
+    parser.setCaseSensitive(false);
+    trie.put(parser.parse("/Users/List"), "list");
+
+    PathPatternTrie.Match<String> match = trie.lookup(path("/users/LIST"));
+    assertThat(match).isNotNull();
+    assertThat(match.getValue()).isEqualTo("list");
+  }
+
+  @Test
+  void replaceValue() {
+    PathPattern pattern = parser.parse("/users/{id}");
+    assertThat(trie.put(pattern, "first")).isNull();
+    assertThat(trie.put(parser.parse("/users/{id}"), "second")).isEqualTo("first");
+    assertThat(trie.size()).isEqualTo(1);
+    assertThat(trie.lookup(path("/users/1")).getValue()).isEqualTo("second");
+  }
+
+  @Test
+  void sameResultAsLinearScan() {
+    List<String> patterns = Arrays.asList(
+            "/", "/api/**", "/api/users", "/api/users/{id}", "/api/users/{id}/roles",
+            "/api/{resource}/{id}", "/api/*/list", "/api/users/*.json", "/{*rest}",
+            "/docs/{name:[a-z]+}", "/docs/t?st", "/docs/**");
+    List<PathPattern> parsed = new ArrayList<>();
+    for (String pattern : patterns) {
+      PathPattern pathPattern = parser.parse(pattern);
+      parsed.add(pathPattern);
+      trie.put(pathPattern, pattern);
+    }
+
+    List<String> paths = Arrays.asList(
+            "", "/", "/api", "/api/", "/api/users", "/api/users/", "/api/users/1",
+            "/api/users/1/roles", "/api/orders/1", "/api/orders/list", "/api/users/a.json",
+            "/docs/abc", "/docs/test", "/docs/a1", "/docs", "/x/y/z", "//api//users");
+
+    for (String candidate : paths) {
+      PathContainer path = path(candidate);
+      ArrayList<PathPattern> matches = new ArrayList<>();
+      for (PathPattern pattern : parsed) {
+        if (pattern.matches(path)) {
+          matches.add(pattern);
+        }
+      }
+      matches.sort(PathPattern.SPECIFICITY_COMPARATOR);
+
+      PathPatternTrie.Match<String> match = trie.lookup(path);
+      if (matches.isEmpty()) {
+        assertThat(match).as(candidate).isNull();
+      }
+      else {
+        assertThat(match).as(candidate).isNotNull();
+        assertThat(match.getPattern()).as(candidate).isEqualTo(matches.get(0));
+      }
+    }
+  }
+
+  private void register(String... patterns) {
+    for (String pattern : patterns) {
+      trie.put(parser.parse(pattern), pattern);
+    }
+  }
+
+  private void assertMatch(String path, String expected) {
+    PathPatternTrie.Match<String> match = trie.lookup(path(path));
+    assertThat(match).as(path).isNotNull();
+    assertThat(match.getValue()).isEqualTo(expected);
+    assertThat(match.getPattern().getPatternString()).isEqualTo(expected);
+  }
+
+  private void assertNoMatch(String path) {
+    assertThat(trie.lookup(path(path))).as(path).isNull();
+  }
+
+  private static PathContainer path(String path) {
+    return PathContainer.parsePath(path);
+  }
+
+}